@@ -2,6 +2,8 @@ package com.github.dirkraft.propslive;
 
 import com.github.dirkraft.propslive.propsrc.PropSource;
 import com.github.dirkraft.propslive.propsrc.PropSourceSysProps;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.Map;
@@ -44,6 +46,17 @@ public class PropsImpl implements Props {
         return source.asMap();
     }
 
+    /**
+     * Streams the props of the underlying {@link PropSource} without necessarily copying them into a map first. See
+     * {@link PropSources#forEach(PropSource, PropVisitor)}.
+     *
+     * @param visitor of each prop
+     * @return true if every prop was visited, or false if the visitor stopped early
+     */
+    public boolean forEach(PropVisitor visitor) {
+        return PropSources.forEach(source, visitor);
+    }
+
     /* GETTERS */
 
     @Override
@@ -0,0 +1,148 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The {@link CloneLock}s of a {@link DynamicProps}, one per partition of its {@link PropPartitioner}. Writers take
+ * only the proceeding locks of the partitions they write, so writers to different partitions share nothing, while
+ * whole-props snapshots take the blocking locks of all partitions.
+ * <p/>
+ * Sets of partitions are passed around as bitmasks, partition i being bit i.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class CloneLocks {
+
+    private final PropPartitioner partitioner;
+    private final CloneLock[] partitionLocks;
+
+    CloneLocks(PropPartitioner partitioner) {
+        int partitions = partitioner.partitions();
+        if (partitions < 1 || partitions > PropPartitioners.MAX_PARTITIONS) {
+            throw new IllegalArgumentException("Partitions must be from 1 to " + PropPartitioners.MAX_PARTITIONS +
+                    ": " + partitions);
+        }
+        this.partitioner = partitioner;
+        this.partitionLocks = new CloneLock[partitions];
+        for (int i = 0; i < partitions; ++i) {
+            partitionLocks[i] = new CloneLock();
+        }
+    }
+
+    PropPartitioner partitioner() {
+        return partitioner;
+    }
+
+    /**
+     * @return lock of the only partition
+     * @throws IllegalStateException if there is more than one
+     */
+    CloneLock singleLock() {
+        if (partitionLocks.length != 1) {
+            throw new IllegalStateException("There is a clone lock per partition, of " + partitionLocks.length);
+        }
+        return partitionLocks[0];
+    }
+
+    /**
+     * @return proceeding lock of the prop's partition
+     */
+    Lock proceedingLock(String propKey) {
+        return partitionLocks[partitioner.partition(propKey)].proceedingLock();
+    }
+
+    /**
+     * @return bitmask of the partitions of the props
+     */
+    long partitionsOf(Collection<String> propKeys) {
+        long partitions = 0L;
+        for (String propKey : propKeys) {
+            partitions |= 1L << partitioner.partition(propKey);
+        }
+        return partitions;
+    }
+
+    /**
+     * Takes the proceeding locks of the given partitions, in partition order.
+     *
+     * @param partitions bitmask as from {@link #partitionsOf(Collection)}
+     * @param timed whether to measure the wait
+     * @return time spent waiting, or 0 if not timed
+     */
+    long lockProceeding(long partitions, boolean timed) {
+        long waitNanos = 0L;
+        for (long remaining = partitions; remaining != 0L; remaining &= remaining - 1) {
+            Lock lock = partitionLocks[Long.numberOfTrailingZeros(remaining)].proceedingLock();
+            if (timed) {
+                waitNanos += DynamicProps.lockTimed(lock);
+            } else {
+                lock.lock();
+            }
+        }
+        return waitNanos;
+    }
+
+    void unlockProceeding(long partitions) {
+        for (long remaining = partitions; remaining != 0L; remaining &= remaining - 1) {
+            partitionLocks[Long.numberOfTrailingZeros(remaining)].proceedingLock().unlock();
+        }
+    }
+
+    /**
+     * Takes the blocking locks of every partition. Only ever waits while holding none of them, as a writer holding
+     * the proceeding lock of one partition may well be waiting on another, e.g. a listener writing to a prop of
+     * another partition from within a write.
+     */
+    void lockBlocking() {
+        int waitOn = 0;
+        while (true) {
+            partitionLocks[waitOn].blockingLock().lock();
+            int failed = -1;
+            for (int i = 0; i < partitionLocks.length && failed < 0; ++i) {
+                if (i != waitOn && !partitionLocks[i].blockingLock().tryLock()) {
+                    failed = i;
+                }
+            }
+            if (failed < 0) {
+                return;
+            }
+            // back off entirely and wait on the partition that was busy
+            for (int i = 0; i < failed; ++i) {
+                if (i != waitOn) {
+                    partitionLocks[i].blockingLock().unlock();
+                }
+            }
+            partitionLocks[waitOn].blockingLock().unlock();
+            waitOn = failed;
+        }
+    }
+
+    void unlockBlocking() {
+        for (int i = partitionLocks.length - 1; i >= 0; --i) {
+            partitionLocks[i].blockingLock().unlock();
+        }
+    }
+
+    /**
+     * Alias to {@link ReentrantReadWriteLock} to make code more readable, since we're taking advantage of the
+     * read/write locks for not-exactly read/write locking. See {@link DynamicProps#cloneLocks}.
+     */
+    static class CloneLock extends ReentrantReadWriteLock {
+        /**
+         * @return A lock that will lock immediately when no blocking lock has been granted ({@link #blockingLock()})
+         */
+        public ReadLock proceedingLock() {
+            return super.readLock();
+        }
+
+        /**
+         * @return A lock that will lock as soon as all {@link #proceedingLock()}s have been unlocked, and future
+         *         proceedingLocks can be blocked for the duration of the blockingLock.
+         */
+        public WriteLock blockingLock() {
+            return super.writeLock();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.set.PropsSets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The dependency graph of the computed props of a {@link DynamicPropsSets}, see
+ * {@link DynamicPropsSets#compute(String, PropComputation, String...)}. As a commit listener, it notes which inputs
+ * changed, and then once the writing thread has released its locks ({@link DynamicProps#afterWrite()}), recomputes
+ * just the computed props downstream of them, each after all of its own inputs, in one transaction. Because every
+ * input is read through the transaction, a concurrent change of any of them makes the transaction compute again, so
+ * that the last to commit has always seen the latest inputs.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class ComputedProps implements PropsCommitListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ComputedProps.class);
+
+    private final DynamicPropsSets props;
+
+    /** Guards the graph: write locked to define, read locked to use */
+    private final ReadWriteLock graphLock = new ReentrantReadWriteLock();
+    /** Keys are computed prop keys */
+    private final Map<String, Definition> definitions = new HashMap<String, Definition>();
+    /** Keys are input prop keys, which may themselves be computed. Values are the computed props using them. */
+    private final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+
+    /** inputs changed by this thread, not yet recomputed from */
+    private final ThreadLocal<Set<String>> changedInputs = new ThreadLocal<Set<String>>() {
+        @Override
+        protected Set<String> initialValue() {
+            return new HashSet<String>();
+        }
+    };
+    /** set while this thread commits recomputed props, which are already recomputed downstream */
+    private final ThreadLocal<Boolean> recomputing = new ThreadLocal<Boolean>();
+
+    ComputedProps(DynamicPropsSets props) {
+        this.props = props;
+    }
+
+    /**
+     * Defines or redefines a computed prop, and computes it.
+     *
+     * @throws IllegalArgumentException if it would depend on itself, directly or not
+     */
+    void define(String propKey, PropComputation computation, String... inputKeys) {
+        List<String> inputs = Collections.unmodifiableList(new ArrayList<String>(new LinkedHashSet<String>(
+                Arrays.asList(inputKeys))));
+        graphLock.writeLock().lock();
+        try {
+            List<String> cycle = pathFrom(propKey, new HashSet<String>(inputs), new ArrayList<String>(),
+                    new HashSet<String>());
+            if (cycle != null) {
+                throw new IllegalArgumentException("Computing " + propKey + " from " + inputs + " would make a " +
+                        "cycle: " + cycle);
+            }
+            undefine(propKey);
+            definitions.put(propKey, new Definition(inputs, computation));
+            for (String input : inputs) {
+                Set<String> inputDependents = dependents.get(input);
+                if (inputDependents == null) {
+                    dependents.put(input, inputDependents = new LinkedHashSet<String>());
+                }
+                inputDependents.add(propKey);
+            }
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+        recompute(Collections.singleton(propKey), true);
+    }
+
+    /**
+     * Stops computing the prop, which keeps its last value
+     */
+    void remove(String propKey) {
+        graphLock.writeLock().lock();
+        try {
+            undefine(propKey);
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether any computed props are defined
+     */
+    boolean isEmpty() {
+        graphLock.readLock().lock();
+        try {
+            return definitions.isEmpty();
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void committed(PropsCommit commit) {
+        if (recomputing.get() != null) {
+            return;
+        }
+        graphLock.readLock().lock();
+        try {
+            for (String changed : commit.changes().keySet()) {
+                if (dependents.containsKey(changed)) {
+                    changedInputs.get().add(changed);
+                }
+            }
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recomputes downstream of the inputs this thread has changed. Call only while holding no prop locks.
+     */
+    void recomputePending() {
+        if (recomputing.get() != null) {
+            return;
+        }
+        Set<String> changed = changedInputs.get();
+        if (changed.isEmpty()) {
+            return;
+        }
+        Set<String> inputs = new HashSet<String>(changed);
+        changed.clear();
+        try {
+            recompute(inputs, false);
+        } catch (PropTransactionConflictException e) {
+            logger.error("Failed to recompute downstream of " + inputs + " for contention. They will be recomputed " +
+                    "upon the next change of their inputs.", e);
+        }
+    }
+
+    /**
+     * @param from prop keys to recompute downstream of
+     * @param inclusive whether to recompute those prop keys themselves
+     * @throws PropTransactionConflictException if the transaction could not commit for contention
+     */
+    private void recompute(Collection<String> from, boolean inclusive) {
+        // each after all of its inputs: reverse post order of the walk down the dependents
+        final List<String> order = new ArrayList<String>();
+        final Map<String, Definition> orderDefinitions = new HashMap<String, Definition>();
+        graphLock.readLock().lock();
+        try {
+            Set<String> visited = new HashSet<String>();
+            for (String key : from) {
+                if (inclusive) {
+                    postOrder(key, visited, order);
+                } else if (dependents.containsKey(key)) {
+                    for (String dependent : dependents.get(key)) {
+                        postOrder(dependent, visited, order);
+                    }
+                }
+            }
+            Collections.reverse(order);
+            for (String key : order) {
+                orderDefinitions.put(key, definitions.get(key));
+            }
+        } finally {
+            graphLock.readLock().unlock();
+        }
+        if (order.isEmpty()) {
+            return;
+        }
+
+        recomputing.set(Boolean.TRUE);
+        try {
+            props.transact(new PropsTransaction<Void>() {
+                @Override
+                public Void execute(PropsSets tx) {
+                    for (String key : order) {
+                        Definition definition = orderDefinitions.get(key);
+                        Map<String, String> inputs = new LinkedHashMap<String, String>();
+                        for (String input : definition.inputs) {
+                            inputs.put(input, tx.getString(input)); // includes this transaction's own writes
+                        }
+                        String value;
+                        try {
+                            value = definition.computation.compute(inputs);
+                        } catch (RuntimeException e) {
+                            logger.error("Failed to compute " + key + " from " + inputs + ". Keeping its last value.",
+                                    e);
+                            continue;
+                        }
+                        tx.setString(key, value);
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            recomputing.remove();
+        }
+    }
+
+    /** Under the graph lock */
+    private void postOrder(String key, Set<String> visited, List<String> order) {
+        if (!definitions.containsKey(key) || !visited.add(key)) {
+            return;
+        }
+        Set<String> keyDependents = dependents.get(key);
+        if (keyDependents != null) {
+            for (String dependent : keyDependents) {
+                postOrder(dependent, visited, order);
+            }
+        }
+        order.add(key);
+    }
+
+    /**
+     * Under the graph lock.
+     *
+     * @return the path of dependents from the key to any of the targets, or null if there is none
+     */
+    private List<String> pathFrom(String key, Set<String> targets, List<String> path, Set<String> visited) {
+        path.add(key);
+        if (targets.contains(key)) {
+            return path;
+        }
+        if (visited.add(key) && dependents.containsKey(key)) {
+            for (String dependent : dependents.get(key)) {
+                if (pathFrom(dependent, targets, path, visited) != null) {
+                    return path;
+                }
+            }
+        }
+        path.remove(path.size() - 1);
+        return null;
+    }
+
+    /** Under the graph write lock */
+    private void undefine(String propKey) {
+        Definition previous = definitions.remove(propKey);
+        if (previous != null) {
+            for (String input : previous.inputs) {
+                Set<String> inputDependents = dependents.get(input);
+                inputDependents.remove(propKey);
+                if (inputDependents.isEmpty()) {
+                    dependents.remove(input);
+                }
+            }
+        }
+    }
+
+    private static class Definition {
+        final List<String> inputs;
+        final PropComputation computation;
+
+        Definition(List<String> inputs, PropComputation computation) {
+            this.inputs = inputs;
+            this.computation = computation;
+        }
+    }
+}
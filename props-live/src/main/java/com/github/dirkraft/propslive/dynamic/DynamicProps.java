@@ -2,9 +2,24 @@ package com.github.dirkraft.propslive.dynamic;
 
 import com.github.dirkraft.propslive.Props;
 import com.github.dirkraft.propslive.PropsImpl;
+import com.github.dirkraft.propslive.dynamic.event.PropsEvents;
+import com.github.dirkraft.propslive.dynamic.listen.CoalescingPropListener;
+import com.github.dirkraft.propslive.dynamic.listen.ListenerFanOut;
 import com.github.dirkraft.propslive.dynamic.listen.PropChange;
 import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.dynamic.merkle.PropsMerkleTree;
+import com.github.dirkraft.propslive.dynamic.metrics.PropsMetrics;
+import com.github.dirkraft.propslive.dynamic.stream.BackpressurePolicy;
+import com.github.dirkraft.propslive.dynamic.stream.PropChangePublisher;
+import com.github.dirkraft.propslive.dynamic.stream.PropChangeStreams;
+import com.github.dirkraft.propslive.dynamic.timer.HashedWheelTimer;
 import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
+import com.github.dirkraft.propslive.propsrc.view.InterpolatingPropSource;
 import com.github.dirkraft.propslive.set.PropsSets;
 import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.Logger;
@@ -13,11 +28,20 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -62,6 +86,9 @@ public class DynamicProps<IMPL extends Props> implements Props {
 
     private static Logger logger = LoggerFactory.getLogger(DynamicProps.class);
 
+    /** Tick of the timer of {@link #setWithTtl} and {@link #scheduleSet}, so how late they may be */
+    public static final long OVERRIDE_TICK_MILLIS = 100;
+
     /**
      * Set by {@link #to(PropListener)} and read by {@link #proxy}
      */
@@ -69,10 +96,56 @@ public class DynamicProps<IMPL extends Props> implements Props {
 
     /** Keys are String prop keys */
     private final ConcurrentHashMap<String, ReadWriteLock> propLocks = new ConcurrentHashMap<String, ReadWriteLock>();
+    /** Incremented for every prop value change. See {@link #version()} */
+    private final AtomicLong globalVersion = new AtomicLong();
+    /**
+     * Keys are String prop keys. Values are the {@link #globalVersion} of the last change to that prop. Each version is
+     * only ever bumped while holding the write lock of its prop key, so that it may be read consistently with the prop
+     * value under the corresponding read lock.
+     */
+    private final ConcurrentHashMap<String, AtomicLong> propVersions = new ConcurrentHashMap<String, AtomicLong>();
+    /**
+     * Inverse of {@link #propVersions}. Each changed prop key appears once at its latest version, so that
+     * {@link #changesSince(long)} need only visit the props which actually changed.
+     */
+    private final ConcurrentSkipListMap<Long, String> versionsToProps = new ConcurrentSkipListMap<Long, String>();
+    /**
+     * Keys are String prop keys. Values are the threads parked in {@link #awaitVersion(Collection, long, long)} on
+     * changes to that prop, so that a change only wakes the threads waiting on that particular prop.
+     */
+    final ConcurrentHashMap<String, Set<Thread>> propWaiters = new ConcurrentHashMap<String, Set<Thread>>();
     /**
      * Keys are String prop keys.
      */
     protected final ConcurrentHashMap<String, Set<PropListener<?>>> propsToSingleListeners = new ConcurrentHashMap<String, Set<PropListener<?>>>();
+    /**
+     * Keys are String prop keys configured by {@link #coalesce(String, long, long, TimeUnit)}. Values wrap each of the
+     * prop's listeners in a {@link CoalescingPropListener}.
+     */
+    private final ConcurrentHashMap<String, PropCoalescing> coalescedProps = new ConcurrentHashMap<String, PropCoalescing>();
+    /** When set, listener reloads are handed off to this rather than run on the writing thread */
+    private volatile ListenerFanOut fanOut;
+
+    /** When set, reads, writes and lock contention are reported to this */
+    private volatile PropsMetrics metrics;
+
+    /** When set and enabled, individual writes, commits and reloads are reported to this */
+    private volatile PropsEvents events;
+
+    /** When set, registered as a commit listener to keep it up to date. See {@link #merkleTree(int)} */
+    private volatile PropsMerkleTree merkleTree;
+
+    /** Runs {@link #setWithTtl} expiries and {@link #scheduleSet}s. Started upon the first of either. */
+    private volatile HashedWheelTimer timer;
+    /** Keys are String prop keys with a {@link #setWithTtl} override yet to expire. Guarded by itself. */
+    private final Map<String, PropOverride> overrides = new HashMap<String, PropOverride>();
+
+    /** Notified of every commit regardless of which props changed. See {@link #addCommitListener(PropsCommitListener)} */
+    private final CopyOnWriteArrayList<PropsCommitListener> commitListeners = new CopyOnWriteArrayList<PropsCommitListener>();
+    /** When backed by an {@link InterpolatingPropSource}. See {@link #listenForInterpolation(PropSource)} */
+    private volatile InterpolatedChanges interpolatedChanges;
+    /** Lazily registered as a commit listener upon the first request for a publisher. See {@link #streams()} */
+    private volatile PropChangeStreams streams;
 
     /**
      * As a field, instead of having DynamicProps extend PropsSetsImpl, so that I can make sure that no methods are
@@ -85,8 +158,21 @@ public class DynamicProps<IMPL extends Props> implements Props {
      * A special lock that can lock down all write interactions with this DynamicProps, particularly for thread-safe
      * cloning. Unfortunately we don't actually know the complete set of properties in the PropertySource, so we need
      * an "everything" lock, rather than actually obtaining every individual write lock.
+     * <p/>
+     * There is one such lock per partition of the {@link PropPartitioner}, so that writers to different partitions do
+     * not even share the cache line of a lock count. Snapshots take all of them.
+     */
+    protected final CloneLocks cloneLocks;
+
+    /**
+     * @return the clone lock of a DynamicProps of a single partition, which this used to be a field of
+     * @throws IllegalStateException if partitioned, as then there is one per partition, see {@link #cloneLocks}
+     * @deprecated writers take only the locks of the partitions they write, see {@link #cloneLocks}
      */
-    protected final CloneLock cloneLock = new CloneLock();
+    @Deprecated
+    protected ReentrantReadWriteLock cloneLock() {
+        return cloneLocks.singleLock();
+    }
 
     /**
      * All {@link Props} accesses go through here. All accesses will register the listener in {@link #listener} to the
@@ -117,31 +203,65 @@ public class DynamicProps<IMPL extends Props> implements Props {
 
                 // Effectively block reads if there is currently a write, or causes concurrent writes to throw an
                 // exception; concurrent changing of the same property is not supported.
+                PropsMetrics metrics = DynamicProps.this.metrics;
                 if (get) {
                     lock = readLock(propKey);
-                    lock.lock();
+                    if (metrics == null) {
+                        lock.lock();
+                    } else {
+                        metrics.read(propKey, lockTimed(lock));
+                    }
                     propLockAcquired = true;
                     ret = method.invoke(impl, args);
 
                 } else if (set) {
-                    cloneLock = DynamicProps.this.cloneLock.readLock(); // see javadoc and writeBlockLock
-                    cloneLock.lock();
+                    PropsEvents events = activeEvents();
+                    long startNanos = events == null ? 0 : System.nanoTime();
+
+                    cloneLock = cloneLocks.proceedingLock(propKey); // see javadoc of cloneLocks
+                    long cloneLockWaitNanos = 0;
+                    if (metrics == null) {
+                        cloneLock.lock();
+                    } else {
+                        cloneLockWaitNanos = lockTimed(cloneLock);
+                    }
 
                     lock = writeLock(propKey);
                     propLockAcquired = lock.tryLock();
 
                     if (!propLockAcquired) {
+                        if (metrics != null) {
+                            metrics.lockFailure(propKey);
+                        }
+                        if (events != null) {
+                            events.lockFailure(Collections.singleton(propKey));
+                        }
                         throw new PropLockingException("Failed to acquire write lock for prop " + propKey + " as it " +
                                 "was already locked.");
                     }
+                    if (metrics != null) {
+                        metrics.write(propKey, cloneLockWaitNanos);
+                    }
 
                     Method getter = PropsSets.NON_DEFAULTING_METHODS_BY_NAME.get(method.getName().replaceFirst("^set", "get"));
                     Object previous = getter.invoke(impl, propKey);
                     Object newVal = args[1];
-                    if (!ObjectUtils.equals(previous, newVal)) {
-                        notifyListeners(propKey, new PropChange<Object>(previous, newVal));
+                    boolean changed = !ObjectUtils.equals(previous, newVal);
+                    String before = null;
+                    int listenersNotified = 0;
+                    if (changed) {
+                        before = impl.getString(propKey);
+                        listenersNotified = notifyListeners(propKey, new PropChange<Object>(previous, newVal));
                     }
                     ret = method.invoke(impl, args);
+                    if (changed) {
+                        long version = bumpVersion(propKey);
+                        notifyCommitListeners(version, Collections.singletonMap(propKey,
+                                new PropChange<String>(before, impl.getString(propKey))));
+                    }
+                    if (events != null) {
+                        events.write(propKey, startNanos, System.nanoTime() - startNanos, listenersNotified);
+                    }
 
                 } else {
                     // carry on as usual
@@ -156,6 +276,9 @@ public class DynamicProps<IMPL extends Props> implements Props {
                 if (cloneLock != null) {
                     cloneLock.unlock();
                 }
+                if (method.getName().startsWith("set")) {
+                    afterWrite();
+                }
             }
 
             return ret;
@@ -189,10 +312,59 @@ public class DynamicProps<IMPL extends Props> implements Props {
     @SuppressWarnings("unchecked")
     public DynamicProps(PropSource source) {
         this((IMPL) new PropsImpl(source));
+        listenForInterpolation(source);
+    }
+
+    /**
+     * Backed by arbitrary {@link PropSource}, with writes partitioned for less contention. See
+     * {@link #DynamicProps(Props, PropPartitioner)}.
+     *
+     * @param source of props
+     * @param partitioner of prop keys into independent lock domains
+     */
+    @SuppressWarnings("unchecked")
+    public DynamicProps(PropSource source, PropPartitioner partitioner) {
+        this((IMPL) new PropsImpl(source), partitioner);
+        listenForInterpolation(source);
     }
 
     public DynamicProps(IMPL impl) {
+        this(impl, PropPartitioners.single());
+    }
+
+    /**
+     * Writes to props of different partitions share no locks at all, only the global {@link #version()} counter.
+     * {@link #asMap()} and {@link #changesSince(long)} still block writes to every partition, so are no cheaper.
+     *
+     * @param impl backing props
+     * @param partitioner of prop keys into independent lock domains. Should put props that are usually written
+     *                    together, e.g. by {@link com.github.dirkraft.propslive.set.PropsSets#setVals}, in the same
+     *                    partition.
+     */
+    public DynamicProps(IMPL impl, PropPartitioner partitioner) {
         this.impl = impl;
+        this.cloneLocks = new CloneLocks(partitioner);
+    }
+
+    /**
+     * If the source is an {@link InterpolatingPropSource}, a change to a prop also changes the props whose
+     * <code>${placeholder}</code>s reference it, directly or not, in the same commit: their versions are bumped, their
+     * listeners fire, and of a {@link DynamicPropsSets} the listeners of PropSets of them, and commit listeners see
+     * their changes along with the rest of the commit.
+     *
+     * @param source backing this
+     */
+    protected void listenForInterpolation(PropSource source) {
+        if (source instanceof InterpolatingPropSource) {
+            interpolatedChanges = new InterpolatedChanges(this, (InterpolatingPropSource) source);
+        }
+    }
+
+    /**
+     * @return how prop keys are partitioned into lock domains
+     */
+    public PropPartitioner partitioner() {
+        return cloneLocks.partitioner();
     }
 
     /**
@@ -215,6 +387,228 @@ public class DynamicProps<IMPL extends Props> implements Props {
         return lock;
     }
 
+    private AtomicLong getVersion(String propKey) {
+        AtomicLong version = propVersions.get(propKey);
+        if (version == null) {
+            propVersions.putIfAbsent(propKey, new AtomicLong());
+            version = propVersions.get(propKey);
+        }
+        return version;
+    }
+
+    /**
+     * @return the version of all props in this DynamicProps, which is incremented for every change of any prop value
+     */
+    public long version() {
+        return globalVersion.get();
+    }
+
+    /**
+     * Callers should hold at least the read lock of the prop key for the returned version to correspond to the value
+     * currently in {@link #impl}.
+     *
+     * @param propKey prop key
+     * @return the {@link #version()} as of the last change to that prop, or 0 if it has never been changed through
+     *         this DynamicProps. Always increases with each change to the prop.
+     */
+    public long version(String propKey) {
+        AtomicLong version = propVersions.get(propKey);
+        return version == null ? 0L : version.get();
+    }
+
+    /**
+     * Callers must hold the write lock of the prop key, except where its value changed through a prop it references,
+     * see {@link #listenForInterpolation(PropSource)}.
+     *
+     * @param propKey whose value was just changed
+     * @return the version assigned to the change, which other writers may already have gone past by the time this
+     *         returns
+     */
+    protected long bumpVersion(String propKey) {
+        long version = globalVersion.incrementAndGet();
+        long previousVersion = getVersion(propKey).getAndSet(version);
+        versionsToProps.put(version, propKey);
+        if (previousVersion != 0L) {
+            versionsToProps.remove(previousVersion);
+        }
+        if (getVersion(propKey).get() != version) {
+            // interpolated props are bumped without their lock, so a concurrent bump may have missed this entry
+            versionsToProps.remove(version);
+        }
+
+        Set<Thread> waiters = propWaiters.get(propKey);
+        if (waiters != null) {
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Parks the current thread until any of the given props changes after 'sinceVersion'. The thread is enqueued on
+     * each prop's wait queue before the versions are checked, and {@link #bumpVersion(String)} sets the version before
+     * checking the queue, so a change cannot slip by unnoticed between the check and the park.
+     *
+     * @param propKeys to wait on
+     * @param sinceVersion wake on any version of any of the props greater than this
+     * @param timeoutNanos max time to wait
+     * @return true if any of the props changed after 'sinceVersion', false on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected boolean awaitVersion(Collection<String> propKeys, long sinceVersion, long timeoutNanos) throws InterruptedException {
+        Thread waiter = Thread.currentThread();
+        for (String propKey : propKeys) {
+            addWaiter(propKey, waiter);
+        }
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (true) {
+                for (String propKey : propKeys) {
+                    if (version(propKey) > sinceVersion) {
+                        return true;
+                    }
+                }
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0L) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remainingNanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            for (String propKey : propKeys) {
+                removeWaiter(propKey, waiter);
+            }
+        }
+    }
+
+    /**
+     * Waiter sets are only ever added to or dropped from {@link #propWaiters} under their own monitor, so a waiter is
+     * never added to a set that is no longer there for {@link #bumpVersion(String)} to find.
+     */
+    private void addWaiter(String propKey, Thread waiter) {
+        while (true) {
+            Set<Thread> waiters = propWaiters.get(propKey);
+            if (waiters == null) {
+                propWaiters.putIfAbsent(propKey, Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>()));
+                waiters = propWaiters.get(propKey);
+                if (waiters == null) {
+                    continue;
+                }
+            }
+            synchronized (waiters) {
+                if (propWaiters.get(propKey) == waiters) {
+                    waiters.add(waiter);
+                    return;
+                }
+            }
+            // dropped as empty meanwhile
+        }
+    }
+
+    /**
+     * Drops the prop's waiter set once empty, so that props once waited on do not each keep one for good
+     */
+    private void removeWaiter(String propKey, Thread waiter) {
+        Set<Thread> waiters = propWaiters.get(propKey);
+        if (waiters == null) {
+            return;
+        }
+        synchronized (waiters) {
+            waiters.remove(waiter);
+            if (waiters.isEmpty()) {
+                propWaiters.remove(propKey, waiters);
+            }
+        }
+    }
+
+    /**
+     * Blocks until a prop changes after some version, e.g. for long-polling
+     * <pre>
+     * VersionedProp prop = dynamicProps.getIfChanged("flag.enabled", 0L);
+     * while (running) {
+     *     VersionedProp changed = dynamicProps.awaitChange("flag.enabled", prop.version(), 30, TimeUnit.SECONDS);
+     *     if (changed != null) {
+     *         prop = changed;
+     *         // react to prop.value()
+     *     }
+     * }
+     * </pre>
+     * Waiting threads consume no CPU, and are only woken by changes to the prop they wait on. This is friendly to
+     * large numbers of waiting threads, e.g. virtual threads.
+     *
+     * @param propKey to wait on
+     * @param sinceVersion last {@link VersionedProp#version()} seen of that prop. Returns immediately if the prop has
+     *                     already changed since.
+     * @param timeout max time to wait
+     * @param unit of timeout
+     * @return the current value and version of the prop once it has changed after 'sinceVersion', or
+     *         <code>null</code> if it did not change within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public VersionedProp awaitChange(String propKey, long sinceVersion, long timeout, TimeUnit unit) throws InterruptedException {
+        if (awaitVersion(Collections.singleton(propKey), sinceVersion, unit.toNanos(timeout))) {
+            return getIfChanged(propKey, sinceVersion);
+        }
+        return null;
+    }
+
+    /**
+     * Conditional read for pollers which have already seen some version of a prop, e.g.
+     * <pre>
+     * VersionedProp prop = dynamicProps.getIfChanged("flag.enabled", lastSeen.version());
+     * if (prop != null) {
+     *     lastSeen = prop;
+     * }
+     * </pre>
+     *
+     * @param propKey to read
+     * @param sinceVersion last {@link VersionedProp#version()} seen of that prop, or 0 to read unconditionally
+     * @return the current value and version of the prop if it has changed after 'sinceVersion', otherwise
+     *         <code>null</code>
+     */
+    public VersionedProp getIfChanged(String propKey, long sinceVersion) {
+        Lock lock = getLock(propKey).readLock();
+        lock.lock();
+        try {
+            long version = version(propKey);
+            return version > sinceVersion ? new VersionedProp(propKey, impl.getString(propKey), version) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Collects only the props which have changed after some global {@link #version()}. Like {@link #asMap()}, this
+     * briefly blocks all writes so that the delta is consistent, but only visits the changed props. Pass the returned
+     * {@link PropsDelta#version()} to the next call to pick up where this left off.
+     *
+     * @param sinceVersion last {@link PropsDelta#version()} seen, or 0 for every prop ever changed through this
+     *                     DynamicProps
+     * @return the props changed after 'sinceVersion' and their current values
+     */
+    public PropsDelta changesSince(long sinceVersion) {
+        PropsMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? 0 : System.nanoTime();
+        cloneLocks.lockBlocking();
+        try {
+            Map<String, VersionedProp> changes = new HashMap<String, VersionedProp>();
+            for (Map.Entry<Long, String> versionToProp : versionsToProps.tailMap(sinceVersion, false).entrySet()) {
+                String propKey = versionToProp.getValue();
+                changes.put(propKey, new VersionedProp(propKey, impl.getString(propKey), versionToProp.getKey()));
+            }
+            return new PropsDelta(globalVersion.get(), changes);
+        } finally {
+            cloneLocks.unlockBlocking();
+            if (metrics != null) {
+                metrics.snapshot(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
     protected void registerListener(String propKey, PropListener<?> listener) {
         Set<PropListener<?>> listenerSet = propsToSingleListeners.get(propKey);
         if (listenerSet == null) {
@@ -224,22 +618,509 @@ public class DynamicProps<IMPL extends Props> implements Props {
         listenerSet.add(listener);
     }
 
+    /**
+     * @return number of listeners notified
+     */
     @SuppressWarnings("unchecked")
-    protected <T> void notifyListeners(String propKey, PropChange<T> propChange) {
+    protected <T> int notifyListeners(String propKey, PropChange<T> propChange) {
+        int notified = 0;
         Set<PropListener<?>> propListeners = propsToSingleListeners.get(propKey);
         if (propListeners != null) {
             for (PropListener<?> propListener : propListeners) {
-                notifyListener((PropListener<T>) propListener, propChange);
+                notifyListener(propKey, (PropListener<T>) propListener, propChange);
+                ++notified;
+            }
+        }
+        return notified;
+    }
+
+    /**
+     * Notifies a listener of a change to a particular prop, coalescing the change if so configured for the prop by
+     * {@link #coalesce(String, long, long, TimeUnit)}.
+     */
+    protected <T> void notifyListener(String propKey, PropListener<T> propListener, PropChange<T> propChange) {
+        PropCoalescing coalescing = coalescedProps.isEmpty() ? null : coalescedProps.get(propKey);
+        if (coalescing == null) {
+            notifyListener(propListener, propChange);
+        } else {
+            // Only buffers the change, so there's nothing to gain from fanning it out.
+            reload(coalescing.wrap(propListener), propChange);
+        }
+    }
+
+    /**
+     * Coalesces rapid successive changes to a prop for all of its listeners, as if each was wrapped in a
+     * {@link CoalescingPropListener}. Each listener is reloaded once the prop has been quiet for 'window', with a
+     * single change from the first old value to the last new value, or at the latest 'maxDelay' after the first
+     * change. Replaces any previous coalescing of the prop; changes already pending are still delivered.
+     *
+     * @param propKey to coalesce changes of
+     * @param window of quiet after the last change, after which the coalesced change is delivered
+     * @param maxDelay max time after the first change, after which the coalesced change is delivered even if changes
+     *                 are still coming
+     * @param unit of window and maxDelay
+     */
+    public void coalesce(String propKey, long window, long maxDelay, TimeUnit unit) {
+        coalescedProps.put(propKey, new PropCoalescing(window, maxDelay, unit));
+    }
+
+    /**
+     * Stops {@link #coalesce(String, long, long, TimeUnit)} of a prop. Changes already pending are still delivered.
+     *
+     * @param propKey to stop coalescing changes of
+     */
+    public void stopCoalescing(String propKey) {
+        coalescedProps.remove(propKey);
+    }
+
+    /**
+     * Sets a prop for a while, after which it goes back to the value it had before, e.g. to turn up logging for ten
+     * minutes without anyone having to remember to turn it back down. Both the set and the expiry go through the usual
+     * setter, firing listeners as usual.
+     * <ul>
+     *     <li>Setting the prop again with a ttl before it expires replaces the ttl, but still goes back to the value
+     *     from before the first.</li>
+     *     <li>If the prop is set otherwise meanwhile, that is taken to be deliberate, and the expiry leaves it be.</li>
+     *     <li>If the prop is being written at the time of expiry, the expiry is retried a moment later.</li>
+     * </ul>
+     * Neither the prop's listeners nor its locks are ever waited on while holding the lock of the overrides, so
+     * listeners may set overrides of their own. An expiry racing a set of the same prop may land either side of it.
+     * Expiries are kept in a {@link HashedWheelTimer} of {@link #OVERRIDE_TICK_MILLIS} ticks, so may be that late, and
+     * are lost if the process ends first.
+     *
+     * @param propKey to override
+     * @param value to set it to for now
+     * @param ttl after which to restore the value it had before
+     * @param unit of ttl
+     * @return handle to cancel the expiry, which leaves the value set for good
+     * @throws PropLockingException if the prop is being written concurrently, in which case nothing is scheduled
+     */
+    public HashedWheelTimer.Timeout setWithTtl(String propKey, String value, long ttl, TimeUnit unit) {
+        PropOverride previous;
+        PropOverride override;
+        while (true) {
+            // read outside the monitor, as the getter waits out any write of the prop, whose listeners may want it
+            long version = version(propKey);
+            String current = getString(propKey);
+            synchronized (overrides) {
+                if (version(propKey) != version) {
+                    continue; // written meanwhile, so read it again
+                }
+                previous = overrides.get(propKey);
+                // a pending override only still stands if the prop has not been set otherwise since
+                boolean overriding = previous != null &&
+                        (previous.timeout == null || !previous.timeout.isCancelled()) &&
+                        ObjectUtils.equals(current, previous.value);
+                override = new PropOverride(propKey, value, overriding ? previous.restore : current);
+                overrides.put(propKey, override);
+                break;
+            }
+        }
+
+        // not under the monitor, as the listeners of the prop run in here
+        try {
+            setString(propKey, value);
+        } catch (PropLockingException e) {
+            synchronized (overrides) {
+                if (overrides.get(propKey) == override) {
+                    if (previous == null) {
+                        overrides.remove(propKey);
+                    } else {
+                        overrides.put(propKey, previous);
+                        if (previous.timeout != null && previous.timeout.isExpired()) {
+                            // it expired meanwhile, and left be as it had been replaced
+                            previous.timeout = timer().schedule(previous, 0, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                }
+            }
+            throw e;
+        }
+
+        synchronized (overrides) {
+            if (previous != null && previous.timeout != null) {
+                previous.timeout.cancel();
+            }
+            override.timeout = timer().schedule(override, ttl, unit);
+            return override.timeout;
+        }
+    }
+
+    /**
+     * Sets a prop later, through the usual setter. If the prop is being written at the time, the set is retried a
+     * moment later. Like {@link #setWithTtl(String, String, long, TimeUnit)}, this may run up to
+     * {@link #OVERRIDE_TICK_MILLIS} late, and is lost if the process ends first.
+     *
+     * @param propKey to set
+     * @param value to set it to
+     * @param atMillis when, in milliseconds since the epoch
+     * @return handle to cancel the set before it happens
+     */
+    public HashedWheelTimer.Timeout scheduleSet(final String propKey, final String value, long atMillis) {
+        return timer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    setString(propKey, value);
+                } catch (PropLockingException e) {
+                    timer().schedule(this, 0, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public String toString() {
+                return "scheduled set of " + propKey;
+            }
+        }, atMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restores the value from before the override, unless replaced or set otherwise since
+     */
+    private void expire(PropOverride override) {
+        while (true) {
+            // read outside the monitor, as in setWithTtl
+            long version = version(override.propKey);
+            String current = getString(override.propKey);
+            synchronized (overrides) {
+                if (overrides.get(override.propKey) != override) {
+                    return;
+                }
+                if (version(override.propKey) != version) {
+                    continue;
+                }
+                if (!ObjectUtils.equals(current, override.value)) {
+                    overrides.remove(override.propKey);
+                    return;
+                }
+                break;
+            }
+        }
+
+        // not under the monitor, as the listeners of the prop run in here
+        try {
+            setString(override.propKey, override.restore);
+        } catch (PropLockingException e) {
+            synchronized (overrides) {
+                if (overrides.get(override.propKey) == override) {
+                    override.timeout = timer().schedule(override, 0, TimeUnit.MILLISECONDS);
+                }
+            }
+            return;
+        }
+        synchronized (overrides) {
+            if (overrides.get(override.propKey) == override) {
+                overrides.remove(override.propKey);
+            }
+        }
+    }
+
+    private HashedWheelTimer timer() {
+        if (timer == null) {
+            synchronized (overrides) {
+                if (timer == null) {
+                    timer = new HashedWheelTimer("props-live-overrides", OVERRIDE_TICK_MILLIS, TimeUnit.MILLISECONDS,
+                            512);
+                }
             }
         }
+        return timer;
+    }
+
+    /**
+     * A {@link #setWithTtl} override, which runs as its own expiry
+     */
+    private class PropOverride implements Runnable {
+        final String propKey;
+        final String value;
+        final String restore;
+        /** Guarded by {@link #overrides} */
+        HashedWheelTimer.Timeout timeout;
+
+        PropOverride(String propKey, String value, String restore) {
+            this.propKey = propKey;
+            this.value = value;
+            this.restore = restore;
+        }
+
+        @Override
+        public void run() {
+            expire(this);
+        }
+
+        @Override
+        public String toString() {
+            return "expiry of " + propKey + " back to " + restore;
+        }
+    }
+
+    /**
+     * Reloads listeners concurrently through the given {@link ListenerFanOut} rather than one after another on the
+     * writing thread, replacing any previous fan-out. See {@link ListenerFanOut} for how this changes delivery.
+     *
+     * @param fanOut to deliver listener reloads through
+     */
+    public void fanOut(ListenerFanOut fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Stops {@link #fanOut(ListenerFanOut)}, so that listeners are once again reloaded on the writing thread. Reloads
+     * already handed off are still delivered.
+     */
+    public void stopFanOut() {
+        this.fanOut = null;
+    }
+
+    /**
+     * Reports reads, writes and lock contention of props to the given {@link PropsMetrics}, replacing any previous
+     * metrics. See {@link PropsMetrics} for what is reported and when.
+     *
+     * @param metrics to report to
+     */
+    public void metrics(PropsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Stops {@link #metrics(PropsMetrics)}
+     */
+    public void stopMetrics() {
+        this.metrics = null;
+    }
+
+    /**
+     * @return metrics to report to, or null if not enabled
+     */
+    protected PropsMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports individual writes, commits and listener reloads to the given {@link PropsEvents} whenever it
+     * {@link PropsEvents#isEnabled() is enabled}, replacing any previous events.
+     *
+     * @param events to report to
+     */
+    public void events(PropsEvents events) {
+        this.events = events;
+    }
+
+    /**
+     * Stops {@link #events(PropsEvents)}
+     */
+    public void stopEvents() {
+        this.events = null;
+    }
+
+    /**
+     * Builds a {@link PropsMerkleTree} of all props, and keeps it up to date with every commit from then on, replacing
+     * any previous one. All writes are blocked while it is built.
+     *
+     * @param depth of the tree, see {@link PropsMerkleTree#PropsMerkleTree(DynamicProps, int)}
+     * @return the tree, for comparing with that of another instance by
+     *         {@link com.github.dirkraft.propslive.dynamic.merkle.MerkleSync}
+     */
+    public PropsMerkleTree merkleTree(int depth) {
+        final PropsMerkleTree tree = new PropsMerkleTree(this, depth);
+        cloneLocks.lockBlocking();
+        try {
+            forEachUnlocked(new PropVisitor() {
+                @Override
+                public boolean visit(String key, String value) {
+                    tree.update(key, null, value);
+                    return true;
+                }
+            });
+            // no commits until unlocked, so it misses none
+            stopMerkleTree();
+            addCommitListener(tree);
+            merkleTree = tree;
+        } finally {
+            cloneLocks.unlockBlocking();
+        }
+        return tree;
+    }
+
+    /**
+     * Stops keeping the {@link #merkleTree(int)} up to date
+     */
+    public void stopMerkleTree() {
+        PropsMerkleTree tree = merkleTree;
+        if (tree != null) {
+            removeCommitListener(tree);
+            merkleTree = null;
+        }
+    }
+
+    /**
+     * @return events to report to, or null if not set or not currently enabled
+     */
+    protected PropsEvents activeEvents() {
+        PropsEvents events = this.events;
+        return events != null && events.isEnabled() ? events : null;
+    }
+
+    /**
+     * Locks, only reading the clock if the lock can't be had immediately.
+     *
+     * @return time spent waiting for the lock, or 0 if there was no wait
+     */
+    protected static long lockTimed(Lock lock) {
+        if (lock.tryLock()) {
+            return 0;
+        }
+        long startNanos = System.nanoTime();
+        lock.lock();
+        return System.nanoTime() - startNanos;
     }
 
     protected <T> void notifyListener(PropListener<T> propListener, PropChange<T> propChange) {
+        ListenerFanOut fanOut = this.fanOut;
+        if (fanOut == null) {
+            reload(propListener, propChange);
+        } else {
+            fanOut.deliver(propListener, propChange, activeEvents());
+        }
+    }
+
+    private <T> void reload(PropListener<T> propListener, PropChange<T> propChange) {
+        PropsEvents events = activeEvents();
+        long startNanos = events == null ? 0 : System.nanoTime();
+        Throwable thrown = null;
         try {
             propListener.reload(propChange);
         } catch (Throwable t) {
+            thrown = t;
             logger.error("Exception reloading listener " + propListener + " with change " + propChange, t);
         }
+        if (events != null) {
+            events.reload(propListener, startNanos, System.nanoTime() - startNanos, thrown);
+        }
+    }
+
+    /**
+     * Registers a listener to every commit of prop changes, e.g. each singular set or {@link PropsSets#setVals} that
+     * changes anything. Unlike {@link PropListener}s, which are registered against particular props, these see every
+     * change in terms of String prop values, which makes them suitable for generic consumers like change streams.
+     *
+     * @param commitListener to register
+     */
+    public void addCommitListener(PropsCommitListener commitListener) {
+        commitListeners.add(commitListener);
+    }
+
+    /**
+     * @param commitListener to unregister
+     */
+    public void removeCommitListener(PropsCommitListener commitListener) {
+        commitListeners.remove(commitListener);
+    }
+
+    /**
+     * Called on the writing thread after every write, whether or not it changed anything, once all of its locks are
+     * released, so that it is safe to make further writes.
+     */
+    protected void afterWrite() {
+    }
+
+    /**
+     * Callers must still hold the write locks of all changed props, and must have already bumped their versions.
+     * Props whose values changed through the changed props they reference are first made part of the commit, see
+     * {@link #listenForInterpolation(PropSource)}.
+     *
+     * @param version of the commit, the greatest that {@link #bumpVersion(String)} returned for its props. Not
+     *                {@link #version()}, which concurrent writers may have moved on since.
+     * @param changes prop keys to their changes in String form, for one atomic commit
+     */
+    protected void notifyCommitListeners(long version, Map<String, PropChange<String>> changes) {
+        InterpolatedChanges interpolatedChanges = this.interpolatedChanges;
+        if (interpolatedChanges != null) {
+            Map<String, PropChange<String>> referrerChanges = interpolatedChanges.referrerChanges(changes);
+            if (!referrerChanges.isEmpty()) {
+                for (String referrer : referrerChanges.keySet()) {
+                    version = Math.max(version, bumpVersion(referrer));
+                }
+                interpolatedChanges.notifyListeners(referrerChanges);
+                Map<String, PropChange<String>> commitChanges = new LinkedHashMap<String, PropChange<String>>(changes);
+                commitChanges.putAll(referrerChanges);
+                changes = commitChanges;
+            }
+        }
+        if (commitListeners.isEmpty()) {
+            return;
+        }
+        PropsCommit commit = new PropsCommit(version, System.currentTimeMillis(), changes);
+        for (PropsCommitListener commitListener : commitListeners) {
+            try {
+                commitListener.committed(commit);
+            } catch (Throwable t) {
+                logger.error("Exception notifying commit listener " + commitListener + " of " + commit, t);
+            }
+        }
+    }
+
+    /**
+     * @return the {@link PropChangeStreams} of this DynamicProps, registering it as a commit listener if this is the
+     *         first time it is needed
+     */
+    protected PropChangeStreams streams() {
+        if (streams == null) {
+            synchronized (commitListeners) {
+                if (streams == null) {
+                    // the unlocked impl, as commits reach the streams while writers still hold their locks
+                    PropChangeStreams propChangeStreams = new PropChangeStreams(impl);
+                    addCommitListener(propChangeStreams);
+                    streams = propChangeStreams;
+                }
+            }
+        }
+        return streams;
+    }
+
+    /**
+     * Same as {@link #publisher(String, BackpressurePolicy, int, Executor)} delivering on
+     * {@link PropChangeStreams#DEFAULT_EXECUTOR}
+     */
+    public PropChangePublisher<PropChange<String>> publisher(String propKey, BackpressurePolicy policy, int capacity) {
+        return publisher(propKey, policy, capacity, PropChangeStreams.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * An alternative to {@link PropListener}s with backpressure: each subscriber gets its own bounded buffer and only
+     * receives changes as fast as it requests them, so that a slow subscriber can never slow down writers.
+     *
+     * @param propKey to publish changes of
+     * @param policy for when a subscriber falls 'capacity' changes behind
+     * @param capacity max buffered changes per subscriber
+     * @param executor to deliver to subscribers on
+     * @return publisher of the String value changes of the prop
+     */
+    public PropChangePublisher<PropChange<String>> publisher(String propKey, BackpressurePolicy policy, int capacity,
+                                                             Executor executor) {
+        return streams().keyPublisher(propKey, policy, capacity, executor);
+    }
+
+    /**
+     * Same as {@link #prefixPublisher(String, BackpressurePolicy, int, Executor)} delivering on
+     * {@link PropChangeStreams#DEFAULT_EXECUTOR}
+     */
+    public PropChangePublisher<PropsCommit> prefixPublisher(String prefix, BackpressurePolicy policy, int capacity) {
+        return prefixPublisher(prefix, policy, capacity, PropChangeStreams.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Like {@link #publisher(String, BackpressurePolicy, int, Executor)}, but for every prop with a common prefix.
+     *
+     * @param prefix of prop keys to publish changes of, e.g. "db." for all of "db.url", "db.user", ...
+     * @param policy for when a subscriber falls 'capacity' commits behind
+     * @param capacity max buffered commits per subscriber
+     * @param executor to deliver to subscribers on
+     * @return publisher of commits, each restricted to the changes of the props with the given prefix
+     */
+    public PropChangePublisher<PropsCommit> prefixPublisher(String prefix, BackpressurePolicy policy, int capacity,
+                                                            Executor executor) {
+        return streams().prefixPublisher(prefix, policy, capacity, executor);
     }
 
     @Override
@@ -258,15 +1139,51 @@ public class DynamicProps<IMPL extends Props> implements Props {
      */
     @Override
     public Map<String, String> asMap() {
-        Lock cloneLock = this.cloneLock.writeLock();
+        PropsMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? 0 : System.nanoTime();
+        cloneLocks.lockBlocking();
         try {
-            cloneLock.lock();
             return Collections.unmodifiableMap(impl.asMap());
         } finally {
-            cloneLock.unlock();
+            cloneLocks.unlockBlocking();
+            if (metrics != null) {
+                metrics.snapshot(System.nanoTime() - startNanos);
+            }
         }
     }
 
+    /**
+     * Streams a consistent snapshot of all props, like {@link #asMap()}, but without the underlying prop source having
+     * to build a map of them first, where it is an {@link com.github.dirkraft.propslive.propsrc.IterablePropSource}.
+     * All writes are blocked until the visitor is done or stops, so it should be quick about each prop.
+     *
+     * @param visitor of each prop
+     * @return true if every prop was visited, or false if the visitor stopped early
+     */
+    public boolean forEach(PropVisitor visitor) {
+        PropsMetrics metrics = this.metrics;
+        long startNanos = metrics == null ? 0 : System.nanoTime();
+        cloneLocks.lockBlocking();
+        try {
+            return forEachUnlocked(visitor);
+        } finally {
+            cloneLocks.unlockBlocking();
+            if (metrics != null) {
+                metrics.snapshot(System.nanoTime() - startNanos);
+            }
+        }
+    }
+
+    /**
+     * {@link #forEach(PropVisitor)} for callers already holding the blocking lock
+     */
+    private boolean forEachUnlocked(PropVisitor visitor) {
+        if (impl instanceof PropsImpl) {
+            return ((PropsImpl) impl).forEach(visitor);
+        }
+        return PropSources.forEach(new PropSourceMap(impl.asMap()), visitor);
+    }
+
     /* ***** Props interface impl delegates to proxy ***** */
 
     @Override
@@ -422,22 +1339,29 @@ public class DynamicProps<IMPL extends Props> implements Props {
 }
 
 /**
- * Alias to {@link ReentrantReadWriteLock} to make code more readable, since we're taking advantage of the read/write
- * locks for not-exactly read/write locking. See {@link DynamicProps#cloneLock}.
+ * Coalescing configuration of one prop. See {@link DynamicProps#coalesce(String, long, long, TimeUnit)}.
  */
-class CloneLock extends ReentrantReadWriteLock {
-    /**
-     * @return A lock that will lock immediately when no blocking lock has been granted ({@link #blockingLock()})
-     */
-    public ReadLock proceedingLock() {
-        return super.readLock();
+class PropCoalescing {
+    private final long window;
+    private final long maxDelay;
+    private final TimeUnit unit;
+    /** Keys are listeners of the prop, to their coalescing wrappers */
+    private final ConcurrentHashMap<PropListener<?>, CoalescingPropListener<?>> wrappers =
+            new ConcurrentHashMap<PropListener<?>, CoalescingPropListener<?>>();
+
+    PropCoalescing(long window, long maxDelay, TimeUnit unit) {
+        this.window = window;
+        this.maxDelay = maxDelay;
+        this.unit = unit;
     }
 
-    /**
-     * @return A lock that will lock as soon as all {@link #proceedingLock()}s have been unlocked, and future
-     *         proceedingLocks can be blocked for the duration of the blockingLock.
-     */
-    public WriteLock blockingLock() {
-        return super.writeLock();
+    @SuppressWarnings("unchecked")
+    <T> PropListener<T> wrap(PropListener<T> propListener) {
+        CoalescingPropListener<?> wrapper = wrappers.get(propListener);
+        if (wrapper == null) {
+            wrappers.putIfAbsent(propListener, new CoalescingPropListener<T>(propListener, window, maxDelay, unit));
+            wrapper = wrappers.get(propListener);
+        }
+        return (PropListener<T>) wrapper;
     }
-}
\ No newline at end of file
+}
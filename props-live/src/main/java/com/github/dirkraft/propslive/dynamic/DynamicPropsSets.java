@@ -1,15 +1,19 @@
 package com.github.dirkraft.propslive.dynamic;
 
-import com.github.dirkraft.propslive.Props;
+import com.github.dirkraft.propslive.dynamic.event.PropsEvents;
 import com.github.dirkraft.propslive.dynamic.listen.PropChange;
 import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropSetChange;
 import com.github.dirkraft.propslive.dynamic.listen.PropSetListener;
+import com.github.dirkraft.propslive.dynamic.metrics.PropsMetrics;
+import com.github.dirkraft.propslive.dynamic.stream.BackpressurePolicy;
+import com.github.dirkraft.propslive.dynamic.stream.PropChangePublisher;
+import com.github.dirkraft.propslive.dynamic.stream.PropChangeStreams;
 import com.github.dirkraft.propslive.propsrc.PropSource;
-import com.github.dirkraft.propslive.propsrc.PropSourceMap;
-import com.github.dirkraft.propslive.propsrc.view.LayeredPropSource;
 import com.github.dirkraft.propslive.set.PropSet;
 import com.github.dirkraft.propslive.set.PropsSets;
 import com.github.dirkraft.propslive.set.PropsSetsImpl;
+import com.github.dirkraft.propslive.set.ease.PropSetAsPropSlice;
 import com.github.dirkraft.propslive.util.ComboLock;
 import org.apache.commons.lang3.ObjectUtils;
 import org.slf4j.Logger;
@@ -19,14 +23,14 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 
@@ -41,6 +45,9 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
 
     private static final Logger logger = LoggerFactory.getLogger(DynamicPropsSets.class);
 
+    /** Number of attempts made by {@link #transact(PropsTransaction)} before giving up */
+    public static final int DEFAULT_TRANSACTION_ATTEMPTS = 16;
+
     /**
      * Set by {@link #to(PropSetListener)} and read by {@link #setProxy}
      */
@@ -49,10 +56,12 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
     /** Keys are {@link PropSet}s */
     private final ConcurrentHashMap<PropSet<?>, ComboLock> propSetLocks = new ConcurrentHashMap<PropSet<?>, ComboLock>();
     /**
-     * Keys are String prop keys. Listeners on {@link PropSet}s are registered for every property in
-     * {@link PropSet#propKeys()}
+     * Listeners on {@link PropSet}s are registered for every property in {@link PropSet#propKeys()}
      */
-    private final ConcurrentHashMap<String, Set<PropSetListener<?>>> propsToSetListeners = new ConcurrentHashMap<String, Set<PropSetListener<?>>>();
+    private final PropSetListenerIndex propSetListeners = new PropSetListenerIndex();
+
+    /** Created upon the first {@link #compute(String, PropComputation, String...)} */
+    private volatile ComputedProps computed;
 
     /**
      * The {@link PropsSets} version of {@link #proxy}. All PropsSets accesses go through here. All accesses will
@@ -63,7 +72,7 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
 
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            Lock cloneLock = null;
+            long clonePartitions = 0L;
 
             Lock lock = null;
             boolean lockAcquired = false;
@@ -89,66 +98,66 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
                 // Effectively block reads if there is currently a write, or causes concurrent writes to throw an
                 // exception; concurrent changing of the same property is not supported. Note that in this version,
                 // multiple locks must be acquired for the PropSet get/set to be atomic.
+                PropsMetrics metrics = metrics();
                 if (get) {
                     assert method.getName().matches("getVals");
                     lock = readLock(propSet);
-                    lock.lock();
+                    if (metrics == null) {
+                        lock.lock();
+                    } else {
+                        long lockWaitNanos = lockTimed(lock);
+                        for (String propKey : propSet.propKeys()) {
+                            metrics.read(propKey, lockWaitNanos);
+                            lockWaitNanos = 0; // only the one wait, however many props
+                        }
+                    }
                     lockAcquired = true;
                     ret = method.invoke(impl, propSet);
 
                 } else if (set) {
-                    cloneLock = DynamicPropsSets.this.cloneLock.readLock();
-                    cloneLock.lock();
+                    PropsEvents events = activeEvents();
+                    long startNanos = events == null ? 0 : System.nanoTime();
+
+                    // only the partitions of the set's props, in order, so as not to deadlock with other sets
+                    long partitions = cloneLocks.partitionsOf(propSet.propKeys());
+                    long cloneLockWaitNanos = cloneLocks.lockProceeding(partitions, metrics != null);
+                    clonePartitions = partitions;
 
                     assert method.getName().matches("setVals");
                     lock = writeLock(propSet);
                     lockAcquired = lock.tryLock();
 
                     if (!lockAcquired) {
+                        if (metrics != null) {
+                            for (String propKey : propSet.propKeys()) {
+                                metrics.lockFailure(propKey);
+                            }
+                        }
+                        if (events != null) {
+                            events.lockFailure(propSet.propKeys());
+                        }
                         throw new PropLockingException("Failed to acquire write lock for prop set " + propSet + " as " +
                                 "it was already locked.");
                     }
+                    if (metrics != null) {
+                        for (String propKey : propSet.propKeys()) {
+                            metrics.write(propKey, cloneLockWaitNanos);
+                            cloneLockWaitNanos = 0; // only the one wait, however many props
+                        }
+                    }
 
-                    Map<String, String> beforeVals = propVals(propSet.propKeys());
+                    long lockNanos = events == null ? 0 : System.nanoTime() - startNanos;
+
+                    String[] propKeys = propSet.propKeys().toArray(new String[propSet.propKeys().size()]);
+                    String[] beforeVals = propVals(propKeys);
                     // (atomically) does the property updates as dictated by the PropSet impl
                     ret = method.invoke(impl, propSet);
                     assert ret == null; // it's a void method
-                    Map<String, String> afterVals = propVals(propSet.propKeys());
-                    Map<String, PropChange<?>> changedProps = changedProps(beforeVals, afterVals);
-
-                    // First, trigger all PropSet's that contain any changed prop. They each expect a particular
-                    // arbitrary pojo constructed and returned by their PropSet.getVals(Props). So in order to get a
-                    // PropChange<POJO>, we need the before and after values of all the properties for each POJO.
-                    Props beforeView = new PropsSetsImpl(new LayeredPropSource(
-                            new PropSourceMap("before prop changes view", beforeVals), impl
-                    ));
-                    Props afterView = impl; // The current state of properties is the after view.
-
-                    // Starting at this point, we are careful to attempt to fire every registered listener once.
-
-                    Method propsSets_getPropSet = PropsSets.NON_DEFAULTING_METHODS_BY_NAME.get(method.getName().replaceFirst("^set", "get"));
-                    Set<PropSetListener<?>> affectedPropSetListeners = affectedPropSetListeners(changedProps.keySet());
-                    for (PropSetListener<?> affectedPropSetListener : affectedPropSetListeners) {
-                        Object beforePojo = null, afterPojo = null;
-                        try {
-                            beforePojo = propsSets_getPropSet.invoke(beforeView, affectedPropSetListener.propSet());
-                            afterPojo = propsSets_getPropSet.invoke(afterView, affectedPropSetListener.propSet());
-                        } catch (Exception e) {
-                            logger.error("Failed to compute PropChange for listener " + affectedPropSetListener.getClass()
-                                    + " on prop set of " + affectedPropSetListener.propSet().propKeys(), e);
-                        }
-                        // The eventual call to listener.reload is already wrapped in a try-catch, so keep this out
-                        // of the previous try-catch. If an exception escapes from here, it is a library bug.
-                        notifyListener(affectedPropSetListener, new PropChange<Object>(beforePojo, afterPojo));
-                    }
-
-                    // Second, trigger any remaining single prop listeners. PropSetListeners are also registered with
-                    // DynamicProps#propsToSingleListeners so that singular property changes will fire correctly from
-                    // DynamicProps. So in THIS proxy for getVals/setVals, we need to be sure not to fire PropSetListeners again.
-                    for (Map.Entry<String, PropChange<?>> propChangeEntry : changedProps.entrySet()) {
-                        // The eventual call to listener.reload is already wrapped in a try-catch, so don't wrap this
-                        // in a superfluous try-catch. If an exception escapes from here, it is a library bug.
-                        notifySingleListeners(propChangeEntry.getKey(), propChangeEntry.getValue(), affectedPropSetListeners);
+                    Map<String, PropChange<String>> changedProps = changedProps(propKeys, beforeVals);
+                    commitChanges(changedProps);
+                    if (events != null) {
+                        events.commit(propKeys.length, changedProps.size(), startNanos, lockNanos,
+                                System.nanoTime() - startNanos);
                     }
 
                 } else {
@@ -164,95 +173,190 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
                 if (lockAcquired) {
                     lock.unlock();
                 }
-                if (cloneLock != null) {
-                    cloneLock.unlock();
-                }
+                cloneLocks.unlockProceeding(clonePartitions);
             }
 
             return ret;
         }
 
         private void registerListener(PropSet<?> propSet, PropSetListener<?> listener) {
+            propSetListeners.register(listener, propSet.propKeys());
             for (String propKey : propSet.propKeys()) {
-                Set<PropSetListener<?>> listenerSet = propsToSetListeners.get(propKey);
-                if (listenerSet == null) {
-                    propsToSetListeners.putIfAbsent(propKey, Collections.newSetFromMap(new ConcurrentHashMap<PropSetListener<?>, Boolean>()));
-                    listenerSet = propsToSetListeners.get(propKey);
-                }
-                listenerSet.add(listener);
                 // also add to singular prop change listeners
                 DynamicPropsSets.super.registerListener(propKey, listener);
             }
         }
 
-        /**
-         * @param changedPropKey changed property key
-         * @param propChange corresponding value change
-         * @param affectedPropSetListeners these have already been notified, so don't do it again for singular props.
-         */
-        private void notifySingleListeners(String changedPropKey, PropChange<?> propChange, Set<PropSetListener<?>> affectedPropSetListeners) {
-            Set<PropListener<?>> singlePropListeners = propsToSingleListeners.get(changedPropKey);
-            if (singlePropListeners != null) {
-                for (PropListener<?> singlePropListener : singlePropListeners) {
-                    // Presumably PropSetListeners have already been taken care of, so just don't fire those. If this check
-                    // isn't strong enough, consider something with set contains and add.
-                    if (!(singlePropListener instanceof PropSetListener<?>)) {
-                        notifyListener(singlePropListener, propChange);
-                    } else {
-                        assert affectedPropSetListeners.contains(singlePropListener);
-                    }
+        private Lock readLock(PropSet<?> propSet) {
+            return getLock(propSet).readLock();
+        }
+
+        private Lock writeLock(PropSet<?> propSet) {
+            return getLock(propSet).writeLock();
+        }
+
+    });
+
+    /**
+     * Fires listeners for a batch of prop changes which have just been applied, e.g. by {@link #setVals(PropSet)}.
+     * Every affected listener is fired once for the whole batch. Callers should hold the write locks of all changed
+     * props.
+     *
+     * @param changedProps prop keys to their corresponding changes
+     */
+    void notifyChanges(Map<String, PropChange<String>> changedProps) {
+        // First, trigger all PropSet's that contain any changed prop. They each expect a particular
+        // arbitrary pojo constructed and returned by their PropSet.getVals(Props). Those are only built if and when
+        // the listener asks for them, from raw values captured now, and are shared by listeners of equal PropSets.
+        PropSetListenerIndex.Snapshot propSetListeners = this.propSetListeners.snapshot();
+        long[] affected = propSetListeners.affected(changedProps.keySet());
+        Map<PropSet<?>, PropSetChange<?>> propSetChanges = null;
+
+        // Starting at this point, we are careful to attempt to fire every registered listener once.
+
+        for (int ordinal = propSetListeners.nextAffected(affected, 0); ordinal >= 0;
+             ordinal = propSetListeners.nextAffected(affected, ordinal + 1)) {
+            PropSetListener<?> affectedPropSetListener = propSetListeners.listener(ordinal);
+            PropSet<?> propSet = affectedPropSetListener.propSet();
+            PropSetChange<?> propSetChange = propSetChanges == null ? null : propSetChanges.get(propSet);
+            if (propSetChange == null) {
+                propSetChange = newPropSetChange(propSet, changedProps);
+                if (propSetChanges == null) {
+                    propSetChanges = new HashMap<PropSet<?>, PropSetChange<?>>();
                 }
+                propSetChanges.put(propSet, propSetChange);
             }
+            if (propSet instanceof PropSetAsPropSlice) {
+                // These read into themselves on getVals, and LivePropSets in particular expect to be up to date by
+                // the time they reload. So build them now, ending on the new values, as ever.
+                try {
+                    propSetChange.old();
+                    propSetChange.now();
+                } catch (Exception e) {
+                    logger.error("Failed to compute PropChange for listener " + affectedPropSetListener.getClass()
+                            + " on prop set of " + propSet.propKeys(), e);
+                }
+            }
+            // The eventual call to listener.reload is already wrapped in a try-catch, so keep this out
+            // of the previous try-catch. If an exception escapes from here, it is a library bug.
+            notifyListenerUnchecked(affectedPropSetListener, propSetChange);
         }
 
-        /**
-         * purely exists to limit scope of {@literal @}SuppressWarnings("unchecked")
-         */
-        @SuppressWarnings("unchecked")
-        private void notifyListener(PropListener<?> listener, PropChange<?> propChange) {
-            DynamicPropsSets.this.notifyListener((PropListener<Object>) listener, (PropChange<Object>) propChange);
+        // Second, trigger any remaining single prop listeners. PropSetListeners are also registered with
+        // DynamicProps#propsToSingleListeners so that singular property changes will fire correctly from
+        // DynamicProps. So for batches of changes, we need to be sure not to fire PropSetListeners again.
+        for (Map.Entry<String, PropChange<String>> propChangeEntry : changedProps.entrySet()) {
+            // The eventual call to listener.reload is already wrapped in a try-catch, so don't wrap this
+            // in a superfluous try-catch. If an exception escapes from here, it is a library bug.
+            notifySingleListeners(propChangeEntry.getKey(), propChangeEntry.getValue(), propSetListeners, affected);
         }
+    }
 
-        private Map<String, String> propVals(Collection<String> propKeys) {
-            Map<String, String> vals = new HashMap<String, String>(propKeys.size());
-            for (String propKey : propKeys) {
-                vals.put(propKey, impl.getString(propKey));
-            }
-            return vals;
+    /**
+     * Applies the writes of a committing {@link Transaction}, firing listeners once for all of them. Callers must hold
+     * the write locks of all of the written props.
+     *
+     * @param writes prop keys to their new values
+     * @return number of props whose values actually changed
+     */
+    int applyWrites(Map<String, String> writes) {
+        String[] propKeys = writes.keySet().toArray(new String[writes.size()]);
+        String[] beforeVals = propVals(propKeys);
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            impl.setString(write.getKey(), write.getValue());
         }
+        Map<String, PropChange<String>> changedProps = changedProps(propKeys, beforeVals);
+        commitChanges(changedProps);
+        return changedProps.size();
+    }
 
-        private Map<String, PropChange<?>> changedProps(Map<String, String> before, Map<String, String> after) {
-            Map<String, PropChange<?>> changedProps = new HashMap<String, PropChange<?>>();
-            for (String propKey : before.keySet()) {
-                Object beforeVal = before.get(propKey);
-                Object afterVal = after.get(propKey);
-                if (!ObjectUtils.equals(beforeVal, afterVal)) {
-                    changedProps.put(propKey, new PropChange<Object>(beforeVal, afterVal));
-                }
-            }
-            return changedProps;
+    /**
+     * Bumps versions of and fires all listeners for a batch of prop changes which have just been applied. Callers must
+     * hold the write locks of all changed props.
+     *
+     * @param changedProps prop keys to their corresponding changes
+     */
+    private void commitChanges(Map<String, PropChange<String>> changedProps) {
+        if (changedProps.isEmpty()) {
+            return;
         }
+        long version = 0L;
+        for (String changedProp : changedProps.keySet()) {
+            version = Math.max(version, bumpVersion(changedProp));
+        }
+        notifyChanges(changedProps);
+        notifyCommitListeners(version, changedProps);
+    }
 
-        private Set<PropSetListener<?>> affectedPropSetListeners(Set<String> changedProps) {
-            Set<PropSetListener<?>> affectedListeners = new HashSet<PropSetListener<?>>();
-            for (String changedProp : changedProps) {
-                Set<PropSetListener<?>> setListeners = propsToSetListeners.get(changedProp);
-                if (setListeners != null) {
-                    affectedListeners.addAll(setListeners);
+    /**
+     * @param changedPropKey changed property key
+     * @param propChange corresponding value change
+     * @param propSetListeners index 'affected' was computed from
+     * @param affected these have already been notified, so don't do it again for singular props.
+     */
+    private void notifySingleListeners(String changedPropKey, PropChange<?> propChange,
+                                       PropSetListenerIndex.Snapshot propSetListeners, long[] affected) {
+        Set<PropListener<?>> singlePropListeners = propsToSingleListeners.get(changedPropKey);
+        if (singlePropListeners != null) {
+            for (PropListener<?> singlePropListener : singlePropListeners) {
+                // Presumably PropSetListeners have already been taken care of, so just don't fire those. If this check
+                // isn't strong enough, consider something with set contains and add.
+                if (!(singlePropListener instanceof PropSetListener<?>)) {
+                    notifyListenerUnchecked(changedPropKey, singlePropListener, propChange);
+                } else {
+                    assert propSetListeners.isAffected(affected, (PropSetListener<?>) singlePropListener);
                 }
             }
-            return affectedListeners;
         }
+    }
 
-        private Lock readLock(PropSet<?> propSet) {
-            return getLock(propSet).readLock();
-        }
+    /**
+     * purely exists to limit scope of {@literal @}SuppressWarnings("unchecked")
+     */
+    @SuppressWarnings("unchecked")
+    private void notifyListenerUnchecked(PropListener<?> listener, PropChange<?> propChange) {
+        super.notifyListener((PropListener<Object>) listener, (PropChange<Object>) propChange);
+    }
 
-        private Lock writeLock(PropSet<?> propSet) {
-            return getLock(propSet).writeLock();
+    /**
+     * purely exists to limit scope of {@literal @}SuppressWarnings("unchecked")
+     */
+    @SuppressWarnings("unchecked")
+    private void notifyListenerUnchecked(String propKey, PropListener<?> listener, PropChange<?> propChange) {
+        super.notifyListener(propKey, (PropListener<Object>) listener, (PropChange<Object>) propChange);
+    }
+
+    private <VALUES> PropSetChange<VALUES> newPropSetChange(PropSet<VALUES> propSet,
+                                                            Map<String, PropChange<String>> changedProps) {
+        return new PropSetChange<VALUES>(propSet, impl, changedProps);
+    }
+
+    private String[] propVals(String[] propKeys) {
+        String[] vals = new String[propKeys.length];
+        for (int i = 0; i < propKeys.length; ++i) {
+            vals[i] = impl.getString(propKeys[i]);
         }
+        return vals;
+    }
 
-    });
+    /**
+     * @param propKeys of props which may have changed
+     * @param beforeVals corresponding values of propKeys prior to the changes, compared against their current values
+     * @return prop keys to their changes, for only those props which actually changed
+     */
+    private Map<String, PropChange<String>> changedProps(String[] propKeys, String[] beforeVals) {
+        Map<String, PropChange<String>> changedProps = null;
+        for (int i = 0; i < propKeys.length; ++i) {
+            String afterVal = impl.getString(propKeys[i]);
+            if (!ObjectUtils.equals(beforeVals[i], afterVal)) {
+                if (changedProps == null) {
+                    changedProps = new HashMap<String, PropChange<String>>();
+                }
+                changedProps.put(propKeys[i], new PropChange<String>(beforeVals[i], afterVal));
+            }
+        }
+        return changedProps == null ? Collections.<String, PropChange<String>>emptyMap() : changedProps;
+    }
 
     public DynamicPropsSets() {
         // Without the cast this will actually go to the wrong constructor at runtime, even though following super
@@ -262,6 +366,17 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
 
     public DynamicPropsSets(PropSource source) {
         super((PropsSets) new PropsSetsImpl(source));
+        listenForInterpolation(source);
+    }
+
+    /**
+     * @param source of props
+     * @param partitioner of prop keys into independent lock domains. See
+     *                    {@link DynamicProps#DynamicProps(com.github.dirkraft.propslive.Props, PropPartitioner)}.
+     */
+    public DynamicPropsSets(PropSource source, PropPartitioner partitioner) {
+        super((PropsSets) new PropsSetsImpl(source), partitioner);
+        listenForInterpolation(source);
     }
 
     /**
@@ -297,7 +412,170 @@ public class DynamicPropsSets extends DynamicProps<PropsSets> implements PropsSe
 
     @Override
     public void setVals(PropSet<?> propSet) {
-        setProxy.setVals(propSet);
+        try {
+            setProxy.setVals(propSet);
+        } finally {
+            afterWrite();
+        }
+    }
+
+    /**
+     * Derives a prop from others, e.g. <code>pool.max = cores * pool.perCore</code>, keeping it up to date as they
+     * change. Computed props are ordinary props: reads are just as cheap, and listeners fire when they change. When a
+     * write changes inputs, only the computed props downstream of them are recomputed, each once and after all of its
+     * own inputs, in one {@link #transact(PropsTransaction) transaction} on the writing thread just before the write
+     * returns. Inputs may themselves be computed, but never the prop being defined, directly or not.
+     * <p/>
+     * Writing a computed prop directly is allowed, but the write only stands until its inputs next change.
+     *
+     * @param propKey of the computed prop. If already computed, it is redefined.
+     * @param computation of its value from the values of its inputs
+     * @param inputKeys prop keys whose changes recompute the prop
+     * @throws IllegalArgumentException if the prop would depend on itself
+     * @throws PropTransactionConflictException if the prop could not be computed for contention with other writers
+     */
+    public void compute(String propKey, PropComputation computation, String... inputKeys) {
+        ComputedProps computedProps = computed;
+        if (computedProps == null) {
+            synchronized (propSetLocks) {
+                if (computed == null) {
+                    computedProps = new ComputedProps(this);
+                    addCommitListener(computedProps);
+                    computed = computedProps;
+                }
+                computedProps = computed;
+            }
+        }
+        computedProps.define(propKey, computation, inputKeys);
+    }
+
+    /**
+     * Stops recomputing a prop defined by {@link #compute(String, PropComputation, String...)}. The prop keeps its
+     * last value.
+     *
+     * @param propKey of the computed prop
+     */
+    public void stopComputing(String propKey) {
+        ComputedProps computedProps = computed;
+        if (computedProps != null) {
+            computedProps.remove(propKey);
+        }
+    }
+
+    @Override
+    protected void afterWrite() {
+        ComputedProps computedProps = computed;
+        if (computedProps != null) {
+            computedProps.recomputePending();
+        }
+    }
+
+    /**
+     * Same as {@link #publisher(PropSet, BackpressurePolicy, int, Executor)} delivering on
+     * {@link PropChangeStreams#DEFAULT_EXECUTOR}
+     */
+    public <VALUES> PropChangePublisher<PropChange<VALUES>> publisher(PropSet<VALUES> propSet, BackpressurePolicy policy,
+                                                                      int capacity) {
+        return publisher(propSet, policy, capacity, PropChangeStreams.DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * PropSet equivalent of {@link #publisher(String, BackpressurePolicy, int, Executor)}, an alternative to
+     * {@link PropSetListener}s with backpressure.
+     *
+     * @param propSet to publish changes of
+     * @param policy for when a subscriber falls 'capacity' changes behind
+     * @param capacity max buffered changes per subscriber
+     * @param executor to deliver to subscribers on
+     * @param <VALUES> pojo class of properties
+     * @return publisher of the before and after {@link PropSet#getVals} of each commit that changed any of its props
+     */
+    public <VALUES> PropChangePublisher<PropChange<VALUES>> publisher(PropSet<VALUES> propSet, BackpressurePolicy policy,
+                                                                      int capacity, Executor executor) {
+        return streams().propSetPublisher(propSet, policy, capacity, executor);
+    }
+
+    /**
+     * @param propSet whose props to check
+     * @return the greatest {@link #version(String)} of any of the props in the PropSet, which increases with every
+     *         change to any of them
+     */
+    public long version(PropSet<?> propSet) {
+        long version = 0L;
+        for (String propKey : propSet.propKeys()) {
+            version = Math.max(version, version(propKey));
+        }
+        return version;
+    }
+
+    /**
+     * PropSet equivalent of {@link #awaitChange(String, long, long, TimeUnit)}. Blocks until any prop of the PropSet
+     * changes after some version. The waiting thread is only woken by changes to props of the PropSet.
+     *
+     * @param propSet to wait on
+     * @param sinceVersion last {@link VersionedVals#version()} or {@link #version(PropSet)} seen of the PropSet.
+     *                     Returns immediately if any of its props have already changed since.
+     * @param timeout max time to wait
+     * @param unit of timeout
+     * @param <VALUES> pojo class of properties
+     * @return the atomically read values and version of the PropSet once it has changed after 'sinceVersion', or
+     *         <code>null</code> if it did not change within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public <VALUES> VersionedVals<VALUES> awaitChange(PropSet<VALUES> propSet, long sinceVersion, long timeout,
+                                                      TimeUnit unit) throws InterruptedException {
+        if (!awaitVersion(propSet.propKeys(), sinceVersion, unit.toNanos(timeout))) {
+            return null;
+        }
+        Lock lock = getLock(propSet).readLock();
+        lock.lock();
+        try {
+            return new VersionedVals<VALUES>(impl.getVals(propSet), version(propSet));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #transact(PropsTransaction, int)} with up to {@link #DEFAULT_TRANSACTION_ATTEMPTS}
+     */
+    public <RESULT> RESULT transact(PropsTransaction<RESULT> transaction) throws PropTransactionConflictException {
+        return transact(transaction, DEFAULT_TRANSACTION_ATTEMPTS);
+    }
+
+    /**
+     * Atomically reads and writes any number of props and {@link PropSet}s, unlike {@link #setVals(PropSet)} which is
+     * atomic for only one PropSet. The transaction is optimistic: nothing is locked while
+     * {@link PropsTransaction#execute(PropsSets)} runs. On commit, all read and written props are locked, and if any
+     * read prop has changed since it was read, the transaction is discarded and executed again.
+     * <p/>
+     * Listeners see one batch of changes per commit, the same as for {@link #setVals(PropSet)}, i.e. each affected
+     * {@link PropSetListener} is fired once even if the transaction changed several of its props.
+     *
+     * @param transaction to execute
+     * @param maxAttempts number of times to execute and attempt to commit the transaction before giving up
+     * @param <RESULT> whatever the transaction returns
+     * @return that returned by the committed execution of the transaction
+     * @throws PropTransactionConflictException if the transaction could not be committed in 'maxAttempts'
+     */
+    public <RESULT> RESULT transact(PropsTransaction<RESULT> transaction, int maxAttempts) throws PropTransactionConflictException {
+        for (int attempt = 0; attempt < maxAttempts; ++attempt) {
+            Transaction tx = new Transaction(this);
+            RESULT result;
+            try {
+                result = transaction.execute(new PropsSetsImpl(tx));
+            } catch (PropTransactionConflictException e) {
+                // a prop was read twice with different versions, so this attempt can never commit
+                continue;
+            }
+            if (tx.commit()) {
+                afterWrite();
+                return result;
+            }
+            Thread.yield(); // give the conflicting writer a moment to finish
+        }
+        throw new PropTransactionConflictException("Failed to commit transaction " + transaction + " after " +
+                maxAttempts + " attempts.");
     }
 
 }
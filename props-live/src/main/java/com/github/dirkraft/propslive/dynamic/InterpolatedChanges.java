@@ -0,0 +1,80 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.propsrc.view.InterpolatingPropSource;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out the changes of the props whose <code>${placeholder}</code>s reference the props of a commit, see
+ * {@link InterpolatingPropSource}. A {@link DynamicProps} backed by one treats those as changed in the same commit:
+ * their versions are bumped, their {@link com.github.dirkraft.propslive.dynamic.listen.PropListener}s fire, and their
+ * changes are part of the commit its commit listeners see. Of a {@link DynamicPropsSets}, the
+ * {@link com.github.dirkraft.propslive.dynamic.listen.PropSetListener}s of PropSets of such props fire too, once for
+ * all of the referencing props of the commit, as for any other batch of changes.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class InterpolatedChanges {
+
+    private final DynamicProps<?> props;
+    private final InterpolatingPropSource source;
+
+    InterpolatedChanges(DynamicProps<?> props, InterpolatingPropSource source) {
+        this.props = props;
+        this.source = source;
+    }
+
+    /**
+     * @param changes of a commit, already applied
+     * @return changes of the resolved values of the props referencing them, directly or not, other than those among
+     *         the changes themselves
+     */
+    Map<String, PropChange<String>> referrerChanges(Map<String, PropChange<String>> changes) {
+        Set<String> referrers = new LinkedHashSet<String>();
+        for (String changed : changes.keySet()) {
+            for (String referrer : source.referrers(changed)) {
+                if (!changes.containsKey(referrer)) {
+                    referrers.add(referrer);
+                }
+            }
+        }
+        Map<String, PropChange<String>> referrerChanges = new LinkedHashMap<String, PropChange<String>>();
+        if (referrers.isEmpty()) {
+            return referrerChanges;
+        }
+        Map<String, String> before = new HashMap<String, String>();
+        for (Map.Entry<String, PropChange<String>> change : changes.entrySet()) {
+            before.put(change.getKey(), change.getValue().old());
+        }
+        for (String referrer : referrers) {
+            String old = source.resolveWith(referrer, before);
+            String now = source.getString(referrer);
+            if (!ObjectUtils.equals(old, now)) {
+                referrerChanges.put(referrer, new PropChange<String>(old, now));
+            }
+        }
+        return referrerChanges;
+    }
+
+    /**
+     * Fires the listeners of the referencing props
+     *
+     * @param referrerChanges as from {@link #referrerChanges(Map)}
+     */
+    void notifyListeners(Map<String, PropChange<String>> referrerChanges) {
+        if (props instanceof DynamicPropsSets) {
+            // PropSetListeners are registered among the single listeners too, but expect a change of their PropSet
+            ((DynamicPropsSets) props).notifyChanges(referrerChanges);
+        } else {
+            for (Map.Entry<String, PropChange<String>> change : referrerChanges.entrySet()) {
+                props.notifyListeners(change.getKey(), change.getValue());
+            }
+        }
+    }
+}
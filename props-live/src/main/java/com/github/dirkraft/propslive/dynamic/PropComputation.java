@@ -0,0 +1,29 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import java.util.Map;
+
+/**
+ * Derives the value of a computed prop from its inputs. Pass an implementation to
+ * {@link DynamicPropsSets#compute(String, PropComputation, String...)}, e.g. for
+ * <code>pool.max = cores * pool.perCore</code>
+ * <pre>
+ * $.compute("pool.max", new PropComputation() {
+ *    {@literal @}Override
+ *     public String compute(Map&lt;String, String&gt; inputs) {
+ *         return String.valueOf(Integer.parseInt(inputs.get("cores")) * Integer.parseInt(inputs.get("pool.perCore")));
+ *     }
+ * }, "cores", "pool.perCore");
+ * </pre>
+ * Implementations should be quick and have no side effects, as they may be called again for the same inputs when
+ * recomputing races with other writes.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropComputation {
+
+    /**
+     * @param inputs the declared input prop keys, in their declared order, to their current values, null where unset
+     * @return the value of the computed prop, or null to unset it
+     */
+    String compute(Map<String, String> inputs);
+}
@@ -0,0 +1,23 @@
+package com.github.dirkraft.propslive.dynamic;
+
+/**
+ * Assigns prop keys to the partitions of a sharded {@link DynamicProps}, each of which has its own clone lock, so that
+ * writers to different partitions never contend with each other. See {@link PropPartitioners} for the usual ones.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropPartitioner {
+
+    /**
+     * @return number of partitions, from 1 to {@link PropPartitioners#MAX_PARTITIONS}
+     */
+    int partitions();
+
+    /**
+     * Must always give the same partition for the same key.
+     *
+     * @param propKey to partition
+     * @return partition of the key, from 0 to {@link #partitions()} - 1
+     */
+    int partition(String propKey);
+}
@@ -0,0 +1,135 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import java.util.Arrays;
+
+/**
+ * Common {@link PropPartitioner}s
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropPartitioners {
+
+    /** Most partitions a {@link DynamicProps} supports */
+    public static final int MAX_PARTITIONS = 64;
+
+    private static final PropPartitioner SINGLE = new PropPartitioner() {
+        @Override
+        public int partitions() {
+            return 1;
+        }
+
+        @Override
+        public int partition(String propKey) {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "single partition";
+        }
+    };
+
+    /**
+     * @return every prop in the one partition, which is the default
+     */
+    public static PropPartitioner single() {
+        return SINGLE;
+    }
+
+    /**
+     * @param partitions to spread keys over, e.g. a small multiple of the number of cores
+     * @return partitioner by hash of the whole prop key, which spreads writes out the most evenly
+     */
+    public static PropPartitioner byHash(final int partitions) {
+        checkPartitions(partitions);
+        return new PropPartitioner() {
+            @Override
+            public int partitions() {
+                return partitions;
+            }
+
+            @Override
+            public int partition(String propKey) {
+                return spread(propKey.hashCode(), partitions);
+            }
+
+            @Override
+            public String toString() {
+                return partitions + " partitions by hash";
+            }
+        };
+    }
+
+    /**
+     * @param partitions to spread namespaces over
+     * @return partitioner by hash of the prop key up to its first '.', e.g. "tenant" of "tenant.42.quota", so that
+     * all of the props of a namespace share a partition, and a {@link com.github.dirkraft.propslive.set.PropsSets#setVals} within one namespace only
+     * ever involves one partition
+     */
+    public static PropPartitioner byNamespace(final int partitions) {
+        checkPartitions(partitions);
+        return new PropPartitioner() {
+            @Override
+            public int partitions() {
+                return partitions;
+            }
+
+            @Override
+            public int partition(String propKey) {
+                int end = propKey.indexOf('.');
+                int hash = 0;
+                for (int i = 0, n = end < 0 ? propKey.length() : end; i < n; ++i) {
+                    hash = 31 * hash + propKey.charAt(i);
+                }
+                return spread(hash, partitions);
+            }
+
+            @Override
+            public String toString() {
+                return partitions + " partitions by namespace";
+            }
+        };
+    }
+
+    /**
+     * @param prefixes each given a partition of its own, in order; first match wins
+     * @return partitioner by explicit key prefix, with one more partition after those of the prefixes for every key
+     * that matches none of them
+     */
+    public static PropPartitioner byPrefix(String... prefixes) {
+        final String[] prefixesCopy = prefixes.clone();
+        checkPartitions(prefixesCopy.length + 1);
+        return new PropPartitioner() {
+            @Override
+            public int partitions() {
+                return prefixesCopy.length + 1;
+            }
+
+            @Override
+            public int partition(String propKey) {
+                for (int i = 0; i < prefixesCopy.length; ++i) {
+                    if (propKey.startsWith(prefixesCopy[i])) {
+                        return i;
+                    }
+                }
+                return prefixesCopy.length;
+            }
+
+            @Override
+            public String toString() {
+                return "partitions by prefix " + Arrays.toString(prefixesCopy);
+            }
+        };
+    }
+
+    private static int spread(int hash, int partitions) {
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % partitions;
+    }
+
+    private static void checkPartitions(int partitions) {
+        if (partitions < 1 || partitions > MAX_PARTITIONS) {
+            throw new IllegalArgumentException("Partitions must be from 1 to " + MAX_PARTITIONS + ": " + partitions);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.dynamic.listen.PropSetListener;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of {@link PropSetListener}s by the props of their {@link PropSetListener#propSet()}. Each listened prop key and
+ * each listener gets a dense integer ordinal, and each prop key ordinal maps to a bitset of the ordinals of the
+ * listeners on it, so that the listeners affected by any batch of changes come down to a few word-wise ORs.
+ * <p/>
+ * Registration is expected to be rare next to lookups, so the index is copy-on-write: lookups read an immutable
+ * {@link Snapshot} without any locking, and registrations replace it.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class PropSetListenerIndex {
+
+    private volatile Snapshot snapshot = new Snapshot(new HashMap<String, Integer>(),
+            new HashMap<PropSetListener<?>, Integer>(), new PropSetListener<?>[0], new long[0][]);
+
+    /**
+     * Registers the listener against each of the prop keys. Registering the same listener again adds any new keys, and
+     * is cheap if there aren't any.
+     */
+    void register(PropSetListener<?> listener, Collection<String> propKeys) {
+        if (snapshot.isRegistered(listener, propKeys)) {
+            return;
+        }
+        synchronized (this) {
+            Snapshot current = snapshot;
+
+            Map<PropSetListener<?>, Integer> listenerOrdinals = current.listenerOrdinals;
+            PropSetListener<?>[] listeners = current.listeners;
+            Integer listenerOrdinal = listenerOrdinals.get(listener);
+            if (listenerOrdinal == null) {
+                listenerOrdinal = listeners.length;
+                listenerOrdinals = new HashMap<PropSetListener<?>, Integer>(listenerOrdinals);
+                listenerOrdinals.put(listener, listenerOrdinal);
+                listeners = Arrays.copyOf(listeners, listeners.length + 1);
+                listeners[listenerOrdinal] = listener;
+            }
+
+            Map<String, Integer> keyOrdinals = new HashMap<String, Integer>(current.keyOrdinals);
+            for (String propKey : propKeys) {
+                if (!keyOrdinals.containsKey(propKey)) {
+                    keyOrdinals.put(propKey, keyOrdinals.size());
+                }
+            }
+
+            // Bitsets visible through the current snapshot are never mutated, only replaced.
+            long[][] keysToListeners = Arrays.copyOf(current.keysToListeners, keyOrdinals.size());
+            for (String propKey : propKeys) {
+                int keyOrdinal = keyOrdinals.get(propKey);
+                long[] bits = keysToListeners[keyOrdinal];
+                bits = bits == null ? new long[words(listeners.length)]
+                        : Arrays.copyOf(bits, Math.max(bits.length, words(listeners.length)));
+                bits[listenerOrdinal >>> 6] |= 1L << listenerOrdinal;
+                keysToListeners[keyOrdinal] = bits;
+            }
+
+            snapshot = new Snapshot(keyOrdinals, listenerOrdinals, listeners, keysToListeners);
+        }
+    }
+
+    /**
+     * @return immutable state of the index, good for any number of lookups
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    static class Snapshot {
+
+        /** Keys are listened prop keys, values are their ordinals; also indexes of {@link #keysToListeners} */
+        private final Map<String, Integer> keyOrdinals;
+        /** Keys are registered listeners, values are their ordinals; also indexes of {@link #listeners} */
+        private final Map<PropSetListener<?>, Integer> listenerOrdinals;
+        /** Indexed by listener ordinal */
+        private final PropSetListener<?>[] listeners;
+        /** Indexed by key ordinal, bitsets of the listener ordinals registered against that key. */
+        private final long[][] keysToListeners;
+
+        Snapshot(Map<String, Integer> keyOrdinals, Map<PropSetListener<?>, Integer> listenerOrdinals,
+                 PropSetListener<?>[] listeners, long[][] keysToListeners) {
+            this.keyOrdinals = keyOrdinals;
+            this.listenerOrdinals = listenerOrdinals;
+            this.listeners = listeners;
+            this.keysToListeners = keysToListeners;
+        }
+
+        boolean isRegistered(PropSetListener<?> listener, Collection<String> propKeys) {
+            Integer listenerOrdinal = listenerOrdinals.get(listener);
+            if (listenerOrdinal == null) {
+                return false;
+            }
+            for (String propKey : propKeys) {
+                Integer keyOrdinal = keyOrdinals.get(propKey);
+                if (keyOrdinal == null || !isSet(keysToListeners[keyOrdinal], listenerOrdinal)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param changedProps prop keys which have changed
+         * @return bitset of the ordinals of listeners registered against any of the changed props, or null if there
+         * aren't any
+         */
+        long[] affected(Collection<String> changedProps) {
+            long[] affected = null;
+            for (String changedProp : changedProps) {
+                Integer keyOrdinal = keyOrdinals.get(changedProp);
+                if (keyOrdinal == null) {
+                    continue;
+                }
+                long[] bits = keysToListeners[keyOrdinal];
+                if (affected == null) {
+                    affected = new long[words(listeners.length)];
+                }
+                for (int w = 0; w < bits.length; ++w) {
+                    affected[w] |= bits[w];
+                }
+            }
+            return affected;
+        }
+
+        /**
+         * @param affected as from {@link #affected(Collection)}
+         * @return next listener ordinal set in 'affected' at or after 'from', or -1 if there are no more
+         */
+        int nextAffected(long[] affected, int from) {
+            int w = from >>> 6;
+            if (affected == null || w >= affected.length) {
+                return -1;
+            }
+            long word = affected[w] & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == affected.length) {
+                    return -1;
+                }
+                word = affected[w];
+            }
+        }
+
+        PropSetListener<?> listener(int ordinal) {
+            return listeners[ordinal];
+        }
+
+        /**
+         * @return whether the listener is among those set in 'affected'
+         */
+        boolean isAffected(long[] affected, PropSetListener<?> listener) {
+            Integer ordinal = listenerOrdinals.get(listener);
+            return ordinal != null && affected != null && isSet(affected, ordinal);
+        }
+
+        private static boolean isSet(long[] bits, int ordinal) {
+            int w = ordinal >>> 6;
+            return w < bits.length && (bits[w] & (1L << ordinal)) != 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.dirkraft.propslive.dynamic;
+
+/**
+ * Thrown when a {@link PropsTransaction} could not be committed because the props it read kept changing underneath it.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropTransactionConflictException extends PropLockingException {
+    public PropTransactionConflictException() {
+    }
+
+    public PropTransactionConflictException(String message) {
+        super(message);
+    }
+
+    public PropTransactionConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PropTransactionConflictException(Throwable cause) {
+        super(cause);
+    }
+
+    public PropTransactionConflictException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
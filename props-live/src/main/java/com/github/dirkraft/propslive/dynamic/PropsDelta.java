@@ -0,0 +1,45 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The props changed in a {@link DynamicProps} after some version. See {@link DynamicProps#changesSince(long)}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropsDelta {
+
+    private final long version;
+    private final Map<String, VersionedProp> changes;
+
+    public PropsDelta(long version, Map<String, VersionedProp> changes) {
+        this.version = version;
+        this.changes = Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * @return the {@link DynamicProps#version()} this delta is current as of, to be passed to the next
+     *         {@link DynamicProps#changesSince(long)}
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return changed prop keys to their current values. Unmodifiable.
+     */
+    public Map<String, VersionedProp> changes() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).
+                append("version", version).
+                append("changes", changes).
+                toString();
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.set.PropSet;
+import com.github.dirkraft.propslive.set.PropsSets;
+
+/**
+ * Logic that reads and writes any number of properties or {@link PropSet}s as one atomic unit. Pass an implementation
+ * to {@link DynamicPropsSets#transact(PropsTransaction)}, e.g. to update the {@link PropSet}s of a primary and a replica
+ * together
+ * <pre>
+ * $.transact(new PropsTransaction&lt;Void&gt;() {
+ *    {@literal @}Override
+ *     public Void execute(PropsSets props) {
+ *         props.setVals(primaryDbPropSet);
+ *         props.setVals(replicaDbPropSet);
+ *         return null;
+ *     }
+ * });
+ * </pre>
+ * Reads made through the given 'props' are recorded and writes are buffered until the transaction commits. If any
+ * recorded read was changed by someone else in the meantime, all buffered writes are discarded and
+ * {@link #execute(PropsSets)} is called again. So implementations should not have side effects outside of the given
+ * 'props'.
+ *
+ * @param <RESULT> whatever the transaction would like to return from {@link DynamicPropsSets#transact(PropsTransaction)}
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropsTransaction<RESULT> {
+
+    /**
+     * @param props to read from and write to. Writes are not visible to anyone else until the transaction commits,
+     *              though they are visible to later reads through these same 'props'.
+     * @return anything, which is returned by {@link DynamicPropsSets#transact(PropsTransaction)} once committed
+     */
+    RESULT execute(PropsSets props);
+}
@@ -0,0 +1,134 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.dynamic.event.PropsEvents;
+import com.github.dirkraft.propslive.propsrc.PropSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * A single attempt at a {@link PropsTransaction}. As a {@link PropSource} it records the version of every prop read
+ * from the {@link DynamicPropsSets} and buffers all writes, which are only applied by {@link #commit()}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class Transaction implements PropSource {
+
+    private final DynamicPropsSets dynamicPropsSets;
+
+    /** Keys are prop keys read from {@link #dynamicPropsSets}. Values are their versions at the time of the read. */
+    private final Map<String, Long> readVersions = new HashMap<String, Long>();
+    /** Writes which are not visible to anyone else until {@link #commit()} */
+    private final Map<String, String> writes = new HashMap<String, String>();
+
+    Transaction(DynamicPropsSets dynamicPropsSets) {
+        this.dynamicPropsSets = dynamicPropsSets;
+    }
+
+    @Override
+    public String description() {
+        return "transaction over " + dynamicPropsSets.description();
+    }
+
+    /**
+     * @return the value buffered by this transaction, or otherwise the current value of the {@link DynamicPropsSets}
+     * @throws PropTransactionConflictException if the prop was already read by this transaction and has since changed,
+     *         as this transaction can no longer commit
+     */
+    @Override
+    public String getString(String key) throws PropTransactionConflictException {
+        if (writes.containsKey(key)) {
+            return writes.get(key);
+        }
+
+        Lock lock = dynamicPropsSets.getLock(key).readLock();
+        lock.lock();
+        try {
+            long version = dynamicPropsSets.version(key);
+            Long previousVersion = readVersions.put(key, version);
+            if (previousVersion != null && previousVersion != version) {
+                throw new PropTransactionConflictException("Prop " + key + " changed during the transaction.");
+            }
+            return dynamicPropsSets.impl.getString(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setString(String key, String value) {
+        writes.put(key, value);
+    }
+
+    /**
+     * Reads through this map are not recorded, and so will not be validated on {@link #commit()}.
+     *
+     * @return a copy of {@link DynamicPropsSets#asMap()} with this transaction's writes applied
+     */
+    @Override
+    public Map<String, String> asMap() {
+        Map<String, String> map = new HashMap<String, String>(dynamicPropsSets.asMap());
+        map.putAll(writes);
+        return map;
+    }
+
+    /**
+     * Locks every read or written prop in their natural order, so that concurrent transactions will contend on the
+     * first prop they have in common rather than each hold part of what the other needs. Then if no read prop has
+     * changed since it was read, applies all writes and fires listeners once for the whole transaction.
+     *
+     * @return true if committed, or false if any lock could not be acquired or any read prop has changed, in which
+     *         case nothing was written
+     */
+    boolean commit() {
+        SortedSet<String> propKeys = new TreeSet<String>(readVersions.keySet());
+        propKeys.addAll(writes.keySet());
+
+        PropsEvents events = dynamicPropsSets.activeEvents();
+        long startNanos = events == null ? 0 : System.nanoTime();
+
+        List<Lock> acquiredLocks = new ArrayList<Lock>(propKeys.size());
+        long clonePartitions = dynamicPropsSets.cloneLocks.partitionsOf(writes.keySet());
+        dynamicPropsSets.cloneLocks.lockProceeding(clonePartitions, false);
+        try {
+            for (String propKey : propKeys) {
+                ReadWriteLock propLock = dynamicPropsSets.getLock(propKey);
+                Lock lock = writes.containsKey(propKey) ? propLock.writeLock() : propLock.readLock();
+                if (!lock.tryLock()) {
+                    if (events != null) {
+                        events.lockFailure(propKeys);
+                    }
+                    return false;
+                }
+                acquiredLocks.add(lock);
+            }
+
+            for (Map.Entry<String, Long> readVersion : readVersions.entrySet()) {
+                if (dynamicPropsSets.version(readVersion.getKey()) != readVersion.getValue()) {
+                    return false;
+                }
+            }
+
+            long lockNanos = events == null ? 0 : System.nanoTime() - startNanos;
+            if (!writes.isEmpty()) {
+                int changedCount = dynamicPropsSets.applyWrites(writes);
+                if (events != null) {
+                    events.commit(writes.size(), changedCount, startNanos, lockNanos, System.nanoTime() - startNanos);
+                }
+            }
+            return true;
+
+        } finally {
+            for (int i = acquiredLocks.size() - 1; i >= 0; --i) {
+                acquiredLocks.get(i).unlock();
+            }
+            dynamicPropsSets.cloneLocks.unlockProceeding(clonePartitions);
+        }
+    }
+}
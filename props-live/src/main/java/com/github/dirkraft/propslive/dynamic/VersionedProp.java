@@ -0,0 +1,45 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * A prop value as of some version of a {@link DynamicProps}. See {@link DynamicProps#getIfChanged(String, long)}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class VersionedProp {
+
+    private final String key;
+    private final String value;
+    private final long version;
+
+    public VersionedProp(String key, String value, long version) {
+        this.key = key;
+        this.value = value;
+        this.version = version;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    /**
+     * @return the {@link DynamicProps#version()} of the last change to this prop
+     */
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).
+                append("key", key).
+                append("value", value).
+                append("version", version).
+                toString();
+    }
+}
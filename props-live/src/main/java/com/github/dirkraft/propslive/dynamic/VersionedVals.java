@@ -0,0 +1,45 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.set.PropSet;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * The values of a {@link PropSet} as of some version of a {@link DynamicPropsSets}. See
+ * {@link DynamicPropsSets#awaitChange(PropSet, long, long, java.util.concurrent.TimeUnit)}.
+ *
+ * @param <VALUES> corresponding pojo of the PropSet
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class VersionedVals<VALUES> {
+
+    private final VALUES vals;
+    private final long version;
+
+    public VersionedVals(VALUES vals, long version) {
+        this.vals = vals;
+        this.version = version;
+    }
+
+    /**
+     * @return that returned by {@link PropSet#getVals(com.github.dirkraft.propslive.Props)}
+     */
+    public VALUES vals() {
+        return vals;
+    }
+
+    /**
+     * @return the greatest {@link DynamicProps#version(String)} of the PropSet's props, see
+     *         {@link DynamicPropsSets#version(PropSet)}
+     */
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).
+                append("vals", vals).
+                append("version", version).
+                toString();
+    }
+}
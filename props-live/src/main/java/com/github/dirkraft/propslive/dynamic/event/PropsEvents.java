@@ -0,0 +1,89 @@
+package com.github.dirkraft.propslive.dynamic.event;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.PropLockingException;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+
+import java.util.Collection;
+
+/**
+ * SPI for tracing what a {@link DynamicProps} is doing, for correlating with latency spikes after the fact, as enabled
+ * by {@link DynamicProps#events(PropsEvents)}. Unlike {@link com.github.dirkraft.propslive.dynamic.metrics.PropsMetrics},
+ * which aggregates, this reports each individual write, commit and listener reload, with its duration.
+ * <p/>
+ * This is shaped to be backed by Java Flight Recorder events on JVMs that have them, e.g.
+ * <pre>
+ * {@literal @}Name("propslive.PropWrite") {@literal @}Label("Prop Write")
+ * class PropWriteEvent extends jdk.jfr.Event {
+ *     {@literal @}Label("Key") String key;
+ *     {@literal @}Label("Listeners Notified") int listenersNotified;
+ * }
+ * EventType writeType = EventType.getEventType(PropWriteEvent.class);
+ *
+ * public boolean isEnabled() {
+ *     return writeType.isEnabled(); // false unless a recording has the event enabled
+ * }
+ *
+ * public void write(String propKey, long startNanos, long durationNanos, int listenersNotified) {
+ *     PropWriteEvent event = new PropWriteEvent();
+ *     ...
+ *     event.commit();
+ * }
+ * </pre>
+ * Nothing is reported, and no clocks are read, while {@link #isEnabled()} is false, so an implementation that tracks
+ * whether a recording is running costs close to nothing the rest of the time.
+ * <p/>
+ * Callbacks run on the threads doing the work, often while prop locks are held, so implementations should be quick
+ * and must not access the props themselves.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropsEvents {
+
+    /**
+     * Checked before each operation that might be reported. Should be cheap, e.g. read a volatile flag.
+     *
+     * @return whether to report anything at all
+     */
+    boolean isEnabled();
+
+    /**
+     * A single prop was written.
+     *
+     * @param propKey written
+     * @param startNanos {@link System#nanoTime()} when the write started
+     * @param durationNanos of the whole write, including lock acquisition and any inline listener reloads
+     * @param listenersNotified number of listeners notified of the change, or 0 if the value didn't change
+     */
+    void write(String propKey, long startNanos, long durationNanos, int listenersNotified);
+
+    /**
+     * A batch of props was written together, by {@link com.github.dirkraft.propslive.set.PropsSets#setVals} or a
+     * transaction.
+     *
+     * @param propCount props written
+     * @param changedCount of those, how many changed value
+     * @param startNanos {@link System#nanoTime()} when the commit started
+     * @param lockNanos spent acquiring locks
+     * @param durationNanos of the whole commit, including lockNanos and any inline listener reloads
+     */
+    void commit(int propCount, int changedCount, long startNanos, long lockNanos, long durationNanos);
+
+    /**
+     * A listener was reloaded, on whichever thread delivers its changes.
+     *
+     * @param listener reloaded
+     * @param startNanos {@link System#nanoTime()} when the reload started
+     * @param durationNanos of the reload
+     * @param thrown by the listener, or null if it returned normally
+     */
+    void reload(PropListener<?> listener, long startNanos, long durationNanos, Throwable thrown);
+
+    /**
+     * A write failed with a {@link PropLockingException}, or a transaction could not lock its props, because they were
+     * already locked.
+     *
+     * @param propKeys that were to be locked together
+     */
+    void lockFailure(Collection<String> propKeys);
+}
@@ -0,0 +1,287 @@
+package com.github.dirkraft.propslive.dynamic.journal;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.DynamicPropsSets;
+import com.github.dirkraft.propslive.dynamic.PropTransactionConflictException;
+import com.github.dirkraft.propslive.dynamic.PropsTransaction;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
+import com.github.dirkraft.propslive.set.PropsSets;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records the last so many prop changes committed to a {@link DynamicPropsSets}, each with its
+ * {@link DynamicProps#version(String)}, the time of its commit, and its value before and after, so as to see what
+ * changed, read props as they were at an earlier {@link DynamicProps#version()}, and roll back to it.
+ * <p/>
+ * Changes are kept in a ring of fixed capacity, overwriting the oldest as new ones come in, so memory is bounded by the
+ * capacity and the sizes of the values. The journal reaches back to its {@link #floorVersion()}: that as of when it
+ * started, or of the latest change it has since overwritten, whichever is later. Reading as of a version further back
+ * than that is refused rather than answered wrongly.
+ * <p/>
+ * Lookups scan the ring, so cost in proportion to the capacity. They are meant for operators after a bad push, not
+ * for the hot path.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropsJournal implements PropsCommitListener, Closeable {
+
+    private final DynamicPropsSets props;
+    private final int capacity;
+
+    /** Guards everything below */
+    private final ReentrantLock lock = new ReentrantLock();
+    // the ring: entry i of 'size' is at (head + i) % capacity, in the order recorded, which for any one prop is the
+    // order of its versions
+    private final long[] commits;
+    private final long[] versions;
+    private final long[] timestamps;
+    private final String[] keys;
+    private final String[] befores;
+    private final String[] afters;
+    private int head = 0;
+    private int size = 0;
+    private long commitCount = 0;
+    private long floorVersion;
+
+    /**
+     * Starts recording every commit of the props.
+     *
+     * @param props to record the commits of, and to roll back
+     * @param capacity number of prop changes to keep
+     */
+    public PropsJournal(DynamicPropsSets props, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.props = props;
+        this.capacity = capacity;
+        this.commits = new long[capacity];
+        this.versions = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.keys = new String[capacity];
+        this.befores = new String[capacity];
+        this.afters = new String[capacity];
+        props.addCommitListener(this);
+        // anything up to here may have been committed before listening
+        this.floorVersion = props.version();
+    }
+
+    /**
+     * Records the changes of the commit. Called while the changed props are still write-locked, so that each one's
+     * {@link DynamicProps#version(String)} is that of this change.
+     */
+    @Override
+    public void committed(PropsCommit commit) {
+        lock.lock();
+        try {
+            long commitId = ++commitCount;
+            for (Map.Entry<String, PropChange<String>> change : commit.changes().entrySet()) {
+                int slot;
+                if (size == capacity) {
+                    slot = head;
+                    floorVersion = Math.max(floorVersion, versions[slot]);
+                    head = (head + 1) % capacity;
+                } else {
+                    slot = (head + size++) % capacity;
+                }
+                commits[slot] = commitId;
+                versions[slot] = props.version(change.getKey());
+                timestamps[slot] = commit.timestamp();
+                keys[slot] = change.getKey();
+                befores[slot] = change.getValue().old();
+                afters[slot] = change.getValue().now();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return earliest {@link DynamicProps#version()} which this journal can read as of, or roll back to
+     */
+    public long floorVersion() {
+        lock.lock();
+        try {
+            return floorVersion;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return prop changes currently kept
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param version of all props, e.g. a {@link DynamicProps#version()} noted before a push
+     * @return the commits since then, oldest first, each with the latest version of its props and String values
+     * @throws IllegalArgumentException if the journal no longer reaches back to the version
+     */
+    public List<PropsCommit> commitsSince(long version) {
+        List<PropsCommit> since = new ArrayList<PropsCommit>();
+        lock.lock();
+        try {
+            checkReaches(version);
+            Map<String, PropChange<String>> changes = null;
+            long commitId = 0;
+            long commitVersion = 0;
+            long timestamp = 0;
+            for (int i = 0; i < size; ++i) {
+                int slot = (head + i) % capacity;
+                if (versions[slot] <= version) {
+                    continue;
+                }
+                if (changes == null || commits[slot] != commitId) {
+                    if (changes != null) {
+                        since.add(new PropsCommit(commitVersion, timestamp, changes));
+                    }
+                    changes = new LinkedHashMap<String, PropChange<String>>();
+                    commitId = commits[slot];
+                    commitVersion = 0;
+                    timestamp = timestamps[slot];
+                }
+                changes.put(keys[slot], new PropChange<String>(befores[slot], afters[slot]));
+                commitVersion = Math.max(commitVersion, versions[slot]);
+            }
+            if (changes != null) {
+                since.add(new PropsCommit(commitVersion, timestamp, changes));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return since;
+    }
+
+    /**
+     * @param key of a prop
+     * @param version of all props
+     * @return the value of the prop as of that version
+     * @throws IllegalArgumentException if the journal no longer reaches back to the version
+     */
+    public String getAsOf(String key, long version) {
+        // read before the journal, so that any change after this read is in the journal with this as its before
+        String current = props.getString(key);
+        lock.lock();
+        try {
+            checkReaches(version);
+            for (int i = 0; i < size; ++i) {
+                int slot = (head + i) % capacity;
+                if (versions[slot] > version && keys[slot].equals(key)) {
+                    return befores[slot];
+                }
+            }
+            return current;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param version of all props
+     * @return every prop as of that version, consistent across all of them
+     * @throws IllegalArgumentException if the journal no longer reaches back to the version
+     */
+    public Map<String, String> snapshotAsOf(long version) {
+        // copied under the blocking lock, so consistent now, and anything committed since is in the journal with its
+        // before as of now
+        final Map<String, String> snapshot = new HashMap<String, String>();
+        props.forEach(new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                snapshot.put(key, value);
+                return true;
+            }
+        });
+        for (Map.Entry<String, String> undo : undoSince(version).entrySet()) {
+            if (undo.getValue() == null) {
+                snapshot.remove(undo.getKey());
+            } else {
+                snapshot.put(undo.getKey(), undo.getValue());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Sets every prop changed since the version back to its value as of then, as one transaction, so that listeners
+     * fire once for all of it. The rollback is itself journaled like any other commit, and can be rolled back in turn.
+     *
+     * @param version of all props to go back to
+     * @return the prop keys written to the values they were rolled back to, null where removed
+     * @throws IllegalArgumentException if the journal no longer reaches back to the version
+     * @throws PropTransactionConflictException if the props being rolled back kept changing concurrently
+     */
+    public Map<String, String> rollbackTo(final long version) throws PropTransactionConflictException {
+        return props.transact(new PropsTransaction<Map<String, String>>() {
+            @Override
+            public Map<String, String> execute(PropsSets tx) {
+                Map<String, String> undo = undoSince(version);
+                Map<String, String> rolledBack = new LinkedHashMap<String, String>();
+                for (Map.Entry<String, String> prop : undo.entrySet()) {
+                    // read through the transaction, so that a concurrent change of the prop retries the transaction
+                    String current = tx.getString(prop.getKey());
+                    if (current == null ? prop.getValue() != null : !current.equals(prop.getValue())) {
+                        tx.setString(prop.getKey(), prop.getValue());
+                        rolledBack.put(prop.getKey(), prop.getValue());
+                    }
+                }
+                return rolledBack;
+            }
+        });
+    }
+
+    /**
+     * Stops recording
+     */
+    @Override
+    public void close() {
+        props.removeCommitListener(this);
+    }
+
+    /**
+     * @return each prop changed since the version, to its value as of the version
+     */
+    private Map<String, String> undoSince(long version) {
+        Map<String, String> undo = new LinkedHashMap<String, String>();
+        lock.lock();
+        try {
+            checkReaches(version);
+            for (int i = 0; i < size; ++i) {
+                int slot = (head + i) % capacity;
+                // the first change of each prop after the version has the value as of it
+                if (versions[slot] > version && !undo.containsKey(keys[slot])) {
+                    undo.put(keys[slot], befores[slot]);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return undo;
+    }
+
+    /** Under the lock */
+    private void checkReaches(long version) {
+        if (version < floorVersion) {
+            throw new IllegalArgumentException("Journal only reaches back to version " + floorVersion + ", not " +
+                    version);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.propsrc.PropSource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only flyweight over a {@link PropSource} as it was before some changes. Changed props read as their
+ * {@link PropChange#old()} value, even if that was <code>null</code>; all others fall through to the current source.
+ * Nothing is copied, so this is only accurate for as long as no further changes are made to the source, e.g. while
+ * the changes' write locks are still held.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class BeforeChangesPropSource implements PropSource {
+
+    private final PropSource current;
+    private final Map<String, PropChange<String>> changes;
+
+    /**
+     * @param current source, with the changes already applied
+     * @param changes prop keys to their changes
+     */
+    public BeforeChangesPropSource(PropSource current, Map<String, PropChange<String>> changes) {
+        this.current = current;
+        this.changes = changes;
+    }
+
+    @Override
+    public String description() {
+        return "before " + changes.size() + " changes of " + current.description();
+    }
+
+    @Override
+    public String getString(String key) {
+        PropChange<String> change = changes.get(key);
+        return change != null ? change.old() : current.getString(key);
+    }
+
+    @Override
+    public void setString(String key, String value) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    /**
+     * @return a copy of the current source's map with the changes undone
+     */
+    @Override
+    public Map<String, String> asMap() {
+        Map<String, String> map = new HashMap<String, String>(current.asMap());
+        for (Map.Entry<String, PropChange<String>> change : changes.entrySet()) {
+            if (change.getValue().old() == null) {
+                map.remove(change.getKey());
+            } else {
+                map.put(change.getKey(), change.getValue().old());
+            }
+        }
+        return map;
+    }
+}
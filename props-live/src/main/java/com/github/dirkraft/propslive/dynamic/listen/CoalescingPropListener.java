@@ -0,0 +1,142 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates a {@link PropListener} so that rapid successive changes collapse into one. The delegate is reloaded once
+ * the changes have been quiet for a 'window', with a single {@link PropChange} from the old value of the first change
+ * to the new value of the last. Changes that never stop coming are still delivered at least every 'maxDelay'. e.g.
+ * <pre>
+ * dynamicProps.to(new CoalescingPropListener&lt;Integer&gt;(routingTableRebuilder, 200, 2000, TimeUnit.MILLISECONDS))
+ *         .getInt("traffic.weight");
+ * </pre>
+ * The delegate is reloaded on a scheduler thread rather than the writing thread, and not at all if the coalesced
+ * changes ended up back at the value they started from. Register each instance against only one prop, as changes are
+ * coalesced without regard to which prop they came from. To coalesce every listener of a prop, see
+ * {@link DynamicProps#coalesce(String, long, long, TimeUnit)}.
+ *
+ * @param <VALUE> type of property being listened on
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class CoalescingPropListener<VALUE> implements PropListener<VALUE> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingPropListener.class);
+
+    /**
+     * Single daemon thread, so that the reloads of any one coalescing listener never overlap.
+     */
+    public static final ScheduledExecutorService DEFAULT_SCHEDULER = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "props-live-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final PropListener<VALUE> delegate;
+    private final long windowNanos;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+
+    /** guarded by this. Coalesced change not yet delivered, or null if there is none. */
+    private PropChange<VALUE> pending;
+    /** guarded by this. First change of {@link #pending}, which its old value comes from. */
+    private PropChange<VALUE> first;
+    /** guarded by this. When the first change of {@link #pending} arrived. */
+    private long firstNanos;
+    /** guarded by this. When the last change of {@link #pending} arrived. */
+    private long lastNanos;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Coalesces on the {@link #DEFAULT_SCHEDULER}
+     */
+    public CoalescingPropListener(PropListener<VALUE> delegate, long window, long maxDelay, TimeUnit unit) {
+        this(delegate, window, maxDelay, unit, DEFAULT_SCHEDULER);
+    }
+
+    /**
+     * @param delegate to reload with coalesced changes
+     * @param window of quiet after the last change, after which the coalesced change is delivered
+     * @param maxDelay max time after the first change, after which the coalesced change is delivered even if changes
+     *                 are still coming
+     * @param unit of window and maxDelay
+     * @param scheduler to deliver coalesced changes on
+     */
+    public CoalescingPropListener(PropListener<VALUE> delegate, long window, long maxDelay, TimeUnit unit,
+                                  ScheduledExecutorService scheduler) {
+        this.delegate = delegate;
+        this.windowNanos = unit.toNanos(window);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the decorated listener
+     */
+    public PropListener<VALUE> delegate() {
+        return delegate;
+    }
+
+    /**
+     * Merges the change into whatever is pending. Only the first change of each coalesced batch schedules anything;
+     * later changes just move the deadline which that scheduled flush checks. Merging reads neither value, so that a
+     * {@link LazyPropChange} is only computed on the scheduler thread, if at all.
+     */
+    @Override
+    public void reload(PropChange<VALUE> propChange) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            lastNanos = now;
+            if (pending != null) {
+                // from the first rather than the pending change, so as not to hold on to every change in between
+                pending = LazyPropChange.between(first, propChange);
+                return;
+            }
+            pending = first = propChange;
+            firstNanos = now;
+        }
+        scheduler.schedule(flush, Math.min(windowNanos, maxDelayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private void flush() {
+        PropChange<VALUE> coalesced;
+        synchronized (this) {
+            long dueNanos = Math.min(lastNanos + windowNanos, firstNanos + maxDelayNanos);
+            long remainingNanos = dueNanos - System.nanoTime();
+            if (remainingNanos > 0L) {
+                scheduler.schedule(flush, remainingNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+            coalesced = pending;
+            pending = first = null;
+        }
+        if (!ObjectUtils.equals(coalesced.old(), coalesced.now())) {
+            try {
+                delegate.reload(coalesced);
+            } catch (Throwable t) {
+                logger.error("Exception reloading listener " + delegate + " with change " + coalesced, t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + delegate + "]";
+    }
+}
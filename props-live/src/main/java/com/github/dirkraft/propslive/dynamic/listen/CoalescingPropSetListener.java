@@ -0,0 +1,39 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.set.PropSet;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PropSetListener} equivalent of {@link CoalescingPropListener}. Since a PropSetListener is reloaded with the
+ * values of its whole {@link PropSet}, changes to any of the PropSet's props coalesce together.
+ *
+ * @param <VALUES> corresponding pojo of type-safe values to the PropSet
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class CoalescingPropSetListener<VALUES> extends CoalescingPropListener<VALUES> implements PropSetListener<VALUES> {
+
+    private final PropSet<VALUES> propSet;
+
+    /**
+     * Coalesces on the {@link #DEFAULT_SCHEDULER}
+     */
+    public CoalescingPropSetListener(PropSetListener<VALUES> delegate, long window, long maxDelay, TimeUnit unit) {
+        this(delegate, window, maxDelay, unit, DEFAULT_SCHEDULER);
+    }
+
+    /**
+     * See {@link CoalescingPropListener#CoalescingPropListener(PropListener, long, long, TimeUnit, ScheduledExecutorService)}
+     */
+    public CoalescingPropSetListener(PropSetListener<VALUES> delegate, long window, long maxDelay, TimeUnit unit,
+                                     ScheduledExecutorService scheduler) {
+        super(delegate, window, maxDelay, unit, scheduler);
+        this.propSet = delegate.propSet();
+    }
+
+    @Override
+    public PropSet<VALUES> propSet() {
+        return propSet;
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+/**
+ * A {@link PropChange} whose old and new values are each computed on first access, and then kept for any later
+ * access, from whichever thread. Listeners that never look at {@link #old()} never pay for it.
+ *
+ * @param <VALUE> type of the changed value
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public abstract class LazyPropChange<VALUE> extends PropChange<VALUE> {
+
+    private VALUE old;
+    private boolean oldComputed;
+    private VALUE now;
+    private boolean nowComputed;
+
+    protected LazyPropChange() {
+        super(null, null);
+    }
+
+    /**
+     * @return a change computing its old value from 'older' and its new value from 'newer', as when collapsing the
+     * two into one
+     */
+    public static <VALUE> PropChange<VALUE> between(final PropChange<VALUE> older, final PropChange<VALUE> newer) {
+        return new LazyPropChange<VALUE>() {
+            @Override
+            protected VALUE computeOld() {
+                return older.old();
+            }
+
+            @Override
+            protected VALUE computeNow() {
+                return newer.now();
+            }
+        };
+    }
+
+    /**
+     * Called at most once, on the first call to {@link #old()}
+     */
+    protected abstract VALUE computeOld();
+
+    /**
+     * Called at most once, on the first call to {@link #now()}
+     */
+    protected abstract VALUE computeNow();
+
+    @Override
+    public synchronized VALUE old() {
+        if (!oldComputed) {
+            old = computeOld();
+            oldComputed = true;
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized VALUE now() {
+        if (!nowComputed) {
+            now = computeNow();
+            nowComputed = true;
+        }
+        return now;
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.dynamic.event.PropsEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A group of listeners that share a limit on concurrent reloads and a time budget per reload, as assigned by
+ * {@link ListenerFanOut#assign(PropListener, ListenerBulkhead)}. Reloads beyond the limit queue up within the bulkhead
+ * rather than occupying threads of the executor, so a group of slow listeners can only ever tie up 'maxConcurrent'
+ * threads, and only ever hold up the rest of their own group. A reload that runs past the budget is logged and counted
+ * as soon as the budget elapses, so that stuck listeners are noticed, but it is never interrupted and keeps its slot
+ * until it finishes.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ListenerBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(ListenerBulkhead.class);
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long budgetNanos;
+    private final ListenerTimings timings = new ListenerTimings();
+
+    private final Queue<Reload<?>> queued = new ConcurrentLinkedQueue<Reload<?>>();
+    private final AtomicInteger freeSlots;
+
+    /**
+     * @param name for logging
+     * @param maxConcurrent max reloads of this group's listeners running at once
+     * @param budget time after which a reload is considered stuck, or 0 for no budget
+     * @param unit of budget
+     */
+    public ListenerBulkhead(String name, int maxConcurrent, long budget, TimeUnit unit) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.budgetNanos = unit.toNanos(budget);
+        this.freeSlots = new AtomicInteger(maxConcurrent);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public long getBudget(TimeUnit unit) {
+        return unit.convert(budgetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return reloads waiting for a free slot
+     */
+    public int getQueued() {
+        return queued.size();
+    }
+
+    public ListenerTimings getTimings() {
+        return timings;
+    }
+
+    <T> void submit(PropListener<T> listener, PropChange<T> propChange, Executor executor,
+                    ScheduledExecutorService watchdog, PropsEvents events) {
+        queued.add(new Reload<T>(listener, propChange, executor, watchdog, events));
+        drain();
+    }
+
+    private void drain() {
+        while (!queued.isEmpty()) {
+            int free = freeSlots.get();
+            if (free == 0) {
+                return; // whichever reload frees a slot drains again
+            }
+            if (!freeSlots.compareAndSet(free, free - 1)) {
+                continue;
+            }
+            Reload<?> reload = queued.poll();
+            if (reload == null) {
+                freeSlots.incrementAndGet(); // somebody else drained it; loop around in case of more
+                continue;
+            }
+            try {
+                reload.executor.execute(reload);
+            } catch (RejectedExecutionException e) {
+                timings.recordRejected();
+                logger.error("Executor rejected reload of listener " + reload.listener + " in bulkhead " + name, e);
+                freeSlots.incrementAndGet();
+            }
+        }
+    }
+
+    private void release() {
+        freeSlots.incrementAndGet();
+        drain();
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerBulkhead{" + name + ", maxConcurrent=" + maxConcurrent + ", " + timings + "}";
+    }
+
+    private class Reload<T> implements Runnable {
+
+        final PropListener<T> listener;
+        final PropChange<T> propChange;
+        final Executor executor;
+        final ScheduledExecutorService watchdog;
+        /** null if not tracing */
+        final PropsEvents events;
+        final long submittedNanos = System.nanoTime();
+        volatile boolean done;
+
+        Reload(PropListener<T> listener, PropChange<T> propChange, Executor executor,
+               ScheduledExecutorService watchdog, PropsEvents events) {
+            this.listener = listener;
+            this.propChange = propChange;
+            this.executor = executor;
+            this.watchdog = watchdog;
+            this.events = events;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            Future<?> budget = null;
+            if (budgetNanos > 0) {
+                budget = watchdog.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!done) {
+                            timings.recordOverBudget();
+                            logger.warn("Listener " + listener + " in bulkhead " + name + " is still reloading after "
+                                    + TimeUnit.NANOSECONDS.toMillis(budgetNanos) + "ms with change " + propChange);
+                        }
+                    }
+                }, budgetNanos, TimeUnit.NANOSECONDS);
+            }
+
+            Throwable thrown = null;
+            try {
+                listener.reload(propChange);
+            } catch (Throwable t) {
+                thrown = t;
+                logger.error("Exception reloading listener " + listener + " with change " + propChange, t);
+            } finally {
+                long reloadNanos = System.nanoTime() - startNanos;
+                timings.recordReload(startNanos - submittedNanos, reloadNanos, thrown != null);
+                if (events != null) {
+                    events.reload(listener, startNanos, reloadNanos, thrown);
+                }
+                done = true;
+                if (budget != null) {
+                    budget.cancel(false);
+                }
+                release();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.event.PropsEvents;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers listener reloads concurrently on an {@link Executor} instead of one after another on the writing thread,
+ * so that the latency of a write no longer grows with the number and slowness of its listeners. Enable with
+ * {@link DynamicProps#fanOut(ListenerFanOut)}. e.g.
+ * <pre>
+ * ListenerFanOut fanOut = new ListenerFanOut();
+ * fanOut.assign(cacheRebuilder, new ListenerBulkhead("rebuilders", 2, 5, TimeUnit.SECONDS));
+ * dynamicProps.fanOut(fanOut);
+ * </pre>
+ * Listeners are grouped into {@link ListenerBulkhead}s, each with its own limit on concurrent reloads and a time budget
+ * per reload, so that one pathological listener can only hold up the others of its own group, and gets reported once
+ * it exceeds the budget. Listeners not otherwise assigned share the default bulkhead. Timings of each bulkhead are available from
+ * {@link ListenerBulkhead#getTimings()}.
+ * <p/>
+ * The write returns once reloads have been handed off, so listeners see changes after the writer has moved on, and
+ * the reloads of a listener may run concurrently with and complete out of order from each other unless its bulkhead
+ * has a 'maxConcurrent' of 1.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ListenerFanOut {
+
+    /** Work-stealing pool of daemon threads, one per processor, running reloads in the order submitted. */
+    public static final ForkJoinPool DEFAULT_EXECUTOR = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+    /** Times reloads against their budgets. Only ever runs trivial bookkeeping, so one thread is plenty. */
+    private static final ScheduledExecutorService WATCHDOG = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "props-live-fanout-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Executor executor;
+    private final ListenerBulkhead defaultBulkhead;
+    private final ConcurrentHashMap<PropListener<?>, ListenerBulkhead> assignedBulkheads =
+            new ConcurrentHashMap<PropListener<?>, ListenerBulkhead>();
+
+    /**
+     * Fans out on the {@link #DEFAULT_EXECUTOR}, with unassigned listeners limited to the parallelism of that executor
+     * and given 10 seconds each.
+     */
+    public ListenerFanOut() {
+        this(DEFAULT_EXECUTOR, new ListenerBulkhead("default", DEFAULT_EXECUTOR.getParallelism(), 10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @param executor to run reloads on
+     * @param defaultBulkhead of listeners not otherwise {@link #assign(PropListener, ListenerBulkhead) assigned}
+     */
+    public ListenerFanOut(Executor executor, ListenerBulkhead defaultBulkhead) {
+        this.executor = executor;
+        this.defaultBulkhead = defaultBulkhead;
+    }
+
+    /**
+     * Assigns a listener to a bulkhead, in place of any previous assignment. Reloads already submitted stay in the
+     * bulkhead they were submitted to.
+     *
+     * @param listener to assign. Listeners are identified by their {@link Object#equals(Object)}
+     * @param bulkhead which the listener's reloads will be subject to
+     */
+    public void assign(PropListener<?> listener, ListenerBulkhead bulkhead) {
+        assignedBulkheads.put(listener, bulkhead);
+    }
+
+    /**
+     * Returns a listener to the default bulkhead.
+     *
+     * @param listener to unassign
+     */
+    public void unassign(PropListener<?> listener) {
+        assignedBulkheads.remove(listener);
+    }
+
+    /**
+     * @return bulkhead the listener's reloads are subject to
+     */
+    public ListenerBulkhead bulkhead(PropListener<?> listener) {
+        ListenerBulkhead bulkhead = assignedBulkheads.isEmpty() ? null : assignedBulkheads.get(listener);
+        return bulkhead == null ? defaultBulkhead : bulkhead;
+    }
+
+    /**
+     * @return the default bulkhead and every bulkhead with listeners assigned, e.g. to report on their timings
+     */
+    public Collection<ListenerBulkhead> bulkheads() {
+        Set<ListenerBulkhead> bulkheads = new LinkedHashSet<ListenerBulkhead>();
+        bulkheads.add(defaultBulkhead);
+        bulkheads.addAll(assignedBulkheads.values());
+        return Collections.unmodifiableSet(bulkheads);
+    }
+
+    /**
+     * Submits a reload to the listener's bulkhead, returning without waiting for it to run.
+     *
+     * @param listener to reload
+     * @param propChange to reload with
+     */
+    public <T> void deliver(PropListener<T> listener, PropChange<T> propChange) {
+        deliver(listener, propChange, null);
+    }
+
+    /**
+     * Submits a reload to the listener's bulkhead, returning without waiting for it to run.
+     *
+     * @param listener to reload
+     * @param propChange to reload with
+     * @param events to report the reload to, or null
+     */
+    public <T> void deliver(PropListener<T> listener, PropChange<T> propChange, PropsEvents events) {
+        bulkhead(listener).submit(listener, propChange, executor, WATCHDOG, events);
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running totals of listener reloads delivered through a {@link ListenerBulkhead}. All counters are cumulative since
+ * construction, and each is individually consistent though a set of them read together may not be.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ListenerTimings {
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong overBudget = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong totalQueuedNanos = new AtomicLong();
+
+    void recordReload(long queuedNanos, long reloadNanos, boolean failed) {
+        reloads.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        totalQueuedNanos.addAndGet(queuedNanos);
+        totalNanos.addAndGet(reloadNanos);
+        long max;
+        while (reloadNanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, reloadNanos)) {
+            // another reload raced us to a new max; try again
+        }
+    }
+
+    void recordOverBudget() {
+        overBudget.incrementAndGet();
+    }
+
+    void recordRejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * @return completed reloads, including failed ones
+     */
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    /**
+     * @return reloads that threw
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return reloads that ran past the time budget of their bulkhead, counted as soon as the budget elapses
+     */
+    public long getOverBudget() {
+        return overBudget.get();
+    }
+
+    /**
+     * @return reloads never run because the executor refused them
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return total time spent in completed reloads
+     */
+    public long getTotal(TimeUnit unit) {
+        return unit.convert(totalNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return longest completed reload
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return mean time of completed reloads, or 0 if there haven't been any
+     */
+    public long getMean(TimeUnit unit) {
+        long reloads = this.reloads.get();
+        return reloads == 0 ? 0 : unit.convert(totalNanos.get() / reloads, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return mean time completed reloads spent waiting for a free slot in the bulkhead and a thread of the executor,
+     * or 0 if there haven't been any
+     */
+    public long getMeanQueued(TimeUnit unit) {
+        long reloads = this.reloads.get();
+        return reloads == 0 ? 0 : unit.convert(totalQueuedNanos.get() / reloads, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "reloads=" + getReloads() + ", failures=" + getFailures() + ", overBudget=" + getOverBudget()
+                + ", rejected=" + getRejected() + ", meanMicros=" + getMean(TimeUnit.MICROSECONDS)
+                + ", maxMicros=" + getMax(TimeUnit.MICROSECONDS)
+                + ", meanQueuedMicros=" + getMeanQueued(TimeUnit.MICROSECONDS);
+    }
+}
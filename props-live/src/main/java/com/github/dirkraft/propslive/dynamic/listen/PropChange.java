@@ -3,6 +3,9 @@ package com.github.dirkraft.propslive.dynamic.listen;
 import org.apache.commons.lang3.builder.*;
 
 /**
+ * The old and new values of a changed property or {@link com.github.dirkraft.propslive.set.PropSet}. See
+ * {@link LazyPropChange} for changes whose values are only computed on demand.
+ *
  * @author Jason Dunkelberger (dirkraft)
  */
 public class PropChange<VALUE> {
@@ -26,8 +29,8 @@ public class PropChange<VALUE> {
     @Override
     public String toString() {
         return new ToStringBuilder(this).
-                append("old", old).
-                append("now", now).
+                append("old", old()).
+                append("now", now()).
                 toString();
     }
 }
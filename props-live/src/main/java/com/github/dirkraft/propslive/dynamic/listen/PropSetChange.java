@@ -0,0 +1,92 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.set.PropSet;
+import com.github.dirkraft.propslive.set.PropsSetsImpl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link LazyPropChange} of the values of a {@link PropSet}. The raw values of the PropSet's props are captured on
+ * construction, so nothing is read from the source later on, but {@link PropSet#getVals} is only called to build the
+ * old or new values when they are first asked for. Share an instance between listeners of the same PropSet to share
+ * the values built.
+ *
+ * @param <VALUES> type returned by the PropSet
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSetChange<VALUES> extends LazyPropChange<VALUES> {
+
+    private final PropSet<VALUES> propSet;
+    private final String[] propKeys;
+    private final String[] nowVals;
+    private final Map<String, PropChange<String>> changes;
+
+    /**
+     * @param propSet whose values changed
+     * @param current source, with the changes already applied, from which the PropSet's raw values are captured
+     * @param changes prop keys to their changes, which may include props outside of the PropSet. Should not be
+     *                modified afterwards
+     */
+    public PropSetChange(PropSet<VALUES> propSet, PropSource current, Map<String, PropChange<String>> changes) {
+        this.propSet = propSet;
+        this.propKeys = propSet.propKeys().toArray(new String[propSet.propKeys().size()]);
+        this.nowVals = new String[propKeys.length];
+        for (int i = 0; i < propKeys.length; ++i) {
+            nowVals[i] = current.getString(propKeys[i]);
+        }
+        this.changes = changes;
+    }
+
+    public PropSet<VALUES> propSet() {
+        return propSet;
+    }
+
+    @Override
+    protected VALUES computeOld() {
+        return new PropsSetsImpl(new BeforeChangesPropSource(new CapturedPropSource(), changes)).getVals(propSet);
+    }
+
+    @Override
+    protected VALUES computeNow() {
+        return new PropsSetsImpl(new CapturedPropSource()).getVals(propSet);
+    }
+
+    /**
+     * Read-only view of the captured values
+     */
+    private class CapturedPropSource implements PropSource {
+
+        @Override
+        public String description() {
+            return "captured values of " + propSet;
+        }
+
+        @Override
+        public String getString(String key) {
+            for (int i = 0; i < propKeys.length; ++i) {
+                if (propKeys[i].equals(key)) {
+                    return nowVals[i];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void setString(String key, String value) {
+            throw new UnsupportedOperationException("read-only view");
+        }
+
+        @Override
+        public Map<String, String> asMap() {
+            Map<String, String> map = new HashMap<String, String>(propKeys.length);
+            for (int i = 0; i < propKeys.length; ++i) {
+                if (nowVals[i] != null) {
+                    map.put(propKeys[i], nowVals[i]);
+                }
+            }
+            return map;
+        }
+    }
+}
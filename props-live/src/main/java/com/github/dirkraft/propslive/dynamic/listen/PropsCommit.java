@@ -0,0 +1,56 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One atomic batch of prop changes, e.g. a singular set or a {@link com.github.dirkraft.propslive.set.PropsSets#setVals}.
+ * See {@link PropsCommitListener}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropsCommit {
+
+    private final long version;
+    private final long timestamp;
+    private final Map<String, PropChange<String>> changes;
+
+    public PropsCommit(long version, long timestamp, Map<String, PropChange<String>> changes) {
+        this.version = version;
+        this.timestamp = timestamp;
+        this.changes = Collections.unmodifiableMap(changes);
+    }
+
+    /**
+     * @return the {@link DynamicProps#version()} as of this commit
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return when this commit was applied, in milliseconds since the epoch
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return changed prop keys to their changes in String form. Unmodifiable.
+     */
+    public Map<String, PropChange<String>> changes() {
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this).
+                append("version", version).
+                append("timestamp", timestamp).
+                append("changes", changes).
+                toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.github.dirkraft.propslive.dynamic.listen;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+
+/**
+ * Pass an implementation to {@link DynamicProps#addCommitListener(PropsCommitListener)} to be notified of every commit
+ * of prop changes, whichever props they are.
+ * <p/>
+ * For listening on particular props, use {@link PropListener}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropsCommitListener {
+
+    /**
+     * Called while the changed props are still write-locked, so implementations should be quick about it, e.g. hand
+     * off to another thread for anything expensive.
+     *
+     * @param commit of prop changes that were just applied
+     */
+    void committed(PropsCommit commit);
+}
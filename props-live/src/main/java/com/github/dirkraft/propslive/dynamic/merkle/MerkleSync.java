@@ -0,0 +1,86 @@
+package com.github.dirkraft.propslive.dynamic.merkle;
+
+import com.github.dirkraft.propslive.Props;
+import org.apache.commons.lang3.ObjectUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Anti-entropy between two {@link MerkleView}s: compares their roots, and descends only into the children of nodes
+ * that differ, so that finding d differing props among n takes on the order of d log n hashes rather than all n props.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class MerkleSync {
+
+    /**
+     * @return leaves whose props differ, in ascending order; none if the roots are equal
+     * @throws IllegalArgumentException if the views are of different depths
+     */
+    public static int[] differingLeaves(MerkleView local, MerkleView remote) {
+        if (local.depth() != remote.depth()) {
+            throw new IllegalArgumentException("Cannot compare depth " + local.depth() + " with depth " +
+                    remote.depth());
+        }
+        int[] differing = {1};
+        for (int level = 0; level <= local.depth() && differing.length > 0; ++level) {
+            if (level > 0) {
+                // descend into the children of those that differed
+                int[] children = new int[differing.length * 2];
+                for (int i = 0; i < differing.length; ++i) {
+                    children[2 * i] = differing[i] << 1;
+                    children[2 * i + 1] = (differing[i] << 1) | 1;
+                }
+                differing = children;
+            }
+            long[] localHashes = local.hashes(differing);
+            long[] remoteHashes = remote.hashes(differing);
+            int count = 0;
+            for (int i = 0; i < differing.length; ++i) {
+                if (localHashes[i] != remoteHashes[i]) {
+                    differing[count++] = differing[i];
+                }
+            }
+            differing = Arrays.copyOf(differing, count);
+        }
+        return differing;
+    }
+
+    /**
+     * Makes the local props match the remote ones wherever they differ. Run again to pick up anything written while this
+     * was running.
+     *
+     * @param target to write the repairs to, normally the local {@link com.github.dirkraft.propslive.dynamic.DynamicProps}
+     *               which the local view is of
+     * @param local view of the target
+     * @param remote view of the props to match
+     * @return prop keys to the values they were repaired to, null where removed
+     * @throws com.github.dirkraft.propslive.dynamic.PropLockingException if a repaired prop is being written
+     *         concurrently
+     */
+    public static Map<String, String> repair(Props target, MerkleView local, MerkleView remote) {
+        Map<String, String> repaired = new LinkedHashMap<String, String>();
+        int[] leaves = differingLeaves(local, remote);
+        if (leaves.length == 0) {
+            return repaired;
+        }
+        Map<String, String> localProps = local.props(leaves);
+        Map<String, String> remoteProps = remote.props(leaves);
+        for (Map.Entry<String, String> remoteProp : remoteProps.entrySet()) {
+            if (!ObjectUtils.equals(localProps.get(remoteProp.getKey()), remoteProp.getValue())) {
+                repaired.put(remoteProp.getKey(), remoteProp.getValue());
+            }
+        }
+        for (String localKey : localProps.keySet()) {
+            if (!remoteProps.containsKey(localKey)) {
+                repaired.put(localKey, null);
+            }
+        }
+        for (Map.Entry<String, String> repair : repaired.entrySet()) {
+            target.setString(repair.getKey(), repair.getValue());
+        }
+        return repaired;
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.dirkraft.propslive.dynamic.merkle;
+
+import java.util.Map;
+
+/**
+ * What {@link MerkleSync} needs of one side of a comparison of props, e.g. a local {@link PropsMerkleTree}, or a stub
+ * forwarding these calls to one on another host.
+ * <p/>
+ * Nodes are numbered as in a binary heap: the root is 1, and the children of node n are 2n and 2n + 1, so that the
+ * nodes of level l, counting the root as level 0, are 2<sup>l</sup> to 2<sup>l+1</sup> - 1, and the leaves are those
+ * of level {@link #depth()}. Each prop belongs to one leaf, by the hash of its key; see
+ * {@link PropsMerkleTree#leafOf(String)}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface MerkleView {
+
+    /**
+     * @return levels below the root. Only views of the same depth can be compared.
+     */
+    int depth();
+
+    /**
+     * @param nodes to get the hashes of
+     * @return hashes of the nodes, in the same order. Equal hashes mean equal props under the nodes.
+     */
+    long[] hashes(int[] nodes);
+
+    /**
+     * @param leaves to get the props of
+     * @return every prop of the leaves
+     */
+    Map<String, String> props(int[] leaves);
+}
@@ -0,0 +1,170 @@
+package com.github.dirkraft.propslive.dynamic.merkle;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hash tree over all props of a {@link DynamicProps}, kept up to date with every commit, so that two instances can find
+ * which of their props differ by exchanging hashes of only the parts that differ. See {@link MerkleSync}. Get one from
+ * {@link DynamicProps#merkleTree(int)}.
+ * <p/>
+ * Props are spread over the 2<sup>depth</sup> leaves by the hash of their keys, and the hash of a node is the xor of
+ * a 64-bit hash of each key and value under it. So a write updates its leaf and the leaf's ancestors with the xor of
+ * its before and after hashes, without looking at any other prop, and without locking: a concurrent reader sees each
+ * node with or without the write, and may catch a write at some nodes but not yet others, which only means a
+ * difference that the next comparison will not find again.
+ * <p/>
+ * Only writes through the DynamicProps are seen. Writes made straight to its prop source, behind its back, leave the
+ * tree stale until {@link DynamicProps#merkleTree(int)} builds it anew.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropsMerkleTree implements MerkleView, PropsCommitListener {
+
+    /** 2<sup>20</sup> leaves, taking 16MB */
+    public static final int MAX_DEPTH = 20;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final DynamicProps<?> props;
+    private final int depth;
+    /** by node number, as in {@link MerkleView}; 0 is unused */
+    private final AtomicLongArray nodes;
+
+    /**
+     * Empty. Use {@link DynamicProps#merkleTree(int)}, which fills it and keeps it up to date.
+     *
+     * @param props which the tree is of, and whose props {@link #props(int[])} reads
+     * @param depth levels below the root, from 1 to {@link #MAX_DEPTH}
+     */
+    public PropsMerkleTree(DynamicProps<?> props, int depth) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be from 1 to " + MAX_DEPTH + ": " + depth);
+        }
+        this.props = props;
+        this.depth = depth;
+        this.nodes = new AtomicLongArray(2 << depth);
+    }
+
+    @Override
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return hash of all props, equal to that of another instance of the same depth with the same props
+     */
+    public long root() {
+        return nodes.get(1);
+    }
+
+    @Override
+    public long[] hashes(int[] nodes) {
+        long[] hashes = new long[nodes.length];
+        for (int i = 0; i < nodes.length; ++i) {
+            if (nodes[i] < 1 || nodes[i] >= this.nodes.length()) {
+                throw new IllegalArgumentException("No node " + nodes[i] + " at depth " + depth);
+            }
+            hashes[i] = this.nodes.get(nodes[i]);
+        }
+        return hashes;
+    }
+
+    /**
+     * Visits every prop of the DynamicProps, blocking its writes meanwhile, to collect those of the leaves.
+     */
+    @Override
+    public Map<String, String> props(int[] leaves) {
+        final BitSet wanted = new BitSet(1 << depth);
+        for (int leaf : leaves) {
+            if (leaf < (1 << depth) || leaf >= (2 << depth)) {
+                throw new IllegalArgumentException("No leaf " + leaf + " at depth " + depth);
+            }
+            wanted.set(leaf - (1 << depth));
+        }
+        final Map<String, String> leafProps = new HashMap<String, String>();
+        props.forEach(new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                if (wanted.get(leafOf(key) - (1 << depth))) {
+                    leafProps.put(key, value);
+                }
+                return true;
+            }
+        });
+        return leafProps;
+    }
+
+    /**
+     * @return node number of the leaf which the prop belongs to
+     */
+    public int leafOf(String key) {
+        return (1 << depth) | (int) (mix(fnv(FNV_OFFSET, key)) >>> (64 - depth));
+    }
+
+    /**
+     * Accounts for one prop changing.
+     *
+     * @param key of the prop
+     * @param before value, or null if it was not set
+     * @param after value, or null if it is no longer set
+     */
+    public void update(String key, String before, String after) {
+        long delta = hash(key, before) ^ hash(key, after);
+        if (delta == 0) {
+            return;
+        }
+        for (int node = leafOf(key); node >= 1; node >>>= 1) {
+            long hash;
+            do {
+                hash = nodes.get(node);
+            } while (!nodes.compareAndSet(node, hash, hash ^ delta));
+        }
+    }
+
+    @Override
+    public void committed(PropsCommit commit) {
+        for (Map.Entry<String, PropChange<String>> change : commit.changes().entrySet()) {
+            update(change.getKey(), change.getValue().old(), change.getValue().now());
+        }
+    }
+
+    /**
+     * @return hash of the prop, or 0 if not set, which xors to nothing
+     */
+    static long hash(String key, String value) {
+        if (value == null) {
+            return 0;
+        }
+        long hash = fnv(FNV_OFFSET, key);
+        hash = (hash ^ (0x10000L + key.length())) * FNV_PRIME; // more than any char, so "ab"="c" and "a"="bc" differ
+        hash = mix(fnv(hash, value));
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long fnv(long hash, String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /** MurmurHash3's fmix64, so that every bit of the input affects every bit of the output */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
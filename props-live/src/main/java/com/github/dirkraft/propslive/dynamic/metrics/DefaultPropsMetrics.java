@@ -0,0 +1,242 @@
+package com.github.dirkraft.propslive.dynamic.metrics;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PropsMetrics} that keeps per-prop read, write and lock failure counts in {@link StripedCounter}s, and lock
+ * waits and snapshot blocking in {@link LatencyHistogram}s. e.g.
+ * <pre>
+ * DefaultPropsMetrics metrics = new DefaultPropsMetrics();
+ * metrics.registerMBean("com.example:type=PropsMetrics,name=app");
+ * dynamicProps.metrics(metrics);
+ * </pre>
+ * Uncontended reads cost a map lookup and a striped increment. Lock waits are only recorded when there was one, so
+ * the histograms describe contention rather than every access.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class DefaultPropsMetrics implements PropsMetrics, PropsMetricsMXBean {
+
+    /** Number of props listed by {@link #getHotKeys()} */
+    public static final int HOT_KEYS = 20;
+
+    private volatile Metrics metrics = new Metrics();
+
+    @Override
+    public void read(String propKey, long lockWaitNanos) {
+        Metrics metrics = this.metrics;
+        metrics.propMetrics(propKey).reads.increment();
+        if (lockWaitNanos > 0) {
+            metrics.readLockWaits.record(lockWaitNanos);
+        }
+    }
+
+    @Override
+    public void write(String propKey, long lockWaitNanos) {
+        Metrics metrics = this.metrics;
+        metrics.propMetrics(propKey).writes.increment();
+        if (lockWaitNanos > 0) {
+            metrics.writeLockWaits.record(lockWaitNanos);
+        }
+    }
+
+    @Override
+    public void lockFailure(String propKey) {
+        metrics.propMetrics(propKey).lockFailures.increment();
+    }
+
+    @Override
+    public void snapshot(long blockingNanos) {
+        metrics.snapshotBlocking.record(blockingNanos);
+    }
+
+    /**
+     * @return reads of the prop, or 0 if it hasn't been accessed
+     */
+    public long reads(String propKey) {
+        PropMetrics propMetrics = metrics.props.get(propKey);
+        return propMetrics == null ? 0 : propMetrics.reads.sum();
+    }
+
+    /**
+     * @return writes of the prop, or 0 if it hasn't been accessed
+     */
+    public long writes(String propKey) {
+        PropMetrics propMetrics = metrics.props.get(propKey);
+        return propMetrics == null ? 0 : propMetrics.writes.sum();
+    }
+
+    /**
+     * @return failed writes of the prop, or 0 if it hasn't been accessed
+     */
+    public long lockFailures(String propKey) {
+        PropMetrics propMetrics = metrics.props.get(propKey);
+        return propMetrics == null ? 0 : propMetrics.lockFailures.sum();
+    }
+
+    /**
+     * @return time readers spent waiting on writers, when they had to
+     */
+    public LatencyHistogram readLockWaits() {
+        return metrics.readLockWaits;
+    }
+
+    /**
+     * @return time writers spent waiting on snapshots, when they had to
+     */
+    public LatencyHistogram writeLockWaits() {
+        return metrics.writeLockWaits;
+    }
+
+    /**
+     * @return time snapshots like {@link DynamicProps#asMap()} blocked writers for
+     */
+    public LatencyHistogram snapshotBlocking() {
+        return metrics.snapshotBlocking;
+    }
+
+    /**
+     * Registers this with the platform MBean server.
+     *
+     * @param objectName to register as, e.g. "com.example:type=PropsMetrics,name=app"
+     * @return the registered name, for later unregistering
+     * @throws IllegalStateException if registration fails, e.g. if the name is taken
+     */
+    public ObjectName registerMBean(String objectName) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            return mBeanServer.registerMBean(this, new ObjectName(objectName)).getObjectName();
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register MBean " + objectName, e);
+        }
+    }
+
+    @Override
+    public long getReads() {
+        long reads = 0;
+        for (PropMetrics propMetrics : metrics.props.values()) {
+            reads += propMetrics.reads.sum();
+        }
+        return reads;
+    }
+
+    @Override
+    public long getWrites() {
+        long writes = 0;
+        for (PropMetrics propMetrics : metrics.props.values()) {
+            writes += propMetrics.writes.sum();
+        }
+        return writes;
+    }
+
+    @Override
+    public long getLockFailures() {
+        long lockFailures = 0;
+        for (PropMetrics propMetrics : metrics.props.values()) {
+            lockFailures += propMetrics.lockFailures.sum();
+        }
+        return lockFailures;
+    }
+
+    @Override
+    public String[] getHotKeys() {
+        List<Map.Entry<String, long[]>> accesses = new ArrayList<Map.Entry<String, long[]>>();
+        for (Map.Entry<String, PropMetrics> prop : metrics.props.entrySet()) {
+            PropMetrics propMetrics = prop.getValue();
+            long[] counts = {propMetrics.reads.sum(), propMetrics.writes.sum(), propMetrics.lockFailures.sum()};
+            accesses.add(new AbstractMap.SimpleImmutableEntry<String, long[]>(prop.getKey(), counts));
+        }
+        Collections.sort(accesses, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+                long aTotal = a.getValue()[0] + a.getValue()[1];
+                long bTotal = b.getValue()[0] + b.getValue()[1];
+                return aTotal < bTotal ? 1 : aTotal == bTotal ? 0 : -1;
+            }
+        });
+        String[] hotKeys = new String[Math.min(HOT_KEYS, accesses.size())];
+        for (int i = 0; i < hotKeys.length; ++i) {
+            long[] counts = accesses.get(i).getValue();
+            hotKeys[i] = accesses.get(i).getKey() + " reads=" + counts[0] + " writes=" + counts[1]
+                    + " lockFailures=" + counts[2];
+        }
+        return hotKeys;
+    }
+
+    @Override
+    public long getReadLockWaitP99Micros() {
+        return metrics.readLockWaits.percentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getReadLockWaitMaxMicros() {
+        return metrics.readLockWaits.max(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWriteLockWaitP99Micros() {
+        return metrics.writeLockWaits.percentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getWriteLockWaitMaxMicros() {
+        return metrics.writeLockWaits.max(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getSnapshotBlockingP99Micros() {
+        return metrics.snapshotBlocking.percentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getSnapshotBlockingMaxMicros() {
+        return metrics.snapshotBlocking.max(TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Starts all metrics over from scratch. Accesses racing with the reset may be counted on either side of it.
+     */
+    @Override
+    public void reset() {
+        metrics = new Metrics();
+    }
+
+    /**
+     * Everything, swapped out as a whole by {@link #reset()}
+     */
+    private static class Metrics {
+        /** Keys are String prop keys */
+        final ConcurrentHashMap<String, PropMetrics> props = new ConcurrentHashMap<String, PropMetrics>();
+        final LatencyHistogram readLockWaits = new LatencyHistogram();
+        final LatencyHistogram writeLockWaits = new LatencyHistogram();
+        final LatencyHistogram snapshotBlocking = new LatencyHistogram();
+
+        PropMetrics propMetrics(String propKey) {
+            PropMetrics propMetrics = props.get(propKey);
+            if (propMetrics == null) {
+                props.putIfAbsent(propKey, new PropMetrics());
+                propMetrics = props.get(propKey);
+            }
+            return propMetrics;
+        }
+    }
+
+    private static class PropMetrics {
+        final StripedCounter reads = new StripedCounter();
+        final StripedCounter writes = new StripedCounter();
+        final StripedCounter lockFailures = new StripedCounter();
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.dirkraft.propslive.dynamic.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of nanosecond latencies, in the manner of HdrHistogram: values are bucketed by power of 2, and
+ * each power of 2 split linearly into 16 sub-buckets, so that any recorded value is known to within about 6% at a
+ * fixed footprint of a thousand or so counters. Recording is a couple of shifts and one atomic increment.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** values below SUB_BUCKETS are recorded exactly, then one set of sub-buckets per remaining power of 2 */
+    private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * @param nanos latency to record. Negatives are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        total.addAndGet(nanos);
+        long max;
+        while (nanos > (max = this.max.get()) && !this.max.compareAndSet(max, nanos)) {
+            // raced with another new max; try again
+        }
+    }
+
+    /**
+     * @return number of recorded latencies
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long max(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return mean recorded latency, or 0 if there are none
+     */
+    public long mean(TimeUnit unit) {
+        long count = count();
+        return count == 0 ? 0 : unit.convert(total.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return latency at or below which the given percentage of recorded latencies fall, to within the precision of
+     * the buckets, or 0 if none have been recorded
+     */
+    public long percentile(double percentile, TimeUnit unit) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            count += snapshot[i] = counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100d, Math.max(0d, percentile)) / 100d));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return unit.convert(Math.min(highestValue(i), max.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count() + ", meanMicros=" + mean(TimeUnit.MICROSECONDS)
+                + ", p50Micros=" + percentile(50, TimeUnit.MICROSECONDS)
+                + ", p99Micros=" + percentile(99, TimeUnit.MICROSECONDS)
+                + ", maxMicros=" + max(TimeUnit.MICROSECONDS);
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (shift * SUB_BUCKETS) + subBucket;
+    }
+
+    /**
+     * @return highest value that falls in the given bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = ((long) (SUB_BUCKETS + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.dirkraft.propslive.dynamic.metrics;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.PropLockingException;
+
+/**
+ * SPI for instrumenting the hot paths of a {@link DynamicProps}, as enabled by
+ * {@link DynamicProps#metrics(PropsMetrics)}. Implementations are called on the reading and writing threads, often
+ * while prop locks are held, so they should do little more than bump counters. {@link DefaultPropsMetrics} is one such,
+ * or adapt this to whatever metrics library is already in use.
+ * <p/>
+ * Lock waits are only timed when a lock could not be acquired immediately, and are otherwise reported as 0, so that
+ * uncontended accesses don't pay for reading the clock.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropsMetrics {
+
+    /**
+     * A prop was read, including as part of a {@link com.github.dirkraft.propslive.set.PropSet}.
+     *
+     * @param propKey read
+     * @param lockWaitNanos spent waiting for a concurrent write to the prop to finish
+     */
+    void read(String propKey, long lockWaitNanos);
+
+    /**
+     * A prop was written, whether or not its value changed.
+     *
+     * @param propKey written
+     * @param lockWaitNanos spent waiting on a concurrent {@link DynamicProps#asMap()} or similar whole-props snapshot
+     */
+    void write(String propKey, long lockWaitNanos);
+
+    /**
+     * A write to a prop failed with a {@link PropLockingException} because it was already locked.
+     *
+     * @param propKey which could not be written
+     */
+    void lockFailure(String propKey);
+
+    /**
+     * A whole-props snapshot, e.g. {@link DynamicProps#asMap()}, blocked all writers for this long.
+     *
+     * @param blockingNanos from requesting the snapshot lock until releasing it
+     */
+    void snapshot(long blockingNanos);
+}
@@ -0,0 +1,37 @@
+package com.github.dirkraft.propslive.dynamic.metrics;
+
+/**
+ * JMX view of {@link DefaultPropsMetrics}. Register with {@link DefaultPropsMetrics#registerMBean(String)}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropsMetricsMXBean {
+
+    long getReads();
+
+    long getWrites();
+
+    long getLockFailures();
+
+    /**
+     * @return the most read and written props, as "key reads=n writes=n lockFailures=n", busiest first
+     */
+    String[] getHotKeys();
+
+    long getReadLockWaitP99Micros();
+
+    long getReadLockWaitMaxMicros();
+
+    long getWriteLockWaitP99Micros();
+
+    long getWriteLockWaitMaxMicros();
+
+    long getSnapshotBlockingP99Micros();
+
+    long getSnapshotBlockingMaxMicros();
+
+    /**
+     * Clears all metrics
+     */
+    void reset();
+}
@@ -0,0 +1,78 @@
+package com.github.dirkraft.propslive.dynamic.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter for heavily contended increments, in the manner of Java 8's LongAdder. Uncontended, it is a single
+ * AtomicLong. Once increments start colliding, they are spread over a handful of cells, each on its own cache line,
+ * picked by the incrementing thread, so that threads on different cores rarely fight over the same line. Reading
+ * {@link #sum()} adds up the cells, so it is the comparatively slow side, and only exact when there are no concurrent
+ * increments.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class StripedCounter {
+
+    /** longs per 64 byte cache line, so that each cell gets a line to itself */
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLong base = new AtomicLong();
+    /** null until the first collision on {@link #base} */
+    private volatile AtomicLongArray cells;
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long delta) {
+        AtomicLongArray cells = this.cells;
+        if (cells == null) {
+            long base = this.base.get();
+            if (this.base.compareAndSet(base, base + delta)) {
+                return;
+            }
+            cells = inflate();
+        }
+        cells.getAndAdd(cell(), delta);
+    }
+
+    public long sum() {
+        long sum = base.get();
+        AtomicLongArray cells = this.cells;
+        if (cells != null) {
+            for (int i = 0; i < STRIPES; ++i) {
+                sum += cells.get(i * PADDING);
+            }
+        }
+        return sum;
+    }
+
+    private synchronized AtomicLongArray inflate() {
+        if (cells == null) {
+            cells = new AtomicLongArray(STRIPES * PADDING);
+        }
+        return cells;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    private static int cell() {
+        long id = Thread.currentThread().getId();
+        // spread sequential thread ids apart; STRIPES is a power of 2
+        int hash = (int) (id * 0x9E3779B97F4A7C15L >>> 32);
+        return (hash & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
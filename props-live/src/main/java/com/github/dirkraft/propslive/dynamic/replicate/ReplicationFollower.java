@@ -0,0 +1,338 @@
+package com.github.dirkraft.propslive.dynamic.replicate;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.PropLockingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies the batches published by a {@link ReplicationLeader} to a local {@link DynamicProps}, through its setters, so
+ * that local listeners fire just as for local writes. Each prop of a batch is set on its own, so local readers may see
+ * part of a batch applied.
+ * <p/>
+ * Connects on a non-blocking socket, and upon losing the connection, reconnects after the reconnect delay for as long
+ * as it is not closed, catching up on whatever it missed meanwhile from the leader's log or a snapshot. Props removed
+ * from the leader while this was gone are removed here too, as are props applied from a previous leader which the
+ * snapshot of a new one does not have.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ReplicationFollower implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private final DynamicProps<?> props;
+    private final InetSocketAddress leaderAddress;
+    private final long reconnectDelayMillis;
+
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private volatile boolean connected = false;
+
+    /** Guards the epoch and sequence, and signals their advance */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition applied = lock.newCondition();
+    private long epoch = 0;
+    private long sequence = 0;
+    /** every prop ever applied from the current epoch, and not removed since. Only touched by the follower thread. */
+    private final Set<String> replicated = new HashSet<String>();
+    /** props of the parts of a snapshot received so far, until its last frame. Only touched by the follower thread. */
+    private Map<String, String> snapshotParts;
+    private long snapshotPartsEpoch;
+    private long snapshotPartsSequence;
+
+    /**
+     * Starts following, connecting in the background.
+     *
+     * @param props to apply the leader's batches to
+     * @param leaderAddress of a {@link ReplicationLeader}
+     * @param reconnectDelay after losing, or failing to make, the connection
+     * @param unit of reconnect delay
+     * @throws IOException if no selector could be opened
+     */
+    public ReplicationFollower(DynamicProps<?> props, InetSocketAddress leaderAddress, long reconnectDelay,
+                               TimeUnit unit) throws IOException {
+        this.props = props;
+        this.leaderAddress = leaderAddress;
+        this.reconnectDelayMillis = unit.toMillis(reconnectDelay);
+        this.selector = Selector.open();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                followLoop();
+            }
+        }, "props-live-replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return whether currently connected to the leader
+     */
+    public boolean connected() {
+        return connected;
+    }
+
+    /**
+     * @return {@link ReplicationLeader#epoch()} of the leader last applied from, or 0 if none yet
+     */
+    public long epoch() {
+        lock.lock();
+        try {
+            return epoch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return sequence of the last batch applied, or snapshot if none since
+     */
+    public long sequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until this has applied up to a sequence of a leader, e.g. {@link ReplicationLeader#sequence()} after a
+     * local commit there.
+     *
+     * @param leaderEpoch {@link ReplicationLeader#epoch()} of the leader
+     * @param leaderSequence to wait for
+     * @param timeout to wait
+     * @param unit of timeout
+     * @return true if applied, or false if timed out
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitSequence(long leaderEpoch, long leaderSequence, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (epoch != leaderEpoch || sequence < leaderSequence) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = applied.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Disconnects, and stops following.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        thread.interrupt(); // from any reconnect delay
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting on the replication follower to stop", e);
+        }
+    }
+
+    private void followLoop() {
+        try {
+            while (!closed) {
+                try {
+                    follow();
+                } catch (IOException e) {
+                    if (!closed) {
+                        logger.warn("Lost replication leader " + leaderAddress + ". Reconnecting in " +
+                                reconnectDelayMillis + "ms: " + e);
+                    }
+                } finally {
+                    connected = false;
+                }
+                if (!closed) {
+                    try {
+                        Thread.sleep(reconnectDelayMillis);
+                    } catch (InterruptedException e) {
+                        // closing
+                    }
+                }
+            }
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close selector", e);
+            }
+        }
+    }
+
+    /**
+     * One connection, for as long as it lasts.
+     */
+    private void follow() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key;
+            if (channel.connect(leaderAddress)) {
+                key = channel.register(selector, SelectionKey.OP_WRITE);
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT);
+            }
+
+            ByteBuffer hello;
+            lock.lock();
+            try {
+                hello = ReplicationFrames.hello(epoch, sequence);
+                snapshotParts = null; // any from the last connection are never finished
+            } finally {
+                lock.unlock();
+            }
+            ReplicationFrames.FrameReader reader = new ReplicationFrames.FrameReader();
+
+            while (!closed) {
+                selector.select();
+                if (!selector.selectedKeys().remove(key)) {
+                    continue; // woken up
+                }
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    connected = true;
+                    logger.info("Connected to replication leader " + leaderAddress);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connected = true;
+                    channel.write(hello);
+                    if (!hello.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                if (key.isValid() && key.isReadable()) {
+                    for (ByteBuffer frame : reader.read(channel)) {
+                        apply(frame);
+                    }
+                }
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close " + channel, e);
+            }
+            // let the selector forget the cancelled key before the next connection registers
+            selector.selectNow();
+        }
+    }
+
+    private void apply(ByteBuffer frame) throws IOException {
+        byte type = frame.get();
+        if (type == ReplicationFrames.SNAPSHOT_PART) {
+            long snapshotEpoch = frame.getLong();
+            long snapshotSequence = frame.getLong();
+            if (snapshotParts == null || snapshotPartsEpoch != snapshotEpoch ||
+                    snapshotPartsSequence != snapshotSequence) {
+                snapshotParts = new HashMap<String, String>();
+                snapshotPartsEpoch = snapshotEpoch;
+                snapshotPartsSequence = snapshotSequence;
+            }
+            snapshotParts.putAll(ReplicationFrames.readProps(frame));
+
+        } else if (type == ReplicationFrames.SNAPSHOT) {
+            long snapshotEpoch = frame.getLong();
+            long snapshotSequence = frame.getLong();
+            Map<String, String> snapshot = ReplicationFrames.readProps(frame);
+            if (snapshotParts != null) {
+                if (snapshotPartsEpoch != snapshotEpoch || snapshotPartsSequence != snapshotSequence) {
+                    throw new IOException("Snapshot at " + snapshotSequence + " does not follow its parts");
+                }
+                snapshotParts.putAll(snapshot);
+                snapshot = snapshotParts;
+                snapshotParts = null;
+            }
+            // anything applied before which the leader does not know of is gone there
+            for (String key : replicated) {
+                if (!snapshot.containsKey(key)) {
+                    set(key, null);
+                }
+            }
+            replicated.clear();
+            applyProps(snapshot);
+            advance(snapshotEpoch, snapshotSequence);
+            logger.info("Applied snapshot of " + snapshot.size() + " props at " + snapshotSequence);
+
+        } else if (type == ReplicationFrames.BATCH) {
+            long batchSequence = frame.getLong();
+            long expected = sequence() + 1;
+            if (batchSequence != expected) {
+                // reconnecting will catch up properly
+                throw new IOException("Expected batch " + expected + " but got " + batchSequence);
+            }
+            applyProps(ReplicationFrames.readProps(frame));
+            advance(epoch(), batchSequence);
+
+        } else {
+            throw new IOException("Unexpected frame type " + type);
+        }
+    }
+
+    private void applyProps(Map<String, String> batch) {
+        for (Map.Entry<String, String> prop : batch.entrySet()) {
+            set(prop.getKey(), prop.getValue());
+            if (prop.getValue() == null) {
+                replicated.remove(prop.getKey());
+            } else {
+                replicated.add(prop.getKey());
+            }
+        }
+    }
+
+    /**
+     * Sets the prop, waiting out any local write of it at the same time.
+     */
+    private void set(String key, String value) {
+        while (true) {
+            try {
+                props.setString(key, value);
+                return;
+            } catch (PropLockingException e) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void advance(long epoch, long sequence) {
+        lock.lock();
+        try {
+            this.epoch = epoch;
+            this.sequence = sequence;
+            applied.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
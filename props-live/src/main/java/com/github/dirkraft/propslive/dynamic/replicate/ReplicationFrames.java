@@ -0,0 +1,222 @@
+package com.github.dirkraft.propslive.dynamic.replicate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wire format between a {@link ReplicationLeader} and its {@link ReplicationFollower}s. Every frame is an int length
+ * of the rest of the frame, then a type byte, then:
+ * <ul>
+ *     <li>{@link #HELLO}, follower to leader upon connecting: long epoch, long sequence of what the follower has
+ *     already applied, both 0 if nothing</li>
+ *     <li>{@link #SNAPSHOT_PART}: long epoch, long sequence, then some of the props as of that sequence. A large
+ *     snapshot is sent as any number of these, then the {@link #SNAPSHOT} with the rest.</li>
+ *     <li>{@link #SNAPSHOT}: long epoch, long sequence, then the props as of that sequence, besides those of the
+ *     parts before it</li>
+ *     <li>{@link #BATCH}: long sequence, then the props changed by the commit of that sequence</li>
+ * </ul>
+ * Props are an int count, then that many keys and values. Strings are an int length of UTF-8 bytes, -1 for null, then
+ * the bytes. A null value is a removal.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class ReplicationFrames {
+
+    static final byte HELLO = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte BATCH = 3;
+    static final byte SNAPSHOT_PART = 4;
+
+    /** Bigger than this and the peer is assumed to be speaking something else */
+    static final int MAX_FRAME_BYTES = 64 << 20;
+    /** Snapshots are split into frames of about this many bytes, so that they are never too big however many props */
+    static final int SNAPSHOT_PART_BYTES = 1 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static ByteBuffer hello(long epoch, long sequence) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + 1 + 8 + 8);
+        frame.putInt(1 + 8 + 8).put(HELLO).putLong(epoch).putLong(sequence);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @return {@link #SNAPSHOT_PART}s of about 'partBytes' each, if the props take more than that, then the
+     *         {@link #SNAPSHOT}
+     */
+    static List<ByteBuffer> snapshot(long epoch, long sequence, Map<String, String> props, int partBytes) {
+        List<ByteBuffer> frames = new ArrayList<ByteBuffer>();
+        Map<String, String> part = new LinkedHashMap<String, String>();
+        long bytes = 0;
+        for (Map.Entry<String, String> prop : props.entrySet()) {
+            part.put(prop.getKey(), prop.getValue());
+            // at most 3 UTF-8 bytes per char
+            bytes += 8 + 3L * prop.getKey().length() + (prop.getValue() == null ? 0 : 3L * prop.getValue().length());
+            if (bytes >= partBytes) {
+                frames.add(snapshotFrame(SNAPSHOT_PART, epoch, sequence, part));
+                part.clear();
+                bytes = 0;
+            }
+        }
+        frames.add(snapshotFrame(SNAPSHOT, epoch, sequence, part));
+        return frames;
+    }
+
+    private static ByteBuffer snapshotFrame(byte type, long epoch, long sequence, Map<String, String> props) {
+        FrameOutput out = new FrameOutput(type);
+        out.writeLong(epoch);
+        out.writeLong(sequence);
+        out.writeProps(props);
+        return out.toFrame();
+    }
+
+    static ByteBuffer batch(long sequence, Map<String, String> props) {
+        FrameOutput out = new FrameOutput(BATCH);
+        out.writeLong(sequence);
+        out.writeProps(props);
+        return out.toFrame();
+    }
+
+    /**
+     * @param frame positioned at the props
+     * @return the props in their order in the frame
+     */
+    static Map<String, String> readProps(ByteBuffer frame) throws IOException {
+        int count = frame.getInt();
+        if (count < 0 || count > frame.remaining() / 8) {
+            throw new IOException("Bad prop count " + count);
+        }
+        Map<String, String> props = new LinkedHashMap<String, String>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; ++i) {
+            String key = readString(frame);
+            if (key == null) {
+                throw new IOException("Null prop key");
+            }
+            props.put(key, readString(frame));
+        }
+        return props;
+    }
+
+    private static String readString(ByteBuffer frame) throws IOException {
+        int length = frame.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > frame.remaining()) {
+            throw new IOException("Bad string length " + length);
+        }
+        String s = new String(frame.array(), frame.arrayOffset() + frame.position(), length, UTF8);
+        frame.position(frame.position() + length);
+        return s;
+    }
+
+    private static class FrameOutput {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        FrameOutput(byte type) {
+            writeInt(0); // length, filled in by toFrame()
+            try {
+                out.writeByte(type);
+            } catch (IOException e) {
+                throw new AssertionError(e); // in memory
+            }
+        }
+
+        void writeInt(int i) {
+            try {
+                out.writeInt(i);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        void writeLong(long l) {
+            try {
+                out.writeLong(l);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        void writeString(String s) {
+            if (s == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] utf8 = s.getBytes(UTF8);
+            writeInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length); // DataOutputStream does not buffer
+        }
+
+        void writeProps(Map<String, String> props) {
+            writeInt(props.size());
+            for (Map.Entry<String, String> prop : props.entrySet()) {
+                writeString(prop.getKey());
+                writeString(prop.getValue());
+            }
+        }
+
+        ByteBuffer toFrame() {
+            ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+            frame.putInt(0, frame.remaining() - 4);
+            return frame.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Splits what arrives on a non-blocking channel into frames, however the bytes happen to be broken up. Not
+     * thread-safe.
+     */
+    static class FrameReader {
+        private ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        /**
+         * Reads what is available.
+         *
+         * @return the frames completed by this read, each positioned at its type byte
+         * @throws EOFException if the peer closed the channel
+         * @throws IOException on a bad frame length, or if the read failed
+         */
+        List<ByteBuffer> read(ReadableByteChannel channel) throws IOException {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Closed by peer");
+            }
+            buffer.flip();
+            List<ByteBuffer> frames = new ArrayList<ByteBuffer>(1);
+            int needed = 0;
+            while (buffer.remaining() >= 4) {
+                int length = buffer.getInt(buffer.position());
+                if (length < 1 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (buffer.remaining() < 4 + length) {
+                    needed = 4 + length;
+                    break;
+                }
+                byte[] frame = new byte[length];
+                buffer.getInt();
+                buffer.get(frame);
+                frames.add(ByteBuffer.wrap(frame));
+            }
+            buffer.compact();
+            if (needed > buffer.capacity()) {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            return frames;
+        }
+    }
+}
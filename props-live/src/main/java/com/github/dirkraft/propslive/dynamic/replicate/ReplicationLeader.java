@@ -0,0 +1,450 @@
+package com.github.dirkraft.propslive.dynamic.replicate;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.VersionedProp;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes the commits of a {@link DynamicProps} to {@link ReplicationFollower}s on other nodes. Each commit becomes
+ * a batch with the next sequence number, which is kept in a log of the last so many batches, and sent to every
+ * connected follower. A follower connecting says what it already has:
+ * <ul>
+ *     <li>if the log still holds every batch after that, it is sent just those</li>
+ *     <li>otherwise, e.g. a new follower, or one that was gone too long, it is sent a snapshot of every prop ever
+ *     committed through the DynamicProps, then the batches from there on</li>
+ * </ul>
+ * Every leader has a random epoch, so that a follower of a previous leader, whose sequences meant something else, gets a
+ * snapshot too.
+ * <p/>
+ * All sockets are non-blocking, served by one selector thread, so that a slow follower never holds up commits; a
+ * follower that falls {@link #MAX_QUEUED_BYTES} of batches behind is disconnected, and catches up when it reconnects.
+ * The snapshot a follower catches up from does not count against that, however big, and is sent in parts.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ReplicationLeader implements PropsCommitListener, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLeader.class);
+
+    /** Of batches waiting to be sent to one follower, beyond which it is disconnected */
+    public static final int MAX_QUEUED_BYTES = 16 << 20;
+
+    private final DynamicProps<?> props;
+    private final int logCapacity;
+    private final long epoch;
+
+    /** Guards everything below, up to the selector, so that followers see batches in sequence order with no gaps */
+    private final ReentrantLock lock = new ReentrantLock();
+    private long sequence = 0;
+    /** frames of the last up to 'logCapacity' batches, the last of which is of {@link #sequence} */
+    private final ArrayDeque<ByteBuffer> log = new ArrayDeque<ByteBuffer>();
+    /**
+     * every prop committed, as of {@link #sequence}, from which snapshots are taken. Removed props stay as nulls, so
+     * that they are removed from followers which missed the removal, and are not resurrected by the seed.
+     */
+    private final Map<String, String> state = new HashMap<String, String>();
+    /** those which have said hello, and so are sent every batch */
+    private final List<Follower> followers = new ArrayList<Follower>();
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    /** followers with new frames queued by committing threads, for the selector thread to start sending */
+    private final ConcurrentLinkedQueue<Follower> pendingWrites = new ConcurrentLinkedQueue<Follower>();
+    /** followers dropped by other threads, for the selector thread to disconnect, as it alone touches their keys */
+    private final ConcurrentLinkedQueue<Follower> pendingDisconnects = new ConcurrentLinkedQueue<Follower>();
+    private final Thread selectorThread;
+    private volatile boolean closed = false;
+
+    /**
+     * Starts publishing commits of the DynamicProps, including every prop already committed through it, and listening
+     * for followers.
+     *
+     * @param props to publish the commits of
+     * @param bindAddress to listen for followers on. Port 0 picks a free one; see {@link #localAddress()}
+     * @param logCapacity batches to keep for followers catching up, beyond which they are sent a snapshot instead
+     * @throws IOException if the address could not be bound
+     */
+    public ReplicationLeader(DynamicProps<?> props, InetSocketAddress bindAddress, int logCapacity)
+            throws IOException {
+        if (logCapacity < 1) {
+            throw new IllegalArgumentException("Log capacity must be at least 1: " + logCapacity);
+        }
+        this.props = props;
+        this.logCapacity = logCapacity;
+        long epoch;
+        do {
+            epoch = new Random().nextLong();
+        } while (epoch == 0); // 0 is a follower which has nothing
+        this.epoch = epoch;
+
+        // Listen first, so that nothing committed from here on is missed. Any prop already in the state by the time of
+        // the seed was committed again since, and is newer there, even if removed.
+        props.addCommitListener(this);
+        Map<String, VersionedProp> committed = props.changesSince(0).changes();
+        lock.lock();
+        try {
+            for (VersionedProp prop : committed.values()) {
+                if (!state.containsKey(prop.key()) && prop.value() != null) {
+                    state.put(prop.key(), prop.value());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            this.server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.socket().bind(bindAddress);
+            this.selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            props.removeCommitListener(this);
+            throw e;
+        }
+
+        this.selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                selectLoop();
+            }
+        }, "props-live-replication-leader");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * @return where followers should connect
+     */
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) server.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * @return identifies this leader's sequences, see {@link ReplicationFollower#epoch()}
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * @return of the last batch published, see {@link ReplicationFollower#sequence()}
+     */
+    public long sequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return followers connected and caught up to, or catching up to, the latest batch
+     */
+    public int followerCount() {
+        lock.lock();
+        try {
+            return followers.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the commit as the next batch. Only encodes and queues it, the selector thread does the sending.
+     */
+    @Override
+    public void committed(PropsCommit commit) {
+        Map<String, String> changes = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, PropChange<String>> change : commit.changes().entrySet()) {
+            changes.put(change.getKey(), change.getValue().now());
+        }
+
+        boolean anyFollowers;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            ByteBuffer frame = ReplicationFrames.batch(++sequence, changes);
+            log.addLast(frame);
+            if (log.size() > logCapacity) {
+                log.removeFirst();
+            }
+            state.putAll(changes);
+            for (Follower follower : followers) {
+                follower.enqueue(frame);
+                pendingWrites.add(follower);
+            }
+            anyFollowers = !followers.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+        if (anyFollowers) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Stops publishing commits, and disconnects all followers.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        props.removeCommitListener(this);
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting on the replication leader to stop", e);
+        }
+    }
+
+    /**
+     * Drops every follower's connection, as a network failure would. They reconnect and catch up.
+     */
+    void disconnectFollowers() {
+        lock.lock();
+        try {
+            // no further batches for them, even before the selector thread gets to closing them
+            pendingDisconnects.addAll(followers);
+            followers.clear();
+        } finally {
+            lock.unlock();
+        }
+        selector.wakeup();
+    }
+
+    private void selectLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+
+                Follower pending;
+                while ((pending = pendingDisconnects.poll()) != null) {
+                    logger.info("Disconnecting follower " + pending);
+                    disconnect(pending);
+                }
+                while ((pending = pendingWrites.poll()) != null) {
+                    if (pending.key.isValid()) {
+                        try {
+                            send(pending);
+                        } catch (IOException e) {
+                            logger.info("Disconnecting follower " + pending + ": " + e);
+                            disconnect(pending);
+                        }
+                    }
+                }
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Follower follower = (Follower) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            for (ByteBuffer frame : follower.reader.read(follower.channel)) {
+                                hello(follower, frame);
+                            }
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            send(follower);
+                        }
+                    } catch (IOException e) {
+                        logger.info("Disconnecting follower " + follower + ": " + e);
+                        disconnect(follower);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Replication leader selector failed. No longer publishing.", e);
+            props.removeCommitListener(this);
+        } finally {
+            lock.lock();
+            try {
+                closed = true;
+                for (Follower follower : new ArrayList<Follower>(followers)) {
+                    disconnect(follower);
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Follower) {
+                    disconnect((Follower) key.attachment());
+                }
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Follower follower = new Follower(channel);
+        follower.key = channel.register(selector, SelectionKey.OP_READ, follower);
+        logger.info("Follower " + follower + " connected");
+    }
+
+    /**
+     * Sends the follower a snapshot or the log tail, whichever gets it to the latest batch, and then every batch after.
+     */
+    private void hello(Follower follower, ByteBuffer frame) throws IOException {
+        if (frame.get() != ReplicationFrames.HELLO || follower.helloed) {
+            throw new IOException("Expected one hello");
+        }
+        long followerEpoch = frame.getLong();
+        long followerSequence = frame.getLong();
+
+        lock.lock();
+        try {
+            // the log holds sequence - log.size() + 1 through sequence
+            if (followerEpoch == epoch && followerSequence <= sequence && followerSequence >= sequence - log.size()) {
+                long logSequence = sequence - log.size();
+                for (ByteBuffer batch : log) {
+                    if (++logSequence > followerSequence) {
+                        follower.enqueue(batch);
+                    }
+                }
+                logger.info("Follower " + follower + " catching up from the log, " + (sequence - followerSequence) +
+                        " batches to " + sequence);
+            } else {
+                for (ByteBuffer part : ReplicationFrames.snapshot(epoch, sequence, state,
+                        ReplicationFrames.SNAPSHOT_PART_BYTES)) {
+                    follower.enqueue(part);
+                    follower.snapshotBytes += part.remaining();
+                }
+                logger.info("Follower " + follower + " catching up from a snapshot of " + state.size() +
+                        " props at " + sequence);
+            }
+            follower.helloed = true;
+            followers.add(follower);
+        } finally {
+            lock.unlock();
+        }
+        send(follower);
+    }
+
+    /**
+     * Writes what the socket will take of what is queued for the follower. On the selector thread.
+     */
+    private void send(Follower follower) throws IOException {
+        boolean drained;
+        lock.lock();
+        try {
+            if (follower.queuedBytes - follower.snapshotBytes > MAX_QUEUED_BYTES) {
+                throw new IOException("Fell " + (follower.queuedBytes - follower.snapshotBytes) + " bytes behind");
+            }
+            ByteBuffer head;
+            while ((head = follower.queue.peek()) != null) {
+                int written = follower.channel.write(head);
+                follower.queuedBytes -= written;
+                // the snapshot is queued ahead of any batch
+                follower.snapshotBytes -= Math.min(written, follower.snapshotBytes);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                follower.queue.poll();
+            }
+            drained = follower.queue.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+        follower.key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnect(Follower follower) {
+        lock.lock();
+        try {
+            followers.remove(follower);
+            follower.queue.clear();
+            follower.queuedBytes = 0;
+            follower.snapshotBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+        follower.key.cancel();
+        closeQuietly(follower.channel);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close " + closeable, e);
+        }
+    }
+
+    private static class Follower {
+        final SocketChannel channel;
+        final ReplicationFrames.FrameReader reader = new ReplicationFrames.FrameReader();
+        SelectionKey key;
+        boolean helloed = false;
+        /** Under the leader's lock */
+        final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+        long queuedBytes = 0;
+        /** of the queued bytes, those of the snapshot at the head of the queue, which are exempt from the limit */
+        long snapshotBytes = 0;
+
+        Follower(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Under the leader's lock */
+        void enqueue(ByteBuffer frame) {
+            ByteBuffer own = frame.duplicate(); // own position, shared bytes
+            queue.addLast(own);
+            queuedBytes += own.remaining();
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+/**
+ * What a subscription does when its bounded buffer is full because the subscriber has not requested changes as fast
+ * as they are being made. Either way, the writing thread is never blocked by a slow subscriber.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Merge the newest change into the last buffered change, e.g. for a single prop, a change from the last buffered
+     * change's old value to the newest value. Subscribers see fewer, coarser changes, but always catch up to the
+     * latest value. Suits consumers that only care about current state.
+     */
+    CONFLATE,
+
+    /**
+     * Keep every change. If the buffer overflows, the subscription is cancelled and the subscriber receives
+     * {@link PropChangeSubscriber#onError(Throwable)}. Suits consumers that must see every intermediate change.
+     */
+    BUFFER
+}
@@ -0,0 +1,167 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link PropChangeSubscription} with a bounded buffer. {@link #offer(Object)} is called on the writing thread and
+ * only ever enqueues. Delivery to the subscriber happens on an {@link Executor}, as demanded by the subscriber, with
+ * at most one delivering thread at a time so that the subscriber is signalled serially.
+ *
+ * @param <T> type of change delivered
+ * @author Jason Dunkelberger (dirkraft)
+ */
+abstract class BufferedSubscription<T> implements PropChangeSubscription, Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferedSubscription.class);
+
+    private final PropChangeSubscriber<? super T> subscriber;
+    private final BackpressurePolicy policy;
+    private final int capacity;
+    private final Executor executor;
+
+    /** guarded by this */
+    private final ArrayDeque<T> buffer = new ArrayDeque<T>();
+    /** guarded by this */
+    private long demand;
+    /** guarded by this. Terminal error to deliver in place of anything else. */
+    private Throwable error;
+
+    private volatile boolean cancelled;
+    /** Only touched by the delivering thread */
+    private boolean subscribed;
+    /** Number of times delivery was requested. Whoever brings this up from 0 does the delivering. */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    BufferedSubscription(PropChangeSubscriber<? super T> subscriber, BackpressurePolicy policy, int capacity,
+                         Executor executor) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, but was " + capacity);
+        }
+        this.subscriber = subscriber;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    /**
+     * @param older buffered change
+     * @param newer change that did not fit in the buffer
+     * @return a single change equivalent to 'older' followed by 'newer'
+     */
+    protected abstract T conflate(T older, T newer);
+
+    /**
+     * Called once upon cancellation, to stop whatever is calling {@link #offer(Object)}
+     */
+    protected abstract void unsubscribe();
+
+    /**
+     * Kicks off delivery, beginning with {@link PropChangeSubscriber#onSubscribe(PropChangeSubscription)}
+     */
+    void start() {
+        schedule();
+    }
+
+    /**
+     * Never blocks beyond a short critical section, regardless of the subscriber.
+     *
+     * @param change to enqueue for delivery
+     */
+    void offer(T change) {
+        if (cancelled) {
+            return;
+        }
+        synchronized (this) {
+            if (error != null) {
+                return;
+            }
+            if (buffer.size() < capacity) {
+                buffer.addLast(change);
+            } else if (policy == BackpressurePolicy.CONFLATE) {
+                buffer.addLast(conflate(buffer.pollLast(), change));
+            } else {
+                buffer.clear();
+                error = new IllegalStateException("Subscriber " + subscriber + " fell more than " + capacity +
+                        " changes behind.");
+            }
+        }
+        schedule();
+    }
+
+    @Override
+    public void request(long n) {
+        synchronized (this) {
+            if (n <= 0L) {
+                buffer.clear();
+                error = new IllegalArgumentException("Requested changes must be positive, but was " + n);
+            } else {
+                demand = demand + n < 0L ? Long.MAX_VALUE : demand + n; // saturate on overflow
+            }
+        }
+        schedule();
+    }
+
+    @Override
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            unsubscribe();
+            synchronized (this) {
+                buffer.clear();
+            }
+        }
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this);
+        }
+    }
+
+    /**
+     * Delivers as much as is buffered and demanded.
+     */
+    @Override
+    public void run() {
+        int missed = 1;
+        do {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            while (!cancelled) {
+                T change = null;
+                Throwable terminal;
+                synchronized (this) {
+                    terminal = error;
+                    if (terminal == null && demand > 0L) {
+                        change = buffer.pollFirst();
+                        if (change != null && demand != Long.MAX_VALUE) {
+                            --demand;
+                        }
+                    }
+                }
+                if (terminal != null) {
+                    cancel();
+                    subscriber.onError(terminal);
+                    break;
+                }
+                if (change == null) {
+                    break;
+                }
+                try {
+                    subscriber.onNext(change);
+                } catch (Throwable t) {
+                    logger.error("Exception delivering " + change + " to " + subscriber + ". Cancelling.", t);
+                    cancel();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
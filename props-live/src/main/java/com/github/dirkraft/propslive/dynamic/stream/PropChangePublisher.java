@@ -0,0 +1,19 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+/**
+ * A source of prop changes with backpressure. This follows the contract of the Reactive Streams Publisher (and so
+ * java.util.concurrent.Flow.Publisher of Java 9+), and can be adapted to either with a few lines of code.
+ *
+ * @param <T> type of change published
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropChangePublisher<T> {
+
+    /**
+     * Each subscriber gets its own bounded buffer and its own {@link PropChangeSubscription}. Changes are only ever
+     * delivered as requested through {@link PropChangeSubscription#request(long)}, and never on the writing thread.
+     *
+     * @param subscriber to deliver changes to
+     */
+    void subscribe(PropChangeSubscriber<? super T> subscriber);
+}
@@ -0,0 +1,260 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.listen.LazyPropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropSetChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.set.PropSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the commits of a {@link DynamicProps} as {@link PropChangePublisher}s per prop key, key prefix, or
+ * {@link PropSet}. Register an instance with {@link DynamicProps#addCommitListener(PropsCommitListener)}, or just use
+ * the publisher methods of {@link DynamicProps} which do that for you.
+ * <p/>
+ * Subscriptions are indexed by prop key, so a commit only costs in proportion to the subscriptions on the changed
+ * props (plus any prefix subscriptions). Delivery to subscribers happens on an {@link Executor}, never on the writing
+ * thread.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropChangeStreams implements PropsCommitListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PropChangeStreams.class);
+
+    /** Delivers to subscribers on daemon threads, created as needed. */
+    public static final Executor DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "props-live-stream-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** Current values are read from here, e.g. the after view of a {@link PropSet} change. */
+    private final PropSource source;
+
+    /** Keys are String prop keys */
+    private final ConcurrentHashMap<String, Set<BufferedSubscription<PropChange<String>>>> keySubscriptions =
+            new ConcurrentHashMap<String, Set<BufferedSubscription<PropChange<String>>>>();
+    private final Set<PrefixSubscription> prefixSubscriptions = new CopyOnWriteArraySet<PrefixSubscription>();
+    /** Keys are String prop keys. PropSet subscriptions are registered for every prop in {@link PropSet#propKeys()} */
+    private final ConcurrentHashMap<String, Set<PropSetSubscription<?>>> propSetSubscriptions =
+            new ConcurrentHashMap<String, Set<PropSetSubscription<?>>>();
+
+    /**
+     * @param source from which current values are read, normally the source behind the {@link DynamicProps} this is
+     *               registered with. Not the DynamicProps itself, as commits are delivered while the writer still
+     *               holds the locks of the props it wrote, so reading other props through their locks could deadlock
+     *               with another writer.
+     */
+    public PropChangeStreams(PropSource source) {
+        this.source = source;
+    }
+
+    /**
+     * @param propKey to publish changes of
+     * @param policy for when a subscriber falls 'capacity' changes behind
+     * @param capacity max buffered changes per subscriber
+     * @param executor to deliver to subscribers on
+     * @return publisher of the changes of a single prop
+     */
+    public PropChangePublisher<PropChange<String>> keyPublisher(final String propKey, final BackpressurePolicy policy,
+                                                                final int capacity, final Executor executor) {
+        return new PropChangePublisher<PropChange<String>>() {
+            @Override
+            public void subscribe(PropChangeSubscriber<? super PropChange<String>> subscriber) {
+                BufferedSubscription<PropChange<String>> subscription = new BufferedSubscription<PropChange<String>>(
+                        subscriber, policy, capacity, executor) {
+                    @Override
+                    protected PropChange<String> conflate(PropChange<String> older, PropChange<String> newer) {
+                        return new PropChange<String>(older.old(), newer.now());
+                    }
+
+                    @Override
+                    protected void unsubscribe() {
+                        getSubscriptions(keySubscriptions, propKey).remove(this);
+                    }
+                };
+                getSubscriptions(keySubscriptions, propKey).add(subscription);
+                subscription.start();
+            }
+        };
+    }
+
+    /**
+     * @param prefix of prop keys to publish changes of, e.g. "db." for all of "db.url", "db.user", ...
+     * @param policy for when a subscriber falls 'capacity' changes behind
+     * @param capacity max buffered commits per subscriber
+     * @param executor to deliver to subscribers on
+     * @return publisher of commits, each restricted to the changes of the props with the given prefix
+     */
+    public PropChangePublisher<PropsCommit> prefixPublisher(final String prefix, final BackpressurePolicy policy,
+                                                            final int capacity, final Executor executor) {
+        return new PropChangePublisher<PropsCommit>() {
+            @Override
+            public void subscribe(PropChangeSubscriber<? super PropsCommit> subscriber) {
+                PrefixSubscription subscription = new PrefixSubscription(prefix, subscriber, policy, capacity, executor);
+                prefixSubscriptions.add(subscription);
+                subscription.start();
+            }
+        };
+    }
+
+    /**
+     * @param propSet to publish changes of
+     * @param policy for when a subscriber falls 'capacity' changes behind
+     * @param capacity max buffered changes per subscriber
+     * @param executor to deliver to subscribers on
+     * @param <VALUES> pojo class of the PropSet
+     * @return publisher of the before and after {@link PropSet#getVals} of each commit that changed any of its props
+     */
+    public <VALUES> PropChangePublisher<PropChange<VALUES>> propSetPublisher(final PropSet<VALUES> propSet,
+                                                                           final BackpressurePolicy policy,
+                                                                           final int capacity, final Executor executor) {
+        return new PropChangePublisher<PropChange<VALUES>>() {
+            @Override
+            public void subscribe(PropChangeSubscriber<? super PropChange<VALUES>> subscriber) {
+                PropSetSubscription<VALUES> subscription = new PropSetSubscription<VALUES>(propSet, subscriber, policy,
+                        capacity, executor);
+                for (String propKey : propSet.propKeys()) {
+                    getSubscriptions(propSetSubscriptions, propKey).add(subscription);
+                }
+                subscription.start();
+            }
+        };
+    }
+
+    @Override
+    public void committed(PropsCommit commit) {
+        Set<PropSetSubscription<?>> affectedPropSetSubscriptions = null;
+        for (Map.Entry<String, PropChange<String>> change : commit.changes().entrySet()) {
+            Set<BufferedSubscription<PropChange<String>>> subscriptions = keySubscriptions.get(change.getKey());
+            if (subscriptions != null) {
+                for (BufferedSubscription<PropChange<String>> subscription : subscriptions) {
+                    subscription.offer(change.getValue());
+                }
+            }
+
+            Set<PropSetSubscription<?>> propSetSubs = propSetSubscriptions.get(change.getKey());
+            if (propSetSubs != null && !propSetSubs.isEmpty()) {
+                if (affectedPropSetSubscriptions == null) {
+                    affectedPropSetSubscriptions = new HashSet<PropSetSubscription<?>>();
+                }
+                affectedPropSetSubscriptions.addAll(propSetSubs);
+            }
+        }
+
+        for (PrefixSubscription subscription : prefixSubscriptions) {
+            subscription.offerFiltered(commit);
+        }
+
+        if (affectedPropSetSubscriptions != null) {
+            for (PropSetSubscription<?> subscription : affectedPropSetSubscriptions) {
+                try {
+                    subscription.offerChange(commit);
+                } catch (Exception e) {
+                    logger.error("Failed to compute PropChange for subscription on prop set of " +
+                            subscription.propSet.propKeys(), e);
+                }
+            }
+        }
+    }
+
+    private static <S> Set<S> getSubscriptions(ConcurrentHashMap<String, Set<S>> subscriptions, String propKey) {
+        Set<S> subs = subscriptions.get(propKey);
+        if (subs == null) {
+            subscriptions.putIfAbsent(propKey, Collections.newSetFromMap(new ConcurrentHashMap<S, Boolean>()));
+            subs = subscriptions.get(propKey);
+        }
+        return subs;
+    }
+
+    private class PrefixSubscription extends BufferedSubscription<PropsCommit> {
+
+        private final String prefix;
+
+        PrefixSubscription(String prefix, PropChangeSubscriber<? super PropsCommit> subscriber,
+                           BackpressurePolicy policy, int capacity, Executor executor) {
+            super(subscriber, policy, capacity, executor);
+            this.prefix = prefix;
+        }
+
+        void offerFiltered(PropsCommit commit) {
+            Map<String, PropChange<String>> changes = null;
+            for (Map.Entry<String, PropChange<String>> change : commit.changes().entrySet()) {
+                if (change.getKey().startsWith(prefix)) {
+                    if (changes == null) {
+                        changes = new LinkedHashMap<String, PropChange<String>>();
+                    }
+                    changes.put(change.getKey(), change.getValue());
+                }
+            }
+            if (changes != null) {
+                offer(new PropsCommit(commit.version(), commit.timestamp(), changes));
+            }
+        }
+
+        @Override
+        protected PropsCommit conflate(PropsCommit older, PropsCommit newer) {
+            Map<String, PropChange<String>> changes = new LinkedHashMap<String, PropChange<String>>(older.changes());
+            for (Map.Entry<String, PropChange<String>> change : newer.changes().entrySet()) {
+                PropChange<String> olderChange = changes.get(change.getKey());
+                changes.put(change.getKey(), olderChange == null ? change.getValue() :
+                        new PropChange<String>(olderChange.old(), change.getValue().now()));
+            }
+            return new PropsCommit(newer.version(), newer.timestamp(), changes);
+        }
+
+        @Override
+        protected void unsubscribe() {
+            prefixSubscriptions.remove(this);
+        }
+    }
+
+    private class PropSetSubscription<VALUES> extends BufferedSubscription<PropChange<VALUES>> {
+
+        private final PropSet<VALUES> propSet;
+
+        PropSetSubscription(PropSet<VALUES> propSet, PropChangeSubscriber<? super PropChange<VALUES>> subscriber,
+                            BackpressurePolicy policy, int capacity, Executor executor) {
+            super(subscriber, policy, capacity, executor);
+            this.propSet = propSet;
+        }
+
+        void offerChange(PropsCommit commit) {
+            offer(new PropSetChange<VALUES>(propSet, source, commit.changes()));
+        }
+
+        @Override
+        protected PropChange<VALUES> conflate(PropChange<VALUES> older, PropChange<VALUES> newer) {
+            return LazyPropChange.between(older, newer);
+        }
+
+        @Override
+        protected void unsubscribe() {
+            for (String propKey : propSet.propKeys()) {
+                getSubscriptions(propSetSubscriptions, propKey).remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+/**
+ * Receives prop changes from a {@link PropChangePublisher}. This follows the contract of the Reactive Streams
+ * Subscriber (and so java.util.concurrent.Flow.Subscriber of Java 9+): all methods are called serially, and
+ * {@link #onNext(Object)} is only called as many times as requested.
+ *
+ * @param <T> type of change received
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropChangeSubscriber<T> {
+
+    /**
+     * Called once before anything else. Nothing will be delivered until something is requested through the given
+     * subscription.
+     *
+     * @param subscription to request changes through, or cancel
+     */
+    void onSubscribe(PropChangeSubscription subscription);
+
+    /**
+     * @param change the next change
+     */
+    void onNext(T change);
+
+    /**
+     * Terminal. Called e.g. when a {@link BackpressurePolicy#BUFFER} subscription overflowed.
+     *
+     * @param error which ended the subscription
+     */
+    void onError(Throwable error);
+
+    /**
+     * Terminal. Prop changes are an endless stream, so this is only called if the publisher itself goes away.
+     */
+    void onComplete();
+}
@@ -0,0 +1,20 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+/**
+ * Link between one {@link PropChangeSubscriber} and a {@link PropChangePublisher}. This follows the contract of the
+ * Reactive Streams Subscription (and so java.util.concurrent.Flow.Subscription of Java 9+).
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropChangeSubscription {
+
+    /**
+     * @param n number of additional changes the subscriber is ready to receive. Must be positive.
+     */
+    void request(long n);
+
+    /**
+     * Stops delivery, and releases the subscription's buffer. Changes buffered but not yet delivered are dropped.
+     */
+    void cancel();
+}
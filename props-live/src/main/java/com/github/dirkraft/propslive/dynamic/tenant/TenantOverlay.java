@@ -0,0 +1,188 @@
+package com.github.dirkraft.propslive.dynamic.tenant;
+
+import com.github.dirkraft.propslive.PropsImpl;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.propsrc.PropSource;
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One tenant's view of the shared props of its {@link TenantOverlays}: its own overrides, falling through to the
+ * shared props for every other key. Wrap it in a {@link PropsImpl} for typed access.
+ * <p/>
+ * Overrides are kept in a small map which is copied on each write, so reads never lock and a tenant holds nothing but
+ * its overrides. Writes are expected to be rare. {@link #setString(String, String)} with a null value removes the
+ * override, so that the shared prop shows through again.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class TenantOverlay implements PropSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantOverlay.class);
+
+    private final TenantOverlays overlays;
+    private final String tenantId;
+
+    /** Replaced, never modified. Writers synchronize on this TenantOverlay. */
+    private volatile Map<String, String> overrides = Collections.emptyMap();
+    /** Keys are prop keys. Created upon the first listener. */
+    private volatile ConcurrentHashMap<String, CopyOnWriteArrayList<PropListener<String>>> listeners;
+
+    TenantOverlay(TenantOverlays overlays, String tenantId) {
+        this.overlays = overlays;
+        this.tenantId = tenantId;
+    }
+
+    public String tenantId() {
+        return tenantId;
+    }
+
+    @Override
+    public String description() {
+        return "tenant " + tenantId + " over " + overlays.base().description();
+    }
+
+    /**
+     * @return the tenant's override of the prop if it has one, or else the shared prop
+     */
+    @Override
+    public String getString(String key) {
+        Map<String, String> overrides = this.overrides;
+        String value = overrides.get(key);
+        return value != null ? value : overlays.base().getString(key);
+    }
+
+    /**
+     * Overrides the prop for this tenant only, firing this tenant's listeners of it if that changes what it sees.
+     *
+     * @param key of the prop
+     * @param value to override it with, or null to remove the override
+     */
+    @Override
+    public synchronized void setString(String key, String value) {
+        String before = getString(key);
+        Map<String, String> copy = new HashMap<String, String>(overrides);
+        if (value == null) {
+            copy.remove(key);
+        } else {
+            copy.put(key, value);
+        }
+        overrides = copy.isEmpty() ? Collections.<String, String>emptyMap() : copy;
+        String after = getString(key);
+        if (!ObjectUtils.equals(before, after)) {
+            notifyListeners(key, new PropChange<String>(before, after));
+        }
+    }
+
+    /**
+     * @param key of the prop
+     * @return whether this tenant overrides the prop
+     */
+    public boolean overrides(String key) {
+        return overrides.containsKey(key);
+    }
+
+    /**
+     * @return this tenant's overrides. Unmodifiable.
+     */
+    public Map<String, String> overrides() {
+        return Collections.unmodifiableMap(overrides);
+    }
+
+    /**
+     * @return the shared props, overridden by this tenant's
+     */
+    @Override
+    public Map<String, String> asMap() {
+        Map<String, String> map = new HashMap<String, String>(overlays.base().asMap());
+        map.putAll(overrides);
+        return map;
+    }
+
+    /**
+     * Fires the listener upon any change to what this tenant sees of the prop, whether of its override or, while it
+     * has none, of the shared prop.
+     *
+     * @param key of the prop
+     * @param listener to fire
+     */
+    public void addListener(String key, PropListener<String> listener) {
+        if (listeners == null) {
+            synchronized (this) {
+                if (listeners == null) {
+                    listeners = new ConcurrentHashMap<String, CopyOnWriteArrayList<PropListener<String>>>();
+                }
+            }
+        }
+        CopyOnWriteArrayList<PropListener<String>> keyListeners = listeners.get(key);
+        if (keyListeners == null) {
+            CopyOnWriteArrayList<PropListener<String>> newListeners = new CopyOnWriteArrayList<PropListener<String>>();
+            keyListeners = listeners.putIfAbsent(key, newListeners);
+            if (keyListeners == null) {
+                keyListeners = newListeners;
+            }
+        }
+        keyListeners.add(listener);
+        overlays.listen(key, this);
+    }
+
+    /**
+     * @param key of the prop
+     * @param listener to no longer fire
+     */
+    public void removeListener(String key, PropListener<String> listener) {
+        if (listeners == null) {
+            return;
+        }
+        CopyOnWriteArrayList<PropListener<String>> keyListeners = listeners.get(key);
+        if (keyListeners != null && keyListeners.remove(listener) && keyListeners.isEmpty()) {
+            listeners.remove(key);
+            overlays.unlisten(key, this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return description();
+    }
+
+    Set<String> listenedKeys() {
+        return listeners == null ? Collections.<String>emptySet() : listeners.keySet();
+    }
+
+    /**
+     * Called by {@link TenantOverlays} upon a change to a shared prop this tenant listens to
+     */
+    void baseChanged(String key, PropChange<String> change) {
+        if (!overrides.containsKey(key)) {
+            notifyListeners(key, change);
+        }
+    }
+
+    private void notifyListeners(String key, PropChange<String> change) {
+        if (listeners == null) {
+            return;
+        }
+        CopyOnWriteArrayList<PropListener<String>> keyListeners = listeners.get(key);
+        if (keyListeners == null) {
+            return;
+        }
+        for (PropListener<String> listener : keyListeners) {
+            try {
+                listener.reload(change);
+            } catch (Throwable t) {
+                logger.error("Exception notifying listener " + listener + " of tenant " + tenantId + " of change to " +
+                        key + ": " + change, t);
+            }
+        }
+    }
+}
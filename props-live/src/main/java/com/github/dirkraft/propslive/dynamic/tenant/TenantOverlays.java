@@ -0,0 +1,129 @@
+package com.github.dirkraft.propslive.dynamic.tenant;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Gives each of any number of tenants its own view of shared {@link DynamicProps}: the shared props, overridden by a
+ * few of the tenant's own, see {@link TenantOverlay}. Unlike a {@link
+ * com.github.dirkraft.propslive.propsrc.view.LayeredPropSource} per tenant, a change to a shared prop fires the
+ * listeners of the tenants which see it, i.e. which listen to it and do not override it, and no others.
+ * <p/>
+ * A tenant costs memory in proportion to its overrides and listeners, so thousands are cheap.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class TenantOverlays implements PropsCommitListener, Closeable {
+
+    private final DynamicProps<?> base;
+
+    /** Keys are tenant ids */
+    private final ConcurrentMap<String, TenantOverlay> tenants = new ConcurrentHashMap<String, TenantOverlay>();
+    /**
+     * Keys are prop keys. Values are the tenants with listeners on them, so that a change to a shared prop only visits
+     * the tenants that care.
+     */
+    private final ConcurrentMap<String, Set<TenantOverlay>> listening = new ConcurrentHashMap<String, Set<TenantOverlay>>();
+
+    /**
+     * Starts passing changes of the shared props on to tenants.
+     *
+     * @param base shared props
+     */
+    public TenantOverlays(DynamicProps<?> base) {
+        this.base = base;
+        base.addCommitListener(this);
+    }
+
+    /**
+     * @param tenantId of the tenant
+     * @return the tenant's view, created without overrides if this is the first time it is asked for
+     */
+    public TenantOverlay tenant(String tenantId) {
+        TenantOverlay tenant = tenants.get(tenantId);
+        if (tenant == null) {
+            TenantOverlay newTenant = new TenantOverlay(this, tenantId);
+            tenant = tenants.putIfAbsent(tenantId, newTenant);
+            if (tenant == null) {
+                tenant = newTenant;
+            }
+        }
+        return tenant;
+    }
+
+    /**
+     * @return ids of the tenants that currently have views. Unmodifiable.
+     */
+    public Set<String> tenantIds() {
+        return Collections.unmodifiableSet(tenants.keySet());
+    }
+
+    /**
+     * Drops the tenant's view, its overrides and listeners. Asking for the tenant again starts it afresh.
+     *
+     * @param tenantId of the tenant
+     */
+    public void remove(String tenantId) {
+        TenantOverlay tenant = tenants.remove(tenantId);
+        if (tenant != null) {
+            for (String propKey : tenant.listenedKeys()) {
+                unlisten(propKey, tenant);
+            }
+        }
+    }
+
+    /**
+     * Passes each change to the shared props on to the tenants listening to it, except for those overriding it.
+     */
+    @Override
+    public void committed(PropsCommit commit) {
+        for (Map.Entry<String, PropChange<String>> change : commit.changes().entrySet()) {
+            Set<TenantOverlay> listeners = listening.get(change.getKey());
+            if (listeners != null) {
+                for (TenantOverlay tenant : listeners) {
+                    tenant.baseChanged(change.getKey(), change.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops passing changes of the shared props on to tenants.
+     */
+    @Override
+    public void close() {
+        base.removeCommitListener(this);
+    }
+
+    DynamicProps<?> base() {
+        return base;
+    }
+
+    void listen(String propKey, TenantOverlay tenant) {
+        Set<TenantOverlay> listeners = listening.get(propKey);
+        if (listeners == null) {
+            Set<TenantOverlay> newListeners = Collections.newSetFromMap(new ConcurrentHashMap<TenantOverlay, Boolean>());
+            listeners = listening.putIfAbsent(propKey, newListeners);
+            if (listeners == null) {
+                listeners = newListeners;
+            }
+        }
+        listeners.add(tenant);
+    }
+
+    void unlisten(String propKey, TenantOverlay tenant) {
+        Set<TenantOverlay> listeners = listening.get(propKey);
+        if (listeners != null) {
+            listeners.remove(tenant);
+        }
+    }
+}
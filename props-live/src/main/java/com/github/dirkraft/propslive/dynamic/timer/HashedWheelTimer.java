@@ -0,0 +1,250 @@
+package com.github.dirkraft.propslive.dynamic.timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks after a delay, cheaply enough for tens of thousands to be pending at once, e.g. expiring prop overrides.
+ * Time is divided into ticks, and the wheel into as many buckets as ticks per turn. A task goes in the bucket of the
+ * tick it is due, counting how many more turns of the wheel to wait if it is due more than a turn away. Each tick, one
+ * thread runs the tasks of the next bucket which have no turns left. So scheduling and cancelling are O(1), and each
+ * tick only looks at one bucket, at the cost of tasks running up to a tick late.
+ * <p/>
+ * Tasks run on the timer's thread, one after another, so they should be quick.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class HashedWheelTimer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    /** scheduled, but not yet in a bucket. Only the timer thread touches the buckets. */
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<Timeout>();
+    /** cancelled, but perhaps still in a bucket */
+    private final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Thread thread;
+    private final long startNanos;
+    private volatile boolean closed = false;
+
+    /**
+     * Starts the timer's thread.
+     *
+     * @param name of the thread
+     * @param tickDuration how often the wheel turns a bucket, which is also how late a task may run
+     * @param unit of tick duration
+     * @param ticksPerWheel buckets, rounded up to a power of 2
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel < 1 || ticksPerWheel > 1 << 20) {
+            throw new IllegalArgumentException("Need a positive tick duration (" + tickDuration + ") and from 1 to " +
+                    (1 << 20) + " ticks per wheel (" + ticksPerWheel + ")");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int buckets = 1;
+        while (buckets < ticksPerWheel) {
+            buckets <<= 1;
+        }
+        this.wheel = new Bucket[buckets];
+        for (int i = 0; i < buckets; ++i) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = buckets - 1;
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                turn();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param task to run
+     * @param delay after which to run it
+     * @param unit of delay
+     * @return handle to cancel the task
+     * @throws IllegalStateException if closed
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("Timer " + thread.getName() + " is closed.");
+        }
+        Timeout timeout = new Timeout(task, System.nanoTime() + Math.max(0, unit.toNanos(delay)));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return tasks scheduled and not yet run or cancelled
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the timer. Pending tasks never run.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void turn() {
+        long tick = 0;
+        while (!closed) {
+            long sleepNanos = startNanos + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue; // closing
+                }
+            }
+            removeCancelled();
+            transferScheduled(tick);
+            expire(wheel[(int) (tick & mask)]);
+            ++tick;
+        }
+    }
+
+    private void transferScheduled(long tick) {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            // due at the end of which tick, but never one already gone by
+            long dueTick = Math.max(tick, (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    pending.decrementAndGet();
+                    try {
+                        timeout.task.run();
+                    } catch (Throwable t) {
+                        logger.error("Exception running timer task " + timeout.task, t);
+                    }
+                }
+            } else {
+                --timeout.remainingRounds;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A scheduled task, see {@link #schedule(Runnable, long, TimeUnit)}
+     */
+    public class Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        // only touched by the timer thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * @return true if cancelled by this call, or false if it had already run or been cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return whether the task has been run, or is running
+         */
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    /** Doubly linked, so that a cancelled timeout comes out in O(1) */
+    private static class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.dirkraft.propslive.propsrc;
+
+/**
+ * Reference counted pool of strings, each stored once and referred to by an int id. Ids are found by an open
+ * addressing (linear probing) table of plain ints, and are reused once released. Not thread-safe; see
+ * {@link PropSourceCompact}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class InternPool {
+
+    /** Slots hold id + 1, so that 0 is empty */
+    private int[] table = new int[16];
+
+    /** by id */
+    private String[] strings = new String[8];
+    /** by id; cached {@link #hash(String, int, int)} */
+    private int[] hashes = new int[8];
+    /** by id; 0 for a free id */
+    private int[] refs = new int[8];
+
+    /** released ids, to be reused */
+    private int[] freeIds = new int[8];
+    private int freeCount = 0;
+    /** ids ever handed out, including released ones */
+    private int idCount = 0;
+
+    private int size = 0;
+
+    /**
+     * @return same as {@link String#hashCode()} of <code>s.substring(start, end)</code>
+     */
+    static int hash(String s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return hash;
+    }
+
+    static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return id of <code>s.substring(start, end)</code>, or -1 if not in the pool
+     */
+    int find(String s, int start, int end, int hash) {
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && matches(strings[id], s, start, end)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a reference to <code>s.substring(start, end)</code>, pooling it if it is not already.
+     *
+     * @return id of the pooled string
+     */
+    int acquire(String s, int start, int end) {
+        int hash = hash(s, start, end);
+        int id = find(s, start, end, hash);
+        if (id >= 0) {
+            ++refs[id];
+            return id;
+        }
+
+        id = freeCount > 0 ? freeIds[--freeCount] : newId();
+        strings[id] = start == 0 && end == s.length() ? s : s.substring(start, end);
+        hashes[id] = hash;
+        refs[id] = 1;
+
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        insert(id);
+        return id;
+    }
+
+    /**
+     * Removes a reference to the pooled string, dropping it from the pool along with the last reference.
+     */
+    void release(int id) {
+        if (--refs[id] > 0) {
+            return;
+        }
+        int mask = table.length - 1;
+        int slot = spread(hashes[id]) & mask;
+        while (table[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+        }
+        removeSlot(table, slot, hashes);
+
+        strings[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = grow(freeIds);
+        }
+        freeIds[freeCount++] = id;
+        --size;
+    }
+
+    String get(int id) {
+        return strings[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return estimated bytes retained by the pool, including its strings, assuming compressed oops
+     */
+    long footprintBytes() {
+        long bytes = intArrayBytes(table.length) + intArrayBytes(hashes.length) + intArrayBytes(refs.length) +
+                intArrayBytes(freeIds.length) + refArrayBytes(strings.length);
+        for (int id = 0; id < idCount; ++id) {
+            if (strings[id] != null) {
+                bytes += stringBytes(strings[id].length());
+            }
+        }
+        return bytes;
+    }
+
+    private int newId() {
+        if (idCount == strings.length) {
+            String[] grownStrings = new String[strings.length * 2];
+            System.arraycopy(strings, 0, grownStrings, 0, strings.length);
+            strings = grownStrings;
+            hashes = grow(hashes);
+            refs = grow(refs);
+        }
+        return idCount++;
+    }
+
+    private void insert(int id) {
+        int mask = table.length - 1;
+        int slot = spread(hashes[id]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        table = new int[capacity];
+        for (int slotVal : oldTable) {
+            if (slotVal != 0) {
+                insert(slotVal - 1);
+            }
+        }
+    }
+
+    private static boolean matches(String pooled, String s, int start, int end) {
+        return pooled.length() == end - start && s.regionMatches(start, pooled, 0, end - start);
+    }
+
+    /**
+     * Empties a slot of a linear probing table whose slots hold id + 1, shifting back any later entries of the same
+     * probe run so that lookups never need tombstones.
+     *
+     * @param hashes by id, as were used to place the ids
+     */
+    static void removeSlot(int[] table, int slot, int[] hashes) {
+        int mask = table.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = spread(hashes[table[next] - 1]) & mask;
+            // move it back into the hole unless its home lies cyclically within (hole, next]
+            if (hole <= next ? (home <= hole || home > next) : (home <= hole && home > next)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    static long intArrayBytes(int length) {
+        return align(16 + 4L * length);
+    }
+
+    static long refArrayBytes(int length) {
+        return align(16 + 4L * length);
+    }
+
+    static long charArrayBytes(int length) {
+        return align(16 + 2L * length);
+    }
+
+    /** String header and fields, plus its char array */
+    static long stringBytes(int length) {
+        return 24 + charArrayBytes(length);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.dirkraft.propslive.propsrc;
+
+/**
+ * {@link PropSource} that can hand out its props one at a time, without first copying them all into a map. Use
+ * {@link PropSources} rather than these methods directly, as it falls back on {@link #asMap()} for every other
+ * PropSource.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface IterablePropSource extends PropSource {
+
+    /**
+     * Visits every prop, in no particular order. Whether a concurrent write is seen is up to the implementation; see
+     * its java doc.
+     *
+     * @param visitor of each prop
+     * @return true if every prop was visited, or false if the visitor stopped early
+     */
+    boolean forEach(PropVisitor visitor);
+
+    /**
+     * Visits one of <code>parts</code> disjoint parts of the props, so that several threads can visit all of them
+     * between them. See {@link PropSources#forEachParallel}.
+     *
+     * @param visitor of each prop of the part
+     * @param part to visit, from 0 to parts - 1
+     * @param parts to divide all of the props into
+     * @return true if every prop of the part was visited, or false if the visitor stopped early
+     */
+    boolean forEach(PropVisitor visitor, int part, int parts);
+}
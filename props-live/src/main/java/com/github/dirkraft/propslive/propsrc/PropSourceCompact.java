@@ -0,0 +1,335 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link PropSource} for very many props, e.g. millions of <code>tenant.&lt;id&gt;.feature.&lt;name&gt;</code>, that
+ * keeps far less per prop than {@link PropSourceMap}'s HashMap does:
+ * <ul>
+ *     <li>Keys are split at their last '.'. The namespace before it is pooled, so shared by every prop of the
+ *     namespace, and only the chars of the rest are stored per prop, all packed in one char array.</li>
+ *     <li>Values are pooled, so "true", "false", "100" and so on are each stored once however many props have
+ *     them.</li>
+ *     <li>Props are found by an open addressing table of plain ints over parallel int arrays, rather than by an entry
+ *     object and key String each.</li>
+ * </ul>
+ * With keys like the above this is a fraction of the bytes per prop of {@link PropSourceMap}, and no String
+ * or other object per prop at all; see {@link #footprintBytes()}. Reads do not allocate, but {@link #asMap()} builds
+ * every key back up, so is much costlier than that of a map.
+ * <p/>
+ * Thread-safe: reads share a lock and writes are exclusive, since unlike reads of a HashMap, reads here would not
+ * survive a concurrent resize. Setting a prop to <code>null</code> removes it.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceCompact implements IterablePropSource {
+
+    private static final int MIN_ARENA_COMPACTION = 1024;
+
+    private final String description;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** namespaces of keys, through their last '.' */
+    private final InternPool prefixes = new InternPool();
+    private final InternPool values = new InternPool();
+
+    /** Slots hold entry + 1, so that 0 is empty */
+    private int[] table = new int[16];
+
+    // By entry. An entry's suffix is the rest of its key after its prefix, found in the arena.
+    private int[] keyHashes = new int[8];
+    private int[] prefixIds = new int[8];
+    private int[] suffixOffsets = new int[8];
+    private int[] suffixLengths = new int[8];
+    private int[] valueIds = new int[8];
+
+    /** removed entries, to be reused */
+    private int[] freeEntries = new int[8];
+    private int freeCount = 0;
+    /** entries ever handed out, including removed ones */
+    private int entryCount = 0;
+
+    private int size = 0;
+
+    /** key suffixes of all entries, end to end */
+    private char[] arena = new char[256];
+    private int arenaUsed = 0;
+    /** chars of the arena that belonged to removed entries */
+    private int arenaGarbage = 0;
+
+    public PropSourceCompact() {
+        this("compact property source");
+    }
+
+    public PropSourceCompact(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @param description of this source
+     * @param props copied in
+     */
+    public PropSourceCompact(String description, Map<String, String> props) {
+        this(description);
+        for (Map.Entry<String, String> prop : props.entrySet()) {
+            setString(prop.getKey(), prop.getValue());
+        }
+    }
+
+    @Override
+    public String description() {
+        return description;
+    }
+
+    @Override
+    public String getString(String key) {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            int slot = findSlot(key, key.hashCode());
+            return slot < 0 ? null : values.get(valueIds[table[slot] - 1]);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void setString(String key, String value) {
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            int hash = key.hashCode();
+            int slot = findSlot(key, hash);
+            if (value == null) {
+                if (slot >= 0) {
+                    remove(slot);
+                }
+            } else if (slot >= 0) {
+                int entry = table[slot] - 1;
+                int oldValueId = valueIds[entry];
+                // acquire first, so that setting the same value does not drop it from the pool in between
+                valueIds[entry] = values.acquire(value, 0, value.length());
+                values.release(oldValueId);
+            } else {
+                add(key, hash, value);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return a copy of all props
+     */
+    @Override
+    public Map<String, String> asMap() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            Map<String, String> map = new HashMap<String, String>(size * 4 / 3 + 1);
+            for (int slotVal : table) {
+                if (slotVal != 0) {
+                    int entry = slotVal - 1;
+                    map.put(key(entry), values.get(valueIds[entry]));
+                }
+            }
+            return map;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    /**
+     * Visits under the read lock, so sees no concurrent writes, but holds them up until done. So the visitor must not
+     * write to this source itself. Parts are ranges of the hash table.
+     */
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        PropSources.checkPart(part, parts);
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            for (int slot = (int) ((long) table.length * part / parts),
+                         end = (int) ((long) table.length * (part + 1) / parts); slot < end; ++slot) {
+                int entry = table[slot] - 1;
+                if (entry >= 0 && !visitor.visit(key(entry), values.get(valueIds[entry]))) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of props
+     */
+    public int size() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Estimates bytes retained, from the sizes of all arrays and pooled strings of this source, assuming a 64-bit JVM
+     * with compressed oops. Divide by {@link #size()} for bytes per prop, to compare against some 100+ bytes per prop
+     * of a HashMap, i.e. its entry, table slot and key String, before counting the values.
+     *
+     * @return estimated bytes retained by this source
+     */
+    public long footprintBytes() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return InternPool.intArrayBytes(table.length) +
+                    5 * InternPool.intArrayBytes(keyHashes.length) +
+                    InternPool.intArrayBytes(freeEntries.length) +
+                    InternPool.charArrayBytes(arena.length) +
+                    prefixes.footprintBytes() +
+                    values.footprintBytes();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return slot of the key's entry, or -1 if there is none
+     */
+    private int findSlot(String key, int hash) {
+        int mask = table.length - 1;
+        for (int slot = InternPool.spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (keyHashes[entry] == hash && matches(entry, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int entry, String key) {
+        String prefix = prefixes.get(prefixIds[entry]);
+        int prefixLength = prefix.length();
+        int suffixLength = suffixLengths[entry];
+        if (prefixLength + suffixLength != key.length() || !key.startsWith(prefix)) {
+            return false;
+        }
+        for (int i = 0, offset = suffixOffsets[entry]; i < suffixLength; ++i) {
+            if (arena[offset + i] != key.charAt(prefixLength + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String key(int entry) {
+        String prefix = prefixes.get(prefixIds[entry]);
+        return new StringBuilder(prefix.length() + suffixLengths[entry])
+                .append(prefix)
+                .append(arena, suffixOffsets[entry], suffixLengths[entry])
+                .toString();
+    }
+
+    private void add(String key, int hash, String value) {
+        int suffixStart = key.lastIndexOf('.') + 1;
+        int suffixLength = key.length() - suffixStart;
+        int entry = freeCount > 0 ? freeEntries[--freeCount] : newEntry();
+
+        keyHashes[entry] = hash;
+        prefixIds[entry] = prefixes.acquire(key, 0, suffixStart);
+        valueIds[entry] = values.acquire(value, 0, value.length());
+
+        if (arenaUsed + suffixLength > arena.length) {
+            char[] grownArena = new char[Math.max(arena.length + (arena.length >> 1), arenaUsed + suffixLength)];
+            System.arraycopy(arena, 0, grownArena, 0, arenaUsed);
+            arena = grownArena;
+        }
+        key.getChars(suffixStart, key.length(), arena, arenaUsed);
+        suffixOffsets[entry] = arenaUsed;
+        suffixLengths[entry] = suffixLength;
+        arenaUsed += suffixLength;
+
+        if (++size * 3 > table.length * 2) { // load factor 2/3
+            int[] oldTable = table;
+            table = new int[table.length * 2];
+            for (int slotVal : oldTable) {
+                if (slotVal != 0) {
+                    insert(slotVal - 1);
+                }
+            }
+        }
+        insert(entry);
+    }
+
+    private void remove(int slot) {
+        int entry = table[slot] - 1;
+        InternPool.removeSlot(table, slot, keyHashes);
+        prefixes.release(prefixIds[entry]);
+        values.release(valueIds[entry]);
+        arenaGarbage += suffixLengths[entry];
+        suffixLengths[entry] = 0;
+
+        if (freeCount == freeEntries.length) {
+            freeEntries = InternPool.grow(freeEntries);
+        }
+        freeEntries[freeCount++] = entry;
+        --size;
+
+        if (arenaGarbage >= MIN_ARENA_COMPACTION && arenaGarbage * 2 > arenaUsed) {
+            compactArena();
+        }
+    }
+
+    /**
+     * Copies the suffixes of live entries into a fresh arena, leaving out those of removed entries.
+     */
+    private void compactArena() {
+        char[] compacted = new char[Math.max(256, (arenaUsed - arenaGarbage) * 3 / 2)];
+        int used = 0;
+        for (int slotVal : table) {
+            if (slotVal != 0) {
+                int entry = slotVal - 1;
+                System.arraycopy(arena, suffixOffsets[entry], compacted, used, suffixLengths[entry]);
+                suffixOffsets[entry] = used;
+                used += suffixLengths[entry];
+            }
+        }
+        arena = compacted;
+        arenaUsed = used;
+        arenaGarbage = 0;
+    }
+
+    private void insert(int entry) {
+        int mask = table.length - 1;
+        int slot = InternPool.spread(keyHashes[entry]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private int newEntry() {
+        if (entryCount == keyHashes.length) {
+            keyHashes = InternPool.grow(keyHashes);
+            prefixIds = InternPool.grow(prefixIds);
+            suffixOffsets = InternPool.grow(suffixOffsets);
+            suffixLengths = InternPool.grow(suffixLengths);
+            valueIds = InternPool.grow(valueIds);
+        }
+        return entryCount++;
+    }
+}
@@ -0,0 +1,27 @@
+package com.github.dirkraft.propslive.propsrc;
+
+/**
+ * A {@link PropSource} failed to read or write its backing store, e.g. a database.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceException extends RuntimeException {
+    public PropSourceException() {
+    }
+
+    public PropSourceException(String message) {
+        super(message);
+    }
+
+    public PropSourceException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public PropSourceException(Throwable cause) {
+        super(cause);
+    }
+
+    public PropSourceException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,556 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import com.github.dirkraft.propslive.Props;
+import com.github.dirkraft.propslive.propsrc.store.PropStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PropSource} over a table of a relational database, of one row per prop:
+ * <pre>
+ * prop_key VARCHAR(255) PRIMARY KEY, prop_value VARCHAR(4000), prop_version BIGINT NOT NULL
+ * </pre>
+ * along with a one-row table, the same name suffixed with "_version", of the last version handed out. Every write
+ * takes the next version and stamps it on each row it writes, and since taking a version locks that row until the
+ * write commits, versions commit in order. A removed prop keeps its row with a null value, so that
+ * {@link #pollInto(Props, long)} can see that it went away. See {@link #createTables()}.
+ * <p>
+ * Values held in memory keep the version of the row they came from, and are only replaced by those of newer rows, as
+ * writes and polls reach memory after their transactions end and so not necessarily in version order.
+ * <ul>
+ *     <li>{@link #prefetch(String)} reads a whole namespace in one query, and serves reads of it from memory from
+ *     then on, as kept up to date by this source's own writes and by {@link #startPolling}</li>
+ *     <li>{@link #setStrings(Map)} writes many props in one transaction of batched statements, as does
+ *     {@link #write(Map)} when this is the store of a
+ *     {@link com.github.dirkraft.propslive.propsrc.view.WriteBehindPropSource}</li>
+ *     <li>{@link #startPolling} applies to a {@link Props}, e.g. a DynamicProps over this source, only the rows
+ *     changed since the last poll, so that its listeners hear of writes made by other processes</li>
+ * </ul>
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceJdbc implements IterablePropSource, PropStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PropSourceJdbc.class);
+
+    public static final String KEY_COLUMN = "prop_key";
+    public static final String VALUE_COLUMN = "prop_value";
+    public static final String VERSION_COLUMN = "prop_version";
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String versionTable;
+
+    /**
+     * Rows of props of {@link #prefetchedNamespaces}. Absent ones, or those of a null value, are not set. Changes are
+     * guarded by this.
+     */
+    private final Map<String, Row> prefetched = new ConcurrentHashMap<String, Row>();
+    private final Set<String> prefetchedNamespaces = new CopyOnWriteArraySet<String>();
+    /**
+     * Keys are namespaces being prefetched. Values are the rows of them written meanwhile, which the prefetch query
+     * may have missed. Guarded by {@link #prefetched}, as are changes to {@link #prefetchedNamespaces}.
+     */
+    private final Map<String, Map<String, Row>> prefetchingNamespaces = new HashMap<String, Map<String, Row>>();
+
+    /**
+     * Set while {@link #pollInto(Props, long)} applies a polled row, which is already in the table
+     */
+    private final ThreadLocal<Row> applyingPolled = new ThreadLocal<Row>();
+
+    /**
+     * @param dataSource of the database
+     * @param table of props, which is also the prefix of the name of the version table
+     */
+    public PropSourceJdbc(DataSource dataSource, String table) {
+        this.dataSource = dataSource;
+        this.table = table;
+        this.versionTable = table + "_version";
+    }
+
+    /**
+     * Creates the props and version tables, which must not already exist.
+     *
+     * @throws SQLException if they could not be created
+     */
+    public void createTables() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.executeUpdate("CREATE TABLE " + table + " (" + KEY_COLUMN + " VARCHAR(255) PRIMARY KEY, " +
+                        VALUE_COLUMN + " VARCHAR(4000), " + VERSION_COLUMN + " BIGINT NOT NULL)");
+                statement.executeUpdate("CREATE INDEX " + table + "_by_version ON " + table + " (" + VERSION_COLUMN +
+                        ")");
+                statement.executeUpdate("CREATE TABLE " + versionTable + " (id INT PRIMARY KEY, " + VERSION_COLUMN +
+                        " BIGINT NOT NULL)");
+                statement.executeUpdate("INSERT INTO " + versionTable + " VALUES (0, 0)");
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Override
+    public String description() {
+        return "table " + table;
+    }
+
+    @Override
+    public String getString(String key) {
+        if (isPrefetched(key)) {
+            Row row = prefetched.get(key);
+            return row == null ? null : row.value;
+        }
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                PreparedStatement select = connection.prepareStatement("SELECT " + VALUE_COLUMN + " FROM " + table +
+                        " WHERE " + KEY_COLUMN + " = ?");
+                try {
+                    select.setString(1, key);
+                    ResultSet resultSet = select.executeQuery();
+                    return resultSet.next() ? resultSet.getString(1) : null;
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new PropSourceException("Failed to read " + key + " from " + description(), e);
+        }
+    }
+
+    @Override
+    public void setString(String key, String value) {
+        Row polled = applyingPolled.get();
+        if (polled != null && polled.key.equals(key) &&
+                (polled.value == null ? value == null : polled.value.equals(value))) {
+            // already in the table; only bring what this source remembers up to date. Any other write, e.g. by a
+            // listener of the polled change, goes to the table as usual.
+            applyingPolled.remove();
+            updatePrefetched(polled);
+            return;
+        }
+        setStrings(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Writes all of the props in one transaction, of one version, as one batch of updates and one of inserts for
+     * those props that had no row yet.
+     *
+     * @param props to write, where a null value removes the prop
+     * @throws PropSourceException if the transaction failed, in which case none were written
+     */
+    public void setStrings(Map<String, String> props) {
+        if (props.isEmpty()) {
+            return;
+        }
+        long version;
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    version = nextVersion(connection);
+                    List<String> keys = new ArrayList<String>(props.keySet());
+
+                    int[] updated;
+                    PreparedStatement update = connection.prepareStatement("UPDATE " + table + " SET " +
+                            VALUE_COLUMN + " = ?, " + VERSION_COLUMN + " = ? WHERE " + KEY_COLUMN + " = ?");
+                    try {
+                        for (String key : keys) {
+                            setValue(update, 1, props.get(key));
+                            update.setLong(2, version);
+                            update.setString(3, key);
+                            update.addBatch();
+                        }
+                        updated = update.executeBatch();
+                    } finally {
+                        update.close();
+                    }
+
+                    PreparedStatement insert = connection.prepareStatement("INSERT INTO " + table + " (" +
+                            KEY_COLUMN + ", " + VALUE_COLUMN + ", " + VERSION_COLUMN + ") VALUES (?, ?, ?)");
+                    try {
+                        boolean inserting = false;
+                        for (int i = 0; i < keys.size(); ++i) {
+                            // a removal of a prop that never was needs no row
+                            if (updated[i] == 0 && props.get(keys.get(i)) != null) {
+                                insert.setString(1, keys.get(i));
+                                insert.setString(2, props.get(keys.get(i)));
+                                insert.setLong(3, version);
+                                insert.addBatch();
+                                inserting = true;
+                            }
+                        }
+                        if (inserting) {
+                            insert.executeBatch();
+                        }
+                    } finally {
+                        insert.close();
+                    }
+
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new PropSourceException("Failed to write " + props.keySet() + " to " + description(), e);
+        }
+        // after the commit, so a later write of the same props may already be in memory
+        for (Map.Entry<String, String> prop : props.entrySet()) {
+            updatePrefetched(new Row(prop.getKey(), prop.getValue(), version));
+        }
+    }
+
+    /**
+     * @return every prop, read in one query
+     */
+    @Override
+    public Map<String, String> asMap() {
+        final Map<String, String> map = new HashMap<String, String>();
+        forEach(new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                map.put(key, value);
+                return true;
+            }
+        });
+        return map;
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    /**
+     * Streams the rows of one query, fetched a page at a time. Parts are by key hash, so each part still reads every
+     * row.
+     */
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        PropSources.checkPart(part, parts);
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                Statement select = connection.createStatement();
+                try {
+                    select.setFetchSize(FETCH_SIZE);
+                    ResultSet resultSet = select.executeQuery("SELECT " + KEY_COLUMN + ", " + VALUE_COLUMN +
+                            " FROM " + table + " WHERE " + VALUE_COLUMN + " IS NOT NULL");
+                    while (resultSet.next()) {
+                        String key = resultSet.getString(1);
+                        if (PropSources.inPart(key, part, parts) && !visitor.visit(key, resultSet.getString(2))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new PropSourceException("Failed to read all props from " + description(), e);
+        }
+    }
+
+    /**
+     * For {@link PropStore}, same as {@link #asMap()}
+     */
+    @Override
+    public Map<String, String> load() {
+        return asMap();
+    }
+
+    /**
+     * For {@link PropStore}, same as {@link #setStrings(Map)}
+     */
+    @Override
+    public void write(Map<String, String> batch) {
+        setStrings(batch);
+    }
+
+    /**
+     * Reads every prop whose key starts with the namespace in one query, and from then on serves reads of such props
+     * from memory rather than the database. Only writes through this source and changes applied by
+     * {@link #startPolling} keep them up to date, so prefetch only what this source writes, or else poll.
+     *
+     * @param namespace key prefix, e.g. "tenant.42."
+     */
+    public void prefetch(String namespace) {
+        String pattern = namespace.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+        Map<String, Row> loaded = new HashMap<String, Row>();
+        // writes from here on are remembered, as the query may or may not see them
+        synchronized (prefetched) {
+            if (prefetchedNamespaces.contains(namespace) || prefetchingNamespaces.containsKey(namespace)) {
+                return;
+            }
+            prefetchingNamespaces.put(namespace, new HashMap<String, Row>());
+        }
+        boolean done = false;
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                PreparedStatement select = connection.prepareStatement("SELECT " + KEY_COLUMN + ", " + VALUE_COLUMN +
+                        ", " + VERSION_COLUMN + " FROM " + table + " WHERE " + KEY_COLUMN + " LIKE ? ESCAPE '!'");
+                try {
+                    select.setFetchSize(FETCH_SIZE);
+                    select.setString(1, pattern);
+                    ResultSet resultSet = select.executeQuery();
+                    while (resultSet.next()) {
+                        // removed props too, as their versions still matter against older writes
+                        String key = resultSet.getString(1);
+                        loaded.put(key, new Row(key, resultSet.getString(2), resultSet.getLong(3)));
+                    }
+                    done = true;
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new PropSourceException("Failed to prefetch " + namespace + " from " + description(), e);
+        } finally {
+            synchronized (prefetched) {
+                Map<String, Row> writtenMeanwhile = prefetchingNamespaces.remove(namespace);
+                if (done) {
+                    // of a namespace within one already prefetched, memory may be ahead of the query
+                    for (Row row : loaded.values()) {
+                        putIfNewer(prefetched, row);
+                    }
+                    for (Row written : writtenMeanwhile.values()) {
+                        putIfNewer(prefetched, written);
+                    }
+                    prefetchedNamespaces.add(namespace);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the last version handed out to a write
+     */
+    public long version() {
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                Statement select = connection.createStatement();
+                try {
+                    ResultSet resultSet = select.executeQuery("SELECT " + VERSION_COLUMN + " FROM " + versionTable +
+                            " WHERE id = 0");
+                    resultSet.next();
+                    return resultSet.getLong(1);
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new PropSourceException("Failed to read the version of " + description(), e);
+        }
+    }
+
+    /**
+     * Applies to the target every row written after the given version, in version order. If the target fails to take
+     * one, e.g. on a PropLockingException of a DynamicProps, stops there so that the next poll starts from that row
+     * again.
+     *
+     * @param target to set the changed props of. Where that writes to this source, it is not written back to the
+     *               table. Where that also reads from this source, as a DynamicProps over it does, the target can only
+     *               tell that a prop changed if it is of a {@link #prefetch(String) prefetched} namespace, as only
+     *               for those does this source still hold the value from before the change.
+     * @param sinceVersion last version already applied
+     * @return last version applied, to pass to the next poll
+     */
+    public long pollInto(Props target, long sinceVersion) {
+        List<Row> rows = new ArrayList<Row>();
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                PreparedStatement select = connection.prepareStatement("SELECT " + KEY_COLUMN + ", " + VALUE_COLUMN +
+                        ", " + VERSION_COLUMN + " FROM " + table + " WHERE " + VERSION_COLUMN + " > ? ORDER BY " +
+                        VERSION_COLUMN);
+                try {
+                    select.setLong(1, sinceVersion);
+                    ResultSet resultSet = select.executeQuery();
+                    while (resultSet.next()) {
+                        rows.add(new Row(resultSet.getString(1), resultSet.getString(2), resultSet.getLong(3)));
+                    }
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new PropSourceException("Failed to poll changes of " + description(), e);
+        }
+
+        try {
+            for (int i = 0; i < rows.size(); ++i) {
+                Row row = rows.get(i);
+                try {
+                    applyingPolled.set(row);
+                    target.setString(row.key, row.value);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to apply polled change of " + row.key + " from " + description() +
+                            ". Will retry on the next poll.", e);
+                    // back to the last version fully applied; applying the rest of this one again changes nothing
+                    long appliedVersion = sinceVersion;
+                    for (int j = 0; j < i && rows.get(j).version < row.version; ++j) {
+                        appliedVersion = rows.get(j).version;
+                    }
+                    return appliedVersion;
+                }
+            }
+            return rows.isEmpty() ? sinceVersion : rows.get(rows.size() - 1).version;
+        } finally {
+            applyingPolled.remove();
+        }
+    }
+
+    /**
+     * Polls every interval with {@link #pollInto(Props, long)}, starting from the current {@link #version()}.
+     *
+     * @param target to set the changed props of, e.g. a DynamicProps over this source, whose listeners then hear of
+     *               changes made by other processes
+     * @param interval between polls
+     * @param unit of interval
+     * @return to close to stop polling
+     */
+    public Closeable startPolling(final Props target, long interval, TimeUnit unit) {
+        final long[] polledVersion = {version()};
+        final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "props-live-jdbc-poller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        poller.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    polledVersion[0] = pollInto(target, polledVersion[0]);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to poll " + description() + " for changes.", e);
+                }
+            }
+        }, interval, interval, unit);
+        return new Closeable() {
+            @Override
+            public void close() {
+                poller.shutdownNow();
+            }
+        };
+    }
+
+    private boolean isPrefetched(String key) {
+        for (String namespace : prefetchedNamespaces) {
+            if (key.startsWith(namespace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updatePrefetched(Row row) {
+        synchronized (prefetched) {
+            if (isPrefetched(row.key)) {
+                putIfNewer(prefetched, row);
+            }
+            for (Map.Entry<String, Map<String, Row>> prefetching : prefetchingNamespaces.entrySet()) {
+                if (row.key.startsWith(prefetching.getKey())) {
+                    putIfNewer(prefetching.getValue(), row);
+                }
+            }
+        }
+    }
+
+    private static void putIfNewer(Map<String, Row> rows, Row row) {
+        Row current = rows.get(row.key);
+        if (current == null || current.version <= row.version) {
+            rows.put(row.key, row);
+        }
+    }
+
+    /**
+     * Takes the next version, which locks the version row until the transaction ends.
+     */
+    private long nextVersion(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate("UPDATE " + versionTable + " SET " + VERSION_COLUMN + " = " + VERSION_COLUMN +
+                    " + 1 WHERE id = 0");
+            ResultSet resultSet = statement.executeQuery("SELECT " + VERSION_COLUMN + " FROM " + versionTable +
+                    " WHERE id = 0");
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void setValue(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
+    /**
+     * A prop as of a version, where a null value is a removed prop
+     */
+    private static class Row {
+        final String key;
+        final String value;
+        final long version;
+
+        Row(String key, String value, long version) {
+            this.key = key;
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
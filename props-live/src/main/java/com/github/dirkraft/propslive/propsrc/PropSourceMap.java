@@ -8,7 +8,7 @@ import java.util.Map;
  *
  * @author Jason Dunkelberger (dirkraft)
  */
-public class PropSourceMap implements PropSource {
+public class PropSourceMap implements IterablePropSource {
 
     private final String description;
     private final Map<String, String> props;
@@ -52,4 +52,17 @@ public class PropSourceMap implements PropSource {
     public Map<String, String> asMap() {
         return props;
     }
+
+    /**
+     * Iterates the underlying map directly, so is as safe under concurrent writes as iterating that map is.
+     */
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return PropSources.forEach(props, visitor, 0, 1);
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        return PropSources.forEach(props, visitor, part, parts);
+    }
 }
@@ -0,0 +1,518 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * {@link PropSource} for many millions of props that keeps them off-heap, so that they are no work for the garbage
+ * collector. Keys and values are stored UTF-8 encoded in records of direct {@link ByteBuffer} chunks, and found by a
+ * hash index that is itself a direct ByteBuffer. Of the heap, only a small cache of the most recently read props is
+ * used, so that hot props are not decoded over and over.
+ * <p/>
+ * Records come in power of two sizes, from 16 bytes up to a whole chunk. A value that still fits its record is
+ * updated in place. Otherwise the prop moves to a bigger record, and the old one goes on a free list of its size to be
+ * reused, as does the record of a prop removed by setting it to <code>null</code>.
+ * <p/>
+ * Thread-safe: reads share a lock and writes are exclusive. Reads allocate the key's bytes, and on a cache miss the
+ * value String.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceOffHeap implements IterablePropSource {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /** 4MB chunks */
+    private static final int CHUNK_BITS = 22;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /** Records are 8-byte aligned, so a record ref is its chunk, then its offset in 8 bytes */
+    private static final int OFFSET_BITS = CHUNK_BITS - 3;
+    private static final int MAX_CHUNKS = 1 << (31 - OFFSET_BITS);
+
+    // Record layout. Free records keep the ref of the next free record of their size where the hash was.
+    private static final int HASH = 0;
+    /** byte length of the key, or -1 for a free record */
+    private static final int KEY_LENGTH = 4;
+    private static final int VALUE_LENGTH = 8;
+    /** record is 16 << sizeClass bytes */
+    private static final int SIZE_CLASS = 12;
+    private static final int HEADER = 16;
+
+    private static final int SIZE_CLASSES = CHUNK_BITS - 4 + 1;
+
+    private final String description;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    /** bytes handed out of each chunk */
+    private int[] chunkUsed = new int[4];
+
+    /** head ref of the free list of each size class, or 0 for none */
+    private final int[] freeRecords = new int[SIZE_CLASSES];
+
+    /** Slots hold the ref of a record, 0 being empty, which is never a record as chunk 0 starts at offset 16. */
+    private ByteBuffer index;
+    private int indexCapacity;
+
+    private int size = 0;
+
+    /** Direct mapped by key hash. null if disabled. */
+    private final AtomicReferenceArray<CachedProp> hotCache;
+
+    public PropSourceOffHeap() {
+        this("off-heap property source", 1024);
+    }
+
+    /**
+     * @param description of this source
+     * @param hotCacheSize number of props to keep decoded on-heap, rounded up to a power of two, or 0 for none
+     */
+    public PropSourceOffHeap(String description, int hotCacheSize) {
+        this.description = description;
+        this.hotCache = hotCacheSize <= 0 ? null :
+                new AtomicReferenceArray<CachedProp>(Integer.highestOneBit(hotCacheSize - 1 | 1) << 1);
+        this.indexCapacity = 64;
+        this.index = ByteBuffer.allocateDirect(indexCapacity * 4);
+    }
+
+    @Override
+    public String description() {
+        return description;
+    }
+
+    @Override
+    public String getString(String key) {
+        int hash = key.hashCode();
+        int cacheSlot = hotCache == null ? 0 : InternPool.spread(hash) & (hotCache.length() - 1);
+
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            if (hotCache != null) {
+                CachedProp cached = hotCache.get(cacheSlot);
+                if (cached != null && cached.key.equals(key)) {
+                    return cached.value;
+                }
+            }
+            int slot = findSlot(key.getBytes(UTF8), hash);
+            if (slot < 0) {
+                return null;
+            }
+            int ref = index.getInt(slot * 4);
+            ByteBuffer chunk = chunk(ref);
+            int offset = offset(ref);
+            String value = decode(chunk, offset + HEADER + chunk.getInt(offset + KEY_LENGTH),
+                    chunk.getInt(offset + VALUE_LENGTH));
+            if (hotCache != null) {
+                // Still under the read lock, so no write can have invalidated the slot in between.
+                hotCache.set(cacheSlot, new CachedProp(key, value));
+            }
+            return value;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void setString(String key, String value) {
+        int hash = key.hashCode();
+        byte[] keyBytes = key.getBytes(UTF8);
+
+        Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+            if (hotCache != null) {
+                int cacheSlot = InternPool.spread(hash) & (hotCache.length() - 1);
+                CachedProp cached = hotCache.get(cacheSlot);
+                if (cached != null && cached.key.equals(key)) {
+                    hotCache.set(cacheSlot, null);
+                }
+            }
+
+            int slot = findSlot(keyBytes, hash);
+            if (value == null) {
+                if (slot >= 0) {
+                    int ref = index.getInt(slot * 4);
+                    removeSlot(slot);
+                    free(ref);
+                    --size;
+                }
+                return;
+            }
+
+            byte[] valueBytes = value.getBytes(UTF8);
+            if (slot >= 0) {
+                int ref = index.getInt(slot * 4);
+                ByteBuffer chunk = chunk(ref);
+                int offset = offset(ref);
+                if (HEADER + keyBytes.length + valueBytes.length <= 16 << chunk.getInt(offset + SIZE_CLASS)) {
+                    // in place
+                    put(chunk, offset + HEADER + keyBytes.length, valueBytes);
+                    chunk.putInt(offset + VALUE_LENGTH, valueBytes.length);
+                } else {
+                    index.putInt(slot * 4, write(hash, keyBytes, valueBytes));
+                    free(ref);
+                }
+            } else {
+                if ((size + 1) * 3 > indexCapacity * 2) { // load factor 2/3
+                    rehash(indexCapacity * 2);
+                }
+                insert(write(hash, keyBytes, valueBytes), hash);
+                ++size;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Streams the props straight out of their records rather than copying them all on-heap at once. Iteration is weakly
+     * consistent, like that of a ConcurrentHashMap: it never fails on a concurrent write, and sees each prop that is
+     * neither written nor removed meanwhile exactly once. Entries are snapshots of their props. The map is
+     * unmodifiable, and {@link Map#get(Object)} goes through {@link #getString(String)}.
+     *
+     * @return a live, unmodifiable view of all props
+     */
+    @Override
+    public Map<String, String> asMap() {
+        return new AbstractMap<String, String>() {
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<Entry<String, String>>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new RecordIterator(0, 1);
+                    }
+
+                    @Override
+                    public int size() {
+                        return PropSourceOffHeap.this.size();
+                    }
+                };
+            }
+
+            @Override
+            public String get(Object key) {
+                return key instanceof String ? getString((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+        };
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    /**
+     * As iteration of {@link #asMap()}, holds no lock while visiting, so the visitor may write to this source.
+     */
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        PropSources.checkPart(part, parts);
+        RecordIterator iterator = new RecordIterator(part, parts);
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> prop = iterator.next();
+            if (!visitor.visit(prop.getKey(), prop.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of props
+     */
+    public int size() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * @return bytes of direct memory allocated, by both the records and the index
+     */
+    public long offHeapBytes() {
+        Lock readLock = lock.readLock();
+        readLock.lock();
+        try {
+            return (long) chunks.size() * CHUNK_SIZE + index.capacity();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private int findSlot(byte[] keyBytes, int hash) {
+        int mask = indexCapacity - 1;
+        for (int slot = InternPool.spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int ref = index.getInt(slot * 4);
+            if (ref == 0) {
+                return -1;
+            }
+            ByteBuffer chunk = chunk(ref);
+            int offset = offset(ref);
+            if (chunk.getInt(offset + HASH) == hash && keyEquals(chunk, offset, keyBytes)) {
+                return slot;
+            }
+        }
+    }
+
+    private static boolean keyEquals(ByteBuffer chunk, int offset, byte[] keyBytes) {
+        if (chunk.getInt(offset + KEY_LENGTH) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0, keyOffset = offset + HEADER; i < keyBytes.length; ++i) {
+            if (chunk.get(keyOffset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int ref, int hash) {
+        int mask = indexCapacity - 1;
+        int slot = InternPool.spread(hash) & mask;
+        while (index.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putInt(slot * 4, ref);
+    }
+
+    private void rehash(int capacity) {
+        ByteBuffer oldIndex = index;
+        int oldCapacity = indexCapacity;
+        index = ByteBuffer.allocateDirect(capacity * 4);
+        indexCapacity = capacity;
+        for (int slot = 0; slot < oldCapacity; ++slot) {
+            int ref = oldIndex.getInt(slot * 4);
+            if (ref != 0) {
+                insert(ref, chunk(ref).getInt(offset(ref) + HASH));
+            }
+        }
+    }
+
+    /**
+     * Backward shift deletion, as {@link InternPool#removeSlot(int[], int, int[])}
+     */
+    private void removeSlot(int slot) {
+        int mask = indexCapacity - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; ; next = (next + 1) & mask) {
+            int ref = index.getInt(next * 4);
+            if (ref == 0) {
+                break;
+            }
+            int home = InternPool.spread(chunk(ref).getInt(offset(ref) + HASH)) & mask;
+            if (hole <= next ? (home <= hole || home > next) : (home <= hole && home > next)) {
+                index.putInt(hole * 4, ref);
+                hole = next;
+            }
+        }
+        index.putInt(hole * 4, 0);
+    }
+
+    /**
+     * @return ref of a new record of the prop
+     */
+    private int write(int hash, byte[] keyBytes, byte[] valueBytes) {
+        int length = HEADER + keyBytes.length + valueBytes.length;
+        if (length > CHUNK_SIZE) {
+            throw new IllegalArgumentException("Prop of " + length + " bytes is too big for an off-heap record.");
+        }
+        int sizeClass = Math.max(0, 32 - Integer.numberOfLeadingZeros(length - 1) - 4);
+
+        int ref = freeRecords[sizeClass];
+        ByteBuffer chunk;
+        int offset;
+        if (ref != 0) {
+            chunk = chunk(ref);
+            offset = offset(ref);
+            freeRecords[sizeClass] = chunk.getInt(offset + HASH);
+        } else {
+            ref = allocate(16 << sizeClass);
+            chunk = chunk(ref);
+            offset = offset(ref);
+        }
+
+        chunk.putInt(offset + HASH, hash);
+        chunk.putInt(offset + KEY_LENGTH, keyBytes.length);
+        chunk.putInt(offset + VALUE_LENGTH, valueBytes.length);
+        chunk.putInt(offset + SIZE_CLASS, sizeClass);
+        put(chunk, offset + HEADER, keyBytes);
+        put(chunk, offset + HEADER + keyBytes.length, valueBytes);
+        return ref;
+    }
+
+    private void free(int ref) {
+        ByteBuffer chunk = chunk(ref);
+        int offset = offset(ref);
+        int sizeClass = chunk.getInt(offset + SIZE_CLASS);
+        chunk.putInt(offset + KEY_LENGTH, -1);
+        chunk.putInt(offset + HASH, freeRecords[sizeClass]);
+        freeRecords[sizeClass] = ref;
+    }
+
+    /**
+     * Bump allocates a record from the last chunk, or a new chunk if it does not fit. What is left of the last chunk
+     * is not lost, but handed out to the free lists as the biggest records that fit.
+     *
+     * @return ref of the new record
+     */
+    private int allocate(int recordSize) {
+        int last = chunks.size() - 1;
+        if (last < 0 || chunkUsed[last] + recordSize > CHUNK_SIZE) {
+            if (last >= 0) {
+                freeRemainder(last);
+            }
+            if (chunks.size() == MAX_CHUNKS) {
+                throw new IllegalStateException("Out of off-heap chunks for " + description);
+            }
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            ++last;
+            if (last == chunkUsed.length) {
+                chunkUsed = InternPool.grow(chunkUsed);
+            }
+            chunkUsed[last] = last == 0 ? 16 : 0; // so that no record has ref 0
+        }
+        int offset = chunkUsed[last];
+        chunkUsed[last] += recordSize;
+        return last << OFFSET_BITS | offset >>> 3;
+    }
+
+    private void freeRemainder(int chunkIndex) {
+        ByteBuffer chunk = chunks.get(chunkIndex);
+        int offset = chunkUsed[chunkIndex];
+        while (CHUNK_SIZE - offset >= 16) {
+            int sizeClass = 31 - Integer.numberOfLeadingZeros(CHUNK_SIZE - offset) - 4;
+            chunk.putInt(offset + SIZE_CLASS, sizeClass);
+            free(chunkIndex << OFFSET_BITS | offset >>> 3);
+            offset += 16 << sizeClass;
+        }
+        chunkUsed[chunkIndex] = offset;
+    }
+
+    private ByteBuffer chunk(int ref) {
+        return chunks.get(ref >>> OFFSET_BITS);
+    }
+
+    private static int offset(int ref) {
+        return (ref & ((1 << OFFSET_BITS) - 1)) << 3;
+    }
+
+    private static void put(ByteBuffer chunk, int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; ++i) {
+            chunk.put(offset + i, bytes[i]);
+        }
+    }
+
+    private static String decode(ByteBuffer chunk, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = chunk.get(offset + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    private static class CachedProp {
+        final String key;
+        final String value;
+
+        CachedProp(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Walks every record of every chunk in address order, which unlike the index never moves, skipping free ones.
+     * Takes the read lock only to find and decode each next prop.
+     */
+    private class RecordIterator implements Iterator<Map.Entry<String, String>> {
+
+        private final int part;
+        private final int parts;
+
+        private int chunkIndex = 0;
+        private int offset = 16;
+        private Map.Entry<String, String> next;
+
+        /**
+         * @param part of the props to iterate, by {@link PropSources#inPart(String, int, int)}
+         * @param parts of all the props
+         */
+        RecordIterator(int part, int parts) {
+            this.part = part;
+            this.parts = parts;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            Lock readLock = lock.readLock();
+            readLock.lock();
+            try {
+                while (chunkIndex < chunks.size()) {
+                    if (offset >= chunkUsed[chunkIndex]) {
+                        ++chunkIndex;
+                        offset = 0;
+                        continue;
+                    }
+                    ByteBuffer chunk = chunks.get(chunkIndex);
+                    int recordOffset = offset;
+                    offset += 16 << chunk.getInt(recordOffset + SIZE_CLASS);
+                    int keyLength = chunk.getInt(recordOffset + KEY_LENGTH);
+                    if (keyLength < 0) {
+                        continue;
+                    }
+                    String key = decode(chunk, recordOffset + HEADER, keyLength);
+                    if (PropSources.inPart(key, part, parts)) {
+                        next = new AbstractMap.SimpleImmutableEntry<String, String>(key, decode(chunk,
+                                recordOffset + HEADER + keyLength, chunk.getInt(recordOffset + VALUE_LENGTH)));
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, String> entry = next;
+            next = null;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Off-heap prop source map view is unmodifiable.");
+        }
+    }
+}
@@ -7,7 +7,7 @@ import java.util.Properties;
 /**
  * @author Jason Dunkelberger (dirkraft)
  */
-public class PropSourceSysProps implements PropSource {
+public class PropSourceSysProps implements IterablePropSource {
 
     @Override
     public String description() {
@@ -37,4 +37,27 @@ public class PropSourceSysProps implements PropSource {
         }
         return map;
     }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    /**
+     * Visits system properties while holding their lock, as {@link Properties} does for each of its own operations, so
+     * sees no concurrent writes at all, but also holds up any until done.
+     */
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        Properties properties = System.getProperties();
+        synchronized (properties) {
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                String key = entry.getKey().toString();
+                if (PropSources.inPart(key, part, parts) && !visitor.visit(key, entry.getValue().toString())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streaming iteration over any {@link PropSource}: through {@link IterablePropSource} where it is one, and otherwise
+ * over its {@link PropSource#asMap()}.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSources {
+
+    /**
+     * @param source to visit the props of
+     * @param visitor of each prop
+     * @return true if every prop was visited, or false if the visitor stopped early
+     */
+    public static boolean forEach(PropSource source, PropVisitor visitor) {
+        if (source instanceof IterablePropSource) {
+            return ((IterablePropSource) source).forEach(visitor);
+        }
+        return forEach(source.asMap(), visitor, 0, 1);
+    }
+
+    /**
+     * @param source to visit a part of the props of
+     * @param visitor of each prop of the part
+     * @param part to visit, from 0 to parts - 1
+     * @param parts to divide all of the props into
+     * @return true if every prop of the part was visited, or false if the visitor stopped early
+     * @see IterablePropSource#forEach(PropVisitor, int, int)
+     */
+    public static boolean forEach(PropSource source, PropVisitor visitor, int part, int parts) {
+        checkPart(part, parts);
+        if (source instanceof IterablePropSource) {
+            return ((IterablePropSource) source).forEach(visitor, part, parts);
+        }
+        return forEach(source.asMap(), visitor, part, parts);
+    }
+
+    /**
+     * Visits the props with up to <code>parts</code> threads of the executor at once, each visiting its own part. The
+     * visitor must be thread-safe. Once it returns false in any part, the other parts stop as soon as they next visit.
+     *
+     * @param source to visit the props of
+     * @param visitor of each prop, thread-safe
+     * @param executor to run the parts on
+     * @param parts to divide all of the props into, e.g. the number of cores
+     * @return true if every prop was visited, or false if the visitor stopped early
+     * @throws InterruptedException if interrupted while waiting on the parts
+     * @throws RuntimeException thrown by the visitor of any part, after all parts finish
+     */
+    public static boolean forEachParallel(final PropSource source, final PropVisitor visitor, ExecutorService executor,
+                                          final int parts) throws InterruptedException {
+        checkPart(0, parts);
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final PropVisitor stoppingVisitor = new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                if (stopped.get()) {
+                    return false;
+                }
+                if (!visitor.visit(key, value)) {
+                    stopped.set(true);
+                    return false;
+                }
+                return true;
+            }
+        };
+
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(parts);
+        for (int i = 0; i < parts; ++i) {
+            final int part = i;
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return forEach(source, stoppingVisitor, part, parts);
+                }
+            }));
+        }
+
+        RuntimeException thrown = null;
+        for (Future<Boolean> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (thrown == null) {
+                    thrown = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                            new RuntimeException(e.getCause());
+                }
+            }
+        }
+        if (thrown != null) {
+            throw thrown;
+        }
+        return !stopped.get();
+    }
+
+    /**
+     * @return a copy of all props, made through {@link #forEach(PropSource, PropVisitor)}
+     */
+    public static Map<String, String> snapshot(PropSource source) {
+        final Map<String, String> snapshot = new HashMap<String, String>();
+        forEach(source, new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                snapshot.put(key, value);
+                return true;
+            }
+        });
+        return snapshot;
+    }
+
+    /**
+     * @return whether the key falls in the part, for sources with no better way of dividing their props
+     */
+    public static boolean inPart(String key, int part, int parts) {
+        if (parts == 1) {
+            return true;
+        }
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % parts == part;
+    }
+
+    static boolean forEach(Map<String, String> props, PropVisitor visitor, int part, int parts) {
+        for (Map.Entry<String, String> prop : props.entrySet()) {
+            if (inPart(prop.getKey(), part, parts) && !visitor.visit(prop.getKey(), prop.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void checkPart(int part, int parts) {
+        if (parts < 1 || part < 0 || part >= parts) {
+            throw new IllegalArgumentException("Part " + part + " is not one of " + parts + " parts.");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.dirkraft.propslive.propsrc;
+
+/**
+ * Visited with each prop of a {@link PropSource} by {@link PropSources#forEach(PropSource, PropVisitor)}, instead of
+ * building the whole {@link PropSource#asMap()} only to iterate it once.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropVisitor {
+
+    /**
+     * @param key of a prop
+     * @param value of the prop
+     * @return true to go on to the next prop, or false to stop here
+     */
+    boolean visit(String key, String value);
+}
@@ -0,0 +1,28 @@
+package com.github.dirkraft.propslive.propsrc.store;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Durable store of props, written in batches by a
+ * {@link com.github.dirkraft.propslive.propsrc.view.WriteBehindPropSource}, so that they survive restarts.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public interface PropStore {
+
+    /**
+     * @return every prop stored, to start from again on restart
+     * @throws IOException if the store cannot be read
+     */
+    Map<String, String> load() throws IOException;
+
+    /**
+     * Durably writes a batch of props, all or nothing as far as the store allows. Batches are written one at a time
+     * and in order.
+     *
+     * @param batch props to write in order of writing, where a null value removes the prop
+     * @throws IOException if the batch could not be written, in which case it will be tried again
+     */
+    void write(Map<String, String> batch) throws IOException;
+}
@@ -0,0 +1,83 @@
+package com.github.dirkraft.propslive.propsrc.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@link PropStore} as a properties file. Each batch rewrites the whole file to a temporary file next to it, syncs
+ * that to disk, and then renames it over the original, so that the file is always either all of one batch or all of
+ * the next.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropertiesFileStore implements PropStore {
+
+    private final File file;
+    private final File tempFile;
+
+    /** what the file holds, so as not to have to read it back for each batch */
+    private Properties stored;
+
+    public PropertiesFileStore(File file) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+    }
+
+    @Override
+    public synchronized Map<String, String> load() throws IOException {
+        stored = new Properties();
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                stored.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        Map<String, String> props = new HashMap<String, String>();
+        for (String key : stored.stringPropertyNames()) {
+            props.put(key, stored.getProperty(key));
+        }
+        return props;
+    }
+
+    @Override
+    public synchronized void write(Map<String, String> batch) throws IOException {
+        if (stored == null) {
+            load();
+        }
+        Properties next = new Properties();
+        next.putAll(stored);
+        for (Map.Entry<String, String> prop : batch.entrySet()) {
+            if (prop.getValue() == null) {
+                next.remove(prop.getKey());
+            } else {
+                next.setProperty(prop.getKey(), prop.getValue());
+            }
+        }
+
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            next.store(out, null);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        stored = next;
+    }
+
+    @Override
+    public String toString() {
+        return "properties file " + file;
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import com.github.dirkraft.propslive.propsrc.IterablePropSource;
+import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache in front of a slow {@link PropSource}, e.g. one backed by a file or a database.
+ * <ul>
+ *     <li>Values are kept for a time to live from when they were loaded. Missing props are cached too, as nulls, for
+ *     a separate time to live, so that repeatedly asking for an unset prop does not go to the source every time.</li>
+ *     <li>At most a maximum number of props are kept, chosen by a {@link TinyLfuPolicy}, which favors those read
+ *     most often of late over those read most recently.</li>
+ *     <li>Concurrent misses of the same prop wait on the one load of it.</li>
+ *     <li>{@link #setString(String, String)} writes through to the source and drops the prop from the cache,
+ *     including any load of it already underway, so that no read after the write sees the value from before.</li>
+ * </ul>
+ * {@link #asMap()} and {@link #forEach(PropVisitor)} are not cached, and go straight to the source.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class CachingPropSource implements IterablePropSource {
+
+    private final PropSource delegate;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final ConcurrentMap<String, CachedValue> cache = new ConcurrentHashMap<String, CachedValue>();
+    /** in-flight loads, which concurrent misses of the same prop wait on */
+    private final ConcurrentMap<String, FutureTask<CachedValue>> loads =
+            new ConcurrentHashMap<String, FutureTask<CachedValue>>();
+
+    /** Guards the {@link #policy} and keeps it in step with which keys are in the {@link #cache} */
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final TinyLfuPolicy policy;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param delegate slow source being cached
+     * @param maximumSize of props to keep, at least 2
+     * @param ttl how long a value is kept after loading it
+     * @param negativeTtl how long the absence of a prop is kept after finding it missing, or 0 to not cache missing
+     *                    props at all
+     * @param unit of the ttls
+     */
+    public CachingPropSource(PropSource delegate, int maximumSize, long ttl, long negativeTtl, TimeUnit unit) {
+        if (maximumSize < 2) {
+            throw new IllegalArgumentException("Maximum size must be at least 2: " + maximumSize);
+        }
+        this.delegate = delegate;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.negativeTtlNanos = unit.toNanos(negativeTtl);
+        this.policy = new TinyLfuPolicy(maximumSize);
+    }
+
+    @Override
+    public String description() {
+        return "cached " + delegate.description();
+    }
+
+    @Override
+    public String getString(String key) {
+        CachedValue cached = cache.get(key);
+        if (cached != null && cached.expiresAtNanos - System.nanoTime() > 0) {
+            hits.incrementAndGet();
+            // reads only skip recording a use rather than wait on the policy
+            if (policyLock.tryLock()) {
+                try {
+                    policy.access(key);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return cached.value;
+        }
+        misses.incrementAndGet();
+        return load(key);
+    }
+
+    /**
+     * Writes through to the source, then invalidates the cached prop.
+     */
+    @Override
+    public void setString(String key, String value) {
+        delegate.setString(key, value);
+        invalidate(key);
+    }
+
+    /**
+     * Drops the prop from the cache, so that the next read goes to the source, e.g. after it was changed there
+     * directly.
+     */
+    public void invalidate(String key) {
+        // a load already underway may have read the old value, so it must not make it into the cache
+        loads.remove(key);
+        policyLock.lock();
+        try {
+            cache.remove(key);
+            policy.remove(key);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * @return the source's {@link PropSource#asMap()}, uncached
+     */
+    @Override
+    public Map<String, String> asMap() {
+        return delegate.asMap();
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return PropSources.forEach(delegate, visitor);
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        return PropSources.forEach(delegate, visitor, part, parts);
+    }
+
+    /**
+     * @return number of props currently cached, including missing ones
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return reads that were not cached, whether they loaded the prop themselves or waited on another's load
+     */
+    public long missCount() {
+        return misses.get();
+    }
+
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    private String load(final String key) {
+        FutureTask<CachedValue> load = loads.get(key);
+        boolean loader = false;
+        if (load == null) {
+            FutureTask<CachedValue> newLoad = new FutureTask<CachedValue>(new Callable<CachedValue>() {
+                @Override
+                public CachedValue call() {
+                    String value = delegate.getString(key);
+                    return new CachedValue(value, System.nanoTime() + (value == null ? negativeTtlNanos : ttlNanos));
+                }
+            });
+            load = loads.putIfAbsent(key, newLoad);
+            if (load == null) {
+                load = newLoad;
+                loader = true;
+                newLoad.run();
+            }
+        }
+
+        CachedValue loaded;
+        try {
+            loaded = load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting on a load of " + key, e);
+        } catch (ExecutionException e) {
+            if (loader) {
+                loads.remove(key, load);
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() :
+                    new RuntimeException(e.getCause());
+        }
+
+        if (loader && (loaded.value != null || negativeTtlNanos > 0)) {
+            List<String> evicted = new ArrayList<String>(1);
+            policyLock.lock();
+            try {
+                // unless invalidated meanwhile
+                if (loads.remove(key, load)) {
+                    cache.put(key, loaded);
+                    policy.add(key, evicted);
+                    for (String evictedKey : evicted) {
+                        cache.remove(evictedKey);
+                    }
+                }
+            } finally {
+                policyLock.unlock();
+            }
+            evictions.addAndGet(evicted.size());
+        } else if (loader) {
+            loads.remove(key, load);
+        }
+        return loaded.value;
+    }
+
+    private static class CachedValue {
+        /** null for a missing prop */
+        final String value;
+        final long expiresAtNanos;
+
+        CachedValue(String value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import com.github.dirkraft.propslive.propsrc.IterablePropSource;
+import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves <code>${placeholder}</code> references to other props in the values of a {@link PropSource}, e.g.
+ * <pre>
+ * db.url=jdbc:postgresql://${db.host}:${db.port:5432}/app
+ * </pre>
+ * A placeholder may give a default after a colon, used when the referenced prop is unset. A placeholder with neither
+ * is left as is, as is one that refers back to the prop being resolved. Referenced props may themselves have
+ * placeholders. To resolve references across several sources, wrap a {@link LayeredPropSource}.
+ * <ul>
+ *     <li>Each value is parsed once, and its resolved value cached, so that reads of an unchanged prop neither parse
+ *     nor go to the source.</li>
+ *     <li>{@link #setString(String, String)} writes the unresolved value through to the source, and drops the cached
+ *     resolution of the prop and of every prop that references it, directly or not, and no others.</li>
+ * </ul>
+ * References are tracked for props which have been read through this view. When a prop they reference changes, a
+ * {@link com.github.dirkraft.propslive.dynamic.DynamicProps} backed by this treats those props as changed too, in the
+ * same commit: it bumps their versions and fires their listeners and its commit listeners.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class InterpolatingPropSource implements IterablePropSource {
+
+    private final PropSource delegate;
+
+    /** Keys are prop keys */
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+    /** Keys are prop keys */
+    private final ConcurrentMap<String, Resolved> resolved = new ConcurrentHashMap<String, Resolved>();
+    /** Keys are referenced prop keys. Values are the prop keys whose templates reference them. */
+    private final ConcurrentMap<String, Set<String>> referrers = new ConcurrentHashMap<String, Set<String>>();
+    /**
+     * Bumped by every invalidation, so that a resolution which raced with one, and so may have read a value from
+     * before it, does not stay cached
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param delegate whose values to resolve
+     */
+    public InterpolatingPropSource(PropSource delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String description() {
+        return "interpolated " + delegate.description();
+    }
+
+    /**
+     * @return the value of the prop with its placeholders resolved
+     */
+    @Override
+    public String getString(String key) {
+        return resolve(key, new Resolution(null));
+    }
+
+    /**
+     * Writes the value through to the source unresolved, then invalidates the prop and every prop that references it.
+     */
+    @Override
+    public void setString(String key, String value) {
+        delegate.setString(key, value);
+        invalidate(key);
+    }
+
+    /**
+     * Drops the cached resolution of the prop and of every prop that references it, directly or not, e.g. after it was
+     * changed in the source directly.
+     */
+    public void invalidate(String key) {
+        invalidations.incrementAndGet();
+        resolved.remove(key);
+        for (String referrer : referrers(key)) {
+            resolved.remove(referrer);
+        }
+    }
+
+    /**
+     * @param key of a prop
+     * @return keys of the props which have been read through this view and reference the prop, directly or not
+     */
+    public Set<String> referrers(String key) {
+        Set<String> found = new LinkedHashSet<String>();
+        Deque<String> toVisit = new ArrayDeque<String>();
+        toVisit.add(key);
+        while (!toVisit.isEmpty()) {
+            Set<String> keyReferrers = referrers.get(toVisit.poll());
+            if (keyReferrers != null) {
+                for (String referrer : keyReferrers) {
+                    if (found.add(referrer)) {
+                        toVisit.add(referrer);
+                    }
+                }
+            }
+        }
+        found.remove(key);
+        return found;
+    }
+
+    /**
+     * Resolves a prop as if other props resolved to other values, e.g. to work out what a prop resolved to before a
+     * prop it references was changed. Not cached.
+     *
+     * @param key of the prop to resolve
+     * @param resolvedValues prop keys to what they are to resolve to instead, null for unset
+     * @return the value of the prop with its placeholders resolved
+     */
+    public String resolveWith(String key, Map<String, String> resolvedValues) {
+        return resolve(key, new Resolution(resolvedValues));
+    }
+
+    /**
+     * @return the props of the source with their values resolved
+     */
+    @Override
+    public Map<String, String> asMap() {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String key : delegate.asMap().keySet()) {
+            map.put(key, getString(key));
+        }
+        return map;
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    @Override
+    public boolean forEach(final PropVisitor visitor, int part, int parts) {
+        return PropSources.forEach(delegate, new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                return visitor.visit(key, getString(key));
+            }
+        }, part, parts);
+    }
+
+    /**
+     * @return number of props whose resolved values are currently cached
+     */
+    public int size() {
+        return resolved.size();
+    }
+
+    private String resolve(String key, Resolution resolution) {
+        Map<String, String> overrides = resolution.overrides;
+        if (overrides != null && overrides.containsKey(key)) {
+            return overrides.get(key);
+        }
+        if (overrides == null) {
+            Resolved cached = resolved.get(key);
+            if (cached != null) {
+                return cached.value;
+            }
+        }
+
+        long invalidationsBefore = invalidations.get();
+        Template template = template(key, delegate.getString(key));
+        if (template.references.isEmpty()) {
+            cache(key, template.raw, invalidationsBefore, resolution);
+            return template.raw;
+        }
+
+        resolution.resolving.push(key);
+        StringBuilder value = new StringBuilder(template.raw.length());
+        for (int i = 0; i < template.literals.size(); ++i) {
+            value.append(template.literals.get(i));
+            if (i < template.references.size()) {
+                Reference reference = template.references.get(i);
+                String referenced = null;
+                if (resolution.resolving.contains(reference.key)) {
+                    resolution.cyclic = true;
+                } else {
+                    referenced = resolve(reference.key, resolution);
+                }
+                if (referenced == null) {
+                    referenced = reference.defaultValue;
+                }
+                value.append(referenced == null ? reference.placeholder : referenced);
+            }
+        }
+        resolution.resolving.pop();
+
+        String resolvedValue = value.toString();
+        cache(key, resolvedValue, invalidationsBefore, resolution);
+        return resolvedValue;
+    }
+
+    private void cache(String key, String value, long invalidationsBefore, Resolution resolution) {
+        // what a cycle resolves to depends on which prop of it was asked for
+        if (resolution.overrides != null || resolution.cyclic) {
+            return;
+        }
+        resolved.put(key, new Resolved(value));
+        // an invalidation may have come between reading from the source and caching, so take it back out. Checking
+        // after putting means either this sees the invalidation, or the invalidation removes what was put.
+        if (invalidations.get() != invalidationsBefore) {
+            resolved.remove(key);
+        }
+    }
+
+    /**
+     * @return the parsed raw value of the prop, parsing it only if it has changed, and keeping {@link #referrers} in
+     *         step
+     */
+    private Template template(String key, String raw) {
+        Template template = templates.get(key);
+        if (template != null && template.parsed(raw)) {
+            return template;
+        }
+        // rare enough, only when a value changes, to not bother with finer locking
+        synchronized (templates) {
+            template = templates.get(key);
+            if (template != null && template.parsed(raw)) {
+                return template;
+            }
+            return reparse(key, template, raw);
+        }
+    }
+
+    private Template reparse(String key, Template template, String raw) {
+        Template parsed = Template.parse(raw);
+        if (template != null) {
+            for (Reference reference : template.references) {
+                Set<String> referenceReferrers = referrers.get(reference.key);
+                if (referenceReferrers != null) {
+                    referenceReferrers.remove(key);
+                }
+            }
+        }
+        for (Reference reference : parsed.references) {
+            Set<String> referenceReferrers = referrers.get(reference.key);
+            if (referenceReferrers == null) {
+                Set<String> newReferrers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                referenceReferrers = referrers.putIfAbsent(reference.key, newReferrers);
+                if (referenceReferrers == null) {
+                    referenceReferrers = newReferrers;
+                }
+            }
+            referenceReferrers.add(key);
+        }
+        templates.put(key, parsed);
+        return parsed;
+    }
+
+    /**
+     * A raw value split on its placeholders: literals[0] reference[0] literals[1] ... literals[n], where there is always
+     * one more literal than references
+     */
+    private static class Template {
+        final String raw;
+        final List<String> literals;
+        final List<Reference> references;
+
+        Template(String raw, List<String> literals, List<Reference> references) {
+            this.raw = raw;
+            this.literals = literals;
+            this.references = references;
+        }
+
+        boolean parsed(String raw) {
+            return raw == null ? this.raw == null : raw.equals(this.raw);
+        }
+
+        static Template parse(String raw) {
+            if (raw == null || !raw.contains("${")) {
+                return new Template(raw, Collections.singletonList(raw), Collections.<Reference>emptyList());
+            }
+            List<String> literals = new ArrayList<String>();
+            List<Reference> references = new ArrayList<Reference>();
+            int literalStart = 0;
+            int start;
+            while ((start = raw.indexOf("${", literalStart)) >= 0) {
+                int end = raw.indexOf('}', start + 2);
+                if (end < 0) {
+                    break;
+                }
+                String placeholder = raw.substring(start, end + 1);
+                String body = raw.substring(start + 2, end);
+                int colon = body.indexOf(':');
+                literals.add(raw.substring(literalStart, start));
+                references.add(colon < 0 ? new Reference(body, null, placeholder) :
+                        new Reference(body.substring(0, colon), body.substring(colon + 1), placeholder));
+                literalStart = end + 1;
+            }
+            literals.add(raw.substring(literalStart));
+            return new Template(raw, literals, references);
+        }
+    }
+
+    private static class Reference {
+        final String key;
+        final String defaultValue;
+        /** as written, left as is when it cannot be resolved */
+        final String placeholder;
+
+        Reference(String key, String defaultValue, String placeholder) {
+            this.key = key;
+            this.defaultValue = defaultValue;
+            this.placeholder = placeholder;
+        }
+    }
+
+    /** One top level read, and the props it resolves along the way */
+    private static class Resolution {
+        /** when not null, what props resolve to instead, in which case nothing is cached */
+        final Map<String, String> overrides;
+        /** props being resolved further up the stack, to spot references back to them */
+        final Deque<String> resolving = new ArrayDeque<String>();
+        /** set upon the first reference back up the stack, after which nothing is cached */
+        boolean cyclic = false;
+
+        Resolution(Map<String, String> overrides) {
+            this.overrides = overrides;
+        }
+    }
+
+    /** Wraps a resolved value, which may be null */
+    private static class Resolved {
+        final String value;
+
+        Resolved(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.github.dirkraft.propslive.propsrc.view;
 
 import com.github.dirkraft.propslive.Props;
 import com.github.dirkraft.propslive.PropsImpl;
+import com.github.dirkraft.propslive.propsrc.IterablePropSource;
 import com.github.dirkraft.propslive.propsrc.PropSource;
 import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
@@ -19,7 +22,7 @@ import java.util.Map;
  *
  * @author Jason Dunkelberger (dirkraft)
  */
-public class LayeredPropSource implements PropSource {
+public class LayeredPropSource implements IterablePropSource {
 
     /** {@link #setString(String, String)} are not applied to the underlying {@link #propSources} and instead to this. */
     private final PropSource writeReceivingPropSource;
@@ -97,4 +100,35 @@ public class LayeredPropSource implements PropSource {
         }
         return map;
     }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    /**
+     * Visits the same merge as {@link #asMap()} without building it: each layer in turn, skipping any prop that an
+     * earlier layer has a non-null value for, and so has already visited.
+     */
+    @Override
+    public boolean forEach(final PropVisitor visitor, int part, int parts) {
+        for (int i = 0; i < propSources.size(); ++i) {
+            final List<PropSource> earlierSources = propSources.subList(0, i);
+            boolean finished = PropSources.forEach(propSources.get(i), new PropVisitor() {
+                @Override
+                public boolean visit(String key, String value) {
+                    for (PropSource earlierSource : earlierSources) {
+                        if (earlierSource.getString(key) != null) {
+                            return true;
+                        }
+                    }
+                    return visitor.visit(key, value);
+                }
+            }, part, parts);
+            if (!finished) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
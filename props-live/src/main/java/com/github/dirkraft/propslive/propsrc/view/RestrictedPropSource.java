@@ -1,6 +1,9 @@
 package com.github.dirkraft.propslive.propsrc.view;
 
+import com.github.dirkraft.propslive.propsrc.IterablePropSource;
 import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
 import com.github.dirkraft.propslive.set.IllegalPropertyAccessException;
 
 import java.util.Arrays;
@@ -17,7 +20,7 @@ import java.util.Set;
  *
  * @author Jason Dunkelberger (dirkraft)
  */
-public class RestrictedPropSource implements PropSource {
+public class RestrictedPropSource implements IterablePropSource {
 
     private final static String MSG_EXCEPT_RESTRICTED_FMT = "PropertySource is restricted, denied access to '%s'. " +
             "Allowed keys are %s";
@@ -56,6 +59,25 @@ public class RestrictedPropSource implements PropSource {
         return map;
     }
 
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return forEach(visitor, 0, 1);
+    }
+
+    /**
+     * Visits only the allowed props, reading each from the delegate, including those whose value is null as
+     * {@link #asMap()} does.
+     */
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        for (String propKey : propKeys) {
+            if (PropSources.inPart(propKey, part, parts) && !visitor.visit(propKey, delegate.getString(propKey))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @throws IllegalPropertyAccessException if key is not in the allowed set
      */
@@ -0,0 +1,176 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Which keys a size-bounded {@link CachingPropSource} keeps, after W-TinyLFU: new keys enter a small LRU window, and
+ * each key pushed out of the window only gets into the main LRU if it has been used more often than the key it would
+ * push out of there, by an approximate count of recent uses. So a burst of one-off reads cannot flush the props that
+ * are read all the time, yet a key that has just become popular still gets in. The main LRU is segmented: keys used
+ * again while on probation are promoted to the protected segment. Not thread-safe.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+class TinyLfuPolicy {
+
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectedCapacity;
+
+    // All are LRU first, keys only
+    private final LinkedHashMap<String, Boolean> window = new LinkedHashMap<String, Boolean>(16, .75f, true);
+    private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<String, Boolean>(16, .75f, true);
+    private final LinkedHashMap<String, Boolean> protectedKeys = new LinkedHashMap<String, Boolean>(16, .75f, true);
+
+    private final FrequencySketch sketch;
+
+    /**
+     * @param maximumSize of all keys kept, at least 2
+     */
+    TinyLfuPolicy(int maximumSize) {
+        this.windowCapacity = Math.max(1, maximumSize / 100);
+        this.mainCapacity = maximumSize - windowCapacity;
+        this.protectedCapacity = mainCapacity * 4 / 5;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * Records a use of a kept key.
+     */
+    void access(String key) {
+        sketch.increment(key);
+        if (window.get(key) != null || protectedKeys.get(key) != null) {
+            return;
+        }
+        if (probation.remove(key) != null) {
+            protectedKeys.put(key, Boolean.TRUE);
+            if (protectedKeys.size() > protectedCapacity) {
+                Iterator<String> eldest = protectedKeys.keySet().iterator();
+                String demoted = eldest.next();
+                eldest.remove();
+                probation.put(demoted, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * Adds a key, or records a use of it if it is already kept.
+     *
+     * @param evicted receives keys no longer kept, possibly including this one
+     */
+    void add(String key, List<String> evicted) {
+        if (window.containsKey(key) || probation.containsKey(key) || protectedKeys.containsKey(key)) {
+            access(key);
+            return;
+        }
+        sketch.increment(key);
+        window.put(key, Boolean.TRUE);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+
+        Iterator<String> windowEldest = window.keySet().iterator();
+        String candidate = windowEldest.next();
+        windowEldest.remove();
+        if (probation.size() + protectedKeys.size() < mainCapacity) {
+            probation.put(candidate, Boolean.TRUE);
+            return;
+        }
+
+        LinkedHashMap<String, Boolean> victimSegment = probation.isEmpty() ? protectedKeys : probation;
+        Iterator<String> mainEldest = victimSegment.keySet().iterator();
+        String victim = mainEldest.next();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            mainEldest.remove();
+            probation.put(candidate, Boolean.TRUE);
+            evicted.add(victim);
+        } else {
+            evicted.add(candidate);
+        }
+    }
+
+    void remove(String key) {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedKeys.remove(key);
+        }
+    }
+
+    int size() {
+        return window.size() + probation.size() + protectedKeys.size();
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, 16 to a long, which are all halved every so many increments so that the
+     * counts favor recent uses.
+     */
+    static class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                0xcbf29ce484222325L};
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int increments = 0;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.max(16, maximumSize) - 1) << 1;
+            this.table = new long[length];
+            this.mask = length - 1;
+            this.sampleSize = 10 * Math.max(16, maximumSize);
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; ++i) {
+                added |= incrementAt(index(hash, i), counter(hash, i));
+            }
+            if (added && ++increments >= sampleSize) {
+                halve();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int i = 0; i < 4; ++i) {
+                frequency = Math.min(frequency, (int) ((table[index(hash, i)] >>> (counter(hash, i) << 2)) & 0xfL));
+            }
+            return frequency;
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int shift = counter << 2;
+            if (((table[index] >>> shift) & 0xfL) == 0xfL) {
+                return false;
+            }
+            table[index] += 1L << shift;
+            return true;
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length; ++i) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            increments /= 2;
+        }
+
+        private int index(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        /** which of the 16 counters of the long, by a different part of the hash per function */
+        private static int counter(int hash, int i) {
+            return (hash >>> (i << 3)) & 0xf;
+        }
+
+        private static int spread(int hash) {
+            hash *= 0x9e3779b9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
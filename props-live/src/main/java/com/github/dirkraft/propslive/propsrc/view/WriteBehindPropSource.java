@@ -0,0 +1,321 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import com.github.dirkraft.propslive.propsrc.IterablePropSource;
+import com.github.dirkraft.propslive.propsrc.PropSource;
+import com.github.dirkraft.propslive.propsrc.PropSources;
+import com.github.dirkraft.propslive.propsrc.PropVisitor;
+import com.github.dirkraft.propslive.propsrc.store.PropStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persists writes to a {@link PropStore} behind the back of the writer. {@link #setString(String, String)} writes to
+ * an in-memory {@link PropSource}, which serves all reads, and only marks the prop dirty. A flusher thread writes the
+ * dirty props to the store in batches:
+ * <ul>
+ *     <li>as soon as there are a batch size of them, or once the oldest has been dirty for the max delay, whichever
+ *     is first</li>
+ *     <li>in order, one batch at a time, each prop with its last value, so that the store never has a write without
+ *     every write before it</li>
+ *     <li>retrying a batch that failed, merged with anything written since, after the max delay</li>
+ * </ul>
+ * If the store cannot keep up and the dirty props reach the max dirty, writers wait for them to be flushed. Call
+ * {@link #close()} on shutdown to flush whatever is left.
+ *
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class WriteBehindPropSource implements IterablePropSource, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindPropSource.class);
+
+    private final PropSource memory;
+    private final PropStore store;
+    private final int batchSize;
+    private final int maxDirty;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    /** signalled to wake the flusher */
+    private final Condition flushNeeded = lock.newCondition();
+    /** signalled after every flush, successful or not */
+    private final Condition flushed = lock.newCondition();
+
+    /** in order of last write. Null values are removals. */
+    private LinkedHashMap<String, String> dirty = new LinkedHashMap<String, String>();
+    private long oldestDirtyNanos;
+    /** props of the batch being written */
+    private int flushing = 0;
+    /** sequence of writes; those up to durableSeq have been stored */
+    private long writeSeq = 0;
+    private long durableSeq = 0;
+    private long flushRequestedSeq = 0;
+    private boolean closed = false;
+    private IOException lastFailure;
+    /** after a failed flush, no flushing again until then */
+    private boolean backingOff = false;
+    private long retryAtNanos;
+
+    private final Thread flusher;
+
+    /**
+     * Loads the store into memory and starts flushing.
+     *
+     * @param memory serves reads and receives writes immediately, so must be thread-safe, e.g. a
+     *               {@link com.github.dirkraft.propslive.propsrc.PropSourceCompact}
+     * @param store durable store, written behind
+     * @param batchSize of dirty props to flush without waiting for the max delay
+     * @param maxDirty props at which writers wait on the flusher, at least the batch size
+     * @param maxDelay longest a prop stays dirty while the store is working
+     * @param unit of max delay
+     * @throws IOException if the store could not be loaded
+     */
+    public WriteBehindPropSource(PropSource memory, PropStore store, int batchSize, int maxDirty, long maxDelay,
+                                 TimeUnit unit) throws IOException {
+        if (batchSize < 1 || maxDirty < batchSize) {
+            throw new IllegalArgumentException("Need 1 <= batch size (" + batchSize + ") <= max dirty (" +
+                    maxDirty + ")");
+        }
+        this.memory = memory;
+        this.store = store;
+        this.batchSize = batchSize;
+        this.maxDirty = maxDirty;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+
+        for (Map.Entry<String, String> prop : store.load().entrySet()) {
+            memory.setString(prop.getKey(), prop.getValue());
+        }
+
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "props-live-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public String description() {
+        return memory.description() + " written behind to " + store;
+    }
+
+    @Override
+    public String getString(String key) {
+        return memory.getString(key);
+    }
+
+    /**
+     * Writes to memory and marks the prop dirty, first waiting on the flusher if there are already the max dirty.
+     *
+     * @throws IllegalStateException if closed
+     */
+    @Override
+    public void setString(String key, String value) {
+        lock.lock();
+        try {
+            boolean interrupted = false;
+            while (!closed && !dirty.containsKey(key) && dirty.size() + flushing >= maxDirty) {
+                try {
+                    flushed.await();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (closed) {
+                throw new IllegalStateException("Write to " + description() + " after close.");
+            }
+
+            memory.setString(key, value);
+            if (dirty.isEmpty()) {
+                oldestDirtyNanos = System.nanoTime();
+            }
+            dirty.remove(key); // to the end, in order of last write
+            dirty.put(key, value);
+            ++writeSeq;
+            if (dirty.size() == batchSize) {
+                flushNeeded.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<String, String> asMap() {
+        return memory.asMap();
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor) {
+        return PropSources.forEach(memory, visitor);
+    }
+
+    @Override
+    public boolean forEach(PropVisitor visitor, int part, int parts) {
+        return PropSources.forEach(memory, visitor, part, parts);
+    }
+
+    /**
+     * Flushes now, and waits until every write made before this call is stored.
+     *
+     * @param timeout to wait
+     * @param unit of timeout
+     * @return true if stored, or false if timed out, e.g. while the store keeps failing
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long remainingNanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            long seq = writeSeq;
+            flushRequestedSeq = Math.max(flushRequestedSeq, seq);
+            flushNeeded.signal();
+            while (durableSeq < seq) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = flushed.awaitNanos(remainingNanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return props written but not yet stored
+     */
+    public int dirtyCount() {
+        lock.lock();
+        try {
+            return dirty.size() + flushing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops taking writes, and waits for the flusher to store everything written.
+     *
+     * @throws IOException if the last flush failed, so that some writes were never stored
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            flushNeeded.signal();
+            flushed.signalAll(); // writers waiting on back pressure
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting on the final flush of " + description(), e);
+        }
+        lock.lock();
+        try {
+            if (!dirty.isEmpty()) {
+                throw new IOException("Failed to store " + dirty.size() + " props of " + description() +
+                        " on close.", lastFailure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            LinkedHashMap<String, String> batch;
+            long batchSeq;
+            lock.lock();
+            try {
+                while (!closed && !flushDue()) {
+                    long waitNanos = backingOff ? retryAtNanos - System.nanoTime() :
+                            dirty.isEmpty() ? maxDelayNanos : oldestDirtyNanos + maxDelayNanos - System.nanoTime();
+                    try {
+                        flushNeeded.awaitNanos(Math.max(waitNanos, 1));
+                    } catch (InterruptedException e) {
+                        // keep flushing; only close() stops the flusher
+                    }
+                }
+                if (dirty.isEmpty()) {
+                    durableSeq = writeSeq;
+                    flushed.signalAll();
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch = dirty;
+                batchSeq = writeSeq;
+                dirty = new LinkedHashMap<String, String>();
+                flushing = batch.size();
+            } finally {
+                lock.unlock();
+            }
+
+            IOException failure = null;
+            try {
+                store.write(batch);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+
+            lock.lock();
+            try {
+                flushing = 0;
+                if (failure == null) {
+                    durableSeq = batchSeq;
+                    backingOff = false;
+                } else {
+                    logger.error("Failed to store " + batch.size() + " props of " + description() + ". Will retry" +
+                            (closed ? " no more as closing." : " after the max delay."), failure);
+                    lastFailure = failure;
+                    // back in front of anything written since, which keeps its own, later values
+                    for (Map.Entry<String, String> written : dirty.entrySet()) {
+                        batch.remove(written.getKey());
+                        batch.put(written.getKey(), written.getValue());
+                    }
+                    dirty = batch;
+                    backingOff = true;
+                    retryAtNanos = System.nanoTime() + maxDelayNanos;
+                    if (closed) {
+                        flushed.signalAll();
+                        return;
+                    }
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Under the lock */
+    private boolean flushDue() {
+        if (backingOff && retryAtNanos - System.nanoTime() > 0) {
+            return false;
+        }
+        return backingOff ||
+                dirty.size() >= batchSize ||
+                (!dirty.isEmpty() && System.nanoTime() - oldestDirtyNanos >= maxDelayNanos) ||
+                flushRequestedSeq > durableSeq;
+    }
+}
@@ -1,11 +1,15 @@
 package com.github.dirkraft.propslive.set;
 
+import com.github.dirkraft.propslive.Props;
 import com.github.dirkraft.propslive.PropsImpl;
 import com.github.dirkraft.propslive.dynamic.DynamicProps;
 import com.github.dirkraft.propslive.propsrc.PropSource;
 import com.github.dirkraft.propslive.propsrc.view.ReadOnlyRestrictedPropSource;
 import com.github.dirkraft.propslive.propsrc.view.RestrictedPropSource;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Impl of {@link PropsSets}, a component of {@link DynamicProps} for atomically reading or writing sets of related
  * properties.
@@ -14,6 +18,18 @@ import com.github.dirkraft.propslive.propsrc.view.RestrictedPropSource;
  */
 public class PropsSetsImpl extends PropsImpl implements PropsSets {
 
+    /**
+     * Upper bound on {@link #views}. Once reached, the cache is cleared and starts over, so that a stream of one-off
+     * PropSets can't grow it without bound, while the steady set of PropSets in use quickly finds its way back in.
+     */
+    static final int MAX_CACHED_VIEWS = 1024;
+
+    /**
+     * Keys are {@link PropSet}s. Restricted views over this for each PropSet, built once and then reused by every
+     * {@link #getVals(PropSet)} and {@link #setVals(PropSet)} on it.
+     */
+    private final ConcurrentHashMap<PropSet<?>, PropSetViews> views = new ConcurrentHashMap<PropSet<?>, PropSetViews>();
+
     /**
      * Backed by that of {@link PropsImpl#PropsImpl()}
      */
@@ -32,11 +48,40 @@ public class PropsSetsImpl extends PropsImpl implements PropsSets {
 
     @Override
     public <VALUES> VALUES getVals(PropSet<VALUES> propSet) {
-        return propSet.getVals(new PropsImpl(new ReadOnlyRestrictedPropSource(this, propSet.propKeys())));
+        return propSet.getVals(views(propSet).readView);
     }
 
     @Override
     public void setVals(PropSet<?> propSet) {
-        propSet.setVals(new PropsImpl(new RestrictedPropSource(this, propSet.propKeys())));
+        propSet.setVals(views(propSet).writeView);
+    }
+
+    /**
+     * Views are reused for as long as the PropSet keeps returning the very same {@link PropSet#propKeys()} instance, as
+     * all of the PropSets of this library do. PropSets that build new key sets on every call get new views every time.
+     */
+    private PropSetViews views(PropSet<?> propSet) {
+        Set<String> propKeys = propSet.propKeys();
+        PropSetViews views = this.views.get(propSet);
+        if (views == null || views.propKeys != propKeys) {
+            views = new PropSetViews(propKeys);
+            if (this.views.size() >= MAX_CACHED_VIEWS) {
+                this.views.clear();
+            }
+            this.views.put(propSet, views);
+        }
+        return views;
+    }
+
+    private class PropSetViews {
+        final Set<String> propKeys;
+        final Props readView;
+        final Props writeView;
+
+        PropSetViews(Set<String> propKeys) {
+            this.propKeys = propKeys;
+            this.readView = new PropsImpl(new ReadOnlyRestrictedPropSource(PropsSetsImpl.this, propKeys));
+            this.writeView = new PropsImpl(new RestrictedPropSource(PropsSetsImpl.this, propKeys));
+        }
     }
 }
@@ -8,6 +8,7 @@ import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -62,6 +63,7 @@ public class PropSetAsMap implements PropSet<Map<String, String>> {
 
     final List<Pair<String, String>> propDefaults;
     final List<Pair<String, String>> propWrites;
+    private final Set<String> propKeys;
 
     /**
      * @param propKeys to register to {@link #propKeys()}
@@ -80,6 +82,7 @@ public class PropSetAsMap implements PropSet<Map<String, String>> {
             this.propDefaults.add(MutablePair.of(propKey, (String) null));
             this.propWrites.add(MutablePair.of(propKey, SKIP_WRITE)); // default to not changing properties
         }
+        this.propKeys = propKeys(this.propDefaults);
     }
 
     /**
@@ -96,6 +99,7 @@ public class PropSetAsMap implements PropSet<Map<String, String>> {
             this.propDefaults.add(MutablePair.of(entry.getKey(), entry.getValue()));
             this.propWrites.add(MutablePair.of(entry.getKey(), entry.getValue()));
         }
+        this.propKeys = propKeys(this.propDefaults);
     }
 
     /**
@@ -137,15 +141,22 @@ public class PropSetAsMap implements PropSet<Map<String, String>> {
         }
     }
 
+    /**
+     * @return prop keys given on construction. This collection is immutable.
+     */
     @Override
     public Set<String> propKeys() {
-        Set<String> propKeys = new HashSet<String>(propDefaults.size());
-        for (Pair<String, String> propDefault : propDefaults) {
-            propKeys.add(propDefault.getKey());
-        }
         return propKeys;
     }
 
+    private static Set<String> propKeys(List<Pair<String, String>> props) {
+        Set<String> propKeys = new HashSet<String>(props.size());
+        for (Pair<String, String> prop : props) {
+            propKeys.add(prop.getKey());
+        }
+        return Collections.unmodifiableSet(propKeys);
+    }
+
     /**
      * @return map of prop keys to string forms of their values, defaulting to those specified by
      *         {@link #withDefaults(String...)}
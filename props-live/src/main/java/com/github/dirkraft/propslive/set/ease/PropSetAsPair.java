@@ -5,6 +5,7 @@ import com.github.dirkraft.propslive.set.PropSet;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
@@ -26,14 +27,20 @@ public class PropSetAsPair implements PropSet<Pair<String, String>> {
     /** when {@link #setVals(Props)}, set this val for the {@link #rightKey} */
     public String rightVal;
 
+    private final Set<String> propKeys;
+
     public PropSetAsPair(String leftKey, String rightKey) {
         this.leftKey = leftKey;
         this.rightKey = rightKey;
+        this.propKeys = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(leftKey, rightKey)));
     }
 
+    /**
+     * @return the left and right keys. This collection is immutable.
+     */
     @Override
     public Set<String> propKeys() {
-        return new HashSet<String>(Arrays.asList(leftKey, rightKey));
+        return propKeys;
     }
 
     @Override
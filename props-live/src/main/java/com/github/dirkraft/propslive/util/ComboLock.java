@@ -16,8 +16,6 @@ import java.util.concurrent.locks.ReadWriteLock;
  */
 public class ComboLock implements ReadWriteLock {
 
-    private static final ThreadLocal<Lock> comboWriteLock_acquireFail = new ThreadLocal<Lock>();
-
     private final Lock comboReadLock;
     private final Lock comboWriteLock;
 
@@ -50,7 +48,15 @@ public class ComboLock implements ReadWriteLock {
 
             @Override
             public boolean tryLock() {
-                throw new UnsupportedOperationException();
+                for (int i = 0; i < readLocks.size(); ++i) {
+                    if (!readLocks.get(i).tryLock()) {
+                        for (int j = i - 1; j >= 0; --j) {
+                            readLocks.get(j).unlock();
+                        }
+                        return false;
+                    }
+                }
+                return true;
             }
 
             @Override
@@ -60,7 +66,7 @@ public class ComboLock implements ReadWriteLock {
 
             @Override
             public void unlock() {
-                // If only lock() is implemented, then the current thread must have successfully taken all locks.
+                // Either lock() or tryLock() must have successfully taken all locks.
                 for (Lock readLock : readLocks) {
                     readLock.unlock();
                 }
@@ -85,15 +91,16 @@ public class ComboLock implements ReadWriteLock {
 
             @Override
             public boolean tryLock() {
-                boolean acquired = true;
-                for (Lock writeLock : writeLocks) {
-                    acquired = writeLock.tryLock();
-                    if (!acquired) {
-                        comboWriteLock_acquireFail.set(writeLock);
-                        break;
+                for (int i = 0; i < writeLocks.size(); ++i) {
+                    if (!writeLocks.get(i).tryLock()) {
+                        // Give back what was acquired so far, or those props would stay locked for good.
+                        for (int j = i - 1; j >= 0; --j) {
+                            writeLocks.get(j).unlock();
+                        }
+                        return false;
                     }
                 }
-                return acquired;
+                return true;
             }
 
             @Override
@@ -103,15 +110,10 @@ public class ComboLock implements ReadWriteLock {
 
             @Override
             public void unlock() {
-                // If only tryLock is implemented, only can unlock up to before the lock that failed to be acquire.
-                Lock failedLock = comboWriteLock_acquireFail.get();
+                // If only tryLock is implemented, then the current thread must have successfully taken all locks.
                 for (Lock writeLock : writeLocks) {
-                    if (writeLock == failedLock) {
-                        break;
-                    }
                     writeLock.unlock();
                 }
-                comboWriteLock_acquireFail.remove();
             }
 
             @Override
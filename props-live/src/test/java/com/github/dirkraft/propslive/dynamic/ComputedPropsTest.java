@@ -0,0 +1,144 @@
+package com.github.dirkraft.propslive.dynamic;
+
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.propsrc.PropSourceCompact;
+import com.github.dirkraft.propslive.set.PropsSets;
+import com.github.dirkraft.propslive.set.ease.PropSetAsMap;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ComputedPropsTest {
+
+    private DynamicPropsSets props;
+
+    @Before
+    public void setUp() {
+        props = new DynamicPropsSets(new PropSourceCompact());
+    }
+
+    @Test
+    public void testRecomputesOnInputChange() {
+        props.setInt("cores", 4);
+        props.setInt("pool.perCore", 8);
+        props.compute("pool.max", product(null), "cores", "pool.perCore");
+        Assert.assertEquals((Integer) 32, props.getInt("pool.max"));
+
+        props.setInt("pool.perCore", 2);
+        Assert.assertEquals((Integer) 8, props.getInt("pool.max"));
+        props.setVals(new PropSetAsMap("cores", "pool.perCore").withWrites("3", "3"));
+        Assert.assertEquals((Integer) 9, props.getInt("pool.max"));
+        props.transact(new PropsTransaction<Void>() {
+            @Override
+            public Void execute(PropsSets tx) {
+                tx.setInt("cores", tx.getInt("cores") + 1);
+                return null;
+            }
+        });
+        Assert.assertEquals((Integer) 12, props.getInt("pool.max"));
+
+        // unrelated writes compute nothing
+        AtomicInteger computations = new AtomicInteger();
+        props.compute("pool.max", product(computations), "cores", "pool.perCore");
+        Assert.assertEquals(1, computations.get());
+        props.setString("unrelated", "x");
+        Assert.assertEquals(1, computations.get());
+
+        props.stopComputing("pool.max");
+        props.setInt("cores", 1);
+        Assert.assertEquals((Integer) 12, props.getInt("pool.max"));
+        Assert.assertEquals(1, computations.get());
+    }
+
+    @Test
+    public void testDiamondComputedOnceInOrder() {
+        // a -> b, a -> c, (b, c) -> d
+        final AtomicInteger computations = new AtomicInteger();
+        props.setInt("a", 1);
+        props.compute("b", product(computations), "a");
+        props.compute("c", product(computations), "a");
+        props.compute("d", product(computations), "b", "c");
+        Assert.assertEquals((Integer) 1, props.getInt("d"));
+        computations.set(0);
+
+        final List<String> commits = new CopyOnWriteArrayList<String>();
+        props.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> values) {
+                commits.add(values.now());
+            }
+        }).getString("d");
+
+        props.setInt("a", 3);
+        Assert.assertEquals((Integer) 3, props.getInt("b"));
+        Assert.assertEquals((Integer) 3, props.getInt("c"));
+        Assert.assertEquals((Integer) 9, props.getInt("d"));
+        Assert.assertEquals(3, computations.get());
+        // listeners on computed props see only the final value
+        Assert.assertEquals(1, commits.size());
+        Assert.assertEquals("9", commits.get(0));
+    }
+
+    @Test
+    public void testRejectsCycles() {
+        props.compute("b", product(null), "a");
+        props.compute("c", product(null), "b");
+        try {
+            props.compute("a", product(null), "c");
+            Assert.fail("a -> b -> c -> a");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            props.compute("a", product(null), "a");
+            Assert.fail("a -> a");
+        } catch (IllegalArgumentException expected) {
+        }
+        // the rejected definitions left nothing behind
+        props.setInt("a", 2);
+        Assert.assertEquals((Integer) 2, props.getInt("c"));
+
+        // but redefining may reverse an edge which no longer exists
+        props.compute("c", product(null), "x");
+        props.stopComputing("b");
+        props.compute("a", product(null), "b");
+    }
+
+    @Test
+    public void testFailedComputationKeepsLastValue() {
+        props.setString("n", "2");
+        props.compute("n.copy", product(null), "n", "n");
+        Assert.assertEquals((Integer) 2, props.getInt("n.copy"));
+        props.setString("n", "not a number");
+        Assert.assertEquals("not a number", props.getString("n"));
+        Assert.assertEquals((Integer) 2, props.getInt("n.copy"));
+    }
+
+    /**
+     * @param computations counted, if not null
+     * @return the product of the int inputs, treating unset inputs as 1
+     */
+    private static PropComputation product(final AtomicInteger computations) {
+        return new PropComputation() {
+            @Override
+            public String compute(Map<String, String> inputs) {
+                if (computations != null) {
+                    computations.incrementAndGet();
+                }
+                int product = 1;
+                for (String value : inputs.values()) {
+                    product *= value == null ? 1 : Integer.parseInt(value);
+                }
+                return String.valueOf(product);
+            }
+        };
+    }
+}
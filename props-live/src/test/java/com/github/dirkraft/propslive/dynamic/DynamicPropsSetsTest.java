@@ -1,22 +1,46 @@
 package com.github.dirkraft.propslive.dynamic;
 
+import com.github.dirkraft.propslive.dynamic.event.PropsEvents;
 import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.Props;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropSetListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
 import com.github.dirkraft.propslive.propsrc.PropSourceMap;
 import com.github.dirkraft.propslive.set.IllegalPropertyAccessException;
+import com.github.dirkraft.propslive.set.PropSet;
+import com.github.dirkraft.propslive.set.PropsSets;
 import com.github.dirkraft.propslive.set.ease.DelegatingAbstractListeningPropSet;
 import com.github.dirkraft.propslive.core.LivePropSet;
 import com.github.dirkraft.propslive.set.ease.PropSetAsPair;
 import com.github.dirkraft.propslive.set.ease.PropSetAsPropSlice;
 import com.github.dirkraft.propslive.set.ease.PropsSlice;
 import junit.framework.Assert;
+import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
 import javax.xml.ws.Holder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Jason Dunkelberger (dirkraft)
@@ -39,6 +63,62 @@ public class DynamicPropsSetsTest extends DynamicPropsTest<DynamicPropsSets> { /
         Assert.assertEquals("whooo", vals.getRight());
     }
 
+    @Test(timeout = 10000)
+    public void testFailedSetValsReleasesWhatItLocked() throws Exception {
+        final PropSetAsPair pair = new PropSetAsPair("test.a", "test.b");
+        // the ComboLock takes the props' locks in this order, so holding the last fails it after taking the others
+        List<String> lockOrder = new ArrayList<String>(pair.propKeys());
+        final String heldKey = lockOrder.get(lockOrder.size() - 1);
+
+        final CountDownLatch holding = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        $.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                holding.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).getString(heldKey);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> held = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    $.setString(heldKey, "held");
+                }
+            });
+            holding.await();
+            pair.leftVal = "A";
+            pair.rightVal = "B";
+            try {
+                $.setVals(pair);
+                Assert.fail("Should not have acquired the lock of " + heldKey);
+            } catch (PropLockingException e) {
+                // expected
+            }
+            release.countDown();
+            held.get();
+
+            // on another thread, as this one could re-enter any lock it kept
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    $.setVals(pair);
+                    return null;
+                }
+            }).get();
+            Assert.assertEquals("A", $.getString("test.a"));
+            Assert.assertEquals("B", $.getString("test.b"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testSetVals() {
         $.setString("test.prop1", "wheee");
@@ -215,6 +295,291 @@ public class DynamicPropsSetsTest extends DynamicPropsTest<DynamicPropsSets> { /
         Assert.assertEquals(1, reloadCountBCD.value.intValue());
     }
 
+    @Test
+    public void testManyOverlappingPropSetListeners() {
+        // Enough listeners to span several words of listener bitsets, each on a pair of neighboring props.
+        final int[] reloadCounts = new int[150];
+        @SuppressWarnings("unchecked")
+        final PropChange<Pair<String, String>>[] changes = new PropChange[reloadCounts.length];
+        for (int i = 0; i < reloadCounts.length; ++i) {
+            final int listenerIdx = i;
+            DelegatingAbstractListeningPropSet<Pair<String, String>> neighbors = new DelegatingAbstractListeningPropSet<Pair<String, String>>(
+                    new PropSetAsPair("test.k" + i, "test.k" + (i + 1))
+            ) {
+                @Override
+                public void reload(PropChange<Pair<String, String>> propChange) {
+                    ++reloadCounts[listenerIdx];
+                    changes[listenerIdx] = propChange;
+                }
+            };
+            $.to(neighbors).getVals(neighbors);
+            $.to(neighbors).getVals(neighbors); // registering again is harmless
+        }
+
+        PropSetAsPair k100k101 = new PropSetAsPair("test.k100", "test.k101");
+        k100k101.leftVal = "100";
+        k100k101.rightVal = "101";
+        $.setVals(k100k101);
+
+        for (int i = 0; i < reloadCounts.length; ++i) {
+            int expected = i >= 99 && i <= 101 ? 1 : 0;
+            Assert.assertEquals("listener " + i, expected, reloadCounts[i]);
+        }
+        // props that had never been set should show as null before the change
+        Assert.assertEquals(Pair.of((String) null, (String) null), changes[99].old());
+        Assert.assertEquals(Pair.of(null, "100"), changes[99].now());
+        Assert.assertEquals(Pair.of((String) null, (String) null), changes[100].old());
+        Assert.assertEquals(Pair.of("100", "101"), changes[100].now());
+        Assert.assertEquals(Pair.of("101", null), changes[101].now());
+
+        $.setString("test.k0", "0");
+        Assert.assertEquals(1, reloadCounts[0]);
+        Assert.assertEquals(0, reloadCounts[1]);
+    }
+
+    @Test
+    public void testPropSetChangesAreLazy() {
+        final AtomicInteger getValsCount = new AtomicInteger();
+        final PropSetAsPair countingPair = new PropSetAsPair("test.a", "test.b") {
+            @Override
+            public Pair<String, String> getVals(Props props) {
+                getValsCount.incrementAndGet();
+                return super.getVals(props);
+            }
+        };
+        $.setString("test.a", "A");
+        $.setString("test.b", "B");
+
+        final List<PropChange<Pair<String, String>>> changes = new ArrayList<PropChange<Pair<String, String>>>();
+        for (int i = 0; i < 3; ++i) {
+            $.to(new PropSetListener<Pair<String, String>>() {
+                @Override
+                public PropSet<Pair<String, String>> propSet() {
+                    return countingPair;
+                }
+
+                @Override
+                public void reload(PropChange<Pair<String, String>> propChange) {
+                    changes.add(propChange);
+                }
+            }).getVals(countingPair);
+        }
+        getValsCount.set(0);
+
+        countingPair.leftVal = "A2";
+        countingPair.rightVal = "B2";
+        $.setVals(countingPair);
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("Nothing should be built until asked for", 0, getValsCount.get());
+
+        // Later writes don't leak into changes already delivered
+        $.setString("test.a", "A3");
+
+        Assert.assertEquals(Pair.of("A2", "B2"), changes.get(0).now());
+        Assert.assertEquals(1, getValsCount.get());
+        Assert.assertSame("Listeners of the same PropSet share values", changes.get(0).now(), changes.get(2).now());
+        Assert.assertEquals(Pair.of("A", "B"), changes.get(1).old());
+        Assert.assertEquals(2, getValsCount.get());
+        Assert.assertEquals("A3", $.getString("test.a"));
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testEvents() throws Exception {
+        final AtomicBoolean recording = new AtomicBoolean();
+        final List<String> events = new CopyOnWriteArrayList<String>();
+        $.events(new PropsEvents() {
+            @Override
+            public boolean isEnabled() {
+                return recording.get();
+            }
+
+            @Override
+            public void write(String propKey, long startNanos, long durationNanos, int listenersNotified) {
+                Assert.assertTrue(durationNanos >= 0);
+                events.add("write " + propKey + " " + listenersNotified);
+            }
+
+            @Override
+            public void commit(int propCount, int changedCount, long startNanos, long lockNanos, long durationNanos) {
+                Assert.assertTrue(lockNanos <= durationNanos);
+                events.add("commit " + propCount + " " + changedCount);
+            }
+
+            @Override
+            public void reload(PropListener<?> listener, long startNanos, long durationNanos, Throwable thrown) {
+                events.add("reload " + (thrown == null ? "ok" : thrown.getMessage()));
+            }
+
+            @Override
+            public void lockFailure(Collection<String> propKeys) {
+                events.add("lockFailure " + new TreeSet<String>(propKeys));
+            }
+        });
+
+        final PropSetAsPair bc = new PropSetAsPair("test.b", "test.c");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        $.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                // the writer of test.a still holds its lock
+                Future<?> overlappingWrite = executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        $.setVals(new PropSetAsPair("test.a", "test.b"));
+                        return null;
+                    }
+                });
+                try {
+                    overlappingWrite.get();
+                } catch (Exception e) {
+                    // expected
+                }
+                throw new RuntimeException("boom");
+            }
+        }).getString("test.a");
+
+        $.setString("test.a", "untraced");
+        Assert.assertTrue("Nothing should be reported while not enabled", events.isEmpty());
+
+        recording.set(true);
+        try {
+            $.setString("test.a", "traced");
+            bc.leftVal = "b";
+            bc.rightVal = null;
+            $.setVals(bc);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(Arrays.asList(
+                "lockFailure [test.a, test.b]",
+                "reload boom",
+                "write test.a 1",
+                "commit 2 1"
+        ), events);
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testConcurrentCommitsCarryTheirOwnVersions() throws Exception {
+        final DynamicPropsSets partitioned = new DynamicPropsSets(
+                new PropSourceMap("partitioned", new ConcurrentHashMap<String, String>()),
+                PropPartitioners.byNamespace(8));
+        final Set<Long> commitVersions = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        partitioned.addCommitListener(new PropsCommitListener() {
+            @Override
+            public void committed(PropsCommit commit) {
+                // still under the write locks of the changed props, so nobody else can have moved their versions on
+                long version = 0L;
+                for (String propKey : commit.changes().keySet()) {
+                    version = Math.max(version, partitioned.version(propKey));
+                }
+                if (commit.version() != version || !commitVersions.add(commit.version())) {
+                    failed.set(true);
+                }
+            }
+        });
+
+        final String[] namespaces = {"alpha", "beta", "gamma", "delta"};
+        ExecutorService executorService = Executors.newFixedThreadPool(namespaces.length);
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+        for (int n = 0; n < namespaces.length; ++n) {
+            final String namespace = namespaces[n];
+            final boolean sets = n % 2 == 0;
+            writers.add(executorService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    PropSetAsPair pair = new PropSetAsPair(namespace + ".a", namespace + ".b");
+                    for (int i = 0; i < 2000; ++i) {
+                        if (sets) {
+                            pair.leftVal = pair.rightVal = Integer.toString(i);
+                            partitioned.setVals(pair);
+                        } else {
+                            partitioned.setInt(namespace + ".a", i);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executorService.shutdown();
+
+        Assert.assertFalse(failed.get());
+        Assert.assertEquals(4 * 2000, commitVersions.size());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testPartitionedSnapshots() throws Exception {
+        // writers of different partitions write at the same time, so the source must be thread-safe
+        final DynamicPropsSets partitioned = new DynamicPropsSets(
+                new PropSourceMap("partitioned", new ConcurrentHashMap<String, String>()),
+                PropPartitioners.byNamespace(8));
+        final String[] namespaces = {"alpha", "beta", "gamma", "delta"};
+        for (String namespace : namespaces) {
+            Assert.assertEquals(partitioned.partitioner().partition(namespace + ".a"),
+                    partitioned.partitioner().partition(namespace + ".b"));
+        }
+
+        // writes to another partition from within a write, while snapshots wait on every partition
+        partitioned.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                partitioned.setString("mirror.alpha", propChange.now());
+            }
+        }).getString("alpha.a");
+
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        ExecutorService executorService = Executors.newFixedThreadPool(namespaces.length + 1);
+        List<Future<?>> writers = new ArrayList<Future<?>>();
+        for (final String namespace : namespaces) {
+            writers.add(executorService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    PropSetAsPair pair = new PropSetAsPair(namespace + ".a", namespace + ".b");
+                    for (int i = 0; i < 2000; ++i) {
+                        pair.leftVal = pair.rightVal = Integer.toString(i);
+                        partitioned.setVals(pair);
+                    }
+                    return null;
+                }
+            }));
+        }
+        Future<?> snapshots = executorService.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                while (!done.get()) {
+                    // asMap is a live view of a PropSourceMap, whereas the delta is copied while writes are blocked
+                    Map<String, VersionedProp> snapshot = partitioned.changesSince(0).changes();
+                    for (String namespace : namespaces) {
+                        VersionedProp a = snapshot.get(namespace + ".a");
+                        VersionedProp b = snapshot.get(namespace + ".b");
+                        if (!ObjectUtils.equals(a == null ? null : a.value(), b == null ? null : b.value())) {
+                            failed.set(true);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        done.set(true);
+        snapshots.get();
+        executorService.shutdown();
+
+        Assert.assertFalse(failed.get());
+        for (String namespace : namespaces) {
+            Assert.assertEquals("1999", partitioned.getString(namespace + ".a"));
+            Assert.assertEquals("1999", partitioned.getString(namespace + ".b"));
+        }
+        Assert.assertEquals("1999", partitioned.getString("mirror.alpha"));
+    }
+
     @Test(timeout = 30 * 1000) // 30 seconds
     public void testThreadsDisjointWriters() throws InterruptedException {
         final LivePropSet ab = new LivePropSet("test.a", "test.b") {
@@ -336,4 +701,167 @@ public class DynamicPropsSetsTest extends DynamicPropsTest<DynamicPropsSets> { /
         Assert.assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
         Assert.assertTrue(exceptionOccurred.value);
     }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testAwaitPropSetChange() throws Exception {
+        final PropSetAsPair ab = new PropSetAsPair("test.a", "test.b");
+        $.setString("test.a", "a");
+        final long seen = $.version(ab);
+
+        Assert.assertNull($.awaitChange(ab, seen, 10, TimeUnit.MILLISECONDS));
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<VersionedVals<Pair<String, String>>> watcher = executorService.submit(new Callable<VersionedVals<Pair<String, String>>>() {
+            @Override
+            public VersionedVals<Pair<String, String>> call() throws Exception {
+                return $.awaitChange(ab, seen, 20, TimeUnit.SECONDS);
+            }
+        });
+        Thread.sleep(50L);
+        Assert.assertFalse(watcher.isDone());
+
+        $.setString("test.b", "b");
+        VersionedVals<Pair<String, String>> changed = watcher.get(20, TimeUnit.SECONDS);
+        Assert.assertEquals(Pair.of("a", "b"), changed.vals());
+        Assert.assertEquals($.version("test.b"), changed.version());
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testTransactionAcrossPropSets() {
+        $.setString("test.primary.url", "db://old-primary");
+        $.setString("test.replica.url", "db://old-replica");
+        final LivePropSet primary = new LivePropSet("test.primary.url", "test.primary.user");
+        final LivePropSet replica = new LivePropSet("test.replica.url", "test.replica.user");
+
+        final Holder<Integer> reloadCountSpanning = new Holder<Integer>(0);
+        final Holder<PropChange<Pair<String, String>>> spanningChange = new Holder<PropChange<Pair<String, String>>>();
+        DelegatingAbstractListeningPropSet<Pair<String, String>> spanning = new DelegatingAbstractListeningPropSet<Pair<String, String>>(
+                new PropSetAsPair("test.primary.url", "test.replica.url")
+        ) {
+            @Override
+            public void reload(PropChange<Pair<String, String>> propChange) {
+                ++reloadCountSpanning.value;
+                spanningChange.value = propChange;
+            }
+        };
+        $.to(spanning).getVals(spanning);
+
+        final AtomicInteger reloadCountSingle = new AtomicInteger();
+        $.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                reloadCountSingle.incrementAndGet();
+            }
+        }).getString("test.replica.user");
+
+        primary.setString("test.primary.url", "db://primary");
+        primary.setString("test.primary.user", "admin");
+        replica.setString("test.replica.url", "db://replica");
+        replica.setString("test.replica.user", "reader");
+
+        String result = $.transact(new PropsTransaction<String>() {
+            @Override
+            public String execute(PropsSets props) {
+                props.setVals(primary);
+                props.setVals(replica);
+                Assert.assertEquals("Writes should not be visible before commit",
+                        "db://old-primary", $.getString("test.primary.url"));
+                Assert.assertEquals("Writes should be visible within the transaction",
+                        "db://primary", props.getString("test.primary.url"));
+                return "committed";
+            }
+        });
+
+        Assert.assertEquals("committed", result);
+        Assert.assertEquals("db://primary", $.getString("test.primary.url"));
+        Assert.assertEquals("admin", $.getString("test.primary.user"));
+        Assert.assertEquals("db://replica", $.getString("test.replica.url"));
+        Assert.assertEquals("reader", $.getString("test.replica.user"));
+        Assert.assertEquals("Spanning listener should fire once for the whole commit", 1, reloadCountSpanning.value.intValue());
+        Assert.assertEquals(Pair.of("db://old-primary", "db://old-replica"), spanningChange.value.old());
+        Assert.assertEquals(Pair.of("db://primary", "db://replica"), spanningChange.value.now());
+        Assert.assertEquals(1, reloadCountSingle.get());
+    }
+
+    @Test
+    public void testTransactionRetriesOnConflict() {
+        $.setInt("test.counter", 0);
+
+        final AtomicInteger attempts = new AtomicInteger();
+        Integer result = $.transact(new PropsTransaction<Integer>() {
+            @Override
+            public Integer execute(PropsSets props) {
+                int counter = props.getInt("test.counter");
+                if (attempts.incrementAndGet() == 1) {
+                    // somebody else sneaks in a write after our read
+                    $.setInt("test.counter", 10);
+                }
+                props.setInt("test.counter", counter + 1);
+                return counter + 1;
+            }
+        });
+
+        Assert.assertEquals("First attempt should have conflicted", 2, attempts.get());
+        Assert.assertEquals(11, result.intValue());
+        Assert.assertEquals(11, $.getInt("test.counter").intValue());
+    }
+
+    @Test
+    public void testTransactionGivesUp() {
+        $.setInt("test.counter", 0);
+
+        final AtomicInteger attempts = new AtomicInteger();
+        try {
+            $.transact(new PropsTransaction<Void>() {
+                @Override
+                public Void execute(PropsSets props) {
+                    attempts.incrementAndGet();
+                    props.setInt("test.counter", props.getInt("test.counter") + 1);
+                    $.setInt("test.counter", -attempts.get()); // always conflicts
+                    return null;
+                }
+            }, 3);
+            Assert.fail("Expected PropTransactionConflictException");
+        } catch (PropTransactionConflictException e) {
+            // expected
+        }
+        Assert.assertEquals(3, attempts.get());
+        Assert.assertEquals("Nothing should have been written by the transaction", -3, $.getInt("test.counter").intValue());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testThreadsTransactionsNoLostUpdates() throws InterruptedException {
+        $.setInt("test.a", 0);
+        $.setInt("test.b", 0);
+
+        final AtomicInteger failures = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; ++i) {
+            executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; ++j) {
+                        try {
+                            $.transact(new PropsTransaction<Void>() {
+                                @Override
+                                public Void execute(PropsSets props) {
+                                    props.setInt("test.a", props.getInt("test.a") + 1);
+                                    props.setInt("test.b", props.getInt("test.b") - 1);
+                                    return null;
+                                }
+                            }, Integer.MAX_VALUE);
+                        } catch (RuntimeException e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        executorService.shutdown();
+        Assert.assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(4000, $.getInt("test.a").intValue());
+        Assert.assertEquals(-4000, $.getInt("test.b").intValue());
+    }
 }
@@ -1,5 +1,9 @@
 package com.github.dirkraft.propslive.dynamic;
 
+import com.github.dirkraft.propslive.dynamic.listen.CoalescingPropListener;
+import com.github.dirkraft.propslive.dynamic.listen.LazyPropChange;
+import com.github.dirkraft.propslive.dynamic.listen.ListenerBulkhead;
+import com.github.dirkraft.propslive.dynamic.listen.ListenerFanOut;
 import com.github.dirkraft.propslive.dynamic.listen.PropChange;
 import com.github.dirkraft.propslive.dynamic.listen.PropListener;
 import com.github.dirkraft.propslive.propsrc.PropSourceMap;
@@ -9,8 +13,12 @@ import org.junit.Test;
 import javax.xml.ws.Holder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -79,6 +87,257 @@ public class DynamicPropsTest<TEST_TARGET extends DynamicProps<?>> {
                 1, triggeredReload.value.intValue());
     }
 
+    @Test
+    public void testVersions() {
+        long start = $.version();
+        Assert.assertEquals(0L, $.version("test.versioned"));
+        Assert.assertNull("Never changed, so nothing newer than version 0", $.getIfChanged("test.versioned", 0L));
+
+        $.setString("test.versioned", "one");
+        VersionedProp one = $.getIfChanged("test.versioned", 0L);
+        Assert.assertEquals("one", one.value());
+        Assert.assertTrue(one.version() > start);
+        Assert.assertEquals(one.version(), $.version("test.versioned"));
+        Assert.assertNull("Nothing newer than what was already seen", $.getIfChanged("test.versioned", one.version()));
+
+        $.setString("test.versioned", "one");
+        Assert.assertNull("Setting the same value is not a change", $.getIfChanged("test.versioned", one.version()));
+
+        $.setString("test.other", "unrelated");
+        Assert.assertNull($.getIfChanged("test.versioned", one.version()));
+
+        $.setString("test.versioned", "two");
+        VersionedProp two = $.getIfChanged("test.versioned", one.version());
+        Assert.assertEquals("two", two.value());
+        Assert.assertTrue(two.version() > one.version());
+    }
+
+    @Test
+    public void testChangesSince() {
+        PropsDelta delta = $.changesSince($.version());
+        Assert.assertTrue(delta.changes().isEmpty());
+
+        $.setString("test.a", "a");
+        $.setString("test.b", "b");
+        $.setString("test.a", "A");
+        delta = $.changesSince(delta.version());
+        Assert.assertEquals(2, delta.changes().size());
+        Assert.assertEquals("A", delta.changes().get("test.a").value());
+        Assert.assertEquals("b", delta.changes().get("test.b").value());
+        Assert.assertEquals($.version(), delta.version());
+
+        $.setString("test.b", "B");
+        delta = $.changesSince(delta.version());
+        Assert.assertEquals(1, delta.changes().size());
+        Assert.assertEquals("B", delta.changes().get("test.b").value());
+
+        Assert.assertTrue($.changesSince(delta.version()).changes().isEmpty());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testAwaitChange() throws Exception {
+        $.setString("test.watched", "before");
+        final long seen = $.version("test.watched");
+
+        Assert.assertNull("Nothing changed, should time out", $.awaitChange("test.watched", seen, 10, TimeUnit.MILLISECONDS));
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<VersionedProp> watcher = executorService.submit(new Callable<VersionedProp>() {
+            @Override
+            public VersionedProp call() throws Exception {
+                return $.awaitChange("test.watched", seen, 20, TimeUnit.SECONDS);
+            }
+        });
+        Thread.sleep(50L);
+        $.setString("test.unwatched", "should not wake the watcher");
+        Thread.sleep(50L);
+        Assert.assertFalse(watcher.isDone());
+
+        $.setString("test.watched", "after");
+        VersionedProp changed = watcher.get(20, TimeUnit.SECONDS);
+        Assert.assertEquals("after", changed.value());
+        Assert.assertTrue(changed.version() > seen);
+
+        Assert.assertEquals("Already changed since, so should return immediately",
+                "after", $.awaitChange("test.watched", seen, 20, TimeUnit.SECONDS).value());
+        executorService.shutdown();
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testAwaitChangeForgetsWaiters() throws Exception {
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertNull($.awaitChange("test.waited." + i, $.version(), 0, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertTrue($.propWaiters.isEmpty());
+
+        // waiters coming and going on the same prop are all still woken by a change
+        final long seen = $.version("test.watched");
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<VersionedProp>> watchers = new ArrayList<Future<VersionedProp>>();
+        for (int i = 0; i < 64; ++i) {
+            final boolean brief = i % 2 == 0;
+            watchers.add(executorService.submit(new Callable<VersionedProp>() {
+                @Override
+                public VersionedProp call() throws Exception {
+                    return $.awaitChange("test.watched", seen, brief ? 1 : 20000, TimeUnit.MILLISECONDS);
+                }
+            }));
+        }
+        Thread.sleep(100L);
+        $.setString("test.watched", "changed");
+        for (Future<VersionedProp> watcher : watchers) {
+            watcher.get(20, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+        Assert.assertTrue($.propWaiters.isEmpty());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testCoalesce() throws InterruptedException {
+        $.setInt("traffic.weight", -1);
+        final List<PropChange<Integer>> changes = new CopyOnWriteArrayList<PropChange<Integer>>();
+        $.to(new PropListener<Integer>() {
+            @Override
+            public void reload(PropChange<Integer> propChange) {
+                changes.add(propChange);
+            }
+        }).getInt("traffic.weight");
+        $.coalesce("traffic.weight", 100, 10000, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 200; ++i) {
+            $.setInt("traffic.weight", i);
+        }
+        Assert.assertTrue("Nothing should be delivered until the window has passed", changes.isEmpty());
+
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (changes.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Thread.sleep(200L); // make sure nothing else trickles in
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(-1, changes.get(0).old().intValue());
+        Assert.assertEquals(199, changes.get(0).now().intValue());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testCoalesceMaxDelay() throws InterruptedException {
+        $.setInt("traffic.weight", 0);
+        final AtomicInteger reloadCount = new AtomicInteger();
+        $.to(new CoalescingPropListener<Integer>(new PropListener<Integer>() {
+            @Override
+            public void reload(PropChange<Integer> propChange) {
+                reloadCount.incrementAndGet();
+            }
+        }, 200, 100, TimeUnit.MILLISECONDS)).getInt("traffic.weight");
+
+        // changes never go quiet for the window, but should still arrive every max delay
+        for (int i = 1; i <= 100; ++i) {
+            $.setInt("traffic.weight", i);
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue("Expected several reloads, got " + reloadCount.get(), reloadCount.get() >= 3);
+        Assert.assertTrue("Expected coalescing, got " + reloadCount.get(), reloadCount.get() < 50);
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testCoalesceLeavesValuesLazy() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final List<PropChange<Integer>> changes = new CopyOnWriteArrayList<PropChange<Integer>>();
+        CoalescingPropListener<Integer> coalescing = new CoalescingPropListener<Integer>(new PropListener<Integer>() {
+            @Override
+            public void reload(PropChange<Integer> propChange) {
+                changes.add(propChange);
+                delivered.countDown();
+            }
+        }, 50, 10000, TimeUnit.MILLISECONDS);
+
+        final AtomicInteger computed = new AtomicInteger();
+        for (int i = 0; i < 3; ++i) {
+            final int old = i;
+            coalescing.reload(new LazyPropChange<Integer>() {
+                @Override
+                protected Integer computeOld() {
+                    computed.incrementAndGet();
+                    return old;
+                }
+
+                @Override
+                protected Integer computeNow() {
+                    computed.incrementAndGet();
+                    return old + 1;
+                }
+            });
+        }
+        Assert.assertEquals("Nothing should be computed on the writing thread", 0, computed.get());
+
+        Assert.assertTrue(delivered.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(0, changes.get(0).old().intValue());
+        Assert.assertEquals(3, changes.get(0).now().intValue());
+        Assert.assertEquals("Only the old value of the first and the new value of the last", 2, computed.get());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testFanOut() throws InterruptedException {
+        final CountDownLatch stuck = new CountDownLatch(1);
+        PropListener<Integer> stuckListener = new PropListener<Integer>() {
+            @Override
+            public void reload(PropChange<Integer> propChange) {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final CountDownLatch delivered = new CountDownLatch(20);
+        PropListener<Integer> fastListener = new PropListener<Integer>() {
+            @Override
+            public void reload(PropChange<Integer> propChange) {
+                delivered.countDown();
+            }
+        };
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ListenerFanOut fanOut = new ListenerFanOut(executor,
+                new ListenerBulkhead("default", 4, 10, TimeUnit.SECONDS));
+        ListenerBulkhead stuckBulkhead = new ListenerBulkhead("stuck", 1, 100, TimeUnit.MILLISECONDS);
+        fanOut.assign(stuckListener, stuckBulkhead);
+        $.fanOut(fanOut);
+        try {
+            $.to(stuckListener).getInt("fan.out");
+            $.to(fastListener).getInt("fan.out");
+
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 20; ++i) {
+                $.setInt("fan.out", i);
+            }
+            Assert.assertTrue("Writes shouldn't wait on listeners", System.currentTimeMillis() - start < 1000L);
+            Assert.assertTrue("The stuck listener shouldn't hold up the others", delivered.await(10, TimeUnit.SECONDS));
+
+            // The stuck bulkhead only ever runs one at a time, and reports it once over budget.
+            long deadline = System.currentTimeMillis() + 10000L;
+            while (stuckBulkhead.getTimings().getOverBudget() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(1, stuckBulkhead.getTimings().getOverBudget());
+            Assert.assertEquals(0, stuckBulkhead.getTimings().getReloads());
+            Assert.assertEquals(19, stuckBulkhead.getQueued());
+            Assert.assertTrue(fanOut.bulkheads().contains(stuckBulkhead));
+            Assert.assertEquals(20, fanOut.bulkhead(fastListener).getTimings().getReloads());
+            stuck.countDown();
+            deadline = System.currentTimeMillis() + 10000L;
+            while (stuckBulkhead.getTimings().getReloads() < 20 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            Assert.assertEquals(20, stuckBulkhead.getTimings().getReloads());
+        } finally {
+            $.stopFanOut();
+            stuck.countDown();
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testThreadsReadersAndWrite() throws InterruptedException {
         $.setInt("test.int", 0);
@@ -197,4 +456,148 @@ public class DynamicPropsTest<TEST_TARGET extends DynamicProps<?>> {
         Assert.assertEquals("32768 set calls", 32768, setCount.get());
         Assert.assertEquals("64 listeners * 32768 set calls = 2097152 reloads", 2097152, reloadCount.get());
     }
+
+    @Test(timeout = 10000)
+    public void testSetWithTtl() throws Exception {
+        $.setString("test.ttl.level", "INFO");
+        final List<String> reloaded = new CopyOnWriteArrayList<String>();
+        $.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                reloaded.add(propChange.now());
+            }
+        }).getString("test.ttl.level");
+
+        $.setWithTtl("test.ttl.level", "DEBUG", 200, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("DEBUG", $.getString("test.ttl.level"));
+        // again before expiry: later expiry, but still back to what it was before either
+        $.setWithTtl("test.ttl.level", "TRACE", 300, TimeUnit.MILLISECONDS);
+        Thread.sleep(250);
+        Assert.assertEquals("TRACE", $.getString("test.ttl.level"));
+        while (!"INFO".equals($.getString("test.ttl.level"))) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("[DEBUG, TRACE, INFO]", reloaded.toString());
+
+        // a prop which did not exist goes back to not existing
+        $.setWithTtl("test.ttl.new", "x", 0, TimeUnit.MILLISECONDS);
+        while ($.getString("test.ttl.new") != null) {
+            Thread.sleep(10);
+        }
+
+        // set otherwise meanwhile, so left be
+        $.setWithTtl("test.ttl.level", "DEBUG", 100, TimeUnit.MILLISECONDS);
+        $.setString("test.ttl.level", "WARN");
+        Thread.sleep(300);
+        Assert.assertEquals("WARN", $.getString("test.ttl.level"));
+
+        // cancelled, so for good
+        $.setWithTtl("test.ttl.level", "ERROR", 100, TimeUnit.MILLISECONDS).cancel();
+        Thread.sleep(300);
+        Assert.assertEquals("ERROR", $.getString("test.ttl.level"));
+    }
+
+    @Test(timeout = 10000)
+    public void testSetWithTtlAfterSetOtherwise() throws Exception {
+        $.setString("test.ttl.level", "INFO");
+        $.setWithTtl("test.ttl.level", "DEBUG", 5000, TimeUnit.MILLISECONDS);
+        $.setString("test.ttl.level", "WARN");
+        // the first override no longer stands, so back to what was set since rather than to INFO
+        $.setWithTtl("test.ttl.level", "TRACE", 0, TimeUnit.MILLISECONDS);
+        while ("TRACE".equals($.getString("test.ttl.level"))) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("WARN", $.getString("test.ttl.level"));
+    }
+
+    @Test(timeout = 10000)
+    public void testSetWithTtlListenerOverridesOnAnotherThread() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            $.to(new PropListener<String>() {
+                @Override
+                public void reload(PropChange<String> propChange) {
+                    try {
+                        executor.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                $.setWithTtl("test.ttl.follower", "on", 0, TimeUnit.MILLISECONDS);
+                            }
+                        }).get();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }).getString("test.ttl.leader");
+
+            $.setWithTtl("test.ttl.leader", "on", 0, TimeUnit.MILLISECONDS);
+            while ($.getString("test.ttl.leader") != null || $.getString("test.ttl.follower") != null) {
+                Thread.sleep(10);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSetWithTtlWhileListenerOfThePropOverrides() throws Exception {
+        final CountDownLatch inListener = new CountDownLatch(1);
+        $.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                inListener.countDown();
+                try {
+                    // give the other thread time to start its setWithTtl of this prop, whose write lock is held here
+                    Thread.sleep(200L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                $.setWithTtl("test.ttl.other", "on", 0, TimeUnit.MILLISECONDS);
+            }
+        }).getString("test.ttl.k");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    $.setString("test.ttl.k", "written");
+                }
+            });
+            inListener.await();
+            Future<?> overrider = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    while (true) {
+                        try {
+                            $.setWithTtl("test.ttl.k", "overridden", 60, TimeUnit.SECONDS);
+                            return null;
+                        } catch (PropLockingException e) {
+                            Thread.yield(); // the writer is still at it
+                        }
+                    }
+                }
+            });
+            writer.get(5, TimeUnit.SECONDS);
+            overrider.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals("overridden", $.getString("test.ttl.k"));
+    }
+
+    @Test(timeout = 10000)
+    public void testScheduleSet() throws Exception {
+        long at = System.currentTimeMillis() + 200;
+        $.scheduleSet("test.scheduled", "later", at);
+        $.scheduleSet("test.scheduled.cancelled", "never", at).cancel();
+        Assert.assertNull($.getString("test.scheduled"));
+        while ($.getString("test.scheduled") == null) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(System.currentTimeMillis() >= at);
+        Assert.assertEquals("later", $.getString("test.scheduled"));
+        Thread.sleep(DynamicProps.OVERRIDE_TICK_MILLIS * 2);
+        Assert.assertNull($.getString("test.scheduled.cancelled"));
+    }
 }
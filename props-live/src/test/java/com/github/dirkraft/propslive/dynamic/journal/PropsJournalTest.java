@@ -0,0 +1,124 @@
+package com.github.dirkraft.propslive.dynamic.journal;
+
+import com.github.dirkraft.propslive.dynamic.DynamicPropsSets;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.propsrc.PropSourceCompact;
+import com.github.dirkraft.propslive.set.ease.PropSetAsMap;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropsJournalTest {
+
+    private DynamicPropsSets props;
+    private PropsJournal journal;
+
+    @Before
+    public void setUp() {
+        props = new DynamicPropsSets(new PropSourceCompact());
+        props.setString("test.a", "a0");
+        props.setString("test.b", "b0");
+        journal = new PropsJournal(props, 100);
+    }
+
+    @Test
+    public void testTimeTravelReads() {
+        long v0 = props.version();
+        props.setString("test.a", "a1");
+        long v1 = props.version();
+        props.setVals(new PropSetAsMap("test.a", "test.b", "test.c").withWrites("a2", null, "c2"));
+        long v2 = props.version();
+
+        Assert.assertEquals("a0", journal.getAsOf("test.a", v0));
+        Assert.assertEquals("a1", journal.getAsOf("test.a", v1));
+        Assert.assertEquals("a2", journal.getAsOf("test.a", v2));
+        Assert.assertEquals("b0", journal.getAsOf("test.b", v1));
+        Assert.assertNull(journal.getAsOf("test.b", v2));
+        Assert.assertNull(journal.getAsOf("test.c", v1));
+        Assert.assertEquals("b0", journal.getAsOf("test.b", v0));
+
+        Map<String, String> asOfV1 = new HashMap<String, String>();
+        asOfV1.put("test.a", "a1");
+        asOfV1.put("test.b", "b0");
+        Assert.assertEquals(asOfV1, journal.snapshotAsOf(v1));
+        Assert.assertEquals(props.asMap(), journal.snapshotAsOf(v2));
+
+        List<PropsCommit> commits = journal.commitsSince(v0);
+        Assert.assertEquals(2, commits.size());
+        Assert.assertEquals(v1, commits.get(0).version());
+        Assert.assertEquals(v2, commits.get(1).version());
+        Assert.assertEquals("a1", commits.get(1).changes().get("test.a").old());
+        Assert.assertEquals(3, commits.get(1).changes().size());
+        Assert.assertEquals(1, journal.commitsSince(v1).size());
+    }
+
+    @Test
+    public void testRollbackIsOneCommit() {
+        long v0 = props.version();
+        props.setString("test.a", "bad");
+        props.setString("test.c", "bad");
+        props.setString("test.b", null);
+        Map<String, String> before = journal.snapshotAsOf(v0);
+
+        final List<PropsCommit> commits = new CopyOnWriteArrayList<PropsCommit>();
+        props.addCommitListener(new PropsCommitListener() {
+            @Override
+            public void committed(PropsCommit commit) {
+                commits.add(commit);
+            }
+        });
+        long beforeRollback = props.version();
+        Map<String, String> rolledBack = journal.rollbackTo(v0);
+
+        Assert.assertEquals(3, rolledBack.size());
+        Assert.assertEquals(1, commits.size());
+        Assert.assertEquals(3, commits.get(0).changes().size());
+        Assert.assertEquals(before, props.asMap());
+        Assert.assertEquals("a0", props.getString("test.a"));
+        Assert.assertNull(props.getString("test.c"));
+
+        // and the rollback can be rolled back
+        journal.rollbackTo(beforeRollback);
+        Assert.assertEquals("bad", props.getString("test.a"));
+        Assert.assertNull(props.getString("test.b"));
+
+        // nothing to do
+        Assert.assertTrue(journal.rollbackTo(props.version()).isEmpty());
+    }
+
+    @Test
+    public void testBoundedReach() {
+        PropsJournal small = new PropsJournal(props, 4);
+        long start = props.version();
+        Assert.assertEquals(start, small.floorVersion());
+        try {
+            small.getAsOf("test.a", start - 1);
+            Assert.fail("reached back before it started");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        for (int i = 0; i < 10; ++i) {
+            props.setString("test.a", "a" + (i + 1));
+        }
+        Assert.assertEquals(4, small.size());
+        long floor = small.floorVersion();
+        Assert.assertEquals(props.version() - 4, floor);
+        Assert.assertEquals("a6", small.getAsOf("test.a", floor));
+        try {
+            small.snapshotAsOf(floor - 1);
+            Assert.fail("reached back past what was overwritten");
+        } catch (IllegalArgumentException expected) {
+        }
+        // the big one still reaches
+        Assert.assertEquals("a0", journal.getAsOf("test.a", start));
+    }
+}
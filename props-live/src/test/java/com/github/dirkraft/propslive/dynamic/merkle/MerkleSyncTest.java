@@ -0,0 +1,130 @@
+package com.github.dirkraft.propslive.dynamic.merkle;
+
+import com.github.dirkraft.propslive.PropsImpl;
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.DynamicPropsSets;
+import com.github.dirkraft.propslive.propsrc.PropSourceCompact;
+import com.github.dirkraft.propslive.set.ease.PropSetAsMap;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class MerkleSyncTest {
+
+    @Test
+    public void testIncrementalMatchesRebuilt() {
+        DynamicProps<PropsImpl> props = newProps(1000);
+        PropsMerkleTree tracked = props.merkleTree(10);
+        long initialRoot = tracked.root();
+
+        props.setString("test.500", "changed");
+        props.setString("test.new", "added");
+        props.setString("test.7", null);
+        Assert.assertFalse(initialRoot == tracked.root());
+        Assert.assertEquals(rebuiltRoot(props, 10), tracked.root());
+
+        // and back again
+        props.setString("test.500", "500");
+        props.setString("test.new", null);
+        props.setString("test.7", "7");
+        Assert.assertEquals(initialRoot, tracked.root());
+    }
+
+    @Test
+    public void testSetValsUpdatesTree() {
+        DynamicPropsSets props = new DynamicPropsSets(new PropSourceCompact());
+        PropsMerkleTree tree = props.merkleTree(8);
+        props.setVals(new PropSetAsMap("test.a", "test.b").withWrites("1", "2"));
+
+        DynamicProps<PropsImpl> same = newProps(0);
+        same.setString("test.a", "1");
+        same.setString("test.b", "2");
+        Assert.assertEquals(rebuiltRoot(same, 8), tree.root());
+    }
+
+    @Test
+    public void testFindAndRepairDivergence() {
+        int n = 50000;
+        DynamicProps<PropsImpl> local = newProps(n);
+        DynamicProps<PropsImpl> remote = newProps(n);
+        PropsMerkleTree localTree = local.merkleTree(16);
+        PropsMerkleTree remoteTree = remote.merkleTree(16);
+        Assert.assertEquals(localTree.root(), remoteTree.root());
+        Assert.assertEquals(0, MerkleSync.differingLeaves(localTree, remoteTree).length);
+
+        local.setString("test.123", "drifted");
+        local.setString("test.local-only", "x");
+        remote.setString("test.remote-only", "y");
+        remote.setString("test.456", null);
+
+        CountingView countingRemote = new CountingView(remoteTree);
+        Map<String, String> repaired = MerkleSync.repair(local, localTree, countingRemote);
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("test.123", "123");
+        expected.put("test.local-only", null);
+        expected.put("test.remote-only", "y");
+        expected.put("test.456", null);
+        Assert.assertEquals(expected, repaired);
+
+        Assert.assertEquals(remoteTree.root(), localTree.root());
+        Assert.assertEquals(remote.asMap(), local.asMap());
+        // 2 children of each of at most 4 differing nodes per level, rather than anything like all of the props
+        Assert.assertTrue(countingRemote.hashes.get() <= 1 + 16 * 2 * 4);
+        Assert.assertTrue(countingRemote.props.get() < 20);
+
+        Assert.assertTrue(MerkleSync.repair(local, localTree, remoteTree).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentDepths() {
+        MerkleSync.differingLeaves(newProps(1).merkleTree(4), newProps(1).merkleTree(5));
+    }
+
+    private static DynamicProps<PropsImpl> newProps(int n) {
+        PropSourceCompact source = new PropSourceCompact();
+        for (int i = 0; i < n; ++i) {
+            source.setString("test." + i, Integer.toString(i));
+        }
+        return new DynamicProps<PropsImpl>(source);
+    }
+
+    /** Of another instance with the same props, so as not to replace the tree being kept of these */
+    private static long rebuiltRoot(DynamicProps<?> props, int depth) {
+        return new DynamicProps<PropsImpl>(new PropSourceCompact("copy", props.asMap())).merkleTree(depth).root();
+    }
+
+    /** Counts what would go over the wire */
+    private static class CountingView implements MerkleView {
+        final MerkleView delegate;
+        final AtomicInteger hashes = new AtomicInteger();
+        final AtomicInteger props = new AtomicInteger();
+
+        CountingView(MerkleView delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int depth() {
+            return delegate.depth();
+        }
+
+        @Override
+        public long[] hashes(int[] nodes) {
+            hashes.addAndGet(nodes.length);
+            return delegate.hashes(nodes);
+        }
+
+        @Override
+        public Map<String, String> props(int[] leaves) {
+            Map<String, String> leafProps = delegate.props(leaves);
+            props.addAndGet(leafProps.size());
+            return leafProps;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.dirkraft.propslive.dynamic.metrics;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.DynamicPropsSets;
+import com.github.dirkraft.propslive.dynamic.PropLockingException;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import com.github.dirkraft.propslive.set.ease.PropSetAsPair;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class DefaultPropsMetricsTest {
+
+    final DynamicProps<?> $ = new DynamicProps(new PropSourceMap(getClass().getName()));
+    final DefaultPropsMetrics metrics = new DefaultPropsMetrics();
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.percentile(99, TimeUnit.NANOSECONDS));
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000L); // 1us to 1ms
+        }
+        Assert.assertEquals(1000, histogram.count());
+        Assert.assertEquals(1000, histogram.max(TimeUnit.MICROSECONDS));
+        Assert.assertEquals(500, histogram.mean(TimeUnit.MICROSECONDS));
+        assertWithin(500, histogram.percentile(50, TimeUnit.MICROSECONDS), 0.07);
+        assertWithin(990, histogram.percentile(99, TimeUnit.MICROSECONDS), 0.07);
+        Assert.assertEquals(1000, histogram.percentile(100, TimeUnit.MICROSECONDS));
+
+        for (long value : new long[]{0, 1, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            Assert.assertTrue(value + " above its bucket", value <= LatencyHistogram.highestValue(bucket));
+            Assert.assertTrue(value + " below its bucket", bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+        }
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testStripedCounter() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; ++t) {
+                futures[t] = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < 100000; ++i) {
+                            counter.increment();
+                        }
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(800000, counter.sum());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testDynamicPropsMetrics() throws Exception {
+        $.metrics(metrics);
+        $.setInt("test.hot", 1);
+        for (int i = 0; i < 10; ++i) {
+            $.getInt("test.hot");
+        }
+        $.getString("test.cold");
+        $.asMap();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            $.to(new PropListener<Integer>() {
+                @Override
+                public void reload(PropChange<Integer> propChange) {
+                    // listeners are notified while the writer still holds the prop's lock
+                    Future<?> concurrentWrite = executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            $.setInt("test.hot", -1);
+                            return null;
+                        }
+                    });
+                    try {
+                        concurrentWrite.get();
+                        Assert.fail("concurrent write should have failed");
+                    } catch (ExecutionException e) {
+                        Assert.assertTrue(e.getCause() instanceof PropLockingException);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }).getInt("test.hot");
+            $.setInt("test.hot", 2);
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(11, metrics.reads("test.hot"));
+        Assert.assertEquals(2, metrics.writes("test.hot"));
+        Assert.assertEquals(1, metrics.lockFailures("test.hot"));
+        Assert.assertEquals(1, metrics.reads("test.cold"));
+        Assert.assertEquals(0, metrics.writes("test.cold"));
+        Assert.assertEquals(12, metrics.getReads());
+        Assert.assertEquals(1, metrics.snapshotBlocking().count());
+        Assert.assertTrue(metrics.getHotKeys()[0].startsWith("test.hot reads=11 writes=2 lockFailures=1"));
+
+        $.stopMetrics();
+        $.getInt("test.hot");
+        Assert.assertEquals(11, metrics.reads("test.hot"));
+
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getReads());
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        ObjectName name = metrics.registerMBean("com.github.dirkraft.propslive:type=PropsMetrics,name=test");
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            $.metrics(metrics);
+            $.getString("test.prop");
+            $.getString("test.prop");
+            Assert.assertEquals(2L, mBeanServer.getAttribute(name, "Reads"));
+            Assert.assertEquals(1, ((String[]) mBeanServer.getAttribute(name, "HotKeys")).length);
+            mBeanServer.invoke(name, "reset", null, null);
+            Assert.assertEquals(0L, mBeanServer.getAttribute(name, "Reads"));
+        } finally {
+            mBeanServer.unregisterMBean(name);
+        }
+    }
+
+    private static void assertWithin(long expected, long actual, double tolerance) {
+        Assert.assertTrue("expected " + expected + " but was " + actual,
+                Math.abs(expected - actual) <= expected * tolerance);
+    }
+
+    @Test
+    public void testUncontendedPropSetReadsRecordNoLockWait() {
+        DynamicPropsSets props = new DynamicPropsSets(new PropSourceMap(getClass().getName()));
+        props.metrics(metrics);
+        PropSetAsPair ab = new PropSetAsPair("test.a", "test.b");
+        for (int i = 0; i < 10; ++i) {
+            props.getVals(ab);
+        }
+        Assert.assertEquals(10, metrics.reads("test.a"));
+        Assert.assertEquals(10, metrics.reads("test.b"));
+        Assert.assertEquals(0, metrics.readLockWaits().count());
+    }
+}
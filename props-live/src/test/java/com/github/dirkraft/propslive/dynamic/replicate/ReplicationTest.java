@@ -0,0 +1,240 @@
+package com.github.dirkraft.propslive.dynamic.replicate;
+
+import com.github.dirkraft.propslive.PropsImpl;
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.propsrc.PropSourceCompact;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class ReplicationTest {
+
+    private DynamicProps<PropsImpl> leaderProps;
+    private DynamicProps<PropsImpl> followerProps;
+    private ReplicationLeader leader;
+    private ReplicationFollower follower;
+
+    @Before
+    public void setUp() {
+        leaderProps = newProps();
+        followerProps = newProps();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (follower != null) {
+            follower.close();
+        }
+        if (leader != null) {
+            leader.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testSnapshotThenBatches() throws Exception {
+        leaderProps.setString("test.before", "seeded");
+        startLeader(100);
+        startFollower();
+        awaitCaughtUp();
+        Assert.assertEquals("seeded", followerProps.getString("test.before"));
+
+        final List<String> reloaded = new CopyOnWriteArrayList<String>();
+        followerProps.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> values) {
+                reloaded.add(values.now());
+            }
+        }).getString("test.a");
+
+        leaderProps.setString("test.a", "1");
+        leaderProps.setString("test.a", "2");
+        leaderProps.setString("test.before", null);
+        awaitCaughtUp();
+        Assert.assertEquals("2", followerProps.getString("test.a"));
+        Assert.assertNull(followerProps.getString("test.before"));
+        Assert.assertEquals(3, follower.sequence());
+        // local listeners fire for each replicated change
+        Assert.assertEquals("[1, 2]", reloaded.toString());
+    }
+
+    @Test(timeout = 10000)
+    public void testCatchUpFromLog() throws Exception {
+        startLeader(100);
+        startFollower();
+        leaderProps.setString("test.a", "1");
+        awaitCaughtUp();
+
+        leader.disconnectFollowers();
+        for (int i = 2; i <= 5; ++i) {
+            leaderProps.setString("test.a", Integer.toString(i));
+        }
+        leaderProps.setString("test.b", "b");
+        awaitCaughtUp();
+        Assert.assertEquals("5", followerProps.getString("test.a"));
+        Assert.assertEquals("b", followerProps.getString("test.b"));
+        Assert.assertEquals(6, follower.sequence());
+    }
+
+    @Test(timeout = 10000)
+    public void testCatchUpFromSnapshotPastTheLog() throws Exception {
+        startLeader(2);
+        startFollower();
+        leaderProps.setString("test.a", "1");
+        leaderProps.setString("test.removed", "x");
+        awaitCaughtUp();
+
+        leader.disconnectFollowers();
+        for (int i = 0; i < 10; ++i) {
+            leaderProps.setString("test.many." + i, Integer.toString(i));
+        }
+        leaderProps.setString("test.removed", null);
+        awaitCaughtUp();
+        Assert.assertEquals("1", followerProps.getString("test.a"));
+        Assert.assertEquals("9", followerProps.getString("test.many.9"));
+        Assert.assertNull(followerProps.getString("test.removed"));
+    }
+
+    @Test(timeout = 10000)
+    public void testNewLeaderEpoch() throws Exception {
+        startLeader(100);
+        startFollower();
+        leaderProps.setString("test.a", "1");
+        leaderProps.setString("test.b", "1");
+        awaitCaughtUp();
+        long firstEpoch = follower.epoch();
+
+        // a new leader in the same place, over props which never had 'test.a'
+        InetSocketAddress address = leader.localAddress();
+        leader.close();
+        leaderProps = newProps();
+        leaderProps.setString("test.b", "2");
+        leader = new ReplicationLeader(leaderProps, address, 100);
+        awaitCaughtUp();
+        Assert.assertFalse(firstEpoch == follower.epoch());
+        Assert.assertEquals(0, follower.sequence());
+        Assert.assertEquals("2", followerProps.getString("test.b"));
+        Assert.assertNull(followerProps.getString("test.a"));
+    }
+
+    @Test(timeout = 10000)
+    public void testManyFollowers() throws Exception {
+        startLeader(1000);
+        ReplicationFollower[] followers = new ReplicationFollower[4];
+        DynamicProps<?>[] followersProps = new DynamicProps<?>[followers.length];
+        try {
+            for (int i = 0; i < followers.length; ++i) {
+                followersProps[i] = newProps();
+                followers[i] = new ReplicationFollower(followersProps[i], loopback(), 50, TimeUnit.MILLISECONDS);
+            }
+            for (int i = 0; i < 500; ++i) {
+                leaderProps.setInt("test.counter", i);
+            }
+            for (int i = 0; i < followers.length; ++i) {
+                Assert.assertTrue(followers[i].awaitSequence(leader.epoch(), leader.sequence(), 5, TimeUnit.SECONDS));
+                Assert.assertEquals(499, (int) followersProps[i].getInt("test.counter"));
+            }
+        } finally {
+            for (ReplicationFollower f : followers) {
+                if (f != null) {
+                    f.close();
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSnapshotBiggerThanQueueLimit() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            value.append('v');
+        }
+        int props = (ReplicationLeader.MAX_QUEUED_BYTES / 10000) * 3 / 2;
+        for (int i = 0; i < props; ++i) {
+            leaderProps.setString("test.big." + i, value.toString());
+        }
+        startLeader(1);
+        startFollower();
+        awaitCaughtUp();
+        Assert.assertEquals(value.toString(), followerProps.getString("test.big." + (props - 1)));
+
+        // and again, in place of everything it had
+        leader.disconnectFollowers();
+        leaderProps.setString("test.big.0", "small");
+        leaderProps.setString("test.big.1", "small");
+        awaitCaughtUp();
+        Assert.assertEquals("small", followerProps.getString("test.big.0"));
+        Assert.assertEquals(value.toString(), followerProps.getString("test.big.2"));
+    }
+
+    @Test(timeout = 30000)
+    public void testFollowerKilledWhileBatchesQueued() throws Exception {
+        startLeader(100000);
+        startFollower();
+        DynamicProps<PropsImpl> doomedProps = newProps();
+        ReplicationFollower doomed = new ReplicationFollower(doomedProps, loopback(), 50, TimeUnit.MILLISECONDS);
+        leaderProps.setString("test.a", "0");
+        awaitCaughtUp();
+        Assert.assertTrue(doomed.awaitSequence(leader.epoch(), leader.sequence(), 5, TimeUnit.SECONDS));
+
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            value.append('v');
+        }
+        for (int i = 0; i < 5000; ++i) {
+            leaderProps.setString("test.a", value.toString() + i);
+            if (i == 100) {
+                doomed.close(); // with batches queued for it, so that the leader's sends to it start failing
+            }
+        }
+        leaderProps.setString("test.last", "last");
+        awaitCaughtUp();
+        Assert.assertEquals("last", followerProps.getString("test.last"));
+        Assert.assertEquals(1, leader.followerCount());
+
+        // the leader still publishes, and accepts followers
+        leaderProps.setString("test.after", "after");
+        awaitCaughtUp();
+        Assert.assertEquals("after", followerProps.getString("test.after"));
+        doomed = new ReplicationFollower(doomedProps, loopback(), 50, TimeUnit.MILLISECONDS);
+        try {
+            Assert.assertTrue(doomed.awaitSequence(leader.epoch(), leader.sequence(), 5, TimeUnit.SECONDS));
+            Assert.assertEquals("after", doomedProps.getString("test.after"));
+        } finally {
+            doomed.close();
+        }
+    }
+
+    /** Separate and thread-safe, unlike the default system props */
+    private static DynamicProps<PropsImpl> newProps() {
+        return new DynamicProps<PropsImpl>(new PropSourceCompact());
+    }
+
+    private void startLeader(int logCapacity) throws Exception {
+        leader = new ReplicationLeader(leaderProps, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                logCapacity);
+    }
+
+    private void startFollower() throws Exception {
+        follower = new ReplicationFollower(followerProps, loopback(), 50, TimeUnit.MILLISECONDS);
+    }
+
+    private InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), leader.localAddress().getPort());
+    }
+
+    private void awaitCaughtUp() throws InterruptedException {
+        Assert.assertTrue(follower.awaitSequence(leader.epoch(), leader.sequence(), 5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,232 @@
+package com.github.dirkraft.propslive.dynamic.stream;
+
+import com.github.dirkraft.propslive.dynamic.DynamicPropsSets;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import com.github.dirkraft.propslive.set.ease.PropSetAsPair;
+import junit.framework.Assert;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropChangeStreamsTest {
+
+    /** Delivers on the writing thread, so that tests are deterministic */
+    private static final Executor SAME_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    DynamicPropsSets $ = new DynamicPropsSets(new PropSourceMap(PropChangeStreamsTest.class.getName()));
+
+    @Test
+    public void testDemand() {
+        RecordingSubscriber<PropChange<String>> subscriber = new RecordingSubscriber<PropChange<String>>();
+        $.publisher("test.key", BackpressurePolicy.BUFFER, 16, SAME_THREAD).subscribe(subscriber);
+        Assert.assertNotNull(subscriber.subscription);
+
+        $.setString("test.key", "1");
+        $.setString("test.key", "2");
+        $.setString("test.other", "not published");
+        Assert.assertTrue("Nothing requested yet", subscriber.received.isEmpty());
+
+        subscriber.subscription.request(1);
+        Assert.assertEquals(1, subscriber.received.size());
+        Assert.assertEquals("1", subscriber.received.get(0).now());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        $.setString("test.key", "3");
+        Assert.assertEquals(3, subscriber.received.size());
+        Assert.assertEquals("2", subscriber.received.get(2).old());
+        Assert.assertEquals("3", subscriber.received.get(2).now());
+
+        subscriber.subscription.cancel();
+        $.setString("test.key", "4");
+        Assert.assertEquals(3, subscriber.received.size());
+        Assert.assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testConflate() {
+        $.setString("test.key", "0");
+        RecordingSubscriber<PropChange<String>> subscriber = new RecordingSubscriber<PropChange<String>>();
+        $.publisher("test.key", BackpressurePolicy.CONFLATE, 1, SAME_THREAD).subscribe(subscriber);
+
+        for (int i = 1; i <= 200; ++i) {
+            $.setInt("test.key", i);
+        }
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertEquals("Everything should have collapsed into one change", 1, subscriber.received.size());
+        Assert.assertEquals("0", subscriber.received.get(0).old());
+        Assert.assertEquals("200", subscriber.received.get(0).now());
+    }
+
+    @Test
+    public void testBufferOverflow() {
+        RecordingSubscriber<PropChange<String>> subscriber = new RecordingSubscriber<PropChange<String>>();
+        $.publisher("test.key", BackpressurePolicy.BUFFER, 2, SAME_THREAD).subscribe(subscriber);
+
+        $.setString("test.key", "1");
+        $.setString("test.key", "2");
+        Assert.assertNull(subscriber.error);
+        $.setString("test.key", "3"); // the writer should not notice
+        Assert.assertEquals("3", $.getString("test.key"));
+        Assert.assertTrue(subscriber.error instanceof IllegalStateException);
+        Assert.assertTrue(subscriber.received.isEmpty());
+    }
+
+    @Test
+    public void testPrefix() {
+        RecordingSubscriber<PropsCommit> subscriber = new RecordingSubscriber<PropsCommit>();
+        $.prefixPublisher("db.", BackpressurePolicy.BUFFER, 16, SAME_THREAD).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        PropSetAsPair urlAndOther = new PropSetAsPair("db.url", "other.thing");
+        urlAndOther.leftVal = "db://somewhere";
+        urlAndOther.rightVal = "unrelated";
+        $.setVals(urlAndOther);
+        $.setString("other.thing", "still unrelated");
+
+        Assert.assertEquals(1, subscriber.received.size());
+        PropsCommit commit = subscriber.received.get(0);
+        Assert.assertEquals(1, commit.changes().size());
+        Assert.assertEquals("db://somewhere", commit.changes().get("db.url").now());
+    }
+
+    @Test
+    public void testPropSet() {
+        $.setString("test.a", "a");
+        $.setString("test.b", "b");
+
+        PropSetAsPair ab = new PropSetAsPair("test.a", "test.b");
+        RecordingSubscriber<PropChange<Pair<String, String>>> subscriber = new RecordingSubscriber<PropChange<Pair<String, String>>>();
+        $.publisher(ab, BackpressurePolicy.BUFFER, 16, SAME_THREAD).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        ab.leftVal = "A";
+        ab.rightVal = "B";
+        $.setVals(ab);
+        $.setString("test.b", "BB");
+
+        Assert.assertEquals(2, subscriber.received.size());
+        Assert.assertEquals(Pair.of("a", "b"), subscriber.received.get(0).old());
+        Assert.assertEquals(Pair.of("A", "B"), subscriber.received.get(0).now());
+        Assert.assertEquals(Pair.of("A", "B"), subscriber.received.get(1).old());
+        Assert.assertEquals(Pair.of("A", "BB"), subscriber.received.get(1).now());
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testPropSetPublisherWithConcurrentWriters() throws Exception {
+        PropSetAsPair ab = new PropSetAsPair("test.a", "test.b");
+        RecordingSubscriber<PropChange<Pair<String, String>>> subscriber = new RecordingSubscriber<PropChange<Pair<String, String>>>();
+        $.publisher(ab, BackpressurePolicy.BUFFER, 16, SAME_THREAD).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        // both writers hold the write lock of their prop by the time the commit reaches the publisher
+        final CyclicBarrier bothWriting = new CyclicBarrier(2);
+        PropListener<String> meet = new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                try {
+                    bothWriting.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        $.to(meet).getString("test.a");
+        $.to(meet).getString("test.b");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> writers = new ArrayList<Future<?>>();
+            for (final String propKey : new String[]{"test.a", "test.b"}) {
+                writers.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        $.setString(propKey, "written");
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(20, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        synchronized (subscriber) {
+            Assert.assertEquals(2, subscriber.received.size());
+        }
+        Assert.assertEquals(Pair.of("written", "written"), $.getVals(ab));
+    }
+
+    @Test(timeout = 30 * 1000) // 30 seconds
+    public void testSlowSubscriberDoesNotBlockWriter() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        RecordingSubscriber<PropChange<String>> slowSubscriber = new RecordingSubscriber<PropChange<String>>() {
+            @Override
+            public void onNext(PropChange<String> change) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onNext(change);
+                delivered.countDown();
+            }
+        };
+        $.publisher("test.key", BackpressurePolicy.CONFLATE, 1).subscribe(slowSubscriber);
+        while (slowSubscriber.subscription == null) {
+            Thread.sleep(1L);
+        }
+        slowSubscriber.subscription.request(Long.MAX_VALUE);
+
+        for (int i = 0; i < 10000; ++i) {
+            $.setInt("test.key", i);
+        }
+        release.countDown();
+        Assert.assertTrue(delivered.await(20, TimeUnit.SECONDS));
+    }
+
+    static class RecordingSubscriber<T> implements PropChangeSubscriber<T> {
+        volatile PropChangeSubscription subscription;
+        final List<T> received = new ArrayList<T>();
+        Throwable error;
+
+        @Override
+        public void onSubscribe(PropChangeSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public synchronized void onNext(T change) {
+            received.add(change);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.dirkraft.propslive.dynamic.tenant;
+
+import com.github.dirkraft.propslive.PropsImpl;
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.propsrc.PropSourceCompact;
+import junit.framework.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class TenantOverlaysTest {
+
+    private DynamicProps<?> base;
+    private TenantOverlays overlays;
+
+    @Before
+    public void setUp() {
+        base = new DynamicProps(new PropSourceCompact());
+        base.setString("test.timeout", "30");
+        base.setString("test.name", "shared");
+        overlays = new TenantOverlays(base);
+    }
+
+    @Test
+    public void testOverridesFallThroughToBase() {
+        TenantOverlay acme = overlays.tenant("acme");
+        Assert.assertSame(acme, overlays.tenant("acme"));
+        acme.setString("test.timeout", "60");
+
+        Assert.assertEquals("60", acme.getString("test.timeout"));
+        Assert.assertEquals("shared", acme.getString("test.name"));
+        Assert.assertEquals("30", overlays.tenant("other").getString("test.timeout"));
+        Assert.assertEquals("30", base.getString("test.timeout"));
+        Assert.assertEquals((Integer) 60, new PropsImpl(acme).getInt("test.timeout"));
+        Assert.assertEquals("60", acme.asMap().get("test.timeout"));
+        Assert.assertEquals(1, acme.overrides().size());
+
+        base.setString("test.name", "renamed");
+        Assert.assertEquals("renamed", acme.getString("test.name"));
+
+        acme.setString("test.timeout", null);
+        Assert.assertFalse(acme.overrides("test.timeout"));
+        Assert.assertEquals("30", acme.getString("test.timeout"));
+    }
+
+    @Test
+    public void testBaseChangesNotifyOnlyTenantsWithoutOverride() {
+        int n = 1000;
+        final AtomicInteger notified = new AtomicInteger();
+        PropListener<String> counter = new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                notified.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < n; ++i) {
+            TenantOverlay tenant = overlays.tenant("tenant" + i);
+            tenant.addListener("test.timeout", counter);
+            if (i % 10 == 0) {
+                tenant.setString("test.timeout", "5");
+            }
+        }
+        Assert.assertEquals(n / 10, notified.get());
+        notified.set(0);
+
+        base.setString("test.timeout", "45");
+        Assert.assertEquals(n - n / 10, notified.get());
+        notified.set(0);
+        base.setString("test.name", "unlistened");
+        Assert.assertEquals(0, notified.get());
+
+        overlays.remove("tenant1");
+        base.setString("test.timeout", "46");
+        Assert.assertEquals(n - n / 10 - 1, notified.get());
+        Assert.assertEquals(n - 1, overlays.tenantIds().size());
+    }
+
+    @Test
+    public void testOverrideChangesNotifyTheTenant() {
+        TenantOverlay acme = overlays.tenant("acme");
+        final List<PropChange<String>> changes = new CopyOnWriteArrayList<PropChange<String>>();
+        PropListener<String> listener = new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                changes.add(propChange);
+            }
+        };
+        acme.addListener("test.timeout", listener);
+
+        acme.setString("test.timeout", "60");
+        acme.setString("test.timeout", "60");
+        acme.setString("test.timeout", null);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals("30", changes.get(0).old());
+        Assert.assertEquals("60", changes.get(0).now());
+        Assert.assertEquals("60", changes.get(1).old());
+        Assert.assertEquals("30", changes.get(1).now());
+
+        acme.removeListener("test.timeout", listener);
+        base.setString("test.timeout", "31");
+        Assert.assertEquals(2, changes.size());
+
+        overlays.close();
+        acme.addListener("test.timeout", listener);
+        base.setString("test.timeout", "32");
+        Assert.assertEquals(2, changes.size());
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.dirkraft.propslive.dynamic.timer;
+
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        // a small wheel, so that most delays take several turns
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRunsAfterDelay() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        final AtomicLong ranAtNanos = new AtomicLong();
+        long startNanos = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ranAtNanos.set(System.nanoTime());
+                ran.countDown();
+            }
+        }, 250, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, timer.pending());
+        ran.await();
+        Assert.assertTrue(ranAtNanos.get() - startNanos >= TimeUnit.MILLISECONDS.toNanos(250));
+        Assert.assertTrue(timeout.isExpired());
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertEquals(0, timer.pending());
+    }
+
+    @Test(timeout = 10000)
+    public void testManyPendingAndCancelled() throws Exception {
+        int n = 50000;
+        final AtomicInteger ran = new AtomicInteger();
+        final CountDownLatch allRan = new CountDownLatch(n / 2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+                allRan.countDown();
+            }
+        };
+        HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[n];
+        for (int i = 0; i < n; ++i) {
+            timeouts[i] = timer.schedule(task, 1000 + i % 500, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 1; i < n; i += 2) {
+            Assert.assertTrue(timeouts[i].cancel());
+            Assert.assertTrue(timeouts[i].isCancelled());
+        }
+        allRan.await();
+        Thread.sleep(100);
+        Assert.assertEquals(n / 2, ran.get());
+        Assert.assertEquals(0, timer.pending());
+    }
+
+    @Test(timeout = 10000)
+    public void testTaskFailureDoesNotStopTimer() throws Exception {
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException("expected");
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+        final CountDownLatch ran = new CountDownLatch(1);
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        ran.await();
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import junit.framework.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceCompactTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PropSourceCompactTest.class);
+
+    private static final String[] VALUES = {"true", "false", "100", "0", "enabled", "disabled"};
+
+    @Test
+    public void testGetSetRemove() {
+        PropSourceCompact compact = new PropSourceCompact();
+        Assert.assertNull(compact.getString("test.a"));
+
+        compact.setString("test.a", "1");
+        compact.setString("test.b", "1");
+        compact.setString("nodots", "2");
+        compact.setString("", "empty");
+        compact.setString("trailing.", "3");
+        Assert.assertEquals("1", compact.getString("test.a"));
+        Assert.assertEquals("1", compact.getString("test.b"));
+        Assert.assertEquals("2", compact.getString("nodots"));
+        Assert.assertEquals("empty", compact.getString(""));
+        Assert.assertEquals("3", compact.getString("trailing."));
+        Assert.assertNull(compact.getString("test."));
+        Assert.assertNull(compact.getString("test.ab"));
+        Assert.assertEquals(5, compact.size());
+
+        compact.setString("test.a", "1");
+        compact.setString("test.b", "changed");
+        Assert.assertEquals("1", compact.getString("test.a"));
+        Assert.assertEquals("changed", compact.getString("test.b"));
+
+        compact.setString("test.a", null);
+        Assert.assertNull(compact.getString("test.a"));
+        Assert.assertEquals(4, compact.size());
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("test.b", "changed");
+        expected.put("nodots", "2");
+        expected.put("", "empty");
+        expected.put("trailing.", "3");
+        Assert.assertEquals(expected, compact.asMap());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        PropSourceCompact compact = new PropSourceCompact();
+        Map<String, String> map = new HashMap<String, String>();
+        Random r = new Random(0xC0FFEE);
+        for (int i = 0; i < 200000; ++i) {
+            String key = "tenant." + r.nextInt(300) + ".feature." + r.nextInt(30);
+            if (r.nextInt(3) == 0) {
+                compact.setString(key, null);
+                map.remove(key);
+            } else {
+                String value = r.nextBoolean() ? VALUES[r.nextInt(VALUES.length)] : Integer.toString(r.nextInt(1000));
+                compact.setString(key, value);
+                map.put(key, value);
+            }
+            if (i % 1000 == 0) {
+                String probe = "tenant." + r.nextInt(300) + ".feature." + r.nextInt(30);
+                Assert.assertEquals(map.get(probe), compact.getString(probe));
+            }
+        }
+        Assert.assertEquals(map.size(), compact.size());
+        Assert.assertEquals(map, compact.asMap());
+
+        // and empty again, so that every pooled string was released
+        for (String key : map.keySet()) {
+            compact.setString(key, null);
+        }
+        Assert.assertEquals(0, compact.size());
+        Assert.assertTrue(compact.asMap().isEmpty());
+    }
+
+    @Test
+    public void testFootprint() {
+        int tenants = 2000;
+        int features = 100;
+        List<String> featureNames = new ArrayList<String>(features);
+        for (int f = 0; f < features; ++f) {
+            featureNames.add("featureFlag" + f);
+        }
+        Map<String, String> map = new HashMap<String, String>();
+        for (int t = 0; t < tenants; ++t) {
+            for (int f = 0; f < features; ++f) {
+                map.put("tenant." + t + ".feature." + featureNames.get(f), VALUES[(t + f) % VALUES.length]);
+            }
+        }
+
+        PropSourceCompact compact = new PropSourceCompact();
+        for (Map.Entry<String, String> prop : map.entrySet()) {
+            compact.setString(prop.getKey(), prop.getValue());
+        }
+        double compactBytesPerProp = (double) compact.footprintBytes() / compact.size();
+        // the same arithmetic for the HashMap of a PropSourceMap
+        double mapBytesPerProp = (double) hashMapFootprintBytes(map) / map.size();
+
+        logger.info(String.format("Estimated bytes per prop: PropSourceMap %.1f, PropSourceCompact %.1f",
+                mapBytesPerProp, compactBytesPerProp));
+        Assert.assertEquals(tenants * features, compact.size());
+        Assert.assertTrue("Compact bytes per prop " + compactBytesPerProp, compactBytesPerProp < 80);
+        Assert.assertTrue("Compact bytes per prop " + compactBytesPerProp + " vs map " + mapBytesPerProp,
+                compactBytesPerProp * 2 < mapBytesPerProp);
+    }
+
+    /**
+     * Estimates bytes retained by a HashMap with the same assumptions as {@link PropSourceCompact#footprintBytes()}:
+     * its table, an entry of header, hash and three references per prop, each key String, and each distinct value
+     * String once, as values like those of {@link #VALUES} are shared.
+     */
+    private static long hashMapFootprintBytes(Map<String, String> map) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < map.size()) {
+            capacity <<= 1;
+        }
+        long bytes = InternPool.refArrayBytes(capacity);
+        Map<String, Boolean> distinctValues = new IdentityHashMap<String, Boolean>();
+        for (Map.Entry<String, String> prop : map.entrySet()) {
+            bytes += 32 + InternPool.stringBytes(prop.getKey().length());
+            if (distinctValues.put(prop.getValue(), Boolean.TRUE) == null) {
+                bytes += InternPool.stringBytes(prop.getValue().length());
+            }
+        }
+        return bytes;
+    }
+}
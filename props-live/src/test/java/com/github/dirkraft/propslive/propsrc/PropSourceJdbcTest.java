@@ -0,0 +1,275 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import junit.framework.Assert;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceJdbcTest {
+
+    private JdbcDataSource dataSource;
+    /** keeps the in-memory database alive between connections */
+    private Connection keepAlive;
+    private PropSourceJdbc jdbc;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + PropSourceJdbcTest.class.getSimpleName() + System.nanoTime());
+        keepAlive = dataSource.getConnection();
+        jdbc = new PropSourceJdbc(dataSource, "props");
+        jdbc.createTables();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        keepAlive.close();
+    }
+
+    @Test
+    public void testGetSetRemove() {
+        Assert.assertNull(jdbc.getString("test.a"));
+        Assert.assertEquals(0, jdbc.version());
+
+        jdbc.setString("test.a", "1");
+        jdbc.setString("test.b", "2");
+        jdbc.setString("test.a", "3");
+        Assert.assertEquals("3", jdbc.getString("test.a"));
+        Assert.assertEquals(3, jdbc.version());
+
+        jdbc.setString("test.b", null);
+        jdbc.setString("test.never", null);
+        Assert.assertNull(jdbc.getString("test.b"));
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("test.a", "3");
+        Assert.assertEquals(expected, jdbc.asMap());
+        Assert.assertEquals(expected, jdbc.load());
+    }
+
+    @Test
+    public void testSetStringsIsOneVersion() {
+        Map<String, String> props = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 100; ++i) {
+            props.put("test." + i, Integer.toString(i));
+        }
+        jdbc.setStrings(props);
+        Assert.assertEquals(1, jdbc.version());
+        props.put("test.0", "updated");
+        props.put("test.100", "inserted");
+        jdbc.write(props);
+        Assert.assertEquals(2, jdbc.version());
+        Assert.assertEquals(101, jdbc.asMap().size());
+        Assert.assertEquals("updated", jdbc.getString("test.0"));
+        Assert.assertEquals("inserted", jdbc.getString("test.100"));
+    }
+
+    @Test
+    public void testPrefetchAndPoll() throws Exception {
+        jdbc.setString("app.a", "1");
+        jdbc.setString("app.b", "1");
+        jdbc.setString("other.a", "1");
+        jdbc.prefetch("app.");
+
+        DynamicProps<?> dynamicProps = new DynamicProps(jdbc);
+        final List<PropChange<String>> changes = new CopyOnWriteArrayList<PropChange<String>>();
+        PropListener<String> listener = new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                changes.add(propChange);
+            }
+        };
+        dynamicProps.to(listener).getString("app.a");
+        dynamicProps.to(listener).getString("app.c");
+
+        // another process writes straight to the table
+        PropSourceJdbc otherProcess = new PropSourceJdbc(dataSource, "props");
+        long version = jdbc.version();
+        otherProcess.setString("app.a", "2");
+        otherProcess.setString("app.c", "new");
+        otherProcess.setString("app.b", null);
+
+        // served from memory until polled
+        Assert.assertEquals("1", dynamicProps.getString("app.a"));
+        long polledVersion = jdbc.pollInto(dynamicProps, version);
+        Assert.assertEquals(jdbc.version(), polledVersion);
+        Assert.assertEquals("2", dynamicProps.getString("app.a"));
+        Assert.assertEquals("new", dynamicProps.getString("app.c"));
+        Assert.assertNull(dynamicProps.getString("app.b"));
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals("1", changes.get(0).old());
+        Assert.assertEquals("2", changes.get(0).now());
+        Assert.assertNull(changes.get(1).old());
+        Assert.assertEquals("new", changes.get(1).now());
+        // applied, not written back
+        Assert.assertEquals(polledVersion, jdbc.version());
+
+        Closeable polling = jdbc.startPolling(dynamicProps, 10, TimeUnit.MILLISECONDS);
+        try {
+            otherProcess.setString("app.a", "3");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!"3".equals(dynamicProps.getString("app.a")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("3", dynamicProps.getString("app.a"));
+            Assert.assertEquals("3", changes.get(2).now());
+        } finally {
+            polling.close();
+        }
+    }
+
+    @Test
+    public void testListenerWritesDuringPollReachTheTable() {
+        jdbc.prefetch("app.");
+        final DynamicProps<?> dynamicProps = new DynamicProps(jdbc);
+        dynamicProps.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                dynamicProps.setString("app.seen", propChange.now());
+            }
+        }).getString("app.a");
+
+        PropSourceJdbc otherProcess = new PropSourceJdbc(dataSource, "props");
+        long version = jdbc.version();
+        otherProcess.setString("app.a", "2");
+        jdbc.pollInto(dynamicProps, version);
+        Assert.assertEquals("2", dynamicProps.getString("app.seen"));
+        Assert.assertEquals("2", otherProcess.getString("app.seen"));
+    }
+
+    @Test
+    public void testWriteDuringPrefetchIsNotLost() {
+        jdbc.setString("app.a", "1");
+        final PropSourceJdbc[] racing = new PropSourceJdbc[1];
+        final boolean[] written = {false};
+        // writes through the prefetching source once the prefetch query has read, but before prefetch returns
+        DataSource racingDataSource = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                final Connection connection = super.getConnection();
+                return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                        new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object ret = method.invoke(connection, args);
+                        if (method.getName().equals("close") && !written[0]) {
+                            written[0] = true;
+                            racing[0].setString("app.a", "written");
+                        }
+                        return ret;
+                    }
+                });
+            }
+        };
+        racing[0] = new PropSourceJdbc(racingDataSource, "props");
+        racing[0].prefetch("app.");
+        Assert.assertTrue(written[0]);
+        Assert.assertEquals("written", racing[0].getString("app.a"));
+    }
+
+    @Test
+    public void testOlderWriteDoesNotOverwriteNewerInMemory() {
+        final PropSourceJdbc[] racing = new PropSourceJdbc[1];
+        final boolean[] written = {false};
+        // another write through the same source commits after the first commits, but before the first reaches memory
+        DataSource racingDataSource = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                final Connection connection = super.getConnection();
+                return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                        new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object ret = method.invoke(connection, args);
+                        if (method.getName().equals("commit") && !written[0]) {
+                            written[0] = true;
+                            racing[0].setString("app.a", "newer");
+                        }
+                        return ret;
+                    }
+                });
+            }
+        };
+        racing[0] = new PropSourceJdbc(racingDataSource, "props");
+        racing[0].prefetch("app.");
+        racing[0].setString("app.a", "older");
+        Assert.assertTrue(written[0]);
+        Assert.assertEquals("newer", jdbc.getString("app.a"));
+        Assert.assertEquals("newer", racing[0].getString("app.a"));
+    }
+
+    private static class DelegatingDataSource implements DataSource {
+        private final DataSource delegate;
+
+        DelegatingDataSource(DataSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return delegate.getConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return delegate.getConnection(username, password);
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return delegate.isWrapperFor(iface);
+        }
+    }
+}
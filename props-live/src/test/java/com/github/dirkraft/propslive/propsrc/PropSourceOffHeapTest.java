@@ -0,0 +1,97 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourceOffHeapTest {
+
+    @Test
+    public void testGetSetRemove() {
+        PropSourceOffHeap offHeap = new PropSourceOffHeap();
+        Assert.assertNull(offHeap.getString("test.a"));
+
+        offHeap.setString("test.a", "1");
+        offHeap.setString("test.ünïcødé", "värde");
+        offHeap.setString("test.empty", "");
+        Assert.assertEquals("1", offHeap.getString("test.a"));
+        Assert.assertEquals("1", offHeap.getString("test.a")); // now from the hot cache
+        Assert.assertEquals("värde", offHeap.getString("test.ünïcødé"));
+        Assert.assertEquals("", offHeap.getString("test.empty"));
+
+        offHeap.setString("test.a", "2"); // in place
+        Assert.assertEquals("2", offHeap.getString("test.a"));
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            longValue.append(i);
+        }
+        offHeap.setString("test.a", longValue.toString()); // moves to a bigger record
+        Assert.assertEquals(longValue.toString(), offHeap.getString("test.a"));
+
+        offHeap.setString("test.a", null);
+        Assert.assertNull(offHeap.getString("test.a"));
+        Assert.assertEquals(2, offHeap.size());
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("test.ünïcødé", "värde");
+        expected.put("test.empty", "");
+        Assert.assertEquals(expected, new HashMap<String, String>(offHeap.asMap()));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        PropSourceOffHeap offHeap = new PropSourceOffHeap("test", 64);
+        Map<String, String> map = new HashMap<String, String>();
+        Random r = new Random(0xBEEF);
+        for (int i = 0; i < 200000; ++i) {
+            String key = "tenant." + r.nextInt(500) + ".feature." + r.nextInt(20);
+            if (r.nextInt(4) == 0) {
+                offHeap.setString(key, null);
+                map.remove(key);
+            } else {
+                // values of very different lengths, so that records are both updated in place and moved
+                char[] value = new char[r.nextInt(4) == 0 ? r.nextInt(300) : r.nextInt(8)];
+                for (int c = 0; c < value.length; ++c) {
+                    value[c] = (char) ('a' + r.nextInt(26));
+                }
+                offHeap.setString(key, new String(value));
+                map.put(key, new String(value));
+            }
+            String probe = "tenant." + r.nextInt(500) + ".feature." + r.nextInt(20);
+            Assert.assertEquals(map.get(probe), offHeap.getString(probe));
+        }
+        Assert.assertEquals(map.size(), offHeap.size());
+        Assert.assertEquals(map, new HashMap<String, String>(offHeap.asMap()));
+        // records are reused, so churn through 10000 keys fits in the first chunk
+        Assert.assertTrue("Off-heap bytes " + offHeap.offHeapBytes(), offHeap.offHeapBytes() < 2 * (4 << 20));
+    }
+
+    @Test
+    public void testStreamingViewDuringWrites() {
+        PropSourceOffHeap offHeap = new PropSourceOffHeap();
+        for (int i = 0; i < 1000; ++i) {
+            offHeap.setString("test." + i, "v" + i);
+        }
+
+        Map<String, String> seen = new HashMap<String, String>();
+        Iterator<Map.Entry<String, String>> iterator = offHeap.asMap().entrySet().iterator();
+        for (int i = 0; iterator.hasNext(); ++i) {
+            Map.Entry<String, String> prop = iterator.next();
+            Assert.assertNull("Seen twice " + prop, seen.put(prop.getKey(), prop.getValue()));
+            // writes to props other than test.0 - test.999 never fail the iteration
+            offHeap.setString("other." + i, "x");
+            offHeap.setString("other." + (i / 2), null);
+        }
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertEquals("v" + i, seen.get("test." + i));
+        }
+        Assert.assertEquals("v7", offHeap.asMap().get("test.7"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.dirkraft.propslive.propsrc;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.propsrc.view.LayeredPropSource;
+import com.github.dirkraft.propslive.propsrc.view.RestrictedPropSource;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropSourcesTest {
+
+    private static List<PropSource> filledSources() {
+        List<PropSource> sources = Arrays.<PropSource>asList(new PropSourceMap(), new PropSourceCompact(),
+                new PropSourceOffHeap());
+        for (PropSource source : sources) {
+            for (int i = 0; i < 500; ++i) {
+                source.setString("test." + i, Integer.toString(i % 7));
+            }
+        }
+        return sources;
+    }
+
+    @Test
+    public void testForEachMatchesAsMap() {
+        for (PropSource source : filledSources()) {
+            Assert.assertEquals(source.description(), new HashMap<String, String>(source.asMap()),
+                    PropSources.snapshot(source));
+        }
+    }
+
+    @Test
+    public void testForEachStops() {
+        for (PropSource source : filledSources()) {
+            final AtomicInteger visited = new AtomicInteger();
+            Assert.assertFalse(PropSources.forEach(source, new PropVisitor() {
+                @Override
+                public boolean visit(String key, String value) {
+                    return visited.incrementAndGet() < 10;
+                }
+            }));
+            Assert.assertEquals(source.description(), 10, visited.get());
+        }
+    }
+
+    @Test
+    public void testForEachParallel() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (PropSource source : filledSources()) {
+                final Map<String, String> visited = new ConcurrentHashMap<String, String>();
+                final AtomicInteger visits = new AtomicInteger();
+                Assert.assertTrue(PropSources.forEachParallel(source, new PropVisitor() {
+                    @Override
+                    public boolean visit(String key, String value) {
+                        visits.incrementAndGet();
+                        visited.put(key, value);
+                        return true;
+                    }
+                }, executor, 7));
+                Assert.assertEquals(source.description(), 500, visits.get());
+                Assert.assertEquals(source.description(), new HashMap<String, String>(source.asMap()), visited);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLayeredAndRestricted() {
+        PropSourceMap defaults = new PropSourceMap();
+        defaults.setString("test.a", "default a");
+        defaults.setString("test.b", "default b");
+        PropSourceCompact overrides = new PropSourceCompact();
+        overrides.setString("test.b", "override b");
+        overrides.setString("test.c", "override c");
+
+        LayeredPropSource layered = new LayeredPropSource(overrides, defaults);
+        layered.setString("test.c", "written c");
+        Assert.assertEquals(layered.asMap(), PropSources.snapshot(layered));
+        Assert.assertEquals("written c", PropSources.snapshot(layered).get("test.c"));
+        Assert.assertEquals("override b", PropSources.snapshot(layered).get("test.b"));
+
+        RestrictedPropSource restricted = new RestrictedPropSource(layered, "test.a", "test.b", "test.unset");
+        Assert.assertEquals(restricted.asMap(), PropSources.snapshot(restricted));
+        Assert.assertEquals(3, PropSources.snapshot(restricted).size());
+    }
+
+    @Test
+    public void testDynamicPropsForEach() {
+        final DynamicProps<?> dynamicProps = new DynamicProps(new PropSourceCompact());
+        dynamicProps.setString("test.a", "1");
+        dynamicProps.setString("test.b", "2");
+        final Map<String, String> visited = new HashMap<String, String>();
+        Assert.assertTrue(dynamicProps.forEach(new PropVisitor() {
+            @Override
+            public boolean visit(String key, String value) {
+                visited.put(key, value);
+                return true;
+            }
+        }));
+        Assert.assertEquals(PropSources.snapshot(new PropSourceMap(dynamicProps.asMap())), visited);
+        Assert.assertEquals("2", visited.get("test.b"));
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class CachingPropSourceTest {
+
+    /** Counts reads, and can hold them up until released */
+    private static class SlowPropSource extends PropSourceMap {
+        final AtomicInteger reads = new AtomicInteger();
+        volatile CountDownLatch release = new CountDownLatch(0);
+
+        SlowPropSource() {
+            super("slow", new ConcurrentHashMap<String, String>());
+        }
+
+        @Override
+        public String getString(String key) {
+            reads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.getString(key);
+        }
+    }
+
+    @Test
+    public void testReadThroughAndInvalidate() {
+        SlowPropSource slow = new SlowPropSource();
+        slow.setString("test.a", "1");
+        CachingPropSource cached = new CachingPropSource(slow, 100, 1, 1, TimeUnit.MINUTES);
+
+        Assert.assertEquals("1", cached.getString("test.a"));
+        Assert.assertEquals("1", cached.getString("test.a"));
+        Assert.assertEquals(1, slow.reads.get());
+        Assert.assertEquals(1, cached.hitCount());
+
+        cached.setString("test.a", "2");
+        Assert.assertEquals("2", slow.getString("test.a"));
+        Assert.assertEquals("2", cached.getString("test.a"));
+        Assert.assertEquals("2", cached.getString("test.a"));
+        Assert.assertEquals(3, slow.reads.get());
+
+        // missing props are cached too
+        Assert.assertNull(cached.getString("test.missing"));
+        Assert.assertNull(cached.getString("test.missing"));
+        Assert.assertEquals(4, slow.reads.get());
+        cached.setString("test.missing", "found");
+        Assert.assertEquals("found", cached.getString("test.missing"));
+    }
+
+    @Test
+    public void testTtl() throws InterruptedException {
+        SlowPropSource slow = new SlowPropSource();
+        slow.setString("test.a", "1");
+        CachingPropSource cached = new CachingPropSource(slow, 100, 50, 0, TimeUnit.MILLISECONDS);
+
+        cached.getString("test.a");
+        cached.getString("test.a");
+        Assert.assertEquals(1, slow.reads.get());
+        // with no negative ttl, missing props are not cached
+        cached.getString("test.missing");
+        cached.getString("test.missing");
+        Assert.assertEquals(3, slow.reads.get());
+
+        Thread.sleep(100);
+        slow.setString("test.a", "changed behind the cache's back");
+        Assert.assertEquals("changed behind the cache's back", cached.getString("test.a"));
+        Assert.assertEquals(4, slow.reads.get());
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        final SlowPropSource slow = new SlowPropSource();
+        slow.setString("test.a", "1");
+        slow.release = new CountDownLatch(1);
+        final CachingPropSource cached = new CachingPropSource(slow, 100, 1, 1, TimeUnit.MINUTES);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> reads = new ArrayList<Future<String>>();
+        for (int i = 0; i < 8; ++i) {
+            reads.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return cached.getString("test.a");
+                }
+            }));
+        }
+        while (cached.missCount() < 8) {
+            Thread.sleep(5);
+        }
+        slow.release.countDown();
+        for (Future<String> read : reads) {
+            Assert.assertEquals("1", read.get());
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, slow.reads.get());
+    }
+
+    @Test
+    public void testFrequentPropsSurviveScans() {
+        SlowPropSource slow = new SlowPropSource();
+        for (int i = 0; i < 10000; ++i) {
+            slow.setString("test." + i, Integer.toString(i));
+        }
+        CachingPropSource cached = new CachingPropSource(slow, 100, 1, 1, TimeUnit.MINUTES);
+
+        for (int round = 0; round < 10; ++round) {
+            for (int i = 0; i < 50; ++i) {
+                cached.getString("test." + i);
+            }
+        }
+        // a one-off scan of far more props than fit
+        for (int i = 50; i < 10000; ++i) {
+            cached.getString("test." + i);
+        }
+        Assert.assertTrue(cached.size() <= 100);
+        Assert.assertTrue(cached.evictionCount() > 0);
+
+        int readsBefore = slow.reads.get();
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertEquals(Integer.toString(i), cached.getString("test." + i));
+        }
+        int reloaded = slow.reads.get() - readsBefore;
+        Assert.assertTrue("Reloaded " + reloaded + " of the frequent props", reloaded <= 5);
+    }
+}
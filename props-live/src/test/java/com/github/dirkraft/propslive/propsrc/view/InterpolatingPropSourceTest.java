@@ -0,0 +1,210 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import com.github.dirkraft.propslive.dynamic.DynamicProps;
+import com.github.dirkraft.propslive.dynamic.DynamicPropsSets;
+import com.github.dirkraft.propslive.dynamic.listen.PropChange;
+import com.github.dirkraft.propslive.dynamic.listen.PropListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropSetListener;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommit;
+import com.github.dirkraft.propslive.dynamic.listen.PropsCommitListener;
+import com.github.dirkraft.propslive.dynamic.stream.BackpressurePolicy;
+import com.github.dirkraft.propslive.dynamic.stream.PropChangeSubscriber;
+import com.github.dirkraft.propslive.dynamic.stream.PropChangeSubscription;
+import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import com.github.dirkraft.propslive.set.PropSet;
+import com.github.dirkraft.propslive.set.ease.PropSetAsPair;
+import junit.framework.Assert;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class InterpolatingPropSourceTest {
+
+    /** Counts reads */
+    private static class CountingPropSource extends PropSourceMap {
+        final AtomicInteger reads = new AtomicInteger();
+
+        CountingPropSource() {
+            super("counting", new ConcurrentHashMap<String, String>());
+        }
+
+        @Override
+        public String getString(String key) {
+            reads.incrementAndGet();
+            return super.getString(key);
+        }
+    }
+
+    @Test
+    public void testResolvesAndCaches() {
+        CountingPropSource raw = new CountingPropSource();
+        raw.setString("db.host", "localhost");
+        raw.setString("db.url", "jdbc:postgresql://${db.host}:${db.port:5432}/${db.name}");
+        raw.setString("other", "x");
+        InterpolatingPropSource interpolated = new InterpolatingPropSource(raw);
+
+        Assert.assertEquals("jdbc:postgresql://localhost:5432/${db.name}", interpolated.getString("db.url"));
+        Assert.assertEquals("x", interpolated.getString("other"));
+        int reads = raw.reads.get();
+        Assert.assertEquals("jdbc:postgresql://localhost:5432/${db.name}", interpolated.getString("db.url"));
+        Assert.assertEquals("localhost", interpolated.getString("db.host"));
+        Assert.assertEquals(reads, raw.reads.get());
+
+        // precisely the referrers are invalidated
+        interpolated.setString("db.port", "6543");
+        Assert.assertEquals("x", interpolated.getString("other"));
+        Assert.assertEquals("localhost", interpolated.getString("db.host"));
+        Assert.assertEquals(reads, raw.reads.get());
+        Assert.assertEquals("jdbc:postgresql://localhost:6543/${db.name}", interpolated.getString("db.url"));
+        Assert.assertTrue(raw.reads.get() > reads);
+
+        Assert.assertEquals("6543", raw.getString("db.port"));
+        Assert.assertEquals("jdbc:postgresql://${db.host}:${db.port:5432}/${db.name}", raw.getString("db.url"));
+        Assert.assertEquals("jdbc:postgresql://localhost:6543/${db.name}", interpolated.asMap().get("db.url"));
+    }
+
+    @Test
+    public void testTransitiveReferencesAndCycles() {
+        PropSourceMap raw = new PropSourceMap("raw", new ConcurrentHashMap<String, String>());
+        raw.setString("a", "${b}/a");
+        raw.setString("b", "${c}/b");
+        raw.setString("c", "c");
+        InterpolatingPropSource interpolated = new InterpolatingPropSource(raw);
+        Assert.assertEquals("c/b/a", interpolated.getString("a"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")), interpolated.referrers("c"));
+
+        interpolated.setString("c", "C");
+        Assert.assertEquals("C/b/a", interpolated.getString("a"));
+        Assert.assertEquals("c/b/a", interpolated.resolveWith("a", Collections.singletonMap("c", "c")));
+
+        // a reference back to itself is left as is, rather than overflowing the stack
+        interpolated.setString("c", "${a}");
+        Assert.assertEquals("${a}/b/a", interpolated.getString("a"));
+        Assert.assertEquals("${b}/a/b", interpolated.getString("b"));
+
+        // and references which are no longer made are forgotten
+        interpolated.setString("b", "b");
+        Assert.assertEquals("b/a", interpolated.getString("a"));
+        interpolated.setString("c", "c");
+        Assert.assertEquals("c", interpolated.getString("c"));
+        Assert.assertEquals(Collections.singleton("a"), interpolated.referrers("b"));
+        Assert.assertTrue(interpolated.referrers("c").isEmpty());
+    }
+
+    @Test
+    public void testListenersOfReferrersFire() {
+        PropSourceMap raw = new PropSourceMap("raw", new ConcurrentHashMap<String, String>());
+        raw.setString("db.host", "localhost");
+        raw.setString("db.url", "jdbc:postgresql://${db.host}/app");
+        DynamicProps<?> props = new DynamicProps(new InterpolatingPropSource(new LayeredPropSource(raw)));
+
+        final List<PropChange<String>> changes = new CopyOnWriteArrayList<PropChange<String>>();
+        Assert.assertEquals("jdbc:postgresql://localhost/app", props.to(new PropListener<String>() {
+            @Override
+            public void reload(PropChange<String> propChange) {
+                changes.add(propChange);
+            }
+        }).getString("db.url"));
+
+        props.setString("db.host", "db1");
+        Assert.assertEquals("jdbc:postgresql://db1/app", props.getString("db.url"));
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals("jdbc:postgresql://localhost/app", changes.get(0).old());
+        Assert.assertEquals("jdbc:postgresql://db1/app", changes.get(0).now());
+
+        props.setString("unrelated", "x");
+        Assert.assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void testPropSetListenersOfReferrersFire() {
+        PropSourceMap raw = new PropSourceMap("raw", new ConcurrentHashMap<String, String>());
+        raw.setString("db.host", "localhost");
+        raw.setString("db.url", "jdbc:postgresql://${db.host}/app");
+        raw.setString("db.user", "app");
+        DynamicPropsSets props = new DynamicPropsSets(new InterpolatingPropSource(new LayeredPropSource(raw)));
+
+        final PropSetAsPair urlAndUser = new PropSetAsPair("db.url", "db.user");
+        final List<PropChange<Pair<String, String>>> changes = new CopyOnWriteArrayList<PropChange<Pair<String, String>>>();
+        props.to(new PropSetListener<Pair<String, String>>() {
+            @Override
+            public PropSet<Pair<String, String>> propSet() {
+                return urlAndUser;
+            }
+
+            @Override
+            public void reload(PropChange<Pair<String, String>> propChange) {
+                changes.add(propChange);
+            }
+        }).getVals(urlAndUser);
+
+        props.setString("db.host", "db1");
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(Pair.of("jdbc:postgresql://localhost/app", "app"), changes.get(0).old());
+        Assert.assertEquals(Pair.of("jdbc:postgresql://db1/app", "app"), changes.get(0).now());
+    }
+
+    @Test
+    public void testReferrersChangeInTheSameCommit() {
+        PropSourceMap raw = new PropSourceMap("raw", new ConcurrentHashMap<String, String>());
+        raw.setString("db.host", "localhost");
+        raw.setString("db.url", "jdbc:postgresql://${db.host}/app");
+        DynamicProps<?> props = new DynamicProps(new InterpolatingPropSource(new LayeredPropSource(raw)));
+        Assert.assertEquals("jdbc:postgresql://localhost/app", props.getString("db.url"));
+        long seen = props.version();
+
+        final List<PropsCommit> commits = new CopyOnWriteArrayList<PropsCommit>();
+        props.addCommitListener(new PropsCommitListener() {
+            @Override
+            public void committed(PropsCommit commit) {
+                commits.add(commit);
+            }
+        });
+        final List<PropChange<String>> published = new CopyOnWriteArrayList<PropChange<String>>();
+        props.publisher("db.url", BackpressurePolicy.BUFFER, 16, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }).subscribe(new PropChangeSubscriber<PropChange<String>>() {
+            @Override
+            public void onSubscribe(PropChangeSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(PropChange<String> change) {
+                published.add(change);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        props.setString("db.host", "db1");
+        Assert.assertTrue(props.version("db.url") > seen);
+        Assert.assertEquals("jdbc:postgresql://db1/app", props.getIfChanged("db.url", seen).value());
+        Assert.assertEquals(1, commits.size());
+        Assert.assertEquals(props.version(), commits.get(0).version());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("db.host", "db.url")), commits.get(0).changes().keySet());
+        Assert.assertEquals("jdbc:postgresql://localhost/app", commits.get(0).changes().get("db.url").old());
+        Assert.assertEquals(1, published.size());
+        Assert.assertEquals("jdbc:postgresql://db1/app", published.get(0).now());
+    }
+}
@@ -0,0 +1,168 @@
+package com.github.dirkraft.propslive.propsrc.view;
+
+import com.github.dirkraft.propslive.propsrc.PropSourceCompact;
+import com.github.dirkraft.propslive.propsrc.store.PropStore;
+import com.github.dirkraft.propslive.propsrc.store.PropertiesFileStore;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class WriteBehindPropSourceTest {
+
+    /** Records batches, and can hold them up or fail them */
+    private static class RecordingStore implements PropStore {
+        final List<Map<String, String>> batches = Collections.synchronizedList(new ArrayList<Map<String, String>>());
+        final AtomicInteger failures = new AtomicInteger();
+        volatile CountDownLatch release = new CountDownLatch(0);
+
+        @Override
+        public Map<String, String> load() {
+            return Collections.singletonMap("test.loaded", "yes");
+        }
+
+        @Override
+        public void write(Map<String, String> batch) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("Failing on purpose");
+            }
+            batches.add(new LinkedHashMap<String, String>(batch));
+        }
+    }
+
+    private static PropSourceCompact memory() {
+        return new PropSourceCompact("memory");
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testBatchesInOrder() throws Exception {
+        RecordingStore store = new RecordingStore();
+        WriteBehindPropSource writeBehind = new WriteBehindPropSource(memory(), store, 3, 100, 1, TimeUnit.MINUTES);
+        Assert.assertEquals("yes", writeBehind.getString("test.loaded"));
+
+        writeBehind.setString("test.a", "1");
+        writeBehind.setString("test.b", "1");
+        writeBehind.setString("test.a", "2"); // still 2 dirty, now b then a
+        Assert.assertEquals("2", writeBehind.getString("test.a"));
+        Assert.assertTrue(store.batches.isEmpty());
+        writeBehind.setString("test.c", null); // 3 dirty, a full batch
+
+        while (store.batches.isEmpty()) {
+            Thread.sleep(5);
+        }
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        expected.put("test.b", "1");
+        expected.put("test.a", "2");
+        expected.put("test.c", null);
+        Assert.assertEquals(expected, store.batches.get(0));
+        Assert.assertEquals(new ArrayList<String>(expected.keySet()),
+                new ArrayList<String>(store.batches.get(0).keySet()));
+
+        writeBehind.setString("test.d", "1");
+        Assert.assertTrue(writeBehind.flush(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonMap("test.d", "1"), store.batches.get(1));
+        Assert.assertEquals(0, writeBehind.dirtyCount());
+        writeBehind.close();
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testMaxDelay() throws Exception {
+        RecordingStore store = new RecordingStore();
+        WriteBehindPropSource writeBehind = new WriteBehindPropSource(memory(), store, 100, 100, 50,
+                TimeUnit.MILLISECONDS);
+        writeBehind.setString("test.a", "1");
+        while (store.batches.isEmpty()) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(Collections.singletonMap("test.a", "1"), store.batches.get(0));
+        writeBehind.close();
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testBackPressure() throws Exception {
+        RecordingStore store = new RecordingStore();
+        store.release = new CountDownLatch(1);
+        final WriteBehindPropSource writeBehind = new WriteBehindPropSource(memory(), store, 2, 4, 1,
+                TimeUnit.MINUTES);
+        for (int i = 0; i < 4; ++i) {
+            writeBehind.setString("test." + i, "1");
+        }
+
+        final CountDownLatch written = new CountDownLatch(1);
+        new Thread() {
+            @Override
+            public void run() {
+                writeBehind.setString("test.4", "1");
+                written.countDown();
+            }
+        }.start();
+        Assert.assertFalse(written.await(100, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(4, writeBehind.dirtyCount());
+
+        store.release.countDown();
+        Assert.assertTrue(written.await(5, TimeUnit.SECONDS));
+        writeBehind.close();
+        Map<String, String> stored = new HashMap<String, String>();
+        for (Map<String, String> batch : store.batches) {
+            stored.putAll(batch);
+        }
+        Assert.assertEquals(5, stored.size());
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testRetryAfterFailure() throws Exception {
+        RecordingStore store = new RecordingStore();
+        store.failures.set(1);
+        WriteBehindPropSource writeBehind = new WriteBehindPropSource(memory(), store, 1, 100, 50,
+                TimeUnit.MILLISECONDS);
+        writeBehind.setString("test.a", "1");
+        Assert.assertTrue(writeBehind.flush(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonMap("test.a", "1"), store.batches.get(0));
+        writeBehind.close();
+    }
+
+    @Test(timeout = 10 * 1000)
+    public void testCloseFlushesToPropertiesFile() throws Exception {
+        File file = File.createTempFile("write-behind", ".properties");
+        file.deleteOnExit();
+        WriteBehindPropSource writeBehind = new WriteBehindPropSource(memory(), new PropertiesFileStore(file), 100,
+                1000, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 10; ++i) {
+            writeBehind.setString("test." + i, Integer.toString(i));
+        }
+        writeBehind.setString("test.9", null);
+        writeBehind.close();
+        try {
+            writeBehind.setString("test.late", "1");
+            Assert.fail("should not take writes after close");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // as on restart
+        WriteBehindPropSource restarted = new WriteBehindPropSource(memory(), new PropertiesFileStore(file), 100,
+                1000, 1, TimeUnit.MINUTES);
+        Assert.assertEquals(9, restarted.asMap().size());
+        Assert.assertEquals("3", restarted.getString("test.3"));
+        Assert.assertNull(restarted.getString("test.9"));
+        restarted.close();
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.dirkraft.propslive.set;
+
+import com.github.dirkraft.propslive.Props;
+import com.github.dirkraft.propslive.propsrc.PropSourceMap;
+import com.github.dirkraft.propslive.set.ease.AbstractPropSet;
+import com.github.dirkraft.propslive.set.ease.PropSetAsMap;
+import com.github.dirkraft.propslive.set.ease.PropSetAsPair;
+import junit.framework.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * @author Jason Dunkelberger (dirkraft)
+ */
+public class PropsSetsImplTest {
+
+    PropsSetsImpl impl = new PropsSetsImpl(new PropSourceMap(getClass().getName()));
+
+    /**
+     * Reads into and writes from fields, so that it allocates nothing itself.
+     */
+    static class Holder {
+        String url;
+        String user;
+    }
+
+    final Holder holder = new Holder();
+
+    final PropSet<Holder> propSet = new AbstractPropSet<Holder>("test.url", "test.user") {
+        @Override
+        public Holder getVals(Props props) {
+            holder.url = props.getString("test.url");
+            holder.user = props.getString("test.user");
+            return holder;
+        }
+
+        @Override
+        public void setVals(Props props) {
+            props.setString("test.url", holder.url);
+            props.setString("test.user", holder.user);
+        }
+    };
+
+    @Test
+    public void testCachedKeySets() {
+        PropSetAsPair pair = new PropSetAsPair("test.a", "test.b");
+        Assert.assertSame(pair.propKeys(), pair.propKeys());
+        PropSetAsMap map = new PropSetAsMap("test.a", "test.b", "test.c");
+        Assert.assertSame(map.propKeys(), map.propKeys());
+        Assert.assertEquals(3, map.propKeys().size());
+        try {
+            map.propKeys().add("test.d");
+            Assert.fail("key sets should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testViewsStillRestricted() {
+        impl.setString("test.other", "secret");
+        try {
+            impl.getVals(new AbstractPropSet<String>("test.url") {
+                @Override
+                public String getVals(Props props) {
+                    return props.getString("test.other");
+                }
+            });
+            Assert.fail("should not be able to read outside of the prop set");
+        } catch (IllegalPropertyAccessException e) {
+            // expected
+        }
+        // again, now that the view is cached
+        try {
+            impl.setVals(propSet);
+            impl.getVals(new AbstractPropSet<String>("test.url") {
+                @Override
+                public String getVals(Props props) {
+                    props.setString("test.url", "nope");
+                    return null;
+                }
+            });
+            Assert.fail("should not be able to write through getVals");
+        } catch (IllegalPropertyAccessException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSteadyStateAllocationFree() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        holder.url = "db://primary";
+        holder.user = "admin";
+        for (int i = 0; i < 20000; ++i) { // warm up
+            impl.setVals(propSet);
+            impl.getVals(propSet);
+        }
+
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; ++i) {
+            impl.setVals(propSet);
+            impl.getVals(propSet);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        Assert.assertEquals("db://primary", impl.getString("test.url"));
+        // Generous enough for anything incidental to measuring, but far less than a byte per call.
+        Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 4096);
+    }
+}